@@ -0,0 +1,133 @@
+package com.konradrej.rcpc.client.Room;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.konradrej.rcpc.client.Room.DAO.ConnectionDAO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times the connection history queries over 100k endpoints, far more than
+ * pruning ever leaves, and against the same table without the
+ * last_connected index as the old log was. Timings are logged, the
+ * assertions are on the query plans so the test does not depend on the
+ * device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConnectionDAOBenchmark {
+    private static final String TAG = "ConnectionDAOBenchmark";
+    private static final int ROWS = 100_000;
+    private static final int ITERATIONS = 50;
+    private static final int SHOWN_ENTRIES = 15;
+    private static final String HISTORY_QUERY = "SELECT * FROM connection ORDER BY last_connected DESC LIMIT 15";
+
+    private AppDatabase appDatabase;
+    private ConnectionDAO connectionDAO;
+
+    @Before
+    public void setUp() {
+        appDatabase = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                AppDatabase.class).build();
+        connectionDAO = appDatabase.connectionDAO();
+
+        SupportSQLiteDatabase db = appDatabase.getOpenHelper().getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                // Shuffled timestamps, so rows are not already in connection order
+                long lastConnected = (i * 7919L) % ROWS;
+                db.execSQL("INSERT INTO Connection (ip, port, connect_count, last_connected) VALUES (?, 666, 1, ?)",
+                        new Object[]{"10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF), lastConnected});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        appDatabase.close();
+    }
+
+    @Test
+    public void getLimitedAmount_readsIndexInsteadOfSorting() {
+        assertFalse(queryPlan(HISTORY_QUERY).contains("TEMP B-TREE"));
+        long indexedNanos = medianNanos(() -> assertEquals(SHOWN_ENTRIES, connectionDAO.getLimitedAmount(SHOWN_ENTRIES).size()));
+
+        appDatabase.getOpenHelper().getWritableDatabase().execSQL("DROP INDEX index_Connection_last_connected");
+        assertTrue(queryPlan(HISTORY_QUERY).contains("TEMP B-TREE"));
+        long unindexedNanos = medianNanos(() -> assertEquals(SHOWN_ENTRIES, connectionDAO.getLimitedAmount(SHOWN_ENTRIES).size()));
+
+        Log.i(TAG, String.format("getLimitedAmount over %d rows: indexed %.3f ms, unindexed %.3f ms",
+                ROWS, indexedNanos / 1e6, unindexedNanos / 1e6));
+    }
+
+    @Test
+    public void upsert_findsEndpointThroughUniqueIndex() {
+        assertTrue(queryPlan("SELECT uid FROM connection WHERE ip = '10.0.1.2' AND port = 666")
+                .contains("index_Connection_ip_port"));
+
+        int[] iteration = {0};
+        long existingNanos = medianNanos(() ->
+                connectionDAO.upsert("10.0.1.2", 666, ROWS + iteration[0]++, 20));
+        long newNanos = medianNanos(() ->
+                connectionDAO.upsert("192.168.0." + iteration[0], 666, ROWS + iteration[0]++, 20));
+
+        Log.i(TAG, String.format("upsert over %d rows: existing %.3f ms, new %.3f ms",
+                ROWS, existingNanos / 1e6, newNanos / 1e6));
+    }
+
+    @Test
+    public void prune_keepsMostRecentEntries() {
+        long start = System.nanoTime();
+        assertEquals(ROWS - SHOWN_ENTRIES, connectionDAO.prune(SHOWN_ENTRIES));
+        long pruneNanos = System.nanoTime() - start;
+
+        assertEquals(ROWS - 1, connectionDAO.getLimitedAmount(1).get(0).lastConnected);
+        long prunedNanos = medianNanos(() -> connectionDAO.prune(SHOWN_ENTRIES));
+
+        Log.i(TAG, String.format("prune of %d rows: %.3f ms, already pruned %.3f ms",
+                ROWS, pruneNanos / 1e6, prunedNanos / 1e6));
+    }
+
+    private String queryPlan(String query) {
+        StringBuilder plan = new StringBuilder();
+
+        try (Cursor cursor = appDatabase.getOpenHelper().getReadableDatabase().query("EXPLAIN QUERY PLAN " + query)) {
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(cursor.getColumnIndexOrThrow("detail"))).append('\n');
+            }
+        }
+
+        return plan.toString();
+    }
+
+    private static long medianNanos(Runnable operation) {
+        long[] nanos = new long[ITERATIONS];
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(nanos);
+        return nanos[ITERATIONS / 2];
+    }
+}
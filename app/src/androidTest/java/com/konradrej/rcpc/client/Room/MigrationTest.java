@@ -0,0 +1,127 @@
+package com.konradrej.rcpc.client.Room;
+
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.konradrej.rcpc.client.Room.DAO.ConnectionDAO;
+import com.konradrej.rcpc.client.Room.Entity.Connection;
+import com.konradrej.rcpc.client.Room.Entity.DiscoveredServer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Migrates databases of every earlier schema version to the current one,
+ * validated against the exported schemas.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+    private static final String TEST_DB = "migration-test";
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(),
+            AppDatabase.class.getCanonicalName(), new FrameworkSQLiteOpenHelperFactory());
+
+    @Test
+    public void migrate1To2_keepsHistoryAndAddsDiscoveredServers() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1);
+        db.execSQL("INSERT INTO Connection (ip, connect_timestamp) VALUES ('192.168.1.20', 1000)");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 2, true, AppDatabase.MIGRATION_1_2);
+
+        try (Cursor cursor = db.query("SELECT ip, connect_timestamp FROM Connection")) {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals("192.168.1.20", cursor.getString(0));
+            assertEquals(1000, cursor.getLong(1));
+        }
+
+        try (Cursor cursor = db.query("SELECT * FROM discovered_server")) {
+            assertEquals(0, cursor.getCount());
+        }
+    }
+
+    @Test
+    public void migrate2To3_aggregatesHistoryPerEndpoint() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 2);
+        db.execSQL("INSERT INTO Connection (ip, connect_timestamp) VALUES ('192.168.1.20', 1000)");
+        db.execSQL("INSERT INTO Connection (ip, connect_timestamp) VALUES ('192.168.1.21', 1500)");
+        db.execSQL("INSERT INTO Connection (ip, connect_timestamp) VALUES ('192.168.1.20', 3000)");
+        db.execSQL("INSERT INTO Connection (ip, connect_timestamp) VALUES (NULL, 500)");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 3, true, AppDatabase.MIGRATION_2_3);
+
+        try (Cursor cursor = db.query("SELECT ip, port, connect_count, last_connected, average_handshake_millis " +
+                "FROM Connection ORDER BY last_connected DESC")) {
+            assertEquals(2, cursor.getCount());
+
+            cursor.moveToFirst();
+            assertEquals("192.168.1.20", cursor.getString(0));
+            assertEquals(666, cursor.getInt(1));
+            assertEquals(2, cursor.getInt(2));
+            assertEquals(3000, cursor.getLong(3));
+            assertTrue(cursor.isNull(4));
+
+            cursor.moveToNext();
+            assertEquals("192.168.1.21", cursor.getString(0));
+            assertEquals(1, cursor.getInt(2));
+        }
+    }
+
+    @Test
+    public void migrateAll_opensWithRoom() throws IOException {
+        helper.createDatabase(TEST_DB, 1).close();
+
+        AppDatabase appDatabase = Room.databaseBuilder(InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                AppDatabase.class, TEST_DB)
+                .addMigrations(AppDatabase.MIGRATIONS)
+                .build();
+
+        DiscoveredServer discoveredServer = new DiscoveredServer();
+        discoveredServer.serviceName = "desktop";
+        discoveredServer.hostName = "desktop.local";
+        discoveredServer.address = "192.168.1.20";
+        discoveredServer.port = 666;
+        discoveredServer.lastSeen = 2000;
+        appDatabase.discoveredServerDAO().upsert(discoveredServer);
+
+        discoveredServer.address = "192.168.1.21";
+        appDatabase.discoveredServerDAO().upsert(discoveredServer);
+
+        List<DiscoveredServer> discoveredServers = appDatabase.discoveredServerDAO().getAll();
+        assertEquals(1, discoveredServers.size());
+        assertEquals("192.168.1.21", discoveredServers.get(0).address);
+
+        ConnectionDAO connectionDAO = appDatabase.connectionDAO();
+        connectionDAO.upsert("192.168.1.20", 666, 1000, 30);
+        connectionDAO.upsert("192.168.1.20", 666, 2000, 60);
+        connectionDAO.upsert("192.168.1.20", 667, 3000, 10);
+
+        List<Connection> connections = connectionDAO.getLimitedAmount(10);
+        assertEquals(2, connections.size());
+        assertEquals(667, connections.get(0).port);
+        assertEquals(2, connections.get(1).connectCount);
+        assertEquals(2000, connections.get(1).lastConnected);
+        assertEquals(45, connections.get(1).averageHandshakeMillis, 0.001);
+
+        assertEquals(1, connectionDAO.prune(1));
+        assertEquals(667, connectionDAO.getLimitedAmount(10).get(0).port);
+
+        appDatabase.close();
+    }
+}
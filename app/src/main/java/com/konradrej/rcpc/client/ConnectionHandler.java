@@ -2,31 +2,55 @@ package com.konradrej.rcpc.client;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import com.konradrej.rcpc.R;
+import com.konradrej.rcpc.client.Network.Backoff;
+import com.konradrej.rcpc.client.Network.BinaryMessageCodec;
+import com.konradrej.rcpc.client.Network.ConnectionRacer;
+import com.konradrej.rcpc.client.Network.DatagramMotionSender;
+import com.konradrej.rcpc.client.Network.JavaSerializationCodec;
+import com.konradrej.rcpc.client.Network.LatencyHistogram;
+import com.konradrej.rcpc.client.Network.LatencyProbe;
+import com.konradrej.rcpc.client.Network.ListenerRegistry;
+import com.konradrej.rcpc.client.Network.MessageCodec;
+import com.konradrej.rcpc.client.Network.MessageSender;
+import com.konradrej.rcpc.client.Network.MessageWriter;
+import com.konradrej.rcpc.client.Network.MotionPath;
+import com.konradrej.rcpc.client.Network.ReconnectLoop;
+import com.konradrej.rcpc.client.Network.SSLContextProvider;
+import com.konradrej.rcpc.client.Network.SendQueueStatistics;
+import com.konradrej.rcpc.client.Network.TlsStatistics;
 import com.konradrej.rcpc.core.network.Message;
 import com.konradrej.rcpc.core.network.MessageType;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetSocketAddress;
-import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
-import java.security.KeyManagementException;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
-import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
+import java.util.Random;
 import java.util.UUID;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.crypto.SecretKey;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
@@ -38,15 +62,29 @@ import javax.net.ssl.TrustManagerFactory;
  *
  * @author Konrad Rej
  * @author www.konradrej.com
- * @version 1.7
+ * @version 1.9
  * @since 1.0
  */
-public class ConnectionHandler {
+public class ConnectionHandler implements MessageSender {
+    public static final int DEFAULT_PORT = 666;
     private static final String TAG = "ConnectionHandler";
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long RECONNECT_BASE_DELAY_MILLIS = 250;
+    private static final long RECONNECT_MAX_DELAY_MILLIS = 8000;
+    private static final int RECONNECT_MAX_ATTEMPTS = 10;
+    private static final long LATENCY_PROBE_INTERVAL_MILLIS = 1000;
+    private static final long LATENCY_PROBE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
     private static ConnectionHandler singleInstance = null;
-    private final Set<onNetworkEventListener> onNetworkEventListeners = new HashSet<>();
-    private final Set<onNetworkMessageListener> onNetworkMessageListeners = new HashSet<>();
-    private SocketHandler socketHandler = null;
+    private final ListenerRegistry<onNetworkEventListener> onNetworkEventListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<onNetworkMessageListener> onNetworkMessageListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<onLatencyListener> onLatencyListeners = new ListenerRegistry<>();
+    // Keeps the socket threads from ever running listener code
+    private final Executor dispatchExecutor = Executors.newSingleThreadExecutor();
+    private final Executor mainThreadExecutor = new Handler(Looper.getMainLooper())::post;
+    private final TlsStatistics tlsStatistics = new TlsStatistics();
+    private final SSLContextProvider sslContextProvider = new SSLContextProvider(this::createSSLContext);
+    // Written on the main thread, read by the input thread sending touch motion
+    private volatile SocketHandler socketHandler = null;
     private Context context;
     private SharedPreferences sharedPreferences = null;
 
@@ -70,13 +108,64 @@ public class ConnectionHandler {
     }
 
     /**
-     * Adds message to messageQueue to be sent to server.
+     * Adds message to the writer queue to be sent to server. Motion is sent
+     * over the datagram channel instead if the server accepted one.
      *
      * @param message message to send
      * @since 1.0
      */
-    public synchronized void sendMessage(Message message) {
-        socketHandler.messageQueue.add(message);
+    @Override
+    public void sendMessage(Message message) {
+        SocketHandler currentSocketHandler = socketHandler;
+        DatagramMotionSender datagramMotionSender = currentSocketHandler.datagramMotionSender;
+
+        if (datagramMotionSender == null || !datagramMotionSender.offer(message)) {
+            currentSocketHandler.messageWriter.enqueue(message);
+        }
+    }
+
+    /**
+     * Sends move, scroll or drag move distances without allocating, the
+     * touch event path uses this instead of {@link #sendMessage(Message)}.
+     *
+     * @param messageType move, scroll or drag move
+     * @param distanceX   x distance
+     * @param distanceY   y distance
+     * @since 1.8
+     */
+    @Override
+    public void sendMotion(MessageType messageType, float distanceX, float distanceY) {
+        SocketHandler currentSocketHandler = socketHandler;
+        DatagramMotionSender datagramMotionSender = currentSocketHandler.datagramMotionSender;
+
+        if (datagramMotionSender == null || !datagramMotionSender.offerMotion(messageType, distanceX, distanceY)) {
+            currentSocketHandler.messageWriter.enqueueMotion(messageType, distanceX, distanceY);
+        }
+    }
+
+    /**
+     * Sends motion made of given path without allocating. The full path is
+     * only sent if the server accepted paths and no datagram channel is
+     * open, otherwise its summed distance is sent as by
+     * {@link #sendMotion(MessageType, float, float)}.
+     *
+     * @param messageType move, scroll or drag move
+     * @param path        path of the motion, copied
+     * @since 1.8
+     */
+    @Override
+    public void sendMotionPath(MessageType messageType, MotionPath path) {
+        if (path.size() == 0) {
+            return;
+        }
+
+        SocketHandler currentSocketHandler = socketHandler;
+
+        if (currentSocketHandler.motionPathsEnabled && currentSocketHandler.datagramMotionSender == null) {
+            currentSocketHandler.messageWriter.enqueueMotionPath(messageType, path);
+        } else {
+            sendMotion(messageType, path.getTotalX(), path.getTotalY());
+        }
     }
 
     /**
@@ -100,20 +189,68 @@ public class ConnectionHandler {
     }
 
     /**
-     * Disconnects previous connection and connects to given ip address.
+     * Starts loading the SSL context in the background so the first
+     * connection does not have to wait for it. Requires context to be set.
+     *
+     * @since 1.8
+     */
+    public void prewarm() {
+        sslContextProvider.prewarm();
+    }
+
+    /**
+     * Get TLS setup statistics.
+     *
+     * @return statistics for all connections made
+     * @since 1.8
+     */
+    public TlsStatistics getTlsStatistics() {
+        return tlsStatistics;
+    }
+
+    /**
+     * Get send queue statistics of the current connection.
+     *
+     * @return statistics of the current connection, null if never connected
+     * @since 1.8
+     */
+    public SendQueueStatistics getSendQueueStatistics() {
+        SocketHandler currentSocketHandler = socketHandler;
+
+        return currentSocketHandler == null ? null : currentSocketHandler.messageWriter.getSendQueueStatistics();
+    }
+
+    /**
+     * Disconnects previous connection and connects to given ip address on
+     * the default port.
      *
      * @param ip                   ip to connect to
      * @param networkEventListener network event callback
      * @since 1.0
      */
     public void connectToServer(String ip, onNetworkEventListener networkEventListener) {
+        connectToServer(Collections.singletonList(InetSocketAddress.createUnresolved(ip, DEFAULT_PORT)),
+                networkEventListener);
+    }
+
+    /**
+     * Disconnects previous connection and connects to the first responsive
+     * of given endpoints of the same server, see {@link ConnectionRacer}.
+     * Unresolved endpoints are resolved when connecting.
+     *
+     * @param endpoints            endpoints of the server, most preferred first
+     * @param networkEventListener network event callback
+     * @since 1.9
+     */
+    public void connectToServer(List<InetSocketAddress> endpoints, onNetworkEventListener networkEventListener) {
         if (socketHandler != null) {
-            socketHandler.disconnect = true;
+            socketHandler.disconnect();
         }
 
         socketHandler = new SocketHandler();
-        socketHandler.ip = ip;
-        socketHandler.context = context;
+        socketHandler.endpoints = new ArrayList<>(endpoints);
+        socketHandler.ip = endpoints.get(0).getHostString();
+        socketHandler.port = endpoints.get(0).getPort();
 
         addNetworkEventCallback(networkEventListener);
 
@@ -126,13 +263,13 @@ public class ConnectionHandler {
      * @since 1.0
      */
     public void disconnect() {
-        socketHandler.disconnect = true;
+        socketHandler.disconnect();
     }
 
     /**
      * Get IP.
      *
-     * @return last set IP
+     * @return IP of the connected endpoint, or of the most preferred one before connecting
      * @since 1.0
      */
     public String getIP() {
@@ -140,23 +277,65 @@ public class ConnectionHandler {
     }
 
     /**
-     * Adds onNetworkEventListener callback.
+     * Get port.
+     *
+     * @return port of the connected endpoint, or of the most preferred one before connecting
+     * @since 1.9
+     */
+    public int getPort() {
+        return socketHandler.port;
+    }
+
+    /**
+     * Get the duration of the TLS handshake with the connected endpoint.
+     *
+     * @return handshake duration in nanoseconds, 0 before connecting
+     * @since 1.9
+     */
+    public long getHandshakeNanos() {
+        return socketHandler.handshakeNanos;
+    }
+
+    /**
+     * Adds onNetworkEventListener callback called on the background dispatch thread.
      *
      * @param onNetworkEventListener instance of onNetworkEventListener to add
      * @since 1.0
      */
     public void addNetworkEventCallback(onNetworkEventListener onNetworkEventListener) {
-        this.onNetworkEventListeners.add(onNetworkEventListener);
+        addNetworkEventCallback(onNetworkEventListener, Delivery.BACKGROUND);
     }
 
     /**
-     * Adds onNetworkMessageListener callback.
+     * Adds onNetworkEventListener callback called on given thread.
+     *
+     * @param onNetworkEventListener instance of onNetworkEventListener to add
+     * @param delivery               thread to call the callback on
+     * @since 1.8
+     */
+    public void addNetworkEventCallback(onNetworkEventListener onNetworkEventListener, Delivery delivery) {
+        this.onNetworkEventListeners.add(onNetworkEventListener, getExecutor(delivery));
+    }
+
+    /**
+     * Adds onNetworkMessageListener callback called on the background dispatch thread.
      *
      * @param onNetworkMessageListener instance of onNetworkMessageListener to add
      * @since 1.0
      */
     public void addNetworkMessageCallback(onNetworkMessageListener onNetworkMessageListener) {
-        this.onNetworkMessageListeners.add(onNetworkMessageListener);
+        addNetworkMessageCallback(onNetworkMessageListener, Delivery.BACKGROUND);
+    }
+
+    /**
+     * Adds onNetworkMessageListener callback called on given thread.
+     *
+     * @param onNetworkMessageListener instance of onNetworkMessageListener to add
+     * @param delivery                 thread to call the callback on
+     * @since 1.8
+     */
+    public void addNetworkMessageCallback(onNetworkMessageListener onNetworkMessageListener, Delivery delivery) {
+        this.onNetworkMessageListeners.add(onNetworkMessageListener, getExecutor(delivery));
     }
 
     /**
@@ -179,8 +358,63 @@ public class ConnectionHandler {
         this.onNetworkMessageListeners.remove(onNetworkMessageListener);
     }
 
+    // Failures are thrown for SSLContextProvider to retry, the default context is never used
+    private SSLContext createSSLContext() throws GeneralSecurityException, IOException {
+        Properties properties = new Properties();
+        properties.load(context.getResources().openRawResource(R.raw.ssl));
+
+        String keystorePassword = properties.getProperty("keystore.password");
+        long keyStoreLoadStart = System.nanoTime();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(context.getResources().openRawResource(R.raw.keystore), keystorePassword.toCharArray());
+        tlsStatistics.recordKeyStoreLoad(System.nanoTime() - keyStoreLoadStart);
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, keystorePassword.toCharArray());
+
+        String truststorePassword = properties.getProperty("truststore.password");
+        long trustStoreLoadStart = System.nanoTime();
+        KeyStore trustStore = KeyStore.getInstance("PKCS12");
+        trustStore.load(context.getResources().openRawResource(R.raw.truststore), truststorePassword.toCharArray());
+        tlsStatistics.recordKeyStoreLoad(System.nanoTime() - trustStoreLoadStart);
+
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+
+        SSLContext sslContext = SSLContext.getInstance("TLSv1.3");
+        sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+
+        return sslContext;
+    }
+
+    /**
+     * Adds onLatencyListener callback called on given thread. Latency is
+     * only probed while at least one callback is added.
+     *
+     * @param onLatencyListener instance of onLatencyListener to add
+     * @param delivery          thread to call the callback on
+     * @since 1.8
+     */
+    public void addLatencyCallback(onLatencyListener onLatencyListener, Delivery delivery) {
+        this.onLatencyListeners.add(onLatencyListener, getExecutor(delivery));
+    }
+
+    /**
+     * Removes onLatencyListener callback.
+     *
+     * @param onLatencyListener instance of onLatencyListener to remove
+     * @since 1.8
+     */
+    public void removeLatencyCallback(onLatencyListener onLatencyListener) {
+        this.onLatencyListeners.remove(onLatencyListener);
+    }
+
+    private Executor getExecutor(Delivery delivery) {
+        return delivery == Delivery.MAIN_THREAD ? mainThreadExecutor : dispatchExecutor;
+    }
+
     private void notifyEventListeners(NetworkEvent event) {
-        for (onNetworkEventListener onNetworkEventListener : onNetworkEventListeners) {
+        onNetworkEventListeners.dispatch(onNetworkEventListener -> {
             switch (event) {
                 case CONNECT:
                     onNetworkEventListener.onConnect();
@@ -194,24 +428,50 @@ public class ConnectionHandler {
                 case TIMEOUT:
                     onNetworkEventListener.onConnectTimeout();
                     break;
+                case RECONNECTING:
+                    onNetworkEventListener.onReconnecting();
+                    break;
+                case RECONNECTED:
+                    onNetworkEventListener.onReconnected();
+                    break;
             }
-        }
+        });
     }
 
     private void notifyEventListeners(NetworkEvent event, Exception errorException) {
-        for (onNetworkEventListener onNetworkEventListener : onNetworkEventListeners) {
+        onNetworkEventListeners.dispatch(onNetworkEventListener -> {
             switch (event) {
                 case ERROR:
                     onNetworkEventListener.onError(errorException);
                     break;
             }
-        }
+        });
     }
 
     private void notifyMessageListeners(Message message) {
-        for (onNetworkMessageListener onNetworkMessageListener : onNetworkMessageListeners) {
-            onNetworkMessageListener.onReceivedMessage(message);
-        }
+        onNetworkMessageListeners.dispatch(onNetworkMessageListener ->
+                onNetworkMessageListener.onReceivedMessage(message));
+    }
+
+    private void notifyLatencyListeners(LatencyHistogram roundTripHistogram, LatencyHistogram sendDelayHistogram) {
+        onLatencyListeners.dispatch(onLatencyListener ->
+                onLatencyListener.onLatencyUpdate(roundTripHistogram, sendDelayHistogram));
+    }
+
+    /**
+     * Thread listener callbacks are called on.
+     *
+     * @since 1.8
+     */
+    public enum Delivery {
+        /**
+         * Dedicated dispatch thread shared by all background callbacks.
+         */
+        BACKGROUND,
+        /**
+         * Main thread, for callbacks that update views.
+         */
+        MAIN_THREAD
     }
 
     private enum NetworkEvent {
@@ -219,7 +479,9 @@ public class ConnectionHandler {
         DISCONNECT,
         TIMEOUT,
         ERROR,
-        REFUSED
+        REFUSED,
+        RECONNECTING,
+        RECONNECTED
     }
 
     /**
@@ -237,6 +499,10 @@ public class ConnectionHandler {
         void onConnectTimeout();
 
         void onError(Exception e);
+
+        void onReconnecting();
+
+        void onReconnected();
     }
 
     /**
@@ -248,129 +514,306 @@ public class ConnectionHandler {
         void onReceivedMessage(Message message);
     }
 
+    /**
+     * Callback interface for latency statistics of the current session.
+     * Histograms keep updating, read the values needed during the callback.
+     *
+     * @since 1.8
+     */
+    public interface onLatencyListener {
+        void onLatencyUpdate(LatencyHistogram roundTripHistogram, LatencyHistogram sendDelayHistogram);
+    }
+
     private class SocketHandler implements Runnable {
-        private final Deque<Message> messageQueue = new ArrayDeque<>();
-        private boolean disconnect = false;
-        private String ip = null;
-        private Context context;
+        private final MessageWriter messageWriter = new MessageWriter();
+        private final ReconnectLoop reconnectLoop = new ReconnectLoop(this::runSession, new ReconnectListener(),
+                new Backoff(RECONNECT_BASE_DELAY_MILLIS, RECONNECT_MAX_DELAY_MILLIS, RECONNECT_MAX_ATTEMPTS, new Random()));
+        private final LatencyHistogram roundTripHistogram = new LatencyHistogram();
+        private volatile LatencyProbe latencyProbe = null;
+        private volatile DatagramMotionSender datagramMotionSender = null;
+        private volatile boolean motionPathsEnabled = false;
+        private volatile boolean disconnect = false;
+        private volatile boolean closedByServer = false;
+        private boolean reconnectEnabled = false;
+        private Exception lastException = null;
+        private SecretKey datagramKey = null;
+        private SSLSocketFactory sslSocketFactory = null;
+        private volatile ConnectionRacer<DialedSession> connectionRacer = null;
+        private List<InetSocketAddress> endpoints = null;
+        private volatile String ip = null;
+        private volatile int port = 0;
+        private volatile long handshakeNanos = 0;
 
         @Override
         public void run() {
             try {
-                SSLContext sslContext = getSSLContext();
-                SSLSocketFactory sslSocketFactory = sslContext.getSocketFactory();
-
-                try (SSLSocket socket = (SSLSocket) sslSocketFactory.createSocket()) {
-                    // Connect socket and optimize its settings
-                    SocketAddress socketAddress = new InetSocketAddress(ip, 666);
-                    socket.connect(socketAddress, 5000);
-                    socket.setTcpNoDelay(true);
-                    socket.setPerformancePreferences(0, 2, 1);
-                    socket.setKeepAlive(true);
-
-                    ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-                    ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
-
-                    out.writeObject(getGuidMessage());
-
-                    Message message = (Message) in.readObject();
-                    if (message.getMessageType() == MessageType.INFO_USER_ACCEPTED_CONNECTION) {
-                        notifyEventListeners(NetworkEvent.CONNECT);
-
-                        new Thread(() -> {
-                            try {
-                                while (!socket.isInputShutdown()) {
-                                    Message receivedMessage = (Message) in.readObject();
-                                    notifyMessageListeners(receivedMessage);
-
-                                    switch (receivedMessage.getMessageType()) {
-                                        case ACTION_GET_UUID:
-                                            messageQueue.add(getGuidMessage());
-                                            break;
-                                        case INFO_USER_CLOSED_CONNECTION:
-                                            notifyEventListeners(NetworkEvent.DISCONNECT);
-                                            break;
-                                        default:
-                                            Log.e(TAG, "Message type not implemented: " + receivedMessage.getMessageType());
-                                    }
-                                }
-                            } catch (IOException | ClassNotFoundException e) {
-                                if (!disconnect) {
-                                    notifyEventListeners(NetworkEvent.ERROR, e);
-                                }
-                            }
-                        }).start();
-
-                        while (!disconnect) {
-                            if (!messageQueue.isEmpty()) {
-                                out.writeObject(messageQueue.removeFirst());
-                            }
-                        }
+                sslSocketFactory = sslContextProvider.get().getSocketFactory();
+            } catch (ExecutionException e) {
+                // The next connection builds the context again
+                Throwable cause = e.getCause();
+                Log.e(TAG, "Could not create SSL context. Error: " + cause.getLocalizedMessage());
+                notifyEventListeners(NetworkEvent.ERROR, cause instanceof Exception ? (Exception) cause : e);
+                notifyEventListeners(NetworkEvent.DISCONNECT);
+                return;
+            } catch (InterruptedException e) {
+                Log.e(TAG, "Error: " + e.getLocalizedMessage());
+                notifyEventListeners(NetworkEvent.DISCONNECT);
+                return;
+            }
 
-                        Message outMessage = new Message(MessageType.INFO_USER_CLOSED_CONNECTION);
+            reconnectEnabled = sharedPreferences.getBoolean("auto_reconnect", true);
 
-                        out.writeObject(outMessage);
-                        out.flush();
-                    } else if (message.getMessageType() == MessageType.INFO_USER_CLOSED_CONNECTION) {
-                        notifyEventListeners(NetworkEvent.REFUSED);
-                    } else {
-                        notifyEventListeners(NetworkEvent.ERROR, new Exception("Invalid message type, server or client is probably outdated."));
-                    }
-                } catch (SocketTimeoutException e) {
-                    notifyEventListeners(NetworkEvent.TIMEOUT);
-                } catch (IOException | ClassNotFoundException e) {
-                    notifyEventListeners(NetworkEvent.ERROR, e);
-                } finally {
-                    disconnect = false;
-                    notifyEventListeners(NetworkEvent.DISCONNECT);
-                }
-            } catch (NoSuchAlgorithmException e) {
+            try {
+                reconnectLoop.run();
+            } catch (InterruptedException e) {
                 Log.e(TAG, "Error: " + e.getLocalizedMessage());
             }
         }
 
-        private SSLContext getSSLContext() throws NoSuchAlgorithmException {
-            Properties properties = new Properties();
-            try {
-                properties.load(context.getResources().openRawResource(R.raw.ssl));
+        private ReconnectLoop.Result runSession(boolean reconnecting, Runnable onEstablished) {
+            boolean established = false;
+            ScheduledExecutorService latencyProbeExecutor = null;
 
-                KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            datagramKey = null;
+            if (sharedPreferences.getBoolean("datagram_motion_channel", true)) {
                 try {
-                    String keystorePassword = properties.getProperty("keystore.password");
+                    datagramKey = DatagramMotionSender.generateKey();
+                } catch (NoSuchAlgorithmException e) {
+                    // Motion is sent over TCP instead
+                    Log.e(TAG, "Error: " + e.getLocalizedMessage());
+                }
+            }
+
+            ConnectionRacer<DialedSession> racer = new ConnectionRacer<>(new SessionDialer(sslSocketFactory),
+                    ConnectionRacer.DEFAULT_ATTEMPT_DELAY_MILLIS);
+            connectionRacer = racer;
+            if (disconnect) {
+                racer.cancel();
+            }
+
+            try (DialedSession session = racer.race(endpoints)) {
+                SSLSocket socket = session.socket;
+                ObjectOutputStream out = session.out;
+                ObjectInputStream in = session.in;
+                Message message = session.acceptMessage;
+
+                // Reconnects try the endpoint that last answered first
+                ip = socket.getInetAddress().getHostAddress();
+                port = session.endpoint.getPort();
+                handshakeNanos = session.handshakeNanos;
+                endpoints.remove(session.endpoint);
+                endpoints.add(0, session.endpoint);
+
+                if (message.getMessageType() == MessageType.INFO_USER_ACCEPTED_CONNECTION) {
+                    established = true;
+
+                    MessageCodec messageCodec = getNegotiatedCodec(message);
+                    messageWriter.setMessageCodec(messageCodec);
+                    startDatagramChannel(socket, message);
+
+                    if (reconnecting) {
+                        // Motion queued while offline is stale, control messages are kept
+                        messageWriter.dropPendingMotion();
+                    }
+                    onEstablished.run();
+
+                    AtomicReference<Exception> readerException = new AtomicReference<>();
+                    startReader(socket, in, out, messageCodec, readerException);
+
+                    // Servers that do not answer probes only get send delays reported
+                    latencyProbe = LatencyProbe.isSupported(message) ? new LatencyProbe(LATENCY_PROBE_TIMEOUT_NANOS) : null;
+                    messageWriter.setLatencyProbe(latencyProbe);
+                    latencyProbeExecutor = Executors.newSingleThreadScheduledExecutor();
+                    latencyProbeExecutor.scheduleAtFixedRate(this::sendLatencyProbe,
+                            LATENCY_PROBE_INTERVAL_MILLIS, LATENCY_PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+                    // Blocks until disconnect() stops the writer or the reader loses the connection
+                    if (!messageWriter.writeUntilStopped(out)) {
+                        if (disconnect || closedByServer) {
+                            return ReconnectLoop.Result.CLOSED;
+                        }
 
-                    KeyStore keyStore = KeyStore.getInstance("PKCS12");
-                    keyStore.load(context.getResources().openRawResource(R.raw.keystore), keystorePassword.toCharArray());
+                        if (reconnectEnabled) {
+                            return ReconnectLoop.Result.LOST;
+                        }
 
-                    keyManagerFactory.init(keyStore, keystorePassword.toCharArray());
-                } catch (KeyStoreException | CertificateException | IOException | NoSuchAlgorithmException e) {
-                    Log.e(TAG, "Could not load keystore. Error: " + e.getLocalizedMessage());
-                } catch (UnrecoverableKeyException e) {
-                    e.printStackTrace();
+                        // Reported once the session is closed, as every other session error
+                        notifyEventListeners(NetworkEvent.ERROR, readerException.get());
+                        return ReconnectLoop.Result.CLOSED;
+                    }
+
+                    Message outMessage = new Message(MessageType.INFO_USER_CLOSED_CONNECTION);
+
+                    messageCodec.writeMessage(outMessage, out);
+                    out.flush();
+                } else if (message.getMessageType() == MessageType.INFO_USER_CLOSED_CONNECTION) {
+                    notifyEventListeners(NetworkEvent.REFUSED);
+                } else {
+                    notifyEventListeners(NetworkEvent.ERROR, new Exception("Invalid message type, server or client is probably outdated."));
+                }
+            } catch (SocketTimeoutException e) {
+                if (reconnecting) {
+                    lastException = e;
+                    return ReconnectLoop.Result.FAILED;
                 }
 
-                TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-                try {
-                    String truststorePassword = properties.getProperty("truststore.password");
+                notifyEventListeners(NetworkEvent.TIMEOUT);
+            } catch (IOException e) {
+                if (disconnect || closedByServer) {
+                    return ReconnectLoop.Result.CLOSED;
+                }
 
-                    KeyStore trustStore = KeyStore.getInstance("PKCS12");
-                    trustStore.load(context.getResources().openRawResource(R.raw.truststore), truststorePassword.toCharArray());
+                if (established && reconnectEnabled) {
+                    return ReconnectLoop.Result.LOST;
+                }
 
-                    trustManagerFactory.init(trustStore);
-                } catch (KeyStoreException | CertificateException e) {
-                    Log.e(TAG, "Could not load truststore. Error: " + e.getLocalizedMessage());
+                if (reconnecting) {
+                    lastException = e;
+                    return ReconnectLoop.Result.FAILED;
                 }
 
-                SSLContext sslContext = SSLContext.getInstance("TLSv1.3");
-                sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+                notifyEventListeners(NetworkEvent.ERROR, e);
+            } finally {
+                stopDatagramChannel();
+                Log.d(TAG, "Send queue: " + messageWriter.getSendQueueStatistics());
 
-                return sslContext;
-            } catch (IOException e) {
-                Log.e(TAG, "Could not load SSL properties file. Error: " + e.getLocalizedMessage());
-            } catch (NoSuchAlgorithmException | KeyManagementException e) {
-                Log.e(TAG, "Keystore/truststore related error. Error: " + e.getLocalizedMessage());
+                if (latencyProbeExecutor != null) {
+                    latencyProbeExecutor.shutdownNow();
+                }
             }
 
-            return SSLContext.getDefault();
+            return ReconnectLoop.Result.CLOSED;
+        }
+
+        // Ends the session through the writer when reading fails, leaving the error in given reference
+        private void startReader(SSLSocket socket, ObjectInputStream in, ObjectOutputStream out, MessageCodec messageCodec,
+                                 AtomicReference<Exception> readerException) {
+            new Thread(() -> {
+                try {
+                    while (!socket.isInputShutdown()) {
+                        Message receivedMessage = messageCodec.readMessage(in);
+                        notifyMessageListeners(receivedMessage);
+
+                        switch (receivedMessage.getMessageType()) {
+                            case ACTION_GET_UUID:
+                                messageWriter.enqueue(getGuidMessage());
+                                break;
+                            case INFO_UUID:
+                                receiveLatencyProbe(receivedMessage);
+                                break;
+                            case INFO_USER_CLOSED_CONNECTION:
+                                // Session ends, the reconnect loop reports the disconnect
+                                closedByServer = true;
+                                messageWriter.interrupt(out);
+                                break;
+                            default:
+                                Log.e(TAG, "Message type not implemented: " + receivedMessage.getMessageType());
+                        }
+                    }
+                } catch (IOException | ClassNotFoundException e) {
+                    if (disconnect || closedByServer) {
+                        return;
+                    }
+
+                    readerException.set(e);
+                    messageWriter.interrupt(out);
+                }
+            }).start();
+        }
+
+        private void sendLatencyProbe() {
+            if (onLatencyListeners.isEmpty()) {
+                return;
+            }
+
+            LatencyProbe probe = latencyProbe;
+            if (probe == null) {
+                notifyLatencyListeners(roundTripHistogram, messageWriter.getSendDelayHistogram());
+                return;
+            }
+
+            Message probeMessage = probe.next(System.nanoTime());
+            if (probeMessage != null) {
+                messageWriter.enqueueProbe(probeMessage);
+            }
+        }
+
+        private void receiveLatencyProbe(Message reply) {
+            LatencyProbe probe = latencyProbe;
+            long roundTripNanos = probe == null ? -1 : probe.onReply(reply, System.nanoTime());
+
+            if (roundTripNanos >= 0) {
+                roundTripHistogram.record(roundTripNanos / 1000);
+
+                notifyLatencyListeners(roundTripHistogram, messageWriter.getSendDelayHistogram());
+            }
+        }
+
+        private void disconnect() {
+            disconnect = true;
+            messageWriter.stop();
+            reconnectLoop.cancel();
+
+            ConnectionRacer<DialedSession> racer = connectionRacer;
+            if (racer != null) {
+                racer.cancel();
+            }
+        }
+
+        private class ReconnectListener implements ReconnectLoop.Listener {
+            @Override
+            public void onConnect() {
+                notifyEventListeners(NetworkEvent.CONNECT);
+            }
+
+            @Override
+            public void onReconnecting() {
+                notifyEventListeners(NetworkEvent.RECONNECTING);
+            }
+
+            @Override
+            public void onReconnected() {
+                notifyEventListeners(NetworkEvent.RECONNECTED);
+            }
+
+            @Override
+            public void onReconnectFailed() {
+                notifyEventListeners(NetworkEvent.ERROR, lastException);
+            }
+
+            @Override
+            public void onDisconnect() {
+                notifyEventListeners(NetworkEvent.DISCONNECT);
+            }
+        }
+
+        private void stopDatagramChannel() {
+            DatagramMotionSender sender = datagramMotionSender;
+            datagramMotionSender = null;
+            messageWriter.setMotionBarrier(null);
+
+            if (sender != null) {
+                sender.stop();
+            }
+        }
+
+        private void startDatagramChannel(SSLSocket socket, Message acceptMessage) {
+            Object datagramPort = acceptMessage.getAdditionalDataFromKey(DatagramMotionSender.DATAGRAM_PORT_KEY);
+
+            if (datagramKey == null || !(datagramPort instanceof Integer)) {
+                return;
+            }
+
+            try {
+                DatagramMotionSender sender = new DatagramMotionSender(socket.getInetAddress(), (Integer) datagramPort, datagramKey);
+                new Thread(sender).start();
+
+                // Control messages written over TLS wait for the motion sent before them
+                messageWriter.setMotionBarrier(sender);
+                datagramMotionSender = sender;
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open datagram channel. Error: " + e.getLocalizedMessage());
+            }
         }
 
         private Message getGuidMessage() {
@@ -384,7 +827,99 @@ public class ConnectionHandler {
                 sharedPreferences.edit().putString(guidKey, guid).apply();
             }
 
-            return new Message(MessageType.INFO_UUID, guid);
+            // Advertise codecs, servers that do not support codec negotiation ignore it
+            Map<String, Object> additionalData = new HashMap<>();
+            additionalData.put(MessageCodec.SUPPORTED_CODECS_KEY, BinaryMessageCodec.NAME);
+            additionalData.put(MotionPath.MOTION_PATH_KEY, true);
+            additionalData.put(LatencyProbe.LATENCY_PROBE_KEY, true);
+
+            // The key is only ever sent over the TLS connection
+            if (datagramKey != null) {
+                additionalData.put(DatagramMotionSender.DATAGRAM_KEY_KEY, datagramKey.getEncoded());
+            }
+
+            return new Message(MessageType.INFO_UUID, guid, additionalData);
+        }
+
+        private class SessionDialer implements ConnectionRacer.Dialer<DialedSession> {
+            private final SSLSocketFactory sslSocketFactory;
+
+            private SessionDialer(SSLSocketFactory sslSocketFactory) {
+                this.sslSocketFactory = sslSocketFactory;
+            }
+
+            @Override
+            public DialedSession connect(InetSocketAddress endpoint, ConnectionRacer.Abort abort) throws IOException {
+                InetSocketAddress address = endpoint.isUnresolved() ?
+                        new InetSocketAddress(endpoint.getHostString(), endpoint.getPort()) : endpoint;
+
+                SSLSocket socket = (SSLSocket) sslSocketFactory.createSocket();
+                // Lets the racer abort the connect and handshake by closing the socket
+                abort.setCloseable(socket);
+
+                // Connect socket and optimize its settings
+                socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                socket.setPerformancePreferences(0, 2, 1);
+                socket.setKeepAlive(true);
+
+                long handshakeStartMillis = System.currentTimeMillis();
+                long handshakeStart = System.nanoTime();
+                socket.startHandshake();
+                long handshakeNanos = System.nanoTime() - handshakeStart;
+                tlsStatistics.recordHandshake(socket.getSession(), handshakeStartMillis, handshakeNanos);
+                Log.d(TAG, "TLS " + endpoint + ": " + tlsStatistics);
+
+                return new DialedSession(endpoint, socket, handshakeNanos);
+            }
+
+            @Override
+            public void accept(DialedSession session) throws IOException {
+                session.out = new ObjectOutputStream(session.socket.getOutputStream());
+                session.in = new ObjectInputStream(session.socket.getInputStream());
+
+                // The stored app GUID lets the server accept a reconnect without asking the user again
+                session.out.writeObject(getGuidMessage());
+
+                try {
+                    session.acceptMessage = (Message) session.in.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Invalid accept message", e);
+                }
+            }
+        }
+
+        private MessageCodec getNegotiatedCodec(Message acceptMessage) {
+            motionPathsEnabled = false;
+
+            if (BinaryMessageCodec.NAME.equals(acceptMessage.getAdditionalDataFromKey(MessageCodec.CODEC_KEY))) {
+                // Paths are a separate flag so servers matching the codec name exactly keep working
+                motionPathsEnabled = Boolean.TRUE.equals(acceptMessage.getAdditionalDataFromKey(MotionPath.MOTION_PATH_KEY));
+                return new BinaryMessageCodec(motionPathsEnabled);
+            }
+
+            return new JavaSerializationCodec();
+        }
+    }
+
+    // A connected socket with its streams once through the accept phase
+    private static class DialedSession implements Closeable {
+        private final InetSocketAddress endpoint;
+        private final SSLSocket socket;
+        private final long handshakeNanos;
+        private ObjectOutputStream out = null;
+        private ObjectInputStream in = null;
+        private Message acceptMessage = null;
+
+        private DialedSession(InetSocketAddress endpoint, SSLSocket socket, long handshakeNanos) {
+            this.endpoint = endpoint;
+            this.socket = socket;
+            this.handshakeNanos = handshakeNanos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
         }
     }
 }
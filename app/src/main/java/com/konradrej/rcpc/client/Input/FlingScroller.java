@@ -0,0 +1,98 @@
+package com.konradrej.rcpc.client.Input;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link FlingSimulator} on a scheduler at a fixed tick rate, so
+ * inertial scrolling never runs on the UI thread.
+ * <p>
+ * Cancelling takes effect immediately, no scroll is emitted once
+ * {@link #cancel()} returns.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class FlingScroller {
+    private final ScheduledExecutorService scheduler;
+    private final FlingSimulator flingSimulator;
+    private final FlingSimulator.OnFlingScrollListener listener;
+    private ScheduledFuture<?> tickFuture = null;
+
+    /**
+     * Creates scroller ticking on given scheduler.
+     *
+     * @param scheduler scheduler to tick on, shut down by {@link #shutdown()}
+     * @param friction  exponential decay rate per second
+     * @param listener  listener receiving the scroll distances on the scheduler thread
+     * @since 1.8
+     */
+    public FlingScroller(ScheduledExecutorService scheduler, float friction,
+                         FlingSimulator.OnFlingScrollListener listener) {
+        this.scheduler = scheduler;
+        this.flingSimulator = new FlingSimulator(friction);
+        this.listener = listener;
+    }
+
+    /**
+     * Starts a fling, replacing one in progress.
+     *
+     * @param velocityX x scroll distance per second
+     * @param velocityY y scroll distance per second
+     * @since 1.8
+     */
+    public synchronized void fling(float velocityX, float velocityY) {
+        flingSimulator.start(velocityX, velocityY);
+
+        if (tickFuture == null) {
+            tickFuture = scheduler.scheduleAtFixedRate(this::tick,
+                    FlingSimulator.TICK_MILLIS, FlingSimulator.TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the fling in progress.
+     *
+     * @since 1.8
+     */
+    public synchronized void cancel() {
+        flingSimulator.stop();
+        stopTicking();
+    }
+
+    /**
+     * Get if a fling is in progress.
+     *
+     * @return true if running, false if not
+     * @since 1.8
+     */
+    public synchronized boolean isRunning() {
+        return flingSimulator.isRunning();
+    }
+
+    /**
+     * Cancels the fling in progress and shuts the scheduler down.
+     *
+     * @since 1.8
+     */
+    public void shutdown() {
+        cancel();
+        scheduler.shutdownNow();
+    }
+
+    private synchronized void tick() {
+        if (!flingSimulator.step(listener)) {
+            stopTicking();
+        }
+    }
+
+    private void stopTicking() {
+        if (tickFuture != null) {
+            tickFuture.cancel(false);
+            tickFuture = null;
+        }
+    }
+}
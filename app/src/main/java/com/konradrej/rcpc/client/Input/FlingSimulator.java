@@ -0,0 +1,121 @@
+package com.konradrej.rcpc.client.Input;
+
+/**
+ * Turns a fling velocity into scroll distances decaying by friction, one
+ * step per fixed length tick. Time only advances through {@link #step()},
+ * which keeps the simulation independent of how late ticks run.
+ * <p>
+ * Distances are emitted in whole pixels with the remainder carried, ticks
+ * moving less than a pixel emit nothing. A fling ends once slower than
+ * {@link #MIN_VELOCITY} or after {@link #MAX_TICKS} ticks, which bounds the
+ * amount of scroll messages it causes.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class FlingSimulator {
+    public static final long TICK_MILLIS = 16;
+    public static final int MAX_TICKS = 120;
+    /**
+     * Speed in pixels per second below which a fling stops.
+     */
+    public static final float MIN_VELOCITY = 30f;
+
+    private static final float TICK_SECONDS = TICK_MILLIS / 1000f;
+
+    private final float decayPerTick;
+    private float velocityX = 0;
+    private float velocityY = 0;
+    private float remainderX = 0;
+    private float remainderY = 0;
+    private int ticksLeft = 0;
+
+    /**
+     * Creates simulator with given friction.
+     *
+     * @param friction exponential decay rate per second, higher stops sooner
+     * @since 1.8
+     */
+    public FlingSimulator(float friction) {
+        decayPerTick = (float) Math.exp(-friction * TICK_SECONDS);
+    }
+
+    /**
+     * Starts a fling, replacing one in progress.
+     *
+     * @param velocityX x scroll distance per second
+     * @param velocityY y scroll distance per second
+     * @since 1.8
+     */
+    public void start(float velocityX, float velocityY) {
+        this.velocityX = velocityX;
+        this.velocityY = velocityY;
+        remainderX = 0;
+        remainderY = 0;
+        ticksLeft = MAX_TICKS;
+    }
+
+    /**
+     * Stops the fling in progress.
+     *
+     * @since 1.8
+     */
+    public void stop() {
+        ticksLeft = 0;
+    }
+
+    /**
+     * Get if a fling is in progress.
+     *
+     * @return true if running, false if not
+     * @since 1.8
+     */
+    public boolean isRunning() {
+        return ticksLeft > 0;
+    }
+
+    /**
+     * Advances the fling by one tick.
+     *
+     * @param listener listener receiving the distance moved during the tick
+     * @return true if the fling continues, false if it ended
+     * @since 1.8
+     */
+    public boolean step(OnFlingScrollListener listener) {
+        if (ticksLeft <= 0) {
+            return false;
+        }
+
+        float distanceX = velocityX * TICK_SECONDS + remainderX;
+        float distanceY = velocityY * TICK_SECONDS + remainderY;
+        float wholeX = (int) distanceX;
+        float wholeY = (int) distanceY;
+        remainderX = distanceX - wholeX;
+        remainderY = distanceY - wholeY;
+
+        velocityX *= decayPerTick;
+        velocityY *= decayPerTick;
+        ticksLeft--;
+
+        if (velocityX * velocityX + velocityY * velocityY < MIN_VELOCITY * MIN_VELOCITY) {
+            ticksLeft = 0;
+        }
+
+        if (wholeX != 0 || wholeY != 0) {
+            listener.onFlingScroll(wholeX, wholeY);
+        }
+
+        return ticksLeft > 0;
+    }
+
+    /**
+     * Receives the scroll distances of a fling.
+     *
+     * @since 1.8
+     */
+    public interface OnFlingScrollListener {
+        void onFlingScroll(float distanceX, float distanceY);
+    }
+}
@@ -0,0 +1,165 @@
+package com.konradrej.rcpc.client.Input;
+
+import com.konradrej.rcpc.client.Network.MotionPath;
+
+/**
+ * Hides part of the touch to cursor latency by sending the pointer a few
+ * milliseconds ahead of the finger.
+ * <p>
+ * An alpha-beta filter tracks position and velocity per axis from the
+ * sample times of each {@link MotionPath}. After every path the cursor is
+ * led by the filtered velocity times the prediction horizon, by adjusting
+ * the last sample of the path. The lead is in whole pixels and capped.
+ * {@link #finish(MotionPath)} takes the lead back when the finger lifts, so
+ * the total displacement sent is exactly that of the finger.
+ * Not thread safe, meant to be used from the thread receiving touch events.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class MotionPredictor {
+    public static final long DEFAULT_HORIZON_MILLIS = 16;
+    public static final float MAX_LEAD = 48f;
+
+    static final float ALPHA = 0.5f;
+    static final float BETA = 0.15f;
+
+    private final long horizonMillis;
+    private final AxisFilter filterX = new AxisFilter();
+    private final AxisFilter filterY = new AxisFilter();
+    private boolean tracking = false;
+    private float leadX = 0;
+    private float leadY = 0;
+
+    /**
+     * Creates predictor leading by {@link #DEFAULT_HORIZON_MILLIS}.
+     *
+     * @since 1.8
+     */
+    public MotionPredictor() {
+        this(DEFAULT_HORIZON_MILLIS);
+    }
+
+    /**
+     * Creates predictor leading by given horizon.
+     *
+     * @param horizonMillis how far ahead to predict, in milliseconds
+     * @since 1.8
+     */
+    public MotionPredictor(long horizonMillis) {
+        this.horizonMillis = horizonMillis;
+    }
+
+    /**
+     * Feeds the samples of given path to the filter and changes its last
+     * sample so the cursor ends up at the predicted position.
+     *
+     * @param path path to predict from, changed in place
+     * @since 1.8
+     */
+    public void apply(MotionPath path) {
+        if (path.size() == 0) {
+            return;
+        }
+
+        for (int i = 0; i < path.size(); i++) {
+            int deltaMillis = path.getDeltaMillis(i);
+
+            if (!tracking) {
+                filterX.reset(path.getDistanceX(i), deltaMillis);
+                filterY.reset(path.getDistanceY(i), deltaMillis);
+                tracking = true;
+            } else {
+                filterX.update(path.getDistanceX(i), deltaMillis);
+                filterY.update(path.getDistanceY(i), deltaMillis);
+            }
+        }
+
+        float newLeadX = getLead(filterX);
+        float newLeadY = getLead(filterY);
+        int last = path.size() - 1;
+
+        path.setDistance(last,
+                path.getDistanceX(last) + newLeadX - leadX,
+                path.getDistanceY(last) + newLeadY - leadY);
+
+        leadX = newLeadX;
+        leadY = newLeadY;
+    }
+
+    /**
+     * Ends the motion, filling given path with the single sample taking
+     * back the current lead.
+     *
+     * @param path path to fill, empty if there is no lead
+     * @since 1.8
+     */
+    public void finish(MotionPath path) {
+        path.clear();
+
+        if (leadX != 0 || leadY != 0) {
+            path.add(-leadX, -leadY, 0);
+        }
+
+        tracking = false;
+        leadX = 0;
+        leadY = 0;
+    }
+
+    /**
+     * Get the current lead along the x axis.
+     *
+     * @return distance sent ahead of the finger
+     * @since 1.8
+     */
+    public float getLeadX() {
+        return leadX;
+    }
+
+    /**
+     * Get the current lead along the y axis.
+     *
+     * @return distance sent ahead of the finger
+     * @since 1.8
+     */
+    public float getLeadY() {
+        return leadY;
+    }
+
+    private float getLead(AxisFilter filter) {
+        // The filtered position may lag the finger, predict from where the finger is
+        float lead = Math.round(filter.velocity * horizonMillis);
+        return Math.max(-MAX_LEAD, Math.min(MAX_LEAD, lead));
+    }
+
+    /**
+     * Alpha-beta filter of one axis. Positions are relative to the finger
+     * position, so only the velocity and the filter's offset are kept.
+     */
+    private static class AxisFilter {
+        // Filtered position minus finger position
+        private float offset;
+        // Pixels per millisecond
+        private float velocity;
+
+        private void reset(float distance, int deltaMillis) {
+            offset = 0;
+            velocity = deltaMillis > 0 ? distance / deltaMillis : 0;
+        }
+
+        private void update(float distance, int deltaMillis) {
+            if (deltaMillis <= 0) {
+                // Folded samples carry no time, only the position moves
+                offset -= distance;
+                return;
+            }
+
+            float residual = distance - (velocity * deltaMillis + offset);
+            // Position predicted then corrected, relative to the new finger position
+            offset = (offset + velocity * deltaMillis - distance) + ALPHA * residual;
+            velocity += BETA * residual / deltaMillis;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.konradrej.rcpc.client.Input;
+
+import com.konradrej.rcpc.client.Network.MotionPath;
+
+/**
+ * Scales pointer motion by a gain depending on finger speed, so slow motion
+ * stays precise while a fast swipe crosses the whole desktop.
+ * <p>
+ * Speed is taken from the sample times of a {@link MotionPath}. Gains are
+ * looked up in a table computed once per curve, the hot path only
+ * interpolates between two entries. Motion is scaled to whole pixels, the
+ * sub-pixel remainder is carried to the next sample so nothing is lost.
+ * Not thread safe, meant to be used from the thread receiving touch events.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class PointerAcceleration {
+    /**
+     * Speed in pixels per millisecond at and above which the gain is constant.
+     */
+    public static final float MAX_SPEED = 8f;
+    static final int TABLE_SIZE = 257;
+
+    private static final float TABLE_STEP = MAX_SPEED / (TABLE_SIZE - 1);
+
+    private final float[] gains = new float[TABLE_SIZE];
+    private float lastSpeed = 0;
+    private float remainderX = 0;
+    private float remainderY = 0;
+
+    /**
+     * Creates acceleration for given curve.
+     *
+     * @param curve       curve giving gain for a speed
+     * @param sensitivity factor applied to every gain
+     * @since 1.8
+     */
+    public PointerAcceleration(Curve curve, float sensitivity) {
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            gains[i] = sensitivity * curve.getGain(i * TABLE_STEP);
+        }
+    }
+
+    /**
+     * Scales every sample of given path to whole pixels in place.
+     *
+     * @param path path to scale
+     * @since 1.8
+     */
+    public void apply(MotionPath path) {
+        for (int i = 0; i < path.size(); i++) {
+            float distanceX = path.getDistanceX(i);
+            float distanceY = path.getDistanceY(i);
+            int deltaMillis = path.getDeltaMillis(i);
+
+            // Samples merged without a time keep the speed of the previous one
+            if (deltaMillis > 0) {
+                lastSpeed = (float) Math.sqrt(distanceX * distanceX + distanceY * distanceY) / deltaMillis;
+            }
+
+            float gain = getGain(lastSpeed);
+            float scaledX = distanceX * gain + remainderX;
+            float scaledY = distanceY * gain + remainderY;
+
+            // Truncates toward zero so the remainder has the sign of the motion
+            float wholeX = (int) scaledX;
+            float wholeY = (int) scaledY;
+            remainderX = scaledX - wholeX;
+            remainderY = scaledY - wholeY;
+
+            path.setDistance(i, wholeX, wholeY);
+        }
+    }
+
+    /**
+     * Get gain for given speed from the table.
+     *
+     * @param speed speed in pixels per millisecond
+     * @return the gain
+     * @since 1.8
+     */
+    public float getGain(float speed) {
+        float position = speed / TABLE_STEP;
+        int index = (int) position;
+
+        if (index >= TABLE_SIZE - 1) {
+            return gains[TABLE_SIZE - 1];
+        }
+
+        float fraction = position - index;
+        return gains[index] + (gains[index + 1] - gains[index]) * fraction;
+    }
+
+    /**
+     * Acceleration curves, named by their preference value.
+     *
+     * @since 1.8
+     */
+    public enum Curve {
+        /**
+         * Constant gain, motion is only scaled by the sensitivity.
+         */
+        LINEAR("linear") {
+            @Override
+            float getGain(float speed) {
+                return 1f;
+            }
+        },
+
+        /**
+         * Gain growing with a power of the speed.
+         */
+        POWER("power") {
+            @Override
+            float getGain(float speed) {
+                return (float) Math.pow(1 + speed, 0.8);
+            }
+        },
+
+        /**
+         * S-shaped gain similar to Windows enhanced pointer precision, low
+         * for slow precise motion and levelling off for fast motion.
+         */
+        SIGMOID("sigmoid") {
+            @Override
+            float getGain(float speed) {
+                return (float) (0.6 + 2.9 / (1 + Math.exp(-(speed - 1.2) / 0.35)));
+            }
+        };
+
+        private final String preferenceValue;
+
+        Curve(String preferenceValue) {
+            this.preferenceValue = preferenceValue;
+        }
+
+        /**
+         * Get curve with given preference value.
+         *
+         * @param preferenceValue stored preference value
+         * @return the curve, {@link #LINEAR} if unknown
+         * @since 1.8
+         */
+        public static Curve fromPreferenceValue(String preferenceValue) {
+            for (Curve curve : values()) {
+                if (curve.preferenceValue.equals(preferenceValue)) {
+                    return curve;
+                }
+            }
+
+            return LINEAR;
+        }
+
+        /**
+         * Get gain at given speed, computed directly.
+         *
+         * @param speed speed in pixels per millisecond
+         * @return the gain
+         * @since 1.8
+         */
+        abstract float getGain(float speed);
+    }
+}
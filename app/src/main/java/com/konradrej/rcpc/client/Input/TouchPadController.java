@@ -0,0 +1,133 @@
+package com.konradrej.rcpc.client.Input;
+
+import com.konradrej.rcpc.client.Network.MessageSender;
+import com.konradrej.rcpc.client.Network.MotionPath;
+import com.konradrej.rcpc.client.View.TouchPadGestureDetector;
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+/**
+ * Turns touchpad gestures into messages for the server. Moves are
+ * accelerated and optionally predicted, scrolls are locked to their
+ * dominant axis and flings continue scrolling on a {@link FlingScroller}.
+ * Kept free of Android so recorded touch traces can be replayed through it.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class TouchPadController implements TouchPadGestureDetector.OnTouchPadGestureListener {
+    private final MessageSender messageSender;
+    private final PointerAcceleration pointerAcceleration;
+    private final MotionPredictor motionPredictor;
+    private final FlingScroller flingScroller;
+    private final MotionPath predictionCorrection = new MotionPath();
+
+    /**
+     * Creates controller sending to given sender.
+     *
+     * @param messageSender       sender to send to, nothing is sent if null
+     * @param pointerAcceleration acceleration applied to moves
+     * @param motionPredictor     predictor applied to moves, null to not predict
+     * @param flingScroller       scroller continuing flings, null to not fling
+     * @since 1.8
+     */
+    public TouchPadController(MessageSender messageSender, PointerAcceleration pointerAcceleration,
+                              MotionPredictor motionPredictor, FlingScroller flingScroller) {
+        this.messageSender = messageSender;
+        this.pointerAcceleration = pointerAcceleration;
+        this.motionPredictor = motionPredictor;
+        this.flingScroller = flingScroller;
+    }
+
+    @Override
+    public void onDown() {
+        if (flingScroller != null) {
+            flingScroller.cancel();
+        }
+    }
+
+    @Override
+    public void onMove(MotionPath path) {
+        pointerAcceleration.apply(path);
+
+        if (motionPredictor != null) {
+            motionPredictor.apply(path);
+        }
+
+        sendMotionPath(MessageType.ACTION_MOVE, path);
+    }
+
+    @Override
+    public void onMoveEnd() {
+        if (motionPredictor != null) {
+            motionPredictor.finish(predictionCorrection);
+            sendMotionPath(MessageType.ACTION_MOVE, predictionCorrection);
+        }
+    }
+
+    @Override
+    public void onScroll(float distanceX, float distanceY) {
+        if (messageSender == null) {
+            return;
+        }
+
+        if (Math.abs(distanceX) > Math.abs(distanceY)) {
+            messageSender.sendMotion(MessageType.ACTION_SCROLL, distanceX, 0f);
+        } else {
+            messageSender.sendMotion(MessageType.ACTION_SCROLL, 0f, distanceY);
+        }
+    }
+
+    @Override
+    public void onFling(float velocityX, float velocityY) {
+        if (flingScroller == null) {
+            return;
+        }
+
+        if (Math.abs(velocityX) > Math.abs(velocityY)) {
+            flingScroller.fling(velocityX, 0f);
+        } else {
+            flingScroller.fling(0f, velocityY);
+        }
+    }
+
+    @Override
+    public void onLeftClick() {
+        sendMessage(new Message(MessageType.ACTION_PRIMARY_CLICK));
+    }
+
+    @Override
+    public void onRightClick() {
+        sendMessage(new Message(MessageType.ACTION_SECONDARY_CLICK));
+    }
+
+    @Override
+    public void onClickDragStart() {
+        sendMessage(new Message(MessageType.ACTION_CLICK_AND_DRAG_START));
+    }
+
+    @Override
+    public void onClickDragMove(MotionPath path) {
+        pointerAcceleration.apply(path);
+        sendMotionPath(MessageType.ACTION_CLICK_AND_DRAG_MOVE, path);
+    }
+
+    @Override
+    public void onClickDragEnd() {
+        sendMessage(new Message(MessageType.ACTION_CLICK_AND_DRAG_END));
+    }
+
+    private void sendMessage(Message message) {
+        if (messageSender != null) {
+            messageSender.sendMessage(message);
+        }
+    }
+
+    private void sendMotionPath(MessageType messageType, MotionPath path) {
+        if (messageSender != null) {
+            messageSender.sendMotionPath(messageType, path);
+        }
+    }
+}
@@ -1,15 +1,22 @@
 package com.konradrej.rcpc.client;
 
+import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
+import androidx.preference.PreferenceManager;
 import androidx.transition.Transition;
 
+import com.google.android.material.slider.Slider;
 import com.google.android.material.transition.MaterialSharedAxis;
+import com.konradrej.rcpc.client.Network.VolumeChannel;
 import com.konradrej.rcpc.core.network.Message;
 import com.konradrej.rcpc.core.network.MessageType;
 import com.konradrej.rcpc.databinding.FragmentMediaKeysBinding;
@@ -19,7 +26,7 @@ import com.konradrej.rcpc.databinding.FragmentMediaKeysBinding;
  *
  * @author Konrad Rej
  * @author www.konradrej.com
- * @version 1.2
+ * @version 1.4
  * @since 1.0
  */
 public class MediaKeysFragment extends Fragment {
@@ -30,11 +37,14 @@ public class MediaKeysFragment extends Fragment {
             if (message.getMessageType() == MessageType.INFO_CURRENT_VOLUME_UPDATE) {
                 float volume = ((Float) message.getMessageData()) * 100;
 
-                binding.volumeSlider.setValue(volume);
+                if (binding != null && volumeChannel.shouldApplyRemoteVolume(volume)) {
+                    binding.volumeSlider.setValue(volume);
+                }
             }
         }
     };
     private ConnectionHandler connectionHandler;
+    private VolumeChannel volumeChannel;
 
     /**
      * Required empty constructor.
@@ -87,23 +97,28 @@ public class MediaKeysFragment extends Fragment {
         binding = FragmentMediaKeysBinding.inflate(inflater, container, false);
         View view = binding.getRoot();
 
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(requireContext());
+        volumeChannel = new VolumeChannel(connectionHandler, new MainThreadScheduler(),
+                sharedPreferences.getInt("volume_update_rate", 10));
+
         setupButtons();
         setupSlider();
 
-        connectionHandler.addNetworkMessageCallback(networkMessageListener);
+        connectionHandler.addNetworkMessageCallback(networkMessageListener, ConnectionHandler.Delivery.MAIN_THREAD);
         sendMessage(new Message(MessageType.ACTION_GET_CURRENT_VOLUME));
 
         return view;
     }
 
     /**
-     * Resets binding on view destroy.
+     * Resets binding and drops unsent volume changes on view destroy.
      *
      * @since 1.0
      */
     @Override
     public void onDestroyView() {
         connectionHandler.removeNetworkMessageCallback(networkMessageListener);
+        volumeChannel.cancel();
         super.onDestroyView();
         binding = null;
     }
@@ -122,7 +137,18 @@ public class MediaKeysFragment extends Fragment {
     private void setupSlider() {
         binding.volumeSlider.addOnChangeListener((slider, value, fromUser) -> {
             if (fromUser) {
-                sendMessage(new Message(MessageType.ACTION_SET_VOLUME, value));
+                volumeChannel.setVolume(value);
+            }
+        });
+        binding.volumeSlider.addOnSliderTouchListener(new Slider.OnSliderTouchListener() {
+            @Override
+            public void onStartTrackingTouch(@NonNull Slider slider) {
+                volumeChannel.onDragStart();
+            }
+
+            @Override
+            public void onStopTrackingTouch(@NonNull Slider slider) {
+                volumeChannel.onDragEnd();
             }
         });
     }
@@ -132,4 +158,23 @@ public class MediaKeysFragment extends Fragment {
             connectionHandler.sendMessage(message);
         }
     }
+
+    private static class MainThreadScheduler implements VolumeChannel.Scheduler {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            handler.postDelayed(task, delayMillis);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            handler.removeCallbacks(task);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.konradrej.rcpc.client.Network;
+
+import java.util.Random;
+
+/**
+ * Jittered exponential backoff for reconnect attempts. The delay of attempt n
+ * is a random value between half and all of min(maxDelay, baseDelay * 2^n),
+ * so clients that lost the connection at the same time do not retry in lockstep.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class Backoff {
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final int maxAttempts;
+    private final Random random;
+    private int attempt = 0;
+
+    /**
+     * Creates backoff with given limits.
+     *
+     * @param baseDelayMillis delay before jitter of the first attempt
+     * @param maxDelayMillis  upper bound of the delay before jitter
+     * @param maxAttempts     amount of attempts before giving up
+     * @param random          source of jitter
+     * @since 1.8
+     */
+    public Backoff(long baseDelayMillis, long maxDelayMillis, int maxAttempts, Random random) {
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxAttempts = maxAttempts;
+        this.random = random;
+    }
+
+    /**
+     * Get if there are attempts left.
+     *
+     * @return true if another attempt may be made, false if not
+     * @since 1.8
+     */
+    public boolean hasNext() {
+        return attempt < maxAttempts;
+    }
+
+    /**
+     * Get delay to wait before the next attempt and count the attempt.
+     *
+     * @return delay in milliseconds
+     * @since 1.8
+     */
+    public long nextDelayMillis() {
+        // Cap the shift so the delay cannot overflow
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt, 30));
+        attempt++;
+
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * (ceiling - half));
+    }
+
+    /**
+     * Get amount of attempts made since last reset.
+     *
+     * @return amount of attempts
+     * @since 1.8
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * Resets attempts, used after a successful reconnect.
+     *
+     * @since 1.8
+     */
+    public void reset() {
+        attempt = 0;
+    }
+}
@@ -0,0 +1,167 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Codec writing high frequency input messages as fixed size binary frames.
+ * <p>
+ * Every message starts with a frame type byte. Move, scroll and drag move
+ * messages are followed by distanceX and distanceY as two floats, nine bytes
+ * in total. All other messages use {@link #FRAME_OBJECT} followed by the
+ * serialized {@link Message}.
+ * <p>
+ * When paths are enabled, motion made of more than one sample is written as
+ * {@link #FRAME_PATH} followed by the motion frame type, the sample count as
+ * an unsigned byte and per sample two floats and the milliseconds since the
+ * previous sample as an unsigned short. Readers put the decoded
+ * {@link MotionPath} under {@link MotionPath#MOTION_PATH_KEY} next to the
+ * summed distances.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class BinaryMessageCodec implements MessageCodec {
+    public static final String NAME = "binary-v1";
+
+    static final byte FRAME_OBJECT = 0;
+    static final byte FRAME_MOVE = 1;
+    static final byte FRAME_SCROLL = 2;
+    static final byte FRAME_CLICK_AND_DRAG_MOVE = 3;
+    static final byte FRAME_PATH = 4;
+
+    private final boolean writePaths;
+
+    /**
+     * Creates codec writing motion as summed distances only.
+     *
+     * @since 1.8
+     */
+    public BinaryMessageCodec() {
+        this(false);
+    }
+
+    /**
+     * Creates codec.
+     *
+     * @param writePaths true to write motion paths, only if the server accepted them
+     * @since 1.8
+     */
+    public BinaryMessageCodec(boolean writePaths) {
+        this.writePaths = writePaths;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void writeMessage(Message message, ObjectOutputStream out) throws IOException {
+        byte frameType = getFrameType(message.getMessageType());
+        Object distanceX = message.getAdditionalDataFromKey(MotionSample.DISTANCE_X_KEY);
+        Object distanceY = message.getAdditionalDataFromKey(MotionSample.DISTANCE_Y_KEY);
+
+        if (frameType != FRAME_OBJECT && distanceX instanceof Number && distanceY instanceof Number) {
+            out.writeByte(frameType);
+            out.writeFloat(((Number) distanceX).floatValue());
+            out.writeFloat(((Number) distanceY).floatValue());
+        } else {
+            out.writeByte(FRAME_OBJECT);
+            out.writeObject(message);
+        }
+    }
+
+    @Override
+    public void writeMotion(MotionSample motionSample, ObjectOutputStream out) throws IOException {
+        MotionPath path = motionSample.getPath();
+
+        if (writePaths && path.size() > 1) {
+            out.writeByte(FRAME_PATH);
+            out.writeByte(getFrameType(motionSample.getMessageType()));
+            out.writeByte(path.size());
+
+            for (int i = 0; i < path.size(); i++) {
+                out.writeFloat(path.getDistanceX(i));
+                out.writeFloat(path.getDistanceY(i));
+                out.writeShort(path.getDeltaMillis(i));
+            }
+            return;
+        }
+
+        out.writeByte(getFrameType(motionSample.getMessageType()));
+        out.writeFloat(motionSample.getDistanceX());
+        out.writeFloat(motionSample.getDistanceY());
+    }
+
+    @Override
+    public Message readMessage(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        byte frameType = in.readByte();
+
+        if (frameType == FRAME_OBJECT) {
+            return (Message) in.readObject();
+        }
+
+        if (frameType == FRAME_PATH) {
+            return readPath(in);
+        }
+
+        MessageType messageType = getMessageType(frameType);
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put(MotionSample.DISTANCE_X_KEY, in.readFloat());
+        additionalData.put(MotionSample.DISTANCE_Y_KEY, in.readFloat());
+
+        return new Message(messageType, null, additionalData);
+    }
+
+    private static Message readPath(ObjectInputStream in) throws IOException {
+        MessageType messageType = getMessageType(in.readByte());
+        int count = in.readUnsignedByte();
+        MotionPath path = new MotionPath();
+
+        for (int i = 0; i < count; i++) {
+            path.add(in.readFloat(), in.readFloat(), in.readUnsignedShort());
+        }
+
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put(MotionSample.DISTANCE_X_KEY, path.getTotalX());
+        additionalData.put(MotionSample.DISTANCE_Y_KEY, path.getTotalY());
+        additionalData.put(MotionPath.MOTION_PATH_KEY, path);
+
+        return new Message(messageType, null, additionalData);
+    }
+
+    static byte getFrameType(MessageType messageType) {
+        switch (messageType) {
+            case ACTION_MOVE:
+                return FRAME_MOVE;
+            case ACTION_SCROLL:
+                return FRAME_SCROLL;
+            case ACTION_CLICK_AND_DRAG_MOVE:
+                return FRAME_CLICK_AND_DRAG_MOVE;
+            default:
+                return FRAME_OBJECT;
+        }
+    }
+
+    static MessageType getMessageType(byte frameType) throws IOException {
+        switch (frameType) {
+            case FRAME_MOVE:
+                return MessageType.ACTION_MOVE;
+            case FRAME_SCROLL:
+                return MessageType.ACTION_SCROLL;
+            case FRAME_CLICK_AND_DRAG_MOVE:
+                return MessageType.ACTION_CLICK_AND_DRAG_MOVE;
+            default:
+                throw new IOException("Unknown frame type: " + frameType);
+        }
+    }
+}
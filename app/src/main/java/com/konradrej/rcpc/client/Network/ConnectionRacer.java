@@ -0,0 +1,281 @@
+package com.konradrej.rcpc.client.Network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connects to the first responsive of several endpoints of the same server,
+ * in the manner of happy eyeballs (RFC 8305). Attempts start one attempt
+ * delay apart, or right away when every running attempt has failed, with
+ * address families alternating.
+ * <p>
+ * Connecting has two phases. The connect phase, TCP and TLS, runs
+ * concurrently for every started attempt. The accept phase, asking the
+ * server to accept the client, runs for one connection at a time in the
+ * order they connected, so the user is never asked twice for the same
+ * server. The first connection through the accept phase wins and every
+ * other attempt is aborted.
+ *
+ * @param <T> type of the connections
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class ConnectionRacer<T extends Closeable> {
+    public static final long DEFAULT_ATTEMPT_DELAY_MILLIS = 250;
+
+    private final Dialer<T> dialer;
+    private final long attemptDelayNanos;
+    private final ReentrantLock acceptLock = new ReentrantLock(true);
+    private final List<Abort> aborts = new ArrayList<>();
+    private T winner = null;
+    private Abort winnerAbort = null;
+    private IOException failure = null;
+    private int running = 0;
+    private boolean decided = false;
+    private boolean cancelled = false;
+
+    /**
+     * Creates racer starting attempts given delay apart.
+     *
+     * @param dialer             dialer of single endpoints
+     * @param attemptDelayMillis delay between the start of attempts
+     * @since 1.8
+     */
+    public ConnectionRacer(Dialer<T> dialer, long attemptDelayMillis) {
+        this.dialer = dialer;
+        this.attemptDelayNanos = TimeUnit.MILLISECONDS.toNanos(attemptDelayMillis);
+    }
+
+    /**
+     * Connects to the first responsive of given endpoints, blocking until
+     * one is through the accept phase or all have failed. A racer races once.
+     *
+     * @param endpoints endpoints of the server, most preferred first
+     * @return the winning connection
+     * @throws IOException if every attempt failed, the first failure with the others suppressed,
+     *                     or {@link InterruptedIOException} if cancelled or interrupted
+     * @since 1.8
+     */
+    public T race(List<InetSocketAddress> endpoints) throws IOException {
+        List<InetSocketAddress> ordered = interleaveFamilies(endpoints);
+
+        if (ordered.isEmpty()) {
+            throw new IOException("No endpoints to connect to");
+        }
+
+        int next = 0;
+        long nextStartNanos = System.nanoTime();
+
+        synchronized (this) {
+            try {
+                while (!decided) {
+                    long now = System.nanoTime();
+
+                    if (next < ordered.size() && (now - nextStartNanos >= 0 || running == 0)) {
+                        start(ordered.get(next++));
+                        nextStartNanos = now + attemptDelayNanos;
+                    } else if (next == ordered.size() && running == 0) {
+                        break;
+                    } else if (next < ordered.size()) {
+                        wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextStartNanos - now)));
+                    } else {
+                        wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+            }
+
+            if (cancelled) {
+                throw new InterruptedIOException("Connecting cancelled");
+            }
+
+            if (winner == null) {
+                throw failure;
+            }
+
+            abortLosers();
+            return winner;
+        }
+    }
+
+    /**
+     * Aborts every attempt, {@link #race(List)} then throws. Does nothing once
+     * a winner is returned.
+     *
+     * @since 1.8
+     */
+    public synchronized void cancel() {
+        if (winner != null) {
+            return;
+        }
+
+        cancelled = true;
+        decided = true;
+        abortLosers();
+        notifyAll();
+    }
+
+    private void start(InetSocketAddress endpoint) {
+        Abort abort = new Abort();
+        aborts.add(abort);
+        running++;
+
+        new Thread(() -> attempt(endpoint, abort), "Connect " + endpoint).start();
+    }
+
+    private void attempt(InetSocketAddress endpoint, Abort abort) {
+        try {
+            T connection = dialer.connect(endpoint, abort);
+            // Aborting now closes the whole connection
+            abort.setCloseable(connection);
+
+            acceptLock.lock();
+            try {
+                if (isDecided()) {
+                    abort.abort();
+                    return;
+                }
+
+                dialer.accept(connection);
+
+                synchronized (this) {
+                    if (!decided) {
+                        decided = true;
+                        winner = connection;
+                        winnerAbort = abort;
+                        return;
+                    }
+                }
+
+                abort.abort();
+            } finally {
+                acceptLock.unlock();
+            }
+        } catch (IOException e) {
+            abort.abort();
+
+            synchronized (this) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                running--;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized boolean isDecided() {
+        return decided;
+    }
+
+    private void abortLosers() {
+        for (Abort abort : aborts) {
+            if (abort != winnerAbort) {
+                abort.abort();
+            }
+        }
+    }
+
+    // Alternates address families starting with the most preferred endpoint's, dropping duplicates
+    static List<InetSocketAddress> interleaveFamilies(List<InetSocketAddress> endpoints) {
+        List<InetSocketAddress> first = new ArrayList<>();
+        List<InetSocketAddress> second = new ArrayList<>();
+        Boolean firstIsIpv6 = null;
+
+        for (InetSocketAddress endpoint : new LinkedHashSet<>(endpoints)) {
+            boolean ipv6 = endpoint.getAddress() instanceof Inet6Address;
+
+            if (firstIsIpv6 == null) {
+                firstIsIpv6 = ipv6;
+            }
+
+            (ipv6 == firstIsIpv6 ? first : second).add(endpoint);
+        }
+
+        List<InetSocketAddress> ordered = new ArrayList<>(first.size() + second.size());
+
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if (i < first.size()) {
+                ordered.add(first.get(i));
+            }
+
+            if (i < second.size()) {
+                ordered.add(second.get(i));
+            }
+        }
+
+        return ordered;
+    }
+
+    /**
+     * Connects single endpoints, called on a thread per attempt.
+     *
+     * @param <T> type of the connections
+     * @since 1.8
+     */
+    public interface Dialer<T> {
+        T connect(InetSocketAddress endpoint, Abort abort) throws IOException;
+
+        void accept(T connection) throws IOException;
+    }
+
+    /**
+     * Aborts a single attempt by closing what it registered.
+     *
+     * @since 1.8
+     */
+    public static class Abort {
+        private Closeable closeable = null;
+        private boolean aborted = false;
+
+        /**
+         * Registers what to close to abort the attempt, a socket before it
+         * connects. Closes it right away if already aborted.
+         *
+         * @param closeable what to close on abort
+         * @throws InterruptedIOException if already aborted
+         * @since 1.8
+         */
+        public synchronized void setCloseable(Closeable closeable) throws InterruptedIOException {
+            this.closeable = closeable;
+
+            if (aborted) {
+                closeQuietly();
+                throw new InterruptedIOException("Connection attempt aborted");
+            }
+        }
+
+        synchronized void abort() {
+            aborted = true;
+            closeQuietly();
+        }
+
+        private void closeQuietly() {
+            if (closeable == null) {
+                return;
+            }
+
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.konradrej.rcpc.client.Network;
+
+import android.util.Log;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+/**
+ * Sends pointer motion over an encrypted UDP side channel so a stalled TLS
+ * stream does not hold it back. Only move, scroll and drag move messages are
+ * accepted, everything else stays on the TLS connection.
+ * <p>
+ * The client sends a fresh key under {@link #DATAGRAM_KEY_KEY} in its UUID
+ * message, servers supporting the channel answer with their UDP port under
+ * {@link #DATAGRAM_PORT_KEY} when accepting the connection.
+ * <p>
+ * Datagrams carry running totals, so only the last one of a gesture has to
+ * arrive. Offered motion is added to the totals right away and the sending
+ * thread sends the newest totals of every frame type that changed, so motion
+ * piling up while sending is merged and never dropped. Once motion goes idle
+ * the last datagram of every frame type is sent again after
+ * {@link #RETRANSMIT_DELAYS_MILLIS}, so losing it does not lose the end of
+ * the gesture. As a {@link MotionBarrier} it lets the writer of the TLS
+ * connection hold control messages until the motion before them is sent.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class DatagramMotionSender implements Runnable, MotionBarrier {
+    public static final String DATAGRAM_KEY_KEY = "datagramKey";
+    public static final String DATAGRAM_PORT_KEY = "datagramPort";
+
+    private static final String TAG = "DatagramMotionSender";
+    private static final int FRAME_TYPES = 4;
+    // Since the last datagram with new motion, the first copy goes out right away
+    static final long[] RETRANSMIT_DELAYS_MILLIS = {0, 20, 50};
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition motionOffered = lock.newCondition();
+    private final Condition motionSent = lock.newCondition();
+    // Guarded by lock
+    private final double[] totalsX = new double[FRAME_TYPES];
+    private final double[] totalsY = new double[FRAME_TYPES];
+    private final boolean[] changed = new boolean[FRAME_TYPES];
+    private long offeredCount = 0;
+    private long sentCount = 0;
+    // Only used by the sending thread
+    private final double[] sendX = new double[FRAME_TYPES];
+    private final double[] sendY = new double[FRAME_TYPES];
+    private final boolean[] sending = new boolean[FRAME_TYPES];
+    private final byte[][] lastDatagrams = new byte[FRAME_TYPES][];
+    private final boolean[] retransmitPending = new boolean[FRAME_TYPES];
+    private final DatagramSocket socket;
+    private final InetAddress address;
+    private final int port;
+    private final SecretKey key;
+    private long sequence = 0;
+    private long lastSentNanos = 0;
+    private int retransmits = RETRANSMIT_DELAYS_MILLIS.length;
+    private volatile boolean stopped = false;
+
+    /**
+     * Creates sender for given receiver.
+     *
+     * @param address receiver address
+     * @param port    receiver port
+     * @param key     key shared with the receiver over TLS
+     * @throws SocketException if the datagram socket could not be opened
+     * @since 1.8
+     */
+    public DatagramMotionSender(InetAddress address, int port, SecretKey key) throws SocketException {
+        this.socket = new DatagramSocket();
+        this.address = address;
+        this.port = port;
+        this.key = key;
+    }
+
+    /**
+     * Generates a new key for the channel.
+     *
+     * @return the generated key
+     * @throws NoSuchAlgorithmException if AES is not available
+     * @since 1.8
+     */
+    public static SecretKey generateKey() throws NoSuchAlgorithmException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+
+        return keyGenerator.generateKey();
+    }
+
+    /**
+     * Adds message to the totals to be sent if it is motion.
+     *
+     * @param message message to send
+     * @return true if message was accepted, false if it has to be sent over TLS
+     * @since 1.8
+     */
+    public boolean offer(Message message) {
+        if (!PriorityMessageQueue.isMotion(message.getMessageType()) ||
+                !PriorityMessageQueue.hasDistance(message)) {
+            return false;
+        }
+
+        return offerMotion(message.getMessageType(),
+                ((Number) message.getAdditionalDataFromKey(MotionSample.DISTANCE_X_KEY)).floatValue(),
+                ((Number) message.getAdditionalDataFromKey(MotionSample.DISTANCE_Y_KEY)).floatValue());
+    }
+
+    /**
+     * Adds motion to the totals to be sent without allocating.
+     *
+     * @param messageType move, scroll or drag move
+     * @param distanceX   x distance
+     * @param distanceY   y distance
+     * @return true if motion was accepted, false if it has to be sent over TLS
+     * @since 1.8
+     */
+    public boolean offerMotion(MessageType messageType, float distanceX, float distanceY) {
+        if (stopped) {
+            return false;
+        }
+
+        byte frameType = BinaryMessageCodec.getFrameType(messageType);
+
+        lock.lock();
+        try {
+            totalsX[frameType] += distanceX;
+            totalsY[frameType] += distanceY;
+            changed[frameType] = true;
+            offeredCount++;
+
+            motionOffered.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        return true;
+    }
+
+    /**
+     * Waits until all motion offered so far has been sent. Called by the
+     * writer of the TLS connection, never by the thread offering motion.
+     *
+     * @param timeoutNanos maximum time to wait in nanoseconds
+     * @return true if sent, false if the time passed or the sender stopped first
+     * @throws InterruptedException if interrupted while waiting
+     * @since 1.8
+     */
+    @Override
+    public boolean awaitMotionSent(long timeoutNanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long target = offeredCount;
+
+            while (sentCount < target) {
+                if (stopped || timeoutNanos <= 0) {
+                    return false;
+                }
+
+                timeoutNanos = motionSent.awaitNanos(timeoutNanos);
+            }
+
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops sender once the motion offered so far is sent and closes its socket.
+     *
+     * @since 1.8
+     */
+    public void stop() {
+        stopped = true;
+
+        lock.lock();
+        try {
+            motionOffered.signal();
+            motionSent.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends offered motion until stopped.
+     *
+     * @since 1.8
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                long sendingCount = takeChanged();
+
+                if (sendingCount < 0) {
+                    break;
+                }
+
+                if (sendingCount == 0) {
+                    retransmits++;
+                    retransmitLast();
+                    continue;
+                }
+
+                for (byte frameType = 0; frameType < FRAME_TYPES; frameType++) {
+                    if (sending[frameType]) {
+                        byte[] data = new MotionDatagram(++sequence, frameType, sendX[frameType], sendY[frameType]).encode(key);
+                        socket.send(new DatagramPacket(data, data.length, address, port));
+
+                        lastDatagrams[frameType] = data;
+                        retransmitPending[frameType] = true;
+                    }
+                }
+
+                lastSentNanos = System.nanoTime();
+                retransmits = 0;
+
+                lock.lock();
+                try {
+                    sentCount = sendingCount;
+                    motionSent.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | GeneralSecurityException e) {
+            Log.e(TAG, "Datagram channel closed. Error: " + e.getLocalizedMessage());
+        } finally {
+            stopped = true;
+            socket.close();
+
+            lock.lock();
+            try {
+                motionSent.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Copies changed totals to be sent, waiting until there are some or a retransmit is due
+    // Returns the offered count they cover, 0 if a retransmit is due, -1 once stopped
+    private long takeChanged() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!hasChanged()) {
+                if (stopped) {
+                    return -1;
+                }
+
+                if (retransmits < RETRANSMIT_DELAYS_MILLIS.length) {
+                    long due = lastSentNanos + TimeUnit.MILLISECONDS.toNanos(RETRANSMIT_DELAYS_MILLIS[retransmits]);
+                    long remaining = due - System.nanoTime();
+
+                    if (remaining <= 0) {
+                        return 0;
+                    }
+
+                    motionOffered.awaitNanos(remaining);
+                } else {
+                    motionOffered.await();
+                }
+            }
+
+            for (int frameType = 0; frameType < FRAME_TYPES; frameType++) {
+                sending[frameType] = changed[frameType];
+                sendX[frameType] = totalsX[frameType];
+                sendY[frameType] = totalsY[frameType];
+                changed[frameType] = false;
+            }
+
+            return offeredCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean hasChanged() {
+        for (boolean frameChanged : changed) {
+            if (frameChanged) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Same bytes and sequence, receivers drop the copy if the original arrived
+    private void retransmitLast() throws IOException {
+        boolean last = retransmits == RETRANSMIT_DELAYS_MILLIS.length;
+
+        for (int frameType = 0; frameType < FRAME_TYPES; frameType++) {
+            if (retransmitPending[frameType]) {
+                byte[] data = lastDatagrams[frameType];
+                socket.send(new DatagramPacket(data, data.length, address, port));
+                retransmitPending[frameType] = !last;
+            }
+        }
+    }
+}
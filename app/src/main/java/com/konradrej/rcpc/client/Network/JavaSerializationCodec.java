@@ -0,0 +1,41 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Codec writing every message as a serialized {@link Message} object,
+ * as understood by RCPC-Core 1.7 servers.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class JavaSerializationCodec implements MessageCodec {
+    public static final String NAME = "java-serialization";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void writeMessage(Message message, ObjectOutputStream out) throws IOException {
+        out.writeObject(message);
+    }
+
+    @Override
+    public void writeMotion(MotionSample motionSample, ObjectOutputStream out) throws IOException {
+        // RCPC-Core 1.7 servers only read objects
+        out.writeObject(motionSample.toMessage());
+    }
+
+    @Override
+    public Message readMessage(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        return (Message) in.readObject();
+    }
+}
@@ -0,0 +1,131 @@
+package com.konradrej.rcpc.client.Network;
+
+/**
+ * Fixed bucket latency histogram in microseconds that does not allocate
+ * when recording or querying.
+ * <p>
+ * Values below 32 microseconds get a bucket each, larger values are split into 16
+ * buckets per power of two, which bounds the error of reported percentiles
+ * to about 6%. Values above roughly 16 seconds go into the last bucket.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class LatencyHistogram {
+    private static final int LINEAR_BUCKETS = 32;
+    private static final int SUB_BUCKETS = 16;
+    private static final int MAX_EXPONENT = 24;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - 5) * SUB_BUCKETS + 1;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count = 0;
+    private long max = 0;
+
+    /**
+     * Records a latency.
+     *
+     * @param micros latency in microseconds, negative values count as zero
+     * @since 1.8
+     */
+    public synchronized void record(long micros) {
+        long value = Math.max(0, micros);
+
+        counts[getBucket(value)]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Get latency at given percentile, reported as the upper bound of its bucket.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return latency in microseconds, 0 if nothing was recorded
+     * @since 1.8
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+
+            if (seen >= target) {
+                return Math.min(max, getBucketUpperBound(bucket));
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * Get highest recorded latency.
+     *
+     * @return latency in microseconds
+     * @since 1.8
+     */
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * Get amount of recorded latencies.
+     *
+     * @return amount of recorded latencies
+     * @since 1.8
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Removes all recorded latencies.
+     *
+     * @since 1.8
+     */
+    public synchronized void reset() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts[bucket] = 0;
+        }
+
+        count = 0;
+        max = 0;
+    }
+
+    static int getBucket(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        // Top five bits of the value, the leading one selects the power of two
+        int subBucket = (int) (value >>> (exponent - 4)) & (SUB_BUCKETS - 1);
+
+        return LINEAR_BUCKETS + (exponent - 5) * SUB_BUCKETS + subBucket;
+    }
+
+    static long getBucketUpperBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+
+        if (bucket == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 5;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - 4);
+
+        return ((SUB_BUCKETS + subBucket) * width) + width - 1;
+    }
+}
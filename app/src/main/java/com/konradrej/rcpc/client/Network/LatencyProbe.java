@@ -0,0 +1,124 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Round trip time probe of a connection, one probe outstanding at a time.
+ * <p>
+ * The client sends {@link #LATENCY_PROBE_KEY} in its UUID message, servers
+ * that answer probes reply with true under the same key when accepting the
+ * connection. A probe is a UUID message carrying its id under the key, which
+ * the server sends straight back. Replies are matched by id, so a late reply
+ * to a timed out probe is not taken for the current one. Time is measured
+ * from when the probe is written, not enqueued, so messages waiting ahead of
+ * it in the send queue do not count.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class LatencyProbe {
+    public static final String LATENCY_PROBE_KEY = "latencyProbe";
+
+    private final long timeoutNanos;
+    private long lastId = 0;
+    private long outstandingId = 0;
+    private long enqueuedNanos = 0;
+    private long writtenNanos = 0;
+    private boolean written = false;
+
+    /**
+     * Creates probe giving up on replies after given time.
+     *
+     * @param timeoutNanos time after which a new probe replaces an unanswered one
+     * @since 1.8
+     */
+    public LatencyProbe(long timeoutNanos) {
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * Get if the server answers probes.
+     *
+     * @param acceptMessage message the server accepted the connection with
+     * @return true if probes are answered, false if not
+     * @since 1.8
+     */
+    public static boolean isSupported(Message acceptMessage) {
+        return Boolean.TRUE.equals(acceptMessage.getAdditionalDataFromKey(LATENCY_PROBE_KEY));
+    }
+
+    /**
+     * Get if given message is a probe or a reply to one.
+     *
+     * @param message message to check
+     * @return true if a probe, false if not
+     * @since 1.8
+     */
+    public static boolean isProbe(Message message) {
+        return message.getMessageType() == MessageType.INFO_UUID &&
+                message.getAdditionalDataFromKey(LATENCY_PROBE_KEY) instanceof Long;
+    }
+
+    /**
+     * Creates the next probe to send, unless one is still awaiting its reply.
+     *
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return probe to send, null if the previous one has not been answered or timed out
+     * @since 1.8
+     */
+    public synchronized Message next(long nowNanos) {
+        if (outstandingId != 0 && nowNanos - enqueuedNanos < timeoutNanos) {
+            return null;
+        }
+
+        outstandingId = ++lastId;
+        enqueuedNanos = nowNanos;
+        written = false;
+
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put(LATENCY_PROBE_KEY, outstandingId);
+
+        return new Message(MessageType.INFO_UUID, null, additionalData);
+    }
+
+    /**
+     * Starts timing given probe, called once it is written to the connection.
+     *
+     * @param message  message written
+     * @param nowNanos current {@link System#nanoTime()}
+     * @since 1.8
+     */
+    public synchronized void onWritten(Message message, long nowNanos) {
+        if (isProbe(message) && getId(message) == outstandingId) {
+            writtenNanos = nowNanos;
+            written = true;
+        }
+    }
+
+    /**
+     * Stops timing the probe given reply answers.
+     *
+     * @param reply    message received
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return round trip time in nanoseconds, -1 if not a reply to the outstanding probe
+     * @since 1.8
+     */
+    public synchronized long onReply(Message reply, long nowNanos) {
+        if (!isProbe(reply) || getId(reply) != outstandingId || !written) {
+            return -1;
+        }
+
+        outstandingId = 0;
+        return nowNanos - writtenNanos;
+    }
+
+    private static long getId(Message message) {
+        return (Long) message.getAdditionalDataFromKey(LATENCY_PROBE_KEY);
+    }
+}
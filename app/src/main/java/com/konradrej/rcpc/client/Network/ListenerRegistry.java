@@ -0,0 +1,125 @@
+package com.konradrej.rcpc.client.Network;
+
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Copy-on-write set of listeners, each delivered to on its own executor.
+ * <p>
+ * Dispatching only hands one task per listener to its executor, so the
+ * dispatching thread is never held up by a slow listener. Listeners may be
+ * added and removed from any thread, also while dispatching. A listener
+ * removed before a queued delivery runs does not receive it, which lets UI
+ * listeners release their views right after removing themselves.
+ *
+ * @param <L> listener type
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class ListenerRegistry<L> {
+    private static final String TAG = "ListenerRegistry";
+
+    private final CopyOnWriteArrayList<Registration<L>> registrations = new CopyOnWriteArrayList<>();
+
+    /**
+     * Adds listener delivered to on given executor. Adding a listener that
+     * is already added does nothing.
+     *
+     * @param listener listener to add
+     * @param executor executor to deliver on, should run tasks in order
+     * @since 1.8
+     */
+    public synchronized void add(L listener, Executor executor) {
+        for (Registration<L> registration : registrations) {
+            if (registration.listener == listener) {
+                return;
+            }
+        }
+
+        registrations.add(new Registration<>(listener, executor));
+    }
+
+    /**
+     * Removes listener, pending deliveries to it are dropped.
+     *
+     * @param listener listener to remove
+     * @since 1.8
+     */
+    public synchronized void remove(L listener) {
+        for (Registration<L> registration : registrations) {
+            if (registration.listener == listener) {
+                registration.registered = false;
+                registrations.remove(registration);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get if no listener is added.
+     *
+     * @return true if empty, false if not
+     * @since 1.8
+     */
+    public boolean isEmpty() {
+        return registrations.isEmpty();
+    }
+
+    /**
+     * Get amount of added listeners.
+     *
+     * @return amount of listeners
+     * @since 1.8
+     */
+    public int size() {
+        return registrations.size();
+    }
+
+    /**
+     * Hands notification of every added listener to its executor.
+     *
+     * @param notification notification to deliver
+     * @since 1.8
+     */
+    public void dispatch(Notification<L> notification) {
+        // Iterates a snapshot, concurrent changes apply to the next dispatch
+        for (Registration<L> registration : registrations) {
+            registration.executor.execute(() -> {
+                if (!registration.registered) {
+                    return;
+                }
+
+                try {
+                    notification.deliver(registration.listener);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Listener failed. Error: " + e.getLocalizedMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Delivers a notification to one listener.
+     *
+     * @param <L> listener type
+     * @since 1.8
+     */
+    public interface Notification<L> {
+        void deliver(L listener);
+    }
+
+    private static class Registration<L> {
+        private final L listener;
+        private final Executor executor;
+        private volatile boolean registered = true;
+
+        private Registration(L listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Wire encoding of messages on an established connection.
+ * <p>
+ * The client lists the codecs it supports under {@link #SUPPORTED_CODECS_KEY}
+ * in its UUID message and switches codec only if the server names one under
+ * {@link #CODEC_KEY} when accepting the connection. Servers that do not know
+ * about codecs get {@link JavaSerializationCodec}.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public interface MessageCodec {
+    String SUPPORTED_CODECS_KEY = "supportedCodecs";
+    String CODEC_KEY = "codec";
+
+    /**
+     * Get name used when negotiating codec.
+     *
+     * @return codec name
+     * @since 1.8
+     */
+    String getName();
+
+    /**
+     * Writes message to given stream.
+     *
+     * @param message message to write
+     * @param out     stream to write to
+     * @throws IOException if writing fails
+     * @since 1.8
+     */
+    void writeMessage(Message message, ObjectOutputStream out) throws IOException;
+
+    /**
+     * Writes motion to given stream, read back as a message by
+     * {@link #readMessage(ObjectInputStream)}.
+     *
+     * @param motionSample motion to write
+     * @param out          stream to write to
+     * @throws IOException if writing fails
+     * @since 1.8
+     */
+    void writeMotion(MotionSample motionSample, ObjectOutputStream out) throws IOException;
+
+    /**
+     * Reads next message from given stream.
+     *
+     * @param in stream to read from
+     * @return the read message
+     * @throws IOException            if reading fails
+     * @throws ClassNotFoundException if an unknown class was received
+     * @since 1.8
+     */
+    Message readMessage(ObjectInputStream in) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,22 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+/**
+ * Destination of the messages caused by input, implemented by
+ * ConnectionHandler. Lets the input handling run without a connection,
+ * such as when replaying recorded touch traces.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public interface MessageSender {
+    void sendMessage(Message message);
+
+    void sendMotion(MessageType messageType, float distanceX, float distanceY);
+
+    void sendMotionPath(MessageType messageType, MotionPath path);
+}
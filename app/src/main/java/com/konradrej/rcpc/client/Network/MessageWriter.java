@@ -0,0 +1,324 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writer stage of a connection. Messages can be enqueued from any thread
+ * and are written in order by the thread running {@link #writeUntilStopped(ObjectOutputStream)},
+ * which is parked while the queue is empty. Control messages are written
+ * ahead of motion, and motion that piles up while the writer is stalled is
+ * merged in a bounded lane, see {@link PriorityMessageQueue}.
+ * <p>
+ * The queue outlives a single connection, messages enqueued while
+ * reconnecting are written once {@link #writeUntilStopped(ObjectOutputStream)}
+ * is called with the new stream.
+ * <p>
+ * An {@link ObjectOutputStream} keeps a reference to every object written so
+ * it can send back references, which over a long session retains every
+ * message sent. The stream is therefore reset every {@link #RESET_INTERVAL}
+ * messages, which readers handle transparently.
+ * <p>
+ * Round trip probes of a {@link LatencyProbe} skip the queue and are
+ * flushed as soon as they are written, so they time the connection and not
+ * the messages waiting to be sent.
+ * <p>
+ * With motion sent over another channel, a {@link MotionBarrier} holds each
+ * control message until the motion offered before it is written there, so a
+ * click does not land ahead of the pointer. The wait is on the writing
+ * thread and bounded by {@link #MOTION_BARRIER_TIMEOUT_NANOS}.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class MessageWriter {
+    // Compared by identity, never written to the stream
+    private static final Message STOP_MESSAGE = new Message(MessageType.INFO_USER_CLOSED_CONNECTION);
+    private static final Message INTERRUPT_MESSAGE = new Message(MessageType.INFO_USER_CLOSED_CONNECTION);
+    // Large enough that class descriptors resent after a reset cost little per message
+    static final int RESET_INTERVAL = 256;
+    // Bounds how long a control message waits for a stalled motion channel
+    static final long MOTION_BARRIER_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final PriorityMessageQueue messageQueue = new PriorityMessageQueue();
+    private final LatencyHistogram sendDelayHistogram = new LatencyHistogram();
+    private volatile MessageCodec messageCodec = new JavaSerializationCodec();
+    private volatile LatencyProbe latencyProbe = null;
+    private volatile MotionBarrier motionBarrier = null;
+    private volatile boolean stopped = false;
+    private ObjectOutputStream currentOut = null;
+    private ObjectOutputStream interruptedOut = null;
+    private final MotionSample motionSample = new MotionSample();
+    private int messagesSinceReset = 0;
+
+    /**
+     * Sets codec used for messages written from now on.
+     *
+     * @param messageCodec the codec to use
+     * @since 1.8
+     */
+    public void setMessageCodec(MessageCodec messageCodec) {
+        this.messageCodec = messageCodec;
+    }
+
+    /**
+     * Sets probe told when its probes are written.
+     *
+     * @param latencyProbe probe to time, null for none
+     * @since 1.8
+     */
+    public void setLatencyProbe(LatencyProbe latencyProbe) {
+        this.latencyProbe = latencyProbe;
+    }
+
+    /**
+     * Sets barrier control messages wait for before being written.
+     *
+     * @param motionBarrier channel the motion is sent over, null for none
+     * @since 1.8
+     */
+    public void setMotionBarrier(MotionBarrier motionBarrier) {
+        this.motionBarrier = motionBarrier;
+    }
+
+    /**
+     * Adds round trip probe ahead of all queued messages. Probes enqueued
+     * after {@link #stop()} are ignored.
+     *
+     * @param probe probe created by the {@link LatencyProbe} set on this writer
+     * @since 1.8
+     */
+    public void enqueueProbe(Message probe) {
+        if (!stopped) {
+            messageQueue.putFirst(probe);
+        }
+    }
+
+    /**
+     * Adds message to the queue to be written. Messages enqueued after
+     * {@link #stop()} are ignored.
+     *
+     * @param message message to write
+     * @since 1.8
+     */
+    public void enqueue(Message message) {
+        if (!stopped) {
+            messageQueue.put(message);
+        }
+    }
+
+    /**
+     * Adds motion to the queue to be written without allocating. Motion
+     * enqueued after {@link #stop()} is ignored.
+     *
+     * @param messageType move, scroll or drag move
+     * @param distanceX   x distance
+     * @param distanceY   y distance
+     * @since 1.8
+     */
+    public void enqueueMotion(MessageType messageType, float distanceX, float distanceY) {
+        if (!stopped) {
+            messageQueue.putMotion(messageType, distanceX, distanceY);
+        }
+    }
+
+    /**
+     * Adds motion made of given path to the queue to be written without
+     * allocating. Motion enqueued after {@link #stop()} is ignored.
+     *
+     * @param messageType move, scroll or drag move
+     * @param path        path of the motion, copied
+     * @since 1.8
+     */
+    public void enqueueMotionPath(MessageType messageType, MotionPath path) {
+        if (!stopped) {
+            messageQueue.putMotionPath(messageType, path);
+        }
+    }
+
+    /**
+     * Stops the writer once all previously enqueued messages are written.
+     *
+     * @since 1.8
+     */
+    public void stop() {
+        stopped = true;
+        messageQueue.put(STOP_MESSAGE);
+    }
+
+    /**
+     * Makes {@link #writeUntilStopped(ObjectOutputStream)} return for given
+     * stream without writing the remaining messages, used when its connection
+     * is lost. Does nothing if the writer is no longer writing to the stream.
+     *
+     * @param out stream of the lost connection
+     * @since 1.8
+     */
+    public void interrupt(ObjectOutputStream out) {
+        synchronized (this) {
+            if (currentOut != out) {
+                return;
+            }
+
+            interruptedOut = out;
+        }
+
+        messageQueue.putFirst(INTERRUPT_MESSAGE);
+    }
+
+    /**
+     * Removes pending motion messages, which are stale after being offline.
+     *
+     * @return amount of removed messages
+     * @since 1.8
+     */
+    public int dropPendingMotion() {
+        return messageQueue.removeMotion();
+    }
+
+    /**
+     * Get histogram of the time messages spent between being enqueued and
+     * being written, in microseconds.
+     *
+     * @return the send delay histogram
+     * @since 1.8
+     */
+    public LatencyHistogram getSendDelayHistogram() {
+        return sendDelayHistogram;
+    }
+
+    /**
+     * Get depth, drop and wait counters of the send queue.
+     *
+     * @return the send queue statistics
+     * @since 1.8
+     */
+    public SendQueueStatistics getSendQueueStatistics() {
+        return messageQueue.getStatistics();
+    }
+
+    /**
+     * Get amount of messages waiting to be written.
+     *
+     * @return amount of pending messages
+     * @since 1.8
+     */
+    public int getQueueSize() {
+        return messageQueue.size();
+    }
+
+    /**
+     * Get if writer has been stopped.
+     *
+     * @return true if stopped, false if not
+     * @since 1.8
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Writes queued messages to given stream until {@link #stop()} or
+     * {@link #interrupt(ObjectOutputStream)} is called.
+     * Blocks the calling thread while there is nothing to write.
+     *
+     * @param out stream to write to
+     * @return true if stopped, false if interrupted
+     * @throws IOException if writing to the stream fails
+     * @since 1.8
+     */
+    public boolean writeUntilStopped(ObjectOutputStream out) throws IOException {
+        synchronized (this) {
+            currentOut = out;
+            interruptedOut = null;
+        }
+
+        messagesSinceReset = 0;
+
+        try {
+            while (true) {
+                Message message = messageQueue.take(motionSample);
+
+                if (message == null) {
+                    writeMotion(motionSample, out);
+                } else if (message == STOP_MESSAGE) {
+                    break;
+                } else if (message == INTERRUPT_MESSAGE) {
+                    // Left over from an earlier connection if not ours
+                    if (isInterrupted(out)) {
+                        return false;
+                    }
+
+                    continue;
+                } else {
+                    LatencyProbe probe = latencyProbe;
+                    boolean isProbe = probe != null && LatencyProbe.isProbe(message);
+
+                    MotionBarrier barrier = motionBarrier;
+                    if (barrier != null && !isProbe) {
+                        barrier.awaitMotionSent(MOTION_BARRIER_TIMEOUT_NANOS);
+                    }
+
+                    write(message, out);
+
+                    if (isProbe) {
+                        out.flush();
+                        probe.onWritten(message, System.nanoTime());
+                    }
+                }
+
+                sendDelayHistogram.record((System.nanoTime() - messageQueue.getLastTakenEnqueueTime()) / 1000);
+
+                // Flush once the burst is written instead of after every message
+                if (messageQueue.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                currentOut = null;
+            }
+        }
+
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Writes message with the current codec, resetting the stream's
+     * reference table when due. Only called by the writing thread.
+     *
+     * @param message message to write
+     * @param out     stream to write to
+     * @throws IOException if writing to the stream fails
+     * @since 1.8
+     */
+    void write(Message message, ObjectOutputStream out) throws IOException {
+        messageCodec.writeMessage(message, out);
+        countForReset(out);
+    }
+
+    private void writeMotion(MotionSample motionSample, ObjectOutputStream out) throws IOException {
+        messageCodec.writeMotion(motionSample, out);
+        countForReset(out);
+    }
+
+    private void countForReset(ObjectOutputStream out) throws IOException {
+        if (++messagesSinceReset >= RESET_INTERVAL) {
+            out.reset();
+            messagesSinceReset = 0;
+        }
+    }
+
+    private synchronized boolean isInterrupted(ObjectOutputStream out) {
+        return interruptedOut == out;
+    }
+}
@@ -0,0 +1,23 @@
+package com.konradrej.rcpc.client.Network;
+
+/**
+ * Motion sent over another channel than the messages of a
+ * {@link MessageWriter}, which waits for it before writing a control message
+ * so the control message does not overtake the motion made before it.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public interface MotionBarrier {
+    /**
+     * Waits until all motion offered so far has been sent.
+     *
+     * @param timeoutNanos maximum time to wait in nanoseconds
+     * @return true if sent, false if the time passed or the channel closed first
+     * @throws InterruptedException if interrupted while waiting
+     * @since 1.8
+     */
+    boolean awaitMotionSent(long timeoutNanos) throws InterruptedException;
+}
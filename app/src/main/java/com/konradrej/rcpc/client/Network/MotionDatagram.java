@@ -0,0 +1,112 @@
+package com.konradrej.rcpc.client.Network;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Encrypted datagram carrying pointer motion, see {@link DatagramMotionSender}.
+ * <p>
+ * A datagram is the sequence number in clear text followed by the AES-GCM
+ * encrypted frame type and the total distance sent for that frame type since
+ * the channel was opened. The sequence number is used both as nonce and as
+ * associated data. Sending totals instead of deltas lets the receiver drop
+ * stale datagrams without losing displacement.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class MotionDatagram {
+    public static final int SEQUENCE_LENGTH = 8;
+    public static final int PAYLOAD_LENGTH = 1 + 8 + 8;
+    public static final int TAG_LENGTH = 16;
+    public static final int LENGTH = SEQUENCE_LENGTH + PAYLOAD_LENGTH + TAG_LENGTH;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int NONCE_LENGTH = 12;
+
+    public final long sequence;
+    public final byte frameType;
+    public final double totalX;
+    public final double totalY;
+
+    /**
+     * Creates a datagram with given values.
+     *
+     * @param sequence  strictly increasing sequence number
+     * @param frameType {@link BinaryMessageCodec} frame type of the motion
+     * @param totalX    total x distance sent for the frame type
+     * @param totalY    total y distance sent for the frame type
+     * @since 1.8
+     */
+    public MotionDatagram(long sequence, byte frameType, double totalX, double totalY) {
+        this.sequence = sequence;
+        this.frameType = frameType;
+        this.totalX = totalX;
+        this.totalY = totalY;
+    }
+
+    /**
+     * Encrypts datagram with given key.
+     *
+     * @param key AES key shared over the TLS connection
+     * @return the datagram bytes
+     * @throws GeneralSecurityException if encryption fails
+     * @since 1.8
+     */
+    public byte[] encode(SecretKey key) throws GeneralSecurityException {
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_LENGTH);
+        payload.put(frameType);
+        payload.putDouble(totalX);
+        payload.putDouble(totalY);
+
+        byte[] header = ByteBuffer.allocate(SEQUENCE_LENGTH).putLong(sequence).array();
+
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key, getParameterSpec(sequence));
+        cipher.updateAAD(header);
+        byte[] encrypted = cipher.doFinal(payload.array());
+
+        return ByteBuffer.allocate(LENGTH).put(header).put(encrypted).array();
+    }
+
+    /**
+     * Decrypts and authenticates datagram.
+     *
+     * @param data   received bytes
+     * @param offset offset of datagram in data
+     * @param length length of datagram
+     * @param key    AES key shared over the TLS connection
+     * @return the datagram
+     * @throws GeneralSecurityException if the datagram is malformed or was not sent with key
+     * @since 1.8
+     */
+    public static MotionDatagram decode(byte[] data, int offset, int length, SecretKey key) throws GeneralSecurityException {
+        if (length != LENGTH) {
+            throw new GeneralSecurityException("Invalid datagram length: " + length);
+        }
+
+        long sequence = ByteBuffer.wrap(data, offset, SEQUENCE_LENGTH).getLong();
+
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, getParameterSpec(sequence));
+        cipher.updateAAD(data, offset, SEQUENCE_LENGTH);
+        byte[] decrypted = cipher.doFinal(data, offset + SEQUENCE_LENGTH, length - SEQUENCE_LENGTH);
+
+        ByteBuffer payload = ByteBuffer.wrap(decrypted);
+
+        return new MotionDatagram(sequence, payload.get(), payload.getDouble(), payload.getDouble());
+    }
+
+    private static GCMParameterSpec getParameterSpec(long sequence) {
+        // Sequence numbers never repeat for a key, so neither do nonces
+        byte[] nonce = ByteBuffer.allocate(NONCE_LENGTH).putLong(NONCE_LENGTH - SEQUENCE_LENGTH, sequence).array();
+
+        return new GCMParameterSpec(TAG_LENGTH * 8, nonce);
+    }
+}
@@ -0,0 +1,175 @@
+package com.konradrej.rcpc.client.Network;
+
+/**
+ * Reusable, fixed size path of pointer motion samples, each a distance and
+ * the time since the previous sample. Lets the touch samples Android batches
+ * into one delivered event reach the server as one frame instead of only
+ * their sum.
+ * <p>
+ * The client sends {@link #MOTION_PATH_KEY} in its UUID message, servers
+ * that want paths answer with true under the same key when accepting the
+ * connection. Only {@link BinaryMessageCodec} writes paths, everything else
+ * receives the summed distance.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class MotionPath {
+    public static final String MOTION_PATH_KEY = "motionPath";
+    public static final int MAX_SAMPLES = 32;
+    public static final int MAX_DELTA_MILLIS = 0xFFFF;
+
+    private final float[] distancesX = new float[MAX_SAMPLES];
+    private final float[] distancesY = new float[MAX_SAMPLES];
+    private final int[] deltaMillis = new int[MAX_SAMPLES];
+    private int size = 0;
+
+    /**
+     * Removes all samples.
+     *
+     * @since 1.8
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a sample. Once the path is full the sample is summed into the
+     * last one, so the total distance stays exact.
+     *
+     * @param distanceX x distance since the previous sample
+     * @param distanceY y distance since the previous sample
+     * @param millis    time since the previous sample, clamped to {@link #MAX_DELTA_MILLIS}
+     * @since 1.8
+     */
+    public void add(float distanceX, float distanceY, long millis) {
+        if (size == MAX_SAMPLES) {
+            int last = size - 1;
+
+            distancesX[last] += distanceX;
+            distancesY[last] += distanceY;
+            deltaMillis[last] = clampMillis(deltaMillis[last] + millis);
+            return;
+        }
+
+        distancesX[size] = distanceX;
+        distancesY[size] = distanceY;
+        deltaMillis[size] = clampMillis(millis);
+        size++;
+    }
+
+    /**
+     * Adds all samples of given path.
+     *
+     * @param path path to append
+     * @since 1.8
+     */
+    public void append(MotionPath path) {
+        for (int i = 0; i < path.size; i++) {
+            add(path.distancesX[i], path.distancesY[i], path.deltaMillis[i]);
+        }
+    }
+
+    /**
+     * Replaces samples with those of given path.
+     *
+     * @param path path to copy
+     * @since 1.8
+     */
+    public void set(MotionPath path) {
+        clear();
+        append(path);
+    }
+
+    /**
+     * Replaces distance of a sample, keeping its time.
+     *
+     * @param index     sample index
+     * @param distanceX new x distance
+     * @param distanceY new y distance
+     * @since 1.8
+     */
+    public void setDistance(int index, float distanceX, float distanceY) {
+        distancesX[index] = distanceX;
+        distancesY[index] = distanceY;
+    }
+
+    /**
+     * Get amount of samples.
+     *
+     * @return amount of samples
+     * @since 1.8
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get x distance of a sample.
+     *
+     * @param index sample index
+     * @return x distance since the previous sample
+     * @since 1.8
+     */
+    public float getDistanceX(int index) {
+        return distancesX[index];
+    }
+
+    /**
+     * Get y distance of a sample.
+     *
+     * @param index sample index
+     * @return y distance since the previous sample
+     * @since 1.8
+     */
+    public float getDistanceY(int index) {
+        return distancesY[index];
+    }
+
+    /**
+     * Get time between a sample and the previous one.
+     *
+     * @param index sample index
+     * @return time in milliseconds
+     * @since 1.8
+     */
+    public int getDeltaMillis(int index) {
+        return deltaMillis[index];
+    }
+
+    /**
+     * Get summed x distance of all samples.
+     *
+     * @return total x distance
+     * @since 1.8
+     */
+    public float getTotalX() {
+        float total = 0;
+        for (int i = 0; i < size; i++) {
+            total += distancesX[i];
+        }
+
+        return total;
+    }
+
+    /**
+     * Get summed y distance of all samples.
+     *
+     * @return total y distance
+     * @since 1.8
+     */
+    public float getTotalY() {
+        float total = 0;
+        for (int i = 0; i < size; i++) {
+            total += distancesY[i];
+        }
+
+        return total;
+    }
+
+    private static int clampMillis(long millis) {
+        return (int) Math.max(0, Math.min(MAX_DELTA_MILLIS, millis));
+    }
+}
@@ -0,0 +1,111 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reusable holder for one move, scroll or drag move distance and optionally
+ * the {@link MotionPath} it was made of. Used instead
+ * of a {@link Message} between the touch listeners and the codec so motion
+ * does not allocate a message, a map and two boxed floats per touch event.
+ * An instance belongs to a single thread and is overwritten on every use.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class MotionSample {
+    public static final String DISTANCE_X_KEY = "distanceX";
+    public static final String DISTANCE_Y_KEY = "distanceY";
+
+    private MessageType messageType = MessageType.ACTION_MOVE;
+    private float distanceX = 0;
+    private float distanceY = 0;
+    private final MotionPath path = new MotionPath();
+
+    /**
+     * Sets all values of the sample.
+     *
+     * @param messageType move, scroll or drag move
+     * @param distanceX   x distance
+     * @param distanceY   y distance
+     * @since 1.8
+     */
+    public void set(MessageType messageType, float distanceX, float distanceY) {
+        this.messageType = messageType;
+        this.distanceX = distanceX;
+        this.distanceY = distanceY;
+        path.clear();
+    }
+
+    /**
+     * Sets the sample to the total of given path and keeps its samples.
+     *
+     * @param messageType move, scroll or drag move
+     * @param path        path to copy
+     * @since 1.8
+     */
+    public void set(MessageType messageType, MotionPath path) {
+        set(messageType, path.getTotalX(), path.getTotalY());
+        this.path.set(path);
+    }
+
+    /**
+     * Get path the distance was made of.
+     *
+     * @return the path, empty if only the total is known
+     * @since 1.8
+     */
+    public MotionPath getPath() {
+        return path;
+    }
+
+    /**
+     * Get message type of the motion.
+     *
+     * @return move, scroll or drag move
+     * @since 1.8
+     */
+    public MessageType getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * Get x distance.
+     *
+     * @return x distance
+     * @since 1.8
+     */
+    public float getDistanceX() {
+        return distanceX;
+    }
+
+    /**
+     * Get y distance.
+     *
+     * @return y distance
+     * @since 1.8
+     */
+    public float getDistanceY() {
+        return distanceY;
+    }
+
+    /**
+     * Creates a message with the values of the sample, for encodings that
+     * need one.
+     *
+     * @return the new message
+     * @since 1.8
+     */
+    public Message toMessage() {
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put(DISTANCE_X_KEY, distanceX);
+        additionalData.put(DISTANCE_Y_KEY, distanceY);
+
+        return new Message(messageType, null, additionalData);
+    }
+}
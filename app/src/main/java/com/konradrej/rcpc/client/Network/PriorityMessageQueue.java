@@ -0,0 +1,569 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking send queue with a control lane and a bounded motion lane.
+ * <p>
+ * Move, scroll and drag move messages go to the motion lane, where
+ * consecutive messages of the same type are summed, so the lane holds one
+ * message per run of a type. When the lane is full the oldest entry with a
+ * later entry of its type takes that entry's distance, so motion is never
+ * lost, only part of it moves earlier. The motion lane stores distances as
+ * primitives, so motion put with {@link #putMotion(MessageType, float, float)}
+ * and taken with {@link #take(MotionSample)} does not allocate.
+ * <p>
+ * Every other message goes to the control lane, which is unbounded, never
+ * dropped and taken ahead of all motion enqueued after it. A control message
+ * still has to land where the pointer was when it was enqueued, so it waits
+ * for the motion enqueued before it, which is not merged with motion
+ * enqueued after it. Until the lane fills up motion is never moved past a
+ * control message or motion of another type, so the server replays the
+ * gesture as it was made.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class PriorityMessageQueue {
+    public static final int DEFAULT_MOTION_CAPACITY = 64;
+
+    private static final int INITIAL_CONTROL_CAPACITY = 16;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final SendQueueStatistics statistics = new SendQueueStatistics();
+    private final Lane controlLane = new Lane(INITIAL_CONTROL_CAPACITY);
+    private final MotionLane motionLane;
+    // Control messages not waiting for any motion, the rest follow motion lane entries
+    private int leadingControl = 0;
+    private long lastTakenEnqueueTime = 0;
+
+    /**
+     * Creates queue with a motion lane of {@link #DEFAULT_MOTION_CAPACITY}.
+     *
+     * @since 1.8
+     */
+    public PriorityMessageQueue() {
+        this(DEFAULT_MOTION_CAPACITY);
+    }
+
+    /**
+     * Creates queue with given motion lane capacity.
+     *
+     * @param motionCapacity maximum amount of pending motion messages, at least 1
+     * @since 1.8
+     */
+    public PriorityMessageQueue(int motionCapacity) {
+        if (motionCapacity < 1) {
+            throw new IllegalArgumentException("Motion capacity must be at least 1: " + motionCapacity);
+        }
+
+        this.motionLane = new MotionLane(motionCapacity);
+    }
+
+    /**
+     * Adds message to the end of its lane.
+     *
+     * @param message message to add
+     * @since 1.8
+     */
+    public void put(Message message) {
+        if (isMotion(message)) {
+            putMotion(message.getMessageType(),
+                    ((Number) message.getAdditionalDataFromKey(MotionSample.DISTANCE_X_KEY)).floatValue(),
+                    ((Number) message.getAdditionalDataFromKey(MotionSample.DISTANCE_Y_KEY)).floatValue());
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        lock.lock();
+        try {
+            if (motionLane.size == 0) {
+                leadingControl++;
+            } else {
+                motionLane.controlAfter[motionLane.index(motionLane.size - 1)]++;
+            }
+
+            controlLane.addLast(message, now);
+
+            statistics.recordDepth(controlLane.size, motionLane.size);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds motion to the end of the motion lane without allocating.
+     *
+     * @param messageType move, scroll or drag move
+     * @param distanceX   x distance
+     * @param distanceY   y distance
+     * @since 1.8
+     */
+    public void putMotion(MessageType messageType, float distanceX, float distanceY) {
+        putMotion(messageType, distanceX, distanceY, null);
+    }
+
+    /**
+     * Adds motion made of given path to the end of the motion lane without
+     * allocating. The path is kept as long as the motion is only merged with
+     * motion enqueued after it.
+     *
+     * @param messageType move, scroll or drag move
+     * @param path        path of the motion, copied
+     * @since 1.8
+     */
+    public void putMotionPath(MessageType messageType, MotionPath path) {
+        if (path.size() > 0) {
+            putMotion(messageType, path.getTotalX(), path.getTotalY(), path);
+        }
+    }
+
+    private void putMotion(MessageType messageType, float distanceX, float distanceY, MotionPath path) {
+        if (!isMotion(messageType)) {
+            throw new IllegalArgumentException("Not a motion type: " + messageType);
+        }
+
+        long now = System.nanoTime();
+
+        lock.lock();
+        try {
+            int last = motionLane.size - 1;
+
+            // Motion followed by a control message has to reach the server before it
+            if (last >= 0 && motionLane.types[motionLane.index(last)] == messageType &&
+                    motionLane.controlAfter[motionLane.index(last)] == 0) {
+                motionLane.add(last, distanceX, distanceY, path);
+                statistics.recordMerged();
+            } else {
+                if (motionLane.size == motionLane.capacity) {
+                    makeRoomForMotion();
+                }
+
+                motionLane.addLast(messageType, distanceX, distanceY, path, now);
+            }
+
+            statistics.recordDepth(controlLane.size, motionLane.size);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds message to the front of the control lane, ahead of everything.
+     *
+     * @param message message to add
+     * @since 1.8
+     */
+    public void putFirst(Message message) {
+        long now = System.nanoTime();
+
+        lock.lock();
+        try {
+            leadingControl++;
+            controlLane.addFirst(message, now);
+
+            statistics.recordDepth(controlLane.size, motionLane.size);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all pending motion messages from both lanes.
+     *
+     * @return amount of removed messages
+     * @since 1.8
+     */
+    public int removeMotion() {
+        lock.lock();
+        try {
+            int removed = motionLane.size + controlLane.removeMotion();
+            motionLane.clear();
+            leadingControl = controlLane.size;
+
+            statistics.recordDepth(controlLane.size, motionLane.size);
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the first control message, or the first motion
+     * message if there is none or it was enqueued after that motion, waiting
+     * until one is available.
+     *
+     * @return the next message
+     * @throws InterruptedException if interrupted while waiting
+     * @since 1.8
+     */
+    public Message take() throws InterruptedException {
+        MotionSample motionSample = new MotionSample();
+        Message message = take(motionSample);
+
+        return message != null ? message : motionSample.toMessage();
+    }
+
+    /**
+     * Removes the first control message, or the first motion message if
+     * there is none or it was enqueued after that motion, waiting until one
+     * is available. Motion from the motion
+     * lane is copied into given sample instead of being returned.
+     *
+     * @param motionSample sample to copy motion into
+     * @return the next control message, null if motion was copied into the sample
+     * @throws InterruptedException if interrupted while waiting
+     * @since 1.8
+     */
+    public Message take(MotionSample motionSample) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (controlLane.size == 0 && motionLane.size == 0) {
+                notEmpty.await();
+            }
+
+            Message message = null;
+
+            if (leadingControl > 0) {
+                lastTakenEnqueueTime = controlLane.getTime(0);
+                message = controlLane.removeFirst();
+                leadingControl--;
+            } else {
+                int first = motionLane.index(0);
+                lastTakenEnqueueTime = motionLane.times[first];
+                motionSample.set(motionLane.types[first], motionLane.distancesX[first], motionLane.distancesY[first]);
+                motionSample.getPath().set(motionLane.paths[first]);
+                leadingControl += motionLane.removeFirst();
+            }
+
+            long waitMicros = (System.nanoTime() - lastTakenEnqueueTime) / 1000;
+            if (message == null || isMotion(message.getMessageType())) {
+                statistics.getMotionWaitHistogram().record(waitMicros);
+            } else {
+                statistics.getControlWaitHistogram().record(waitMicros);
+            }
+
+            statistics.recordDepth(controlLane.size, motionLane.size);
+            return message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get {@link System#nanoTime()} at which the message last returned by
+     * {@link #take()} was enqueued. Only meaningful to the taking thread.
+     *
+     * @return enqueue time in nanoseconds
+     * @since 1.8
+     */
+    public long getLastTakenEnqueueTime() {
+        lock.lock();
+        try {
+            return lastTakenEnqueueTime;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get if both lanes are empty.
+     *
+     * @return true if empty, false if not
+     * @since 1.8
+     */
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return controlLane.size == 0 && motionLane.size == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get amount of pending messages in both lanes.
+     *
+     * @return amount of pending messages
+     * @since 1.8
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return controlLane.size + motionLane.size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get counters of this queue.
+     *
+     * @return the statistics
+     * @since 1.8
+     */
+    public SendQueueStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Get if message type carries a mergeable distance.
+     *
+     * @param messageType type to check
+     * @return true if motion type, false if not
+     * @since 1.8
+     */
+    public static boolean isMotion(MessageType messageType) {
+        return messageType == MessageType.ACTION_MOVE ||
+                messageType == MessageType.ACTION_SCROLL ||
+                messageType == MessageType.ACTION_CLICK_AND_DRAG_MOVE;
+    }
+
+    /**
+     * Get if message carries both distances as numbers.
+     *
+     * @param message message to check
+     * @return true if it has distances, false if not
+     * @since 1.8
+     */
+    static boolean hasDistance(Message message) {
+        return message.getAdditionalDataFromKey(MotionSample.DISTANCE_X_KEY) instanceof Number &&
+                message.getAdditionalDataFromKey(MotionSample.DISTANCE_Y_KEY) instanceof Number;
+    }
+
+    private static boolean isMotion(Message message) {
+        // Motion without distances cannot be merged and is kept in order instead
+        return isMotion(message.getMessageType()) && hasDistance(message);
+    }
+
+    private void makeRoomForMotion() {
+        for (int first = 0; first < motionLane.size - 1; first++) {
+            MessageType messageType = motionLane.types[motionLane.index(first)];
+
+            for (int later = first + 1; later < motionLane.size; later++) {
+                if (motionLane.types[motionLane.index(later)] == messageType) {
+                    motionLane.merge(first, later);
+                    statistics.recordMerged();
+                    return;
+                }
+            }
+        }
+
+        // Only a lane with fewer slots than motion types can hold no two of a type
+        leadingControl += motionLane.removeFirst();
+        statistics.recordDropped();
+    }
+
+    /**
+     * Fixed size ring buffer of motion types, distances and paths with their
+     * enqueue times and the amount of control messages enqueued right after
+     * each. A non-empty path always adds up to its distance.
+     */
+    private static class MotionLane {
+        private final int capacity;
+        private final MessageType[] types;
+        private final float[] distancesX;
+        private final float[] distancesY;
+        private final MotionPath[] paths;
+        private final long[] times;
+        private final int[] controlAfter;
+        private int head = 0;
+        private int size = 0;
+
+        private MotionLane(int capacity) {
+            this.capacity = capacity;
+            types = new MessageType[capacity];
+            distancesX = new float[capacity];
+            distancesY = new float[capacity];
+            paths = new MotionPath[capacity];
+            times = new long[capacity];
+            controlAfter = new int[capacity];
+
+            for (int i = 0; i < capacity; i++) {
+                paths[i] = new MotionPath();
+            }
+        }
+
+        private void add(int offset, float distanceX, float distanceY, MotionPath path) {
+            int index = index(offset);
+            distancesX[index] += distanceX;
+            distancesY[index] += distanceY;
+
+            if (paths[index].size() == 0) {
+                return;
+            }
+
+            if (path != null) {
+                paths[index].append(path);
+            } else {
+                paths[index].add(distanceX, distanceY, 0);
+            }
+        }
+
+        private void addLast(MessageType messageType, float distanceX, float distanceY, MotionPath path, long enqueueTime) {
+            int index = index(size++);
+            types[index] = messageType;
+            distancesX[index] = distanceX;
+            distancesY[index] = distanceY;
+            times[index] = enqueueTime;
+            controlAfter[index] = 0;
+
+            if (path != null) {
+                paths[index].set(path);
+            } else {
+                paths[index].clear();
+            }
+        }
+
+        // Adds later entry to the earlier one and closes the gap, control messages
+        // that waited for the later entry then wait for the one before it
+        private void merge(int offset, int laterOffset) {
+            int later = index(laterOffset);
+            MotionPath laterPath = paths[later];
+
+            add(offset, distancesX[later], distancesY[later], laterPath.size() > 0 ? laterPath : null);
+            controlAfter[index(laterOffset - 1)] += controlAfter[later];
+
+            for (int i = laterOffset; i < size - 1; i++) {
+                int to = index(i);
+                int from = index(i + 1);
+                types[to] = types[from];
+                distancesX[to] = distancesX[from];
+                distancesY[to] = distancesY[from];
+                paths[to] = paths[from];
+                times[to] = times[from];
+                controlAfter[to] = controlAfter[from];
+            }
+
+            int last = index(--size);
+            types[last] = null;
+            paths[last] = laterPath;
+            controlAfter[last] = 0;
+        }
+
+        // Returns the amount of control messages that no longer wait for motion
+        private int removeFirst() {
+            int released = controlAfter[head];
+            types[head] = null;
+            controlAfter[head] = 0;
+            head = (head + 1) % capacity;
+            size--;
+
+            return released;
+        }
+
+        private void clear() {
+            while (size > 0) {
+                removeFirst();
+            }
+        }
+
+        private int index(int offset) {
+            return (head + offset) % capacity;
+        }
+    }
+
+    /**
+     * Ring buffer of messages with their enqueue times, grown when full.
+     */
+    private static class Lane {
+        private Message[] messages;
+        private long[] enqueueTimes;
+        private int head = 0;
+        private int size = 0;
+
+        private Lane(int capacity) {
+            messages = new Message[capacity];
+            enqueueTimes = new long[capacity];
+        }
+
+        private Message get(int offset) {
+            return messages[index(offset)];
+        }
+
+        private long getTime(int offset) {
+            return enqueueTimes[index(offset)];
+        }
+
+        private void set(int offset, Message message, long enqueueTime) {
+            messages[index(offset)] = message;
+            enqueueTimes[index(offset)] = enqueueTime;
+        }
+
+        private void addLast(Message message, long enqueueTime) {
+            ensureCapacity();
+            size++;
+            set(size - 1, message, enqueueTime);
+        }
+
+        private void addFirst(Message message, long enqueueTime) {
+            ensureCapacity();
+            head = (head - 1 + messages.length) % messages.length;
+            size++;
+            set(0, message, enqueueTime);
+        }
+
+        private Message removeFirst() {
+            Message message = messages[head];
+            messages[head] = null;
+            head = (head + 1) % messages.length;
+            size--;
+
+            return message;
+        }
+
+        private int removeMotion() {
+            int kept = 0;
+
+            for (int i = 0; i < size; i++) {
+                Message message = get(i);
+
+                if (!isMotion(message.getMessageType())) {
+                    set(kept++, message, getTime(i));
+                }
+            }
+
+            for (int i = kept; i < size; i++) {
+                messages[index(i)] = null;
+            }
+
+            int removed = size - kept;
+            size = kept;
+
+            return removed;
+        }
+
+        private int index(int offset) {
+            return (head + offset) % messages.length;
+        }
+
+        private void ensureCapacity() {
+            if (size < messages.length) {
+                return;
+            }
+
+            Message[] grownMessages = new Message[messages.length * 2];
+            long[] grownEnqueueTimes = new long[messages.length * 2];
+
+            for (int i = 0; i < size; i++) {
+                grownMessages[i] = get(i);
+                grownEnqueueTimes[i] = getTime(i);
+            }
+
+            messages = grownMessages;
+            enqueueTimes = grownEnqueueTimes;
+            head = 0;
+        }
+    }
+}
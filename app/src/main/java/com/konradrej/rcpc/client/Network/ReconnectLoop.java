@@ -0,0 +1,148 @@
+package com.konradrej.rcpc.client.Network;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs sessions of a connection, reconnecting after a lost session with the
+ * delays of a {@link Backoff}. Attempts are made until a session is
+ * established again or the backoff runs out, the backoff starts over after
+ * every established session.
+ * <p>
+ * Listener callbacks are called on the thread running {@link #run()}, which
+ * reports {@link Listener#onDisconnect()} exactly once when it returns.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class ReconnectLoop {
+    private final SessionRunner sessionRunner;
+    private final Listener listener;
+    private final Backoff backoff;
+    private final CountDownLatch cancelLatch = new CountDownLatch(1);
+
+    /**
+     * Creates loop running sessions with given runner.
+     *
+     * @param sessionRunner runner connecting and running a single session
+     * @param listener      listener of connection events
+     * @param backoff       delays between reconnect attempts
+     * @since 1.8
+     */
+    public ReconnectLoop(SessionRunner sessionRunner, Listener listener, Backoff backoff) {
+        this.sessionRunner = sessionRunner;
+        this.listener = listener;
+        this.backoff = backoff;
+    }
+
+    /**
+     * Runs the first session and reconnects until a session is closed, the
+     * loop is cancelled or reconnecting fails.
+     *
+     * @throws InterruptedException if interrupted while waiting to reconnect
+     * @since 1.8
+     */
+    public void run() throws InterruptedException {
+        try {
+            Result result = sessionRunner.runSession(false, listener::onConnect);
+
+            while (result == Result.LOST && !isCancelled()) {
+                listener.onReconnecting();
+                // Lost sessions were established, so earlier attempts no longer count
+                backoff.reset();
+
+                do {
+                    // Returns early if cancelled while waiting
+                    if (cancelLatch.await(backoff.nextDelayMillis(), TimeUnit.MILLISECONDS)) {
+                        result = Result.CLOSED;
+                        break;
+                    }
+
+                    result = sessionRunner.runSession(true, listener::onReconnected);
+                } while (result == Result.FAILED && backoff.hasNext() && !isCancelled());
+
+                if (result == Result.FAILED && !isCancelled()) {
+                    listener.onReconnectFailed();
+                }
+            }
+        } finally {
+            listener.onDisconnect();
+        }
+    }
+
+    /**
+     * Stops reconnecting, waking the loop if it is waiting to reconnect.
+     * A running session has to be ended by its runner.
+     *
+     * @since 1.8
+     */
+    public void cancel() {
+        cancelLatch.countDown();
+    }
+
+    /**
+     * Get if {@link #cancel()} was called.
+     *
+     * @return true if cancelled, false if not
+     * @since 1.8
+     */
+    public boolean isCancelled() {
+        return cancelLatch.getCount() == 0;
+    }
+
+    /**
+     * How a session ended.
+     *
+     * @since 1.8
+     */
+    public enum Result {
+        /**
+         * Ended on purpose or never established, not reconnected.
+         */
+        CLOSED,
+        /**
+         * Established and then lost, reconnected.
+         */
+        LOST,
+        /**
+         * Reconnect attempt that could not be established, retried.
+         */
+        FAILED
+    }
+
+    /**
+     * Connects and runs a single session.
+     *
+     * @since 1.8
+     */
+    public interface SessionRunner {
+        /**
+         * Connects and runs a session until it ends.
+         *
+         * @param reconnecting  true if reconnecting after a lost session
+         * @param onEstablished called once the server accepted the session
+         * @return how the session ended
+         * @since 1.8
+         */
+        Result runSession(boolean reconnecting, Runnable onEstablished);
+    }
+
+    /**
+     * Listener of connection events.
+     *
+     * @since 1.8
+     */
+    public interface Listener {
+        void onConnect();
+
+        void onReconnecting();
+
+        void onReconnected();
+
+        void onReconnectFailed();
+
+        void onDisconnect();
+    }
+}
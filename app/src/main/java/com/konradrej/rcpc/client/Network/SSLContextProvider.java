@@ -0,0 +1,99 @@
+package com.konradrej.rcpc.client.Network;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * Builds an {@link SSLContext} once on a background thread and hands out the
+ * same instance for every connection. Reusing the context keeps its client
+ * session cache, which lets reconnects to the same host resume the TLS session
+ * instead of doing a full handshake. A failed build is not kept, the next
+ * call builds the context again. The process-wide default context is never
+ * handed out, loaders have to fail instead of falling back to it.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class SSLContextProvider {
+    public static final int SESSION_CACHE_SIZE = 16;
+    public static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Callable<SSLContext> loader;
+    private Future<SSLContext> sslContextFuture = null;
+
+    /**
+     * Creates provider using given loader to build the context.
+     *
+     * @param loader builds the context, called again only after it failed
+     * @since 1.8
+     */
+    public SSLContextProvider(Callable<SSLContext> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Starts building the context in the background if not already started.
+     *
+     * @since 1.8
+     */
+    public synchronized void prewarm() {
+        if (sslContextFuture == null) {
+            sslContextFuture = executor.submit(() -> {
+                try {
+                    SSLContext sslContext = loader.call();
+                    // Its session cache is shared by the whole process
+                    if (sslContext == SSLContext.getDefault()) {
+                        throw new IllegalStateException("Loader returned the default SSL context");
+                    }
+                    configureSessionCache(sslContext);
+
+                    return sslContext;
+                } catch (Exception e) {
+                    // Callers waiting on this build still get the failure
+                    synchronized (this) {
+                        sslContextFuture = null;
+                    }
+
+                    throw e;
+                }
+            });
+        }
+    }
+
+    /**
+     * Get the context, waiting for it to be built if necessary.
+     *
+     * @return the shared context
+     * @throws ExecutionException   if building the context failed
+     * @throws InterruptedException if interrupted while waiting
+     * @since 1.8
+     */
+    public SSLContext get() throws ExecutionException, InterruptedException {
+        Future<SSLContext> future;
+
+        synchronized (this) {
+            prewarm();
+            future = sslContextFuture;
+        }
+
+        return future.get();
+    }
+
+    private static void configureSessionCache(SSLContext sslContext) {
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessionContext.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.konradrej.rcpc.client.Network;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the lanes of a {@link PriorityMessageQueue}: current and
+ * peak depth, motion merged or dropped under pressure and time spent waiting
+ * in each lane.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class SendQueueStatistics {
+    private final AtomicInteger controlDepth = new AtomicInteger();
+    private final AtomicInteger motionDepth = new AtomicInteger();
+    private final AtomicInteger maxMotionDepth = new AtomicInteger();
+    private final AtomicLong mergedMotion = new AtomicLong();
+    private final AtomicLong droppedMotion = new AtomicLong();
+    private final LatencyHistogram controlWaitHistogram = new LatencyHistogram();
+    private final LatencyHistogram motionWaitHistogram = new LatencyHistogram();
+
+    void recordDepth(int control, int motion) {
+        controlDepth.set(control);
+        motionDepth.set(motion);
+
+        if (motion > maxMotionDepth.get()) {
+            maxMotionDepth.set(motion);
+        }
+    }
+
+    void recordMerged() {
+        mergedMotion.incrementAndGet();
+    }
+
+    void recordDropped() {
+        droppedMotion.incrementAndGet();
+    }
+
+    /**
+     * Get amount of messages waiting in the control lane.
+     *
+     * @return control lane depth
+     * @since 1.8
+     */
+    public int getControlDepth() {
+        return controlDepth.get();
+    }
+
+    /**
+     * Get amount of messages waiting in the motion lane.
+     *
+     * @return motion lane depth
+     * @since 1.8
+     */
+    public int getMotionDepth() {
+        return motionDepth.get();
+    }
+
+    /**
+     * Get highest motion lane depth seen.
+     *
+     * @return peak motion lane depth
+     * @since 1.8
+     */
+    public int getMaxMotionDepth() {
+        return maxMotionDepth.get();
+    }
+
+    /**
+     * Get amount of motion messages summed into the pending message before
+     * them.
+     *
+     * @return amount of merged messages
+     * @since 1.8
+     */
+    public long getMergedMotion() {
+        return mergedMotion.get();
+    }
+
+    /**
+     * Get amount of motion messages dropped to make room.
+     *
+     * @return amount of dropped messages
+     * @since 1.8
+     */
+    public long getDroppedMotion() {
+        return droppedMotion.get();
+    }
+
+    /**
+     * Get histogram of time control messages waited in the queue, in microseconds.
+     *
+     * @return the control lane wait histogram
+     * @since 1.8
+     */
+    public LatencyHistogram getControlWaitHistogram() {
+        return controlWaitHistogram;
+    }
+
+    /**
+     * Get histogram of time motion messages waited in the queue, in microseconds.
+     *
+     * @return the motion lane wait histogram
+     * @since 1.8
+     */
+    public LatencyHistogram getMotionWaitHistogram() {
+        return motionWaitHistogram;
+    }
+
+    /**
+     * Get summary of the statistics.
+     *
+     * @return the summary
+     * @since 1.8
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "depth %d control, %d motion (peak %d), %d merged, %d dropped, " +
+                        "p99 wait %d us control, %d us motion",
+                getControlDepth(),
+                getMotionDepth(),
+                getMaxMotionDepth(),
+                getMergedMotion(),
+                getDroppedMotion(),
+                controlWaitHistogram.getPercentile(99),
+                motionWaitHistogram.getPercentile(99));
+    }
+}
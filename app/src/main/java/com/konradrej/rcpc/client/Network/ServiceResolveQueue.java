@@ -0,0 +1,290 @@
+package com.konradrej.rcpc.client.Network;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves discovered services one at a time, as NsdManager fails a resolve
+ * started while another is active. Failed resolves are retried with backoff
+ * behind the rest of the queue, and a resolve that never reports back is
+ * given up on after a timeout. Resolved services are cached for a time, so
+ * services found again after discovery restarts are reported without
+ * resolving them again.
+ * <p>
+ * All state is confined to the given executor, every method may be called
+ * from any thread and the listener is called on the executor.
+ *
+ * @param <T> type of the services, NsdServiceInfo in the app
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class ServiceResolveQueue<T> {
+    public static final int ERROR_TIMEOUT = -1;
+    public static final int MAX_RETRIES = 3;
+    private static final long RETRY_BASE_DELAY_MILLIS = 100;
+    private static final long RETRY_MAX_DELAY_MILLIS = 2000;
+
+    private final Resolver<T> resolver;
+    private final Listener<T> listener;
+    private final ScheduledExecutorService executor;
+    private final long cacheTtlNanos;
+    private final long resolveTimeoutMillis;
+    private final Random random = new Random();
+    private final ArrayDeque<Pending<T>> queue = new ArrayDeque<>();
+    // Services queued, resolving or waiting to retry, by name
+    private final Map<String, Pending<T>> tracked = new HashMap<>();
+    private final Map<String, CacheEntry<T>> cache = new HashMap<>();
+    private Attempt active = null;
+
+    /**
+     * Creates queue resolving with given resolver.
+     *
+     * @param resolver             resolver of single services
+     * @param listener             listener receiving the results
+     * @param executor             executor to run on, also runs retries and timeouts
+     * @param cacheTtlMillis       time resolved services are reported from the cache
+     * @param resolveTimeoutMillis time to wait for a resolve before giving up on it
+     * @since 1.8
+     */
+    public ServiceResolveQueue(Resolver<T> resolver, Listener<T> listener, ScheduledExecutorService executor,
+                               long cacheTtlMillis, long resolveTimeoutMillis) {
+        this.resolver = resolver;
+        this.listener = listener;
+        this.executor = executor;
+        this.cacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(cacheTtlMillis);
+        this.resolveTimeoutMillis = resolveTimeoutMillis;
+    }
+
+    /**
+     * Queues found service to be resolved, or reports it right away if
+     * resolved recently. Services already queued are not queued again.
+     *
+     * @param serviceName name of the service
+     * @param service     service to resolve
+     * @since 1.8
+     */
+    public void enqueue(String serviceName, T service) {
+        executor.execute(() -> onFound(serviceName, service));
+    }
+
+    /**
+     * Drops lost service from the queue and the cache, then reports it lost.
+     *
+     * @param serviceName name of the service
+     * @param service     service that was lost
+     * @since 1.8
+     */
+    public void remove(String serviceName, T service) {
+        executor.execute(() -> onLost(serviceName, service));
+    }
+
+    /**
+     * Drops every queued service, used when discovery stops. Resolved
+     * services stay cached.
+     *
+     * @since 1.8
+     */
+    public void clear() {
+        executor.execute(() -> {
+            for (Pending<T> pending : tracked.values()) {
+                pending.cancelled = true;
+            }
+
+            tracked.clear();
+            queue.clear();
+        });
+    }
+
+    private void onFound(String serviceName, T service) {
+        CacheEntry<T> cacheEntry = cache.get(serviceName);
+
+        if (cacheEntry != null) {
+            if (System.nanoTime() - cacheEntry.resolvedNanos < cacheTtlNanos) {
+                listener.onResolved(serviceName, cacheEntry.resolved);
+                return;
+            }
+
+            cache.remove(serviceName);
+        }
+
+        if (tracked.containsKey(serviceName)) {
+            return;
+        }
+
+        Pending<T> pending = new Pending<>(serviceName, service,
+                new Backoff(RETRY_BASE_DELAY_MILLIS, RETRY_MAX_DELAY_MILLIS, MAX_RETRIES, random));
+        tracked.put(serviceName, pending);
+        queue.add(pending);
+
+        resolveNext();
+    }
+
+    private void onLost(String serviceName, T service) {
+        cache.remove(serviceName);
+        Pending<T> pending = tracked.remove(serviceName);
+
+        if (pending != null) {
+            pending.cancelled = true;
+            queue.remove(pending);
+        }
+
+        listener.onLost(serviceName, service);
+    }
+
+    private void resolveNext() {
+        if (active != null) {
+            return;
+        }
+
+        Pending<T> pending = queue.poll();
+        if (pending == null) {
+            return;
+        }
+
+        Attempt attempt = new Attempt(pending);
+        active = attempt;
+        attempt.timeout = executor.schedule(() -> onFailed(attempt, ERROR_TIMEOUT),
+                resolveTimeoutMillis, TimeUnit.MILLISECONDS);
+
+        resolver.resolve(pending.service, attempt);
+    }
+
+    private void onResolved(Attempt attempt, T resolved) {
+        if (!finish(attempt)) {
+            return;
+        }
+
+        Pending<T> pending = attempt.pending;
+
+        if (!pending.cancelled) {
+            tracked.remove(pending.serviceName);
+            cache.put(pending.serviceName, new CacheEntry<>(resolved, System.nanoTime()));
+            listener.onResolved(pending.serviceName, resolved);
+        }
+
+        resolveNext();
+    }
+
+    private void onFailed(Attempt attempt, int errorCode) {
+        if (!finish(attempt)) {
+            return;
+        }
+
+        Pending<T> pending = attempt.pending;
+
+        if (!pending.cancelled) {
+            if (pending.backoff.hasNext()) {
+                // Retried behind the rest of the queue, which keeps resolving meanwhile
+                executor.schedule(() -> {
+                    if (!pending.cancelled) {
+                        queue.add(pending);
+                        resolveNext();
+                    }
+                }, pending.backoff.nextDelayMillis(), TimeUnit.MILLISECONDS);
+            } else {
+                tracked.remove(pending.serviceName);
+                listener.onResolveFailed(pending.serviceName, errorCode);
+            }
+        }
+
+        resolveNext();
+    }
+
+    // Ends given attempt, false if it already ended by result or timeout
+    private boolean finish(Attempt attempt) {
+        if (attempt != active) {
+            return false;
+        }
+
+        active = null;
+        attempt.timeout.cancel(false);
+
+        return true;
+    }
+
+    /**
+     * Resolves a single service, NsdManager in the app.
+     *
+     * @param <T> type of the services
+     * @since 1.8
+     */
+    public interface Resolver<T> {
+        void resolve(T service, Callback<T> callback);
+    }
+
+    /**
+     * Receives the result of a single resolve, on any thread.
+     *
+     * @param <T> type of the services
+     * @since 1.8
+     */
+    public interface Callback<T> {
+        void onResolved(T resolved);
+
+        void onFailed(int errorCode);
+    }
+
+    /**
+     * Listener interface for resolved and lost services.
+     *
+     * @param <T> type of the services
+     * @since 1.8
+     */
+    public interface Listener<T> {
+        void onResolved(String serviceName, T resolved);
+
+        void onResolveFailed(String serviceName, int errorCode);
+
+        void onLost(String serviceName, T service);
+    }
+
+    private static class Pending<T> {
+        private final String serviceName;
+        private final T service;
+        private final Backoff backoff;
+        private boolean cancelled = false;
+
+        private Pending(String serviceName, T service, Backoff backoff) {
+            this.serviceName = serviceName;
+            this.service = service;
+            this.backoff = backoff;
+        }
+    }
+
+    private static class CacheEntry<T> {
+        private final T resolved;
+        private final long resolvedNanos;
+
+        private CacheEntry(T resolved, long resolvedNanos) {
+            this.resolved = resolved;
+            this.resolvedNanos = resolvedNanos;
+        }
+    }
+
+    // One per resolve, so a late result of an attempt given up on is ignored
+    private class Attempt implements Callback<T> {
+        private final Pending<T> pending;
+        private ScheduledFuture<?> timeout;
+
+        private Attempt(Pending<T> pending) {
+            this.pending = pending;
+        }
+
+        @Override
+        public void onResolved(T resolved) {
+            executor.execute(() -> ServiceResolveQueue.this.onResolved(this, resolved));
+        }
+
+        @Override
+        public void onFailed(int errorCode) {
+            executor.execute(() -> ServiceResolveQueue.this.onFailed(this, errorCode));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.konradrej.rcpc.client.Network;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * Counters for TLS setup cost: keystore loading and full vs resumed handshakes.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class TlsStatistics {
+    private final AtomicLong keyStoreLoadNanos = new AtomicLong();
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    private final AtomicLong totalHandshakeNanos = new AtomicLong();
+    private final AtomicLong lastHandshakeNanos = new AtomicLong();
+
+    /**
+     * Adds time spent loading a keystore or truststore.
+     *
+     * @param nanos time spent
+     * @since 1.8
+     */
+    public void recordKeyStoreLoad(long nanos) {
+        keyStoreLoadNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Records a finished handshake. A resumed session keeps the creation time
+     * of the session it was resumed from, so a session created before the
+     * handshake started was resumed.
+     *
+     * @param session                the established session
+     * @param handshakeStartMillis   wall clock time when the handshake started
+     * @param handshakeDurationNanos time the handshake took
+     * @return true if the session was resumed, false if not
+     * @since 1.8
+     */
+    public boolean recordHandshake(SSLSession session, long handshakeStartMillis, long handshakeDurationNanos) {
+        boolean resumed = session.getCreationTime() < handshakeStartMillis;
+
+        if (resumed) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+
+        totalHandshakeNanos.addAndGet(handshakeDurationNanos);
+        lastHandshakeNanos.set(handshakeDurationNanos);
+
+        return resumed;
+    }
+
+    /**
+     * Get total time spent loading keystores.
+     *
+     * @return time in nanoseconds
+     * @since 1.8
+     */
+    public long getKeyStoreLoadNanos() {
+        return keyStoreLoadNanos.get();
+    }
+
+    /**
+     * Get amount of full handshakes.
+     *
+     * @return amount of full handshakes
+     * @since 1.8
+     */
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * Get amount of resumed handshakes.
+     *
+     * @return amount of resumed handshakes
+     * @since 1.8
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Get duration of the last handshake.
+     *
+     * @return time in nanoseconds
+     * @since 1.8
+     */
+    public long getLastHandshakeNanos() {
+        return lastHandshakeNanos.get();
+    }
+
+    /**
+     * Get total time spent in handshakes.
+     *
+     * @return time in nanoseconds
+     * @since 1.8
+     */
+    public long getTotalHandshakeNanos() {
+        return totalHandshakeNanos.get();
+    }
+
+    /**
+     * Get summary of the statistics.
+     *
+     * @return the summary
+     * @since 1.8
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "keystore load %d ms, last handshake %d ms, %d full, %d resumed",
+                TimeUnit.NANOSECONDS.toMillis(getKeyStoreLoadNanos()),
+                TimeUnit.NANOSECONDS.toMillis(getLastHandshakeNanos()),
+                getFullHandshakes(),
+                getResumedHandshakes());
+    }
+}
@@ -0,0 +1,167 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+/**
+ * Sends volume changes from a slider at a limited rate, latest value wins.
+ * <p>
+ * The first change after a quiet period is sent right away. Changes within
+ * the minimum interval after a send only replace the pending value, which is
+ * sent once the interval has passed, so the last value of a drag is always
+ * sent. Volume updates from the server are ignored while the user is
+ * dragging and for {@link #ECHO_GRACE_MILLIS} after the last send, as they
+ * are mostly echoes of values already passed and would make the slider jump.
+ * <p>
+ * Not thread safe, meant to be used from the thread the {@link Scheduler}
+ * runs tasks on.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class VolumeChannel {
+    public static final long ECHO_GRACE_MILLIS = 500;
+
+    private final MessageSender messageSender;
+    private final Scheduler scheduler;
+    private final long minIntervalMillis;
+    private final Runnable trailingSend = this::sendPending;
+
+    private boolean hasSent = false;
+    private long lastSendMillis;
+    private float lastSentVolume;
+    private boolean pending = false;
+    private float pendingVolume;
+    private boolean scheduled = false;
+    private boolean dragging = false;
+
+    /**
+     * Creates channel sending at most given amount of volume changes per second.
+     *
+     * @param messageSender     sender to send to, nothing is sent if null
+     * @param scheduler         scheduler of the trailing sends
+     * @param maxSendsPerSecond highest rate to send at
+     * @since 1.8
+     */
+    public VolumeChannel(MessageSender messageSender, Scheduler scheduler, int maxSendsPerSecond) {
+        this.messageSender = messageSender;
+        this.scheduler = scheduler;
+        this.minIntervalMillis = 1000 / Math.max(1, maxSendsPerSecond);
+    }
+
+    /**
+     * Sets the volume chosen by the user.
+     *
+     * @param volume volume between 0 and 100
+     * @since 1.8
+     */
+    public void setVolume(float volume) {
+        pendingVolume = volume;
+        pending = true;
+
+        if (scheduled) {
+            return;
+        }
+
+        long sinceLastSend = scheduler.uptimeMillis() - lastSendMillis;
+
+        if (!hasSent || sinceLastSend >= minIntervalMillis) {
+            sendPending();
+        } else {
+            scheduled = true;
+            scheduler.postDelayed(trailingSend, minIntervalMillis - sinceLastSend);
+        }
+    }
+
+    /**
+     * Marks the user as dragging, server updates are ignored until
+     * {@link #onDragEnd()}.
+     *
+     * @since 1.8
+     */
+    public void onDragStart() {
+        dragging = true;
+    }
+
+    /**
+     * Marks the user as done dragging.
+     *
+     * @since 1.8
+     */
+    public void onDragEnd() {
+        dragging = false;
+    }
+
+    /**
+     * Get if a volume update from the server should be shown.
+     *
+     * @param volume volume between 0 and 100 reported by the server
+     * @return true to show the update, false if it is likely an echo
+     * @since 1.8
+     */
+    public boolean shouldApplyRemoteVolume(float volume) {
+        if (dragging || pending) {
+            return false;
+        }
+
+        if (!hasSent || scheduler.uptimeMillis() - lastSendMillis >= ECHO_GRACE_MILLIS) {
+            return true;
+        }
+
+        // The echo of the value last sent moves the slider nowhere
+        return Math.abs(volume - lastSentVolume) < 0.5f;
+    }
+
+    /**
+     * Drops the pending value without sending it.
+     *
+     * @since 1.8
+     */
+    public void cancel() {
+        if (scheduled) {
+            scheduler.removeCallbacks(trailingSend);
+            scheduled = false;
+        }
+
+        pending = false;
+    }
+
+    private void sendPending() {
+        scheduled = false;
+
+        if (!pending) {
+            return;
+        }
+
+        pending = false;
+
+        // Drags within one step end on the value already sent
+        if (hasSent && pendingVolume == lastSentVolume) {
+            return;
+        }
+
+        hasSent = true;
+        lastSendMillis = scheduler.uptimeMillis();
+        lastSentVolume = pendingVolume;
+
+        if (messageSender != null) {
+            messageSender.sendMessage(new Message(MessageType.ACTION_SET_VOLUME, pendingVolume));
+        }
+    }
+
+    /**
+     * Runs the trailing sends, on the main thread in the app and on a
+     * virtual clock in tests.
+     *
+     * @since 1.8
+     */
+    public interface Scheduler {
+        long uptimeMillis();
+
+        void postDelayed(Runnable task, long delayMillis);
+
+        void removeCallbacks(Runnable task);
+    }
+}
@@ -8,10 +8,13 @@ import android.view.View;
 import androidx.activity.OnBackPressedCallback;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
+import androidx.preference.PreferenceManager;
 
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.tabs.TabLayout;
 import com.konradrej.rcpc.R;
+import com.konradrej.rcpc.client.Network.SendQueueStatistics;
 import com.konradrej.rcpc.databinding.ActivityRemoteControlBinding;
 
 import java.util.ArrayList;
@@ -22,7 +25,7 @@ import java.util.List;
  *
  * @author Konrad Rej
  * @author www.konradrej.com
- * @version 1.3
+ * @version 1.4
  * @since 1.0
  */
 public class RemoteControlActivity extends AppCompatActivity {
@@ -31,6 +34,7 @@ public class RemoteControlActivity extends AppCompatActivity {
     private final ConnectionHandler connectionHandler = ConnectionHandler.getInstance();
     private ActivityRemoteControlBinding binding;
     private View view;
+    private Snackbar reconnectingSnackbar = null;
     private boolean endRemoteControl;
 
     private final ConnectionHandler.onNetworkEventListener networkEventListener =
@@ -66,8 +70,52 @@ public class RemoteControlActivity extends AppCompatActivity {
                         }
                     });
                 }
+
+                @Override
+                public void onReconnecting() {
+                    runOnUiThread(() -> {
+                        if (!endRemoteControl) {
+                            reconnectingSnackbar = Snackbar.make(view, getString(R.string.reconnecting_message), Snackbar.LENGTH_INDEFINITE);
+                            reconnectingSnackbar.show();
+                        }
+                    });
+                }
+
+                @Override
+                public void onReconnected() {
+                    runOnUiThread(() -> {
+                        if (reconnectingSnackbar != null) {
+                            reconnectingSnackbar.dismiss();
+                            reconnectingSnackbar = null;
+                        }
+                    });
+                }
             };
 
+    private final ConnectionHandler.onLatencyListener latencyListener = (roundTripHistogram, sendDelayHistogram) -> {
+        String latencyText = String.format(getString(R.string.latency_overlay),
+                toMillis(roundTripHistogram.getPercentile(50)),
+                toMillis(roundTripHistogram.getPercentile(95)),
+                toMillis(roundTripHistogram.getPercentile(99)),
+                toMillis(roundTripHistogram.getMax()),
+                toMillis(sendDelayHistogram.getPercentile(50)),
+                toMillis(sendDelayHistogram.getPercentile(95)),
+                toMillis(sendDelayHistogram.getPercentile(99)),
+                toMillis(sendDelayHistogram.getMax()));
+
+        SendQueueStatistics sendQueueStatistics = connectionHandler.getSendQueueStatistics();
+        if (sendQueueStatistics != null) {
+            latencyText += "\n" + String.format(getString(R.string.send_queue_overlay),
+                    sendQueueStatistics.getControlDepth(),
+                    sendQueueStatistics.getMotionDepth(),
+                    sendQueueStatistics.getMaxMotionDepth(),
+                    sendQueueStatistics.getMergedMotion(),
+                    sendQueueStatistics.getDroppedMotion());
+        }
+
+        binding.latencyOverlay.setText(latencyText);
+    };
+
     /**
      * Setups the activities view and interaction.
      *
@@ -99,6 +147,7 @@ public class RemoteControlActivity extends AppCompatActivity {
         setupFragments(savedInstanceState);
         setupErrorHandling();
         setupNavigation();
+        setupLatencyOverlay();
     }
 
     /**
@@ -111,6 +160,7 @@ public class RemoteControlActivity extends AppCompatActivity {
         super.onDestroy();
 
         connectionHandler.removeNetworkEventCallback(networkEventListener);
+        connectionHandler.removeLatencyCallback(latencyListener);
     }
 
     /**
@@ -157,6 +207,17 @@ public class RemoteControlActivity extends AppCompatActivity {
         connectionHandler.addNetworkEventCallback(networkEventListener);
     }
 
+    private void setupLatencyOverlay() {
+        if (PreferenceManager.getDefaultSharedPreferences(this).getBoolean("show_latency_overlay", false)) {
+            binding.latencyOverlay.setVisibility(View.VISIBLE);
+            connectionHandler.addLatencyCallback(latencyListener, ConnectionHandler.Delivery.MAIN_THREAD);
+        }
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+
     private void setupNavigation() {
         binding.topAppBar.setNavigationOnClickListener((event) ->
                 endRemoteControl());
@@ -1,19 +1,94 @@
 package com.konradrej.rcpc.client.Room;
 
+import android.content.Context;
+
+import androidx.annotation.NonNull;
 import androidx.room.Database;
+import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import com.konradrej.rcpc.client.Room.DAO.ConnectionDAO;
+import com.konradrej.rcpc.client.Room.DAO.DiscoveredServerDAO;
 import com.konradrej.rcpc.client.Room.Entity.Connection;
+import com.konradrej.rcpc.client.Room.Entity.DiscoveredServer;
 
 /**
  * Represents the application database.
  *
  * @author Konrad Rej
  * @author www.konradrej.com
- * @version 1.0
+ * @version 1.2
  */
-@Database(entities = {Connection.class}, version = 1)
+@Database(entities = {Connection.class, DiscoveredServer.class}, version = 3)
 public abstract class AppDatabase extends RoomDatabase {
+    private static final String DATABASE_NAME = "RCPCStorage";
+    private static AppDatabase singleInstance = null;
+
+    /**
+     * Adds the discovered server table.
+     *
+     * @since 1.8
+     */
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `discovered_server` (`service_name` TEXT NOT NULL, " +
+                    "`host_name` TEXT, `address` TEXT, `port` INTEGER NOT NULL, `last_seen` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`service_name`))");
+        }
+    };
+
+    /**
+     * Aggregates the connection log into one entry per endpoint, all
+     * connected to on the default port before ports were recorded.
+     *
+     * @since 1.8
+     */
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `Connection_new` (`uid` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`ip` TEXT NOT NULL, `port` INTEGER NOT NULL, `connect_count` INTEGER NOT NULL, " +
+                    "`last_connected` INTEGER NOT NULL, `average_handshake_millis` REAL)");
+            database.execSQL("INSERT INTO `Connection_new` (`ip`, `port`, `connect_count`, `last_connected`) " +
+                    "SELECT `ip`, 666, COUNT(*), MAX(`connect_timestamp`) FROM `Connection` " +
+                    "WHERE `ip` IS NOT NULL GROUP BY `ip`");
+            database.execSQL("DROP TABLE `Connection`");
+            database.execSQL("ALTER TABLE `Connection_new` RENAME TO `Connection`");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_Connection_ip_port` ON `Connection` (`ip`, `port`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_Connection_last_connected` ON `Connection` (`last_connected`)");
+        }
+    };
+
+    /**
+     * Every migration, to add when building the database.
+     *
+     * @since 1.8
+     */
+    public static final Migration[] MIGRATIONS = {MIGRATION_1_2, MIGRATION_2_3};
+
+    /**
+     * Creates the database if it does not exist yet and returns it. It lives
+     * as long as the application and runs queries on Room's own executor,
+     * so activities never have to keep an executor alive for it.
+     *
+     * @param context any context, its application context is used
+     * @return singleton instance of AppDatabase
+     * @since 1.8
+     */
+    public static synchronized AppDatabase getInstance(Context context) {
+        if (singleInstance == null) {
+            singleInstance = Room.databaseBuilder(context.getApplicationContext(), AppDatabase.class, DATABASE_NAME)
+                    .addMigrations(MIGRATIONS)
+                    .build();
+        }
+
+        return singleInstance;
+    }
+
     public abstract ConnectionDAO connectionDAO();
+
+    public abstract DiscoveredServerDAO discoveredServerDAO();
 }
@@ -1,26 +1,89 @@
 package com.konradrej.rcpc.client.Room.DAO;
 
+import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 
 import com.konradrej.rcpc.client.Room.Entity.Connection;
 
 import java.util.List;
 
 /**
- * Represents a connection entity data access object.
+ * Represents a connection entity data access object. Connections are
+ * aggregated per endpoint, connecting again updates the existing entry.
  *
  * @author Konrad Rej
  * @author www.konradrej.com
- * @version 1.0
+ * @version 1.2
  */
 @Dao
-public interface ConnectionDAO {
+public abstract class ConnectionDAO {
+    public static final int HANDSHAKE_AVERAGE_WINDOW = 8;
 
-    @Query("SELECT * FROM connection ORDER BY connect_timestamp DESC LIMIT :limit")
-    List<Connection> getLimitedAmount(int limit);
+    @Query("SELECT * FROM connection ORDER BY last_connected DESC LIMIT :limit")
+    public abstract List<Connection> getLimitedAmount(int limit);
 
-    @Insert
-    void insert(Connection connection);
+    /**
+     * Observes the most recently connected entries, updated after every
+     * change to the table.
+     *
+     * @param limit amount of entries
+     * @return entries, most recently connected first
+     * @since 1.8
+     */
+    @Query("SELECT * FROM connection ORDER BY last_connected DESC LIMIT :limit")
+    public abstract LiveData<List<Connection>> observeLimitedAmount(int limit);
+
+    /**
+     * Records a connection to given endpoint, adding it or updating its
+     * count, time and average handshake time. The average is the mean of
+     * the first {@link #HANDSHAKE_AVERAGE_WINDOW} handshakes, after that it
+     * follows recent ones as TCP's smoothed round trip time does.
+     *
+     * @param ip              ip connected to
+     * @param port            port connected to
+     * @param connectedMillis time connected
+     * @param handshakeMillis duration of the TLS handshake
+     * @since 1.8
+     */
+    @Transaction
+    public void upsert(String ip, int port, long connectedMillis, double handshakeMillis) {
+        if (updateConnected(ip, port, connectedMillis, handshakeMillis) > 0) {
+            return;
+        }
+
+        Connection connection = new Connection();
+        connection.ip = ip;
+        connection.port = port;
+        connection.connectCount = 1;
+        connection.lastConnected = connectedMillis;
+        connection.averageHandshakeMillis = handshakeMillis;
+
+        insert(connection);
+    }
+
+    /**
+     * Deletes all but the most recently connected entries.
+     *
+     * @param limit amount of entries to keep
+     * @return amount of entries deleted
+     * @since 1.8
+     */
+    @Query("DELETE FROM connection WHERE uid NOT IN " +
+            "(SELECT uid FROM connection ORDER BY last_connected DESC LIMIT :limit)")
+    public abstract int prune(int limit);
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    abstract long insert(Connection connection);
+
+    // Right hand sides see the old row, so the weight is over the new count
+    @Query("UPDATE connection SET connect_count = connect_count + 1, last_connected = :connectedMillis, " +
+            "average_handshake_millis = CASE WHEN average_handshake_millis IS NULL THEN :handshakeMillis " +
+            "ELSE average_handshake_millis + (:handshakeMillis - average_handshake_millis) / " +
+            "MIN(connect_count + 1, " + HANDSHAKE_AVERAGE_WINDOW + ") END " +
+            "WHERE ip = :ip AND port = :port")
+    abstract int updateConnected(String ip, int port, long connectedMillis, double handshakeMillis);
 }
@@ -0,0 +1,34 @@
+package com.konradrej.rcpc.client.Room.DAO;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.konradrej.rcpc.client.Room.Entity.DiscoveredServer;
+
+import java.util.List;
+
+/**
+ * Represents a discovered server entity data access object.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+@Dao
+public interface DiscoveredServerDAO {
+
+    @Query("SELECT * FROM discovered_server ORDER BY last_seen DESC")
+    List<DiscoveredServer> getAll();
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(DiscoveredServer discoveredServer);
+
+    @Query("UPDATE discovered_server SET last_seen = :lastSeen WHERE service_name = :serviceName")
+    void updateLastSeen(String serviceName, long lastSeen);
+
+    @Query("DELETE FROM discovered_server WHERE last_seen < :timestamp")
+    int deleteLastSeenBefore(long timestamp);
+}
@@ -1,24 +1,38 @@
 package com.konradrej.rcpc.client.Room.Entity;
 
+import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 /**
- * Represents a connection entity.
+ * Represents a connection entity, one per endpoint connected to with how
+ * often and when it was last connected to.
  *
  * @author Konrad Rej
  * @author www.konradrej.com
- * @version 1.0
+ * @version 1.1
  */
-@Entity
+@Entity(indices = {@Index(value = {"ip", "port"}, unique = true), @Index("last_connected")})
 public class Connection {
     @PrimaryKey(autoGenerate = true)
     public long uid;
 
+    @NonNull
     @ColumnInfo(name = "ip")
-    public String ip;
+    public String ip = "";
 
-    @ColumnInfo(name = "connect_timestamp")
-    public long connectTimestamp;
+    @ColumnInfo(name = "port")
+    public int port;
+
+    @ColumnInfo(name = "connect_count")
+    public int connectCount;
+
+    @ColumnInfo(name = "last_connected")
+    public long lastConnected;
+
+    // Null for connections recorded before handshakes were timed
+    @ColumnInfo(name = "average_handshake_millis")
+    public Double averageHandshakeMillis;
 }
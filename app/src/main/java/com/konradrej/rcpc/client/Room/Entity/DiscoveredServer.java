@@ -0,0 +1,35 @@
+package com.konradrej.rcpc.client.Room.Entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Represents a server found by service discovery, kept to list it before
+ * discovery finds it again.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+@Entity(tableName = "discovered_server")
+public class DiscoveredServer {
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "service_name")
+    public String serviceName = "";
+
+    @ColumnInfo(name = "host_name")
+    public String hostName;
+
+    @ColumnInfo(name = "address")
+    public String address;
+
+    @ColumnInfo(name = "port")
+    public int port;
+
+    @ColumnInfo(name = "last_seen")
+    public long lastSeen;
+}
@@ -1,49 +1,83 @@
 package com.konradrej.rcpc.client;
 
-import android.annotation.SuppressLint;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.nsd.NsdServiceInfo;
 import android.os.Bundle;
 import android.text.Editable;
 import android.util.Patterns;
-import android.view.LayoutInflater;
 import android.view.View;
-import android.widget.Button;
-import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.LiveData;
 import androidx.preference.PreferenceManager;
-import androidx.room.Room;
+import androidx.recyclerview.widget.ConcatAdapter;
+import androidx.recyclerview.widget.LinearLayoutManager;
 
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.konradrej.rcpc.R;
 import com.konradrej.rcpc.client.Room.AppDatabase;
 import com.konradrej.rcpc.client.Room.DAO.ConnectionDAO;
+import com.konradrej.rcpc.client.Room.DAO.DiscoveredServerDAO;
 import com.konradrej.rcpc.client.Room.Entity.Connection;
+import com.konradrej.rcpc.client.Room.Entity.DiscoveredServer;
+import com.konradrej.rcpc.client.View.ConnectionHistoryAdapter;
+import com.konradrej.rcpc.client.View.NearbyServerAdapter;
+import com.konradrej.rcpc.client.View.SectionHeaderAdapter;
 import com.konradrej.rcpc.databinding.ActivityServerSelectBinding;
 
-import java.text.DateFormat;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents the server selection activity.
+ * <p>
+ * Servers found by service discovery are stored, and listed as last seen
+ * right away on the next start. Discovery then confirms them or adds new
+ * ones, and servers not seen for {@link #DISCOVERED_SERVER_EXPIRY_MILLIS}
+ * are dropped. A server is connected to on the address discovery reports
+ * and the stored one at once, whichever answers first is used.
+ * <p>
+ * The database and the discovery state are confined to a single
+ * background executor, which publishes immutable lists to the recycled
+ * server list. The connection history is observed from the database.
  *
  * @author Konrad Rej
  * @author www.konradrej.com
- * @version 1.6
+ * @version 1.9
  * @since 1.0
  */
 public class ServerSelectActivity extends AppCompatActivity {
     private static final String TAG = "ServerSelectActivity";
+    private static final long DISCOVERED_SERVER_EXPIRY_MILLIS = TimeUnit.DAYS.toMillis(7);
 
-    private final Set<String> currentServers = new HashSet<>();
     private final ConnectionHandler connectionHandler = ConnectionHandler.getInstance();
-    private final Map<String, View> nearbyServers = new HashMap<>();
+    // Runs this activity's database work and list diffs and owns the discovery state below, in the order it was reported
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    // Listed servers by service name, only used on the background executor
+    private final Map<String, NearbyServerAdapter.NearbyServer> nearbyServers = new LinkedHashMap<>();
+    // Endpoints last stored for discovered servers, only used on the background executor
+    private final Map<String, InetSocketAddress> storedEndpoints = new HashMap<>();
+    private final SectionHeaderAdapter nearbyServerHeaderAdapter = new SectionHeaderAdapter(
+            R.string.nearby_servers_title, R.string.nearby_servers_no_servers_found);
+    private final SectionHeaderAdapter connectionHistoryHeaderAdapter = new SectionHeaderAdapter(
+            R.string.connection_history_title, R.string.connection_history_no_items_found);
+    private final NearbyServerAdapter nearbyServerAdapter = new NearbyServerAdapter(
+            (nearbyServer) -> connectToServer(nearbyServer.getEndpoints()), backgroundExecutor);
+    private final ConnectionHistoryAdapter connectionHistoryAdapter = new ConnectionHistoryAdapter(
+            (connection) -> connectToServer(Collections.singletonList(
+                    InetSocketAddress.createUnresolved(connection.ip, connection.port))), backgroundExecutor);
+    private LiveData<List<Connection>> connectionHistory = null;
+    private int connectionHistoryAmount = 0;
     private ActivityServerSelectBinding binding;
     private View view;
     private SharedPreferences sharedPreferences;
@@ -93,9 +127,15 @@ public class ServerSelectActivity extends AppCompatActivity {
                 @Override
                 public void onError(Exception e) {
                 }
+
+                @Override
+                public void onReconnecting() {
+                }
+
+                @Override
+                public void onReconnected() {
+                }
             };
-    private LayoutInflater layoutInflater;
-    private View nearbyServerNoContent = null;
 
     /**
      * Setups the activities view and interaction.
@@ -108,22 +148,26 @@ public class ServerSelectActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         binding = ActivityServerSelectBinding.inflate(getLayoutInflater());
         view = binding.getRoot();
-        layoutInflater = (LayoutInflater) getSystemService(LAYOUT_INFLATER_SERVICE);
         setContentView(view);
 
         sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-        nearbyServerNoContent = findViewById(R.id.nearbyServerNoContent);
         connectionHandler.setSharedPreferences(sharedPreferences);
         connectionHandler.setContext(getBaseContext());
+        connectionHandler.prewarm();
+
+        binding.serverList.setLayoutManager(new LinearLayoutManager(this));
+        binding.serverList.setAdapter(new ConcatAdapter(nearbyServerHeaderAdapter, nearbyServerAdapter,
+                connectionHistoryHeaderAdapter, connectionHistoryAdapter));
+
+        // Observed queries run on the database's executor, other database work on the background executor
+        db = AppDatabase.getInstance(this);
+        populateDiscoveredServers();
+        observeConnectionHistory();
 
         // Start searching for services offering rcpc host and register listener
         ServiceClientHandler.setServiceListener(new ServiceListener());
         ServiceClientHandler.start(getApplicationContext());
 
-        // Create/get database
-        db = Room.databaseBuilder(getApplicationContext(), AppDatabase.class, "RCPCStorage").build();
-        populateConnectionHistory();
-
         binding.topAppBar.setOnMenuItemClickListener((menuItem) -> {
             startActivity(new Intent(this, SettingsActivity.class));
 
@@ -171,6 +215,8 @@ public class ServerSelectActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
 
+        // The amount may have been changed in the settings
+        observeConnectionHistory();
         ServiceClientHandler.start(getApplicationContext());
     }
 
@@ -183,7 +229,9 @@ public class ServerSelectActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         ServiceClientHandler.stop();
+        ServiceClientHandler.setServiceListener(null);
         connectionHandler.removeNetworkEventCallback(networkEventListener);
+        backgroundExecutor.shutdown();
 
         super.onDestroy();
     }
@@ -194,100 +242,155 @@ public class ServerSelectActivity extends AppCompatActivity {
         connectionHandler.connectToServer(ip, networkEventListener);
     }
 
+    private void connectToServer(List<InetSocketAddress> endpoints) {
+        binding.connectionStatusIndicator.show();
+
+        connectionHandler.connectToServer(endpoints, networkEventListener);
+    }
+
     private void addConnectionToHistory() {
-        new Thread(() -> {
+        String ip = connectionHandler.getIP();
+        int port = connectionHandler.getPort();
+        double handshakeMillis = connectionHandler.getHandshakeNanos() / 1e6;
+
+        executeInBackground(() -> {
             ConnectionDAO connectionDAO = db.connectionDAO();
 
-            Connection connection = new Connection();
-            connection.ip = connectionHandler.getIP();
-            connection.connectTimestamp = System.currentTimeMillis();
+            connectionDAO.upsert(ip, port, System.currentTimeMillis(), handshakeMillis);
+            // Only the shown entries are kept, endpoints past them are forgotten
+            connectionDAO.prune(getHistoryEntriesAmount());
+        });
+    }
 
-            connectionDAO.insert(connection);
-        }).start();
+    private int getHistoryEntriesAmount() {
+        return Integer.parseInt(sharedPreferences.getString("connection_history_entries_amount", "15"));
     }
 
-    private void populateConnectionHistory() {
-        new Thread(() -> {
-            ConnectionDAO connectionDAO = db.connectionDAO();
+    // Inserts and updates reach the list as a diff, only changed rows are rebound
+    private void observeConnectionHistory() {
+        int entriesAmount = getHistoryEntriesAmount();
+
+        if (connectionHistory != null && entriesAmount == connectionHistoryAmount) {
+            return;
+        }
 
-            int entriesAmount = Integer.parseInt(sharedPreferences.getString("connection_history_entries_amount", "15"));
-            List<Connection> connections = connectionDAO.getLimitedAmount(entriesAmount);
+        if (connectionHistory != null) {
+            connectionHistory.removeObservers(this);
+        }
 
-            if (connections.size() > 0) {
-                runOnUiThread(() ->
-                        binding.connectionHistoryContainer.removeAllViews());
-            }
+        connectionHistoryAmount = entriesAmount;
+        connectionHistory = db.connectionDAO().observeLimitedAmount(entriesAmount);
+        connectionHistory.observe(this, (connections) -> {
+            connectionHistoryAdapter.submitList(connections);
+            connectionHistoryHeaderAdapter.setEmpty(connections.isEmpty());
+        });
+    }
+
+    private void populateDiscoveredServers() {
+        executeInBackground(() -> {
+            DiscoveredServerDAO discoveredServerDAO = db.discoveredServerDAO();
 
-            for (Connection connection : connections) {
-                @SuppressLint("InflateParams")
-                View childLayout = layoutInflater.inflate(R.layout.connection_history_item, null);
+            discoveredServerDAO.deleteLastSeenBefore(System.currentTimeMillis() - DISCOVERED_SERVER_EXPIRY_MILLIS);
 
-                TextView addressView = childLayout.findViewById(R.id.addressView);
-                addressView.setText(String.format(getString(R.string.connection_history_address_label), connection.ip));
+            for (DiscoveredServer discoveredServer : discoveredServerDAO.getAll()) {
+                InetSocketAddress storedEndpoint = getStoredEndpoint(discoveredServer);
 
-                String dateTime = DateFormat.getDateTimeInstance(DateFormat.LONG, DateFormat.SHORT).format(connection.connectTimestamp);
-                TextView dateView = childLayout.findViewById(R.id.dateView);
-                dateView.setText(String.format(getString(R.string.connection_history_date_label), dateTime));
+                // Nothing to connect to without an address
+                if (storedEndpoint == null) {
+                    continue;
+                }
 
-                Button connectButton = childLayout.findViewById(R.id.connectButton);
-                connectButton.setOnClickListener((event) ->
-                        connectToServer(connection.ip));
+                storedEndpoints.put(discoveredServer.serviceName, storedEndpoint);
 
-                runOnUiThread(() ->
-                        binding.connectionHistoryContainer.addView(childLayout));
+                // Discovery may have been quicker than the database
+                if (!nearbyServers.containsKey(discoveredServer.serviceName)) {
+                    nearbyServers.put(discoveredServer.serviceName, new NearbyServerAdapter.NearbyServer(
+                            discoveredServer.serviceName, discoveredServer.hostName,
+                            Collections.singletonList(storedEndpoint), discoveredServer.lastSeen));
+                }
             }
-        }).start();
+
+            publishNearbyServers();
+        });
     }
 
-    // TODO make connectToServer take port parameter and get it from serviceInfo
     private void addNearbyServer(NsdServiceInfo serviceInfo) {
-        if (currentServers.contains(serviceInfo.getServiceName())) {
-            return;
-        }
+        executeInBackground(() -> {
+            DiscoveredServer discoveredServer = new DiscoveredServer();
+            discoveredServer.serviceName = serviceInfo.getServiceName();
+            discoveredServer.hostName = serviceInfo.getHost().getHostName();
+            discoveredServer.address = serviceInfo.getHost().getHostAddress();
+            discoveredServer.port = serviceInfo.getPort();
+            discoveredServer.lastSeen = System.currentTimeMillis();
+
+            db.discoveredServerDAO().upsert(discoveredServer);
+
+            List<InetSocketAddress> endpoints = new ArrayList<>();
+            endpoints.add(new InetSocketAddress(serviceInfo.getHost(), serviceInfo.getPort()));
+
+            // The server may have moved, the address it had last time is tried alongside
+            InetSocketAddress storedEndpoint = storedEndpoints.get(discoveredServer.serviceName);
+            if (storedEndpoint != null && !(storedEndpoint.getHostString().equals(discoveredServer.address) &&
+                    storedEndpoint.getPort() == discoveredServer.port)) {
+                endpoints.add(storedEndpoint);
+            }
+            // Kept in step with the upsert, a later resolve falls back to this address
+            storedEndpoints.put(discoveredServer.serviceName, getStoredEndpoint(discoveredServer));
 
-        currentServers.add(serviceInfo.getServiceName());
-        String serverName = serviceInfo.getHost().getHostName();
-        String serverAddress = serviceInfo.getHost().getHostAddress();
-        String serviceName = serviceInfo.getServiceName();
+            nearbyServers.put(discoveredServer.serviceName, new NearbyServerAdapter.NearbyServer(
+                    discoveredServer.serviceName, discoveredServer.hostName, endpoints, 0));
+            publishNearbyServers();
+        });
+    }
 
-        runOnUiThread(() -> {
-            if (nearbyServerNoContent != null) {
-                binding.nearbyServersContainer.removeView(nearbyServerNoContent);
-            }
+    // Lost servers are kept listed as last seen, as on the next start
+    private void removeNearbyServer(NsdServiceInfo serviceInfo) {
+        String serviceName = serviceInfo.getServiceName();
+        long lastSeen = System.currentTimeMillis();
 
-            @SuppressLint("InflateParams")
-            View childLayout = layoutInflater.inflate(R.layout.nearby_servers_item, null);
+        executeInBackground(() -> {
+            db.discoveredServerDAO().updateLastSeen(serviceName, lastSeen);
 
-            TextView serverNameView = childLayout.findViewById(R.id.serverNameView);
-            serverNameView.setText(serverName);
+            NearbyServerAdapter.NearbyServer nearbyServer = nearbyServers.get(serviceName);
+            if (nearbyServer != null && nearbyServer.getLastSeen() == 0) {
+                nearbyServers.put(serviceName, nearbyServer.withLastSeen(lastSeen));
+                publishNearbyServers();
+            }
+        });
+    }
 
-            Button connectButton = childLayout.findViewById(R.id.connectButton);
-            connectButton.setOnClickListener((event) ->
-                    connectToServer(serverAddress));
+    // Called on the background executor, the adapter diffs the copy against the shown list
+    private void publishNearbyServers() {
+        List<NearbyServerAdapter.NearbyServer> servers = new ArrayList<>(nearbyServers.values());
 
-            binding.nearbyServersContainer.addView(childLayout);
+        runOnUiThread(() -> {
+            // Diffing would run on the background executor, which is shut down by then
+            if (isDestroyed()) {
+                return;
+            }
 
-            nearbyServers.put(serviceName, childLayout);
+            nearbyServerAdapter.submitList(servers);
+            nearbyServerHeaderAdapter.setEmpty(servers.isEmpty());
         });
     }
 
-    private void removeNearbyServer(NsdServiceInfo serviceInfo) {
-        View view = nearbyServers.remove(serviceInfo.getServiceName());
-        currentServers.remove(serviceInfo.getServiceName());
+    // Discovery and network callbacks may still arrive once destroyed
+    private void executeInBackground(Runnable runnable) {
+        try {
+            backgroundExecutor.execute(runnable);
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
 
-        if (view != null) {
-            runOnUiThread(() -> {
-                binding.nearbyServersContainer.removeView(view);
+    // Unresolved so a stored host name is never looked up on the UI thread, null without an address
+    private static InetSocketAddress getStoredEndpoint(DiscoveredServer discoveredServer) {
+        if (discoveredServer.address == null) {
+            return null;
+        }
 
-                if (binding.nearbyServersContainer.getChildCount() == 0) {
-                    TextView textView = new TextView(getBaseContext());
-                    textView.setText(getResources().getString(R.string.nearby_servers_no_servers_found));
-                    textView.setId(R.id.nearbyServerNoContent);
+        int port = discoveredServer.port > 0 ? discoveredServer.port : ConnectionHandler.DEFAULT_PORT;
 
-                    binding.nearbyServersContainer.addView(nearbyServerNoContent);
-                }
-            });
-        }
+        return InetSocketAddress.createUnresolved(discoveredServer.address, port);
     }
 
     private class ServiceListener implements ServiceClientHandler.ServiceListener {
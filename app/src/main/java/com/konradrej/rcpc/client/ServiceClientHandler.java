@@ -6,19 +6,29 @@ import android.net.nsd.NsdManager;
 import android.net.nsd.NsdServiceInfo;
 import android.util.Log;
 
+import com.konradrej.rcpc.client.Network.ServiceResolveQueue;
+
+import java.util.concurrent.Executors;
 
 /**
- * DNS service discovery handler.
+ * DNS service discovery handler. Found services are resolved one at a time
+ * through a {@link ServiceResolveQueue}, services resolved within the last
+ * {@link #RESOLVED_CACHE_TTL_MILLIS} are reported without resolving again.
  *
  * @author Konrad Rej
  * @author www.konradrej.com
- * @version 1.2
+ * @version 1.3
  */
 public class ServiceClientHandler {
     private static final String TAG = "ServiceClientHandler";
     private static final String SERVICE_TYPE = "_rcpc._tcp.";
-    private static final ServiceResolveListener resolveListener = new ServiceResolveListener();
-    private static ServiceListener serviceListener = null;
+    // Same as the TTL of mDNS host records
+    private static final long RESOLVED_CACHE_TTL_MILLIS = 120_000;
+    private static final long RESOLVE_TIMEOUT_MILLIS = 10_000;
+    private static final ServiceResolveQueue<NsdServiceInfo> resolveQueue = new ServiceResolveQueue<>(
+            new NsdResolver(), new ResolveQueueListener(), Executors.newSingleThreadScheduledExecutor(),
+            RESOLVED_CACHE_TTL_MILLIS, RESOLVE_TIMEOUT_MILLIS);
+    private static volatile ServiceListener serviceListener = null;
 
     private static ServiceDiscoveryListener discoveryListener = null;
     private static NsdManager nsdManager = null;
@@ -44,13 +54,16 @@ public class ServiceClientHandler {
     }
 
     /**
-     * Stop all service discovery.
+     * Stop all service discovery. Services waiting to be resolved are
+     * dropped, resolved ones stay cached.
      */
     public static void stop() {
         if (nsdManager != null && discoveryListener != null) {
             nsdManager.stopServiceDiscovery(discoveryListener);
             discoveryListener = null;
         }
+
+        resolveQueue.clear();
     }
 
     /**
@@ -63,7 +76,8 @@ public class ServiceClientHandler {
     }
 
     /**
-     * Listener interface for service found and lost events.
+     * Listener interface for service found and lost events, called on a
+     * background thread.
      */
     public interface ServiceListener {
         void onFound(NsdServiceInfo serviceInfo);
@@ -97,31 +111,54 @@ public class ServiceClientHandler {
         @Override
         public void onServiceFound(NsdServiceInfo serviceInfo) {
             Log.d(TAG, "Service discovery success" + serviceInfo);
-            nsdManager.resolveService(serviceInfo, resolveListener);
+            resolveQueue.enqueue(serviceInfo.getServiceName(), serviceInfo);
         }
 
         @Override
         public void onServiceLost(NsdServiceInfo serviceInfo) {
             Log.e(TAG, "Service lost: " + serviceInfo);
+            // Reported through the queue so it cannot overtake an earlier find
+            resolveQueue.remove(serviceInfo.getServiceName(), serviceInfo);
+        }
+    }
 
-            if (ServiceClientHandler.serviceListener != null) {
-                ServiceClientHandler.serviceListener.onLost(serviceInfo);
-            }
+    private static class NsdResolver implements ServiceResolveQueue.Resolver<NsdServiceInfo> {
+        @Override
+        public void resolve(NsdServiceInfo service, ServiceResolveQueue.Callback<NsdServiceInfo> callback) {
+            // A resolve listener cannot be reused while in use, one per resolve
+            nsdManager.resolveService(service, new NsdManager.ResolveListener() {
+                @Override
+                public void onResolveFailed(NsdServiceInfo serviceInfo, int errorCode) {
+                    Log.w(TAG, "Service resolve failed:\n Error code: " + errorCode + "\n Service info: " + serviceInfo);
+                    callback.onFailed(errorCode);
+                }
+
+                @Override
+                public void onServiceResolved(NsdServiceInfo serviceInfo) {
+                    Log.d(TAG, "Service resolved: " + serviceInfo);
+                    callback.onResolved(serviceInfo);
+                }
+            });
         }
     }
 
-    private static class ServiceResolveListener implements NsdManager.ResolveListener {
+    private static class ResolveQueueListener implements ServiceResolveQueue.Listener<NsdServiceInfo> {
         @Override
-        public void onResolveFailed(NsdServiceInfo serviceInfo, int errorCode) {
-            Log.e(TAG, "Service resolve failed:\n Error code: " + errorCode + "\n Service info: " + serviceInfo);
+        public void onResolved(String serviceName, NsdServiceInfo resolved) {
+            if (ServiceClientHandler.serviceListener != null) {
+                ServiceClientHandler.serviceListener.onFound(resolved);
+            }
         }
 
         @Override
-        public void onServiceResolved(NsdServiceInfo serviceInfo) {
-            Log.d(TAG, "Service resolved: " + serviceInfo);
+        public void onResolveFailed(String serviceName, int errorCode) {
+            Log.e(TAG, "Service resolve gave up:\n Error code: " + errorCode + "\n Service name: " + serviceName);
+        }
 
+        @Override
+        public void onLost(String serviceName, NsdServiceInfo service) {
             if (ServiceClientHandler.serviceListener != null) {
-                ServiceClientHandler.serviceListener.onFound(serviceInfo);
+                ServiceClientHandler.serviceListener.onLost(service);
             }
         }
     }
@@ -2,6 +2,10 @@ package com.konradrej.rcpc.client;
 
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -12,27 +16,46 @@ import androidx.preference.PreferenceManager;
 import androidx.transition.Transition;
 
 import com.google.android.material.transition.MaterialSharedAxis;
-import com.konradrej.rcpc.client.View.TouchPadView;
+import com.konradrej.rcpc.client.Input.FlingScroller;
+import com.konradrej.rcpc.client.Input.MotionPredictor;
+import com.konradrej.rcpc.client.Input.PointerAcceleration;
+import com.konradrej.rcpc.client.Input.TouchPadController;
+import com.konradrej.rcpc.client.View.ScrollBarView;
+import com.konradrej.rcpc.client.View.TouchTraceWriter;
 import com.konradrej.rcpc.core.network.Message;
 import com.konradrej.rcpc.core.network.MessageType;
 import com.konradrej.rcpc.databinding.FragmentTouchPadBinding;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Represents a {@link Fragment} containing a touchpad and relevant controls.
+ * Touchpad gestures are interpreted and sent on a dedicated input thread.
  *
  * @author Konrad Rej
  * @author www.konradrej.com
- * @version 1.2
+ * @version 1.5
  * @since 1.0
  */
 public class TouchPadFragment extends Fragment {
+    private static final String TAG = "TouchPadFragment";
 
     private FragmentTouchPadBinding binding;
     private SharedPreferences sharedPreferences;
     private ConnectionHandler connectionHandler;
+    private PointerAcceleration pointerAcceleration;
+    private FlingScroller flingScroller = null;
+    private MotionPredictor motionPredictor = null;
+    private TouchTraceWriter touchTraceWriter = null;
+    private HandlerThread inputThread = null;
+    private Handler inputHandler = null;
 
     /**
      * Required empty constructor.
@@ -91,6 +114,22 @@ public class TouchPadFragment extends Fragment {
             binding.buttonContainer.setLayoutDirection(View.LAYOUT_DIRECTION_RTL);
         }
 
+        // Pointer speed is stored in tenths
+        pointerAcceleration = new PointerAcceleration(
+                PointerAcceleration.Curve.fromPreferenceValue(sharedPreferences.getString("pointer_acceleration", "sigmoid")),
+                sharedPreferences.getInt("pointer_speed", 10) / 10f);
+
+        if (sharedPreferences.getBoolean("motion_prediction", false)) {
+            motionPredictor = new MotionPredictor();
+        }
+
+        // Flings tick on their own thread so scrolling continues smoothly while the UI is busy
+        if (sharedPreferences.getBoolean("inertial_scrolling", true)) {
+            flingScroller = new FlingScroller(Executors.newSingleThreadScheduledExecutor(),
+                    sharedPreferences.getInt("inertial_scrolling_friction", 4),
+                    (distanceX, distanceY) -> sendMotion(MessageType.ACTION_SCROLL, distanceX, distanceY));
+        }
+
         setupTouchPad();
         setupScrollBar();
         setupButtons();
@@ -99,91 +138,99 @@ public class TouchPadFragment extends Fragment {
     }
 
     /**
-     * Resets binding on view destroy.
+     * Resets binding, stops the input thread and flinging and ends trace
+     * recording on view destroy.
      *
      * @since 1.0
      */
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+
+        // Nothing may be handed to the input thread once it quits
+        binding.touchPadArea.setInputExecutor(null);
+        binding.touchPadArea.setOnTouchPadEventListener(null);
         binding = null;
-    }
 
-    private void setupTouchPad() {
-        binding.touchPadArea.setOnTouchPadEventListener(new TouchPadView.OnTouchPadEventListener() {
-            @Override
-            public void onMove(float distanceX, float distanceY) {
-                Map<String, Object> additionalData = new HashMap<>();
-                additionalData.put("distanceX", distanceX);
-                additionalData.put("distanceY", distanceY);
+        // Events still queued may start a fling, so the scroller is shut down after them
+        if (flingScroller != null) {
+            inputHandler.post(flingScroller::shutdown);
+            flingScroller = null;
+        }
 
-                Message message = new Message(MessageType.ACTION_MOVE, null, additionalData);
+        inputThread.quitSafely();
+        inputThread = null;
+        inputHandler = null;
 
-                sendMessage(message);
+        stopTouchTraceRecording();
+    }
+
+    private void setupTouchPad() {
+        // Touch samples are copied on the UI thread and handled here, clear of layout and drawing
+        inputThread = new HandlerThread("TouchInput", Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        inputThread.start();
+        inputHandler = new Handler(inputThread.getLooper());
+
+        binding.touchPadArea.setOnTouchPadEventListener(new TouchPadController(connectionHandler,
+                pointerAcceleration, motionPredictor, flingScroller));
+        Handler handler = inputHandler;
+        binding.touchPadArea.setInputExecutor((runnable) -> {
+            if (!handler.post(runnable)) {
+                throw new RejectedExecutionException("Input thread has quit");
             }
+        });
 
-            @Override
-            public void onScroll(float distanceX, float distanceY) {
-                Map<String, Object> additionalData = new HashMap<>();
-                if (Math.abs(distanceX) > Math.abs(distanceY)) {
-                    additionalData.put("distanceX", distanceX);
-                    additionalData.put("distanceY", 0f);
-                } else {
-                    additionalData.put("distanceX", 0f);
-                    additionalData.put("distanceY", distanceY);
-                }
+        if (sharedPreferences.getBoolean("record_touch_traces", false)) {
+            startTouchTraceRecording();
+        }
+    }
 
+    private void startTouchTraceRecording() {
+        File directory = requireContext().getExternalFilesDir("traces");
+        if (directory == null) {
+            return;
+        }
 
-                Message message = new Message(MessageType.ACTION_SCROLL, null, additionalData);
+        String name = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date());
 
-                sendMessage(message);
-            }
+        try {
+            touchTraceWriter = new TouchTraceWriter(new FileOutputStream(new File(directory, "touchpad-" + name + ".trace")));
+            binding.touchPadArea.setTouchTraceWriter(touchTraceWriter);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not start touch trace recording", e);
+        }
+    }
 
-            @Override
-            public void onLeftClick() {
-                sendMessage(new Message(MessageType.ACTION_PRIMARY_CLICK));
-            }
+    private void stopTouchTraceRecording() {
+        if (touchTraceWriter == null) {
+            return;
+        }
 
-            @Override
-            public void onRightClick() {
-                sendMessage(new Message(MessageType.ACTION_SECONDARY_CLICK));
-            }
+        try {
+            touchTraceWriter.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not finish touch trace recording", e);
+        }
 
-            @Override
-            public void onClickDragStart() {
-                sendMessage(new Message((MessageType.ACTION_CLICK_AND_DRAG_START)));
-            }
+        touchTraceWriter = null;
+    }
 
+    private void setupScrollBar() {
+        binding.scrollBarArea.setOnScrollBarEventListener(((distanceX, distanceY) ->
+                sendMotion(MessageType.ACTION_SCROLL, 0f, distanceY)));
+        binding.scrollBarArea.setOnScrollBarFlingListener(new ScrollBarView.OnScrollBarFlingListener() {
             @Override
-            public void onClickDragMove(float distanceX, float distanceY) {
-                Map<String, Object> additionalData = new HashMap<>();
-                additionalData.put("distanceX", distanceX);
-                additionalData.put("distanceY", distanceY);
-
-                Message message = new Message(MessageType.ACTION_CLICK_AND_DRAG_MOVE, null, additionalData);
-
-                sendMessage(message);
+            public void onDown() {
+                cancelFling();
             }
 
             @Override
-            public void onClickDragEnd() {
-                sendMessage(new Message((MessageType.ACTION_CLICK_AND_DRAG_END)));
+            public void onFling(float velocityX, float velocityY) {
+                fling(0f, velocityY);
             }
         });
     }
 
-    private void setupScrollBar() {
-        binding.scrollBarArea.setOnScrollBarEventListener(((distanceX, distanceY) -> {
-            Map<String, Object> additionalData = new HashMap<>();
-            additionalData.put("distanceX", 0f);
-            additionalData.put("distanceY", distanceY);
-
-            Message message = new Message(MessageType.ACTION_SCROLL, null, additionalData);
-
-            sendMessage(message);
-        }));
-    }
-
     private void setupButtons() {
         binding.leftButtonArea.setOnClickListener((event) ->
                 sendMessage(new Message(MessageType.ACTION_PRIMARY_CLICK)));
@@ -198,4 +245,24 @@ public class TouchPadFragment extends Fragment {
             connectionHandler.sendMessage(message);
         }
     }
+
+    // Touch events arrive at up to 120 Hz, motion is sent without allocating
+    private void sendMotion(MessageType messageType, float distanceX, float distanceY) {
+        if (connectionHandler != null) {
+            connectionHandler.sendMotion(messageType, distanceX, distanceY);
+        }
+    }
+
+    private void fling(float velocityX, float velocityY) {
+        if (flingScroller != null) {
+            flingScroller.fling(velocityX, velocityY);
+        }
+    }
+
+    private void cancelFling() {
+        if (flingScroller != null) {
+            flingScroller.cancel();
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.konradrej.rcpc.client.View;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.konradrej.rcpc.R;
+import com.konradrej.rcpc.client.ConnectionHandler;
+import com.konradrej.rcpc.client.Room.Entity.Connection;
+import com.konradrej.rcpc.databinding.ConnectionHistoryItemBinding;
+
+import java.text.DateFormat;
+import java.util.concurrent.Executor;
+
+/**
+ * Adapter of the connection history list. Submitted lists are diffed on
+ * the given executor, so a new connection only rebinds the rows that
+ * changed.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class ConnectionHistoryAdapter extends ListAdapter<Connection, ConnectionHistoryAdapter.ViewHolder> {
+    private static final DiffUtil.ItemCallback<Connection> DIFF_CALLBACK = new DiffUtil.ItemCallback<Connection>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Connection oldItem, @NonNull Connection newItem) {
+            return oldItem.uid == newItem.uid;
+        }
+
+        // Only what is shown, a new handshake average alone does not rebind the row
+        @Override
+        public boolean areContentsTheSame(@NonNull Connection oldItem, @NonNull Connection newItem) {
+            return oldItem.ip.equals(newItem.ip) && oldItem.port == newItem.port &&
+                    oldItem.lastConnected == newItem.lastConnected;
+        }
+    };
+
+    private final OnConnectListener onConnectListener;
+    private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.LONG, DateFormat.SHORT);
+
+    /**
+     * Creates adapter diffing on given executor.
+     *
+     * @param onConnectListener listener called when a connect button is clicked
+     * @param diffExecutor      executor to diff submitted lists on
+     * @since 1.8
+     */
+    public ConnectionHistoryAdapter(OnConnectListener onConnectListener, Executor diffExecutor) {
+        super(new AsyncDifferConfig.Builder<>(DIFF_CALLBACK).setBackgroundThreadExecutor(diffExecutor).build());
+        this.onConnectListener = onConnectListener;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        ViewHolder holder = new ViewHolder(
+                ConnectionHistoryItemBinding.inflate(LayoutInflater.from(parent.getContext()), parent, false));
+
+        holder.binding.connectButton.setOnClickListener((event) -> {
+            int position = holder.getBindingAdapterPosition();
+
+            if (position != RecyclerView.NO_POSITION) {
+                onConnectListener.onConnect(getItem(position));
+            }
+        });
+
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        Connection connection = getItem(position);
+        Context context = holder.itemView.getContext();
+
+        String address = connection.port == ConnectionHandler.DEFAULT_PORT ? connection.ip :
+                (connection.ip.contains(":") ? "[" + connection.ip + "]" : connection.ip) + ":" + connection.port;
+        holder.binding.addressView.setText(context.getString(R.string.connection_history_address_label, address));
+        holder.binding.dateView.setText(context.getString(R.string.connection_history_date_label,
+                dateFormat.format(connection.lastConnected)));
+    }
+
+    /**
+     * Listener interface for connect button clicks.
+     *
+     * @since 1.8
+     */
+    public interface OnConnectListener {
+        void onConnect(Connection connection);
+    }
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        private final ConnectionHistoryItemBinding binding;
+
+        private ViewHolder(ConnectionHistoryItemBinding binding) {
+            super(binding.getRoot());
+            this.binding = binding;
+        }
+    }
+}
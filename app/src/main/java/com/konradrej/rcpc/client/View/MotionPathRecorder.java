@@ -0,0 +1,123 @@
+package com.konradrej.rcpc.client.View;
+
+import com.konradrej.rcpc.client.Network.MotionPath;
+
+/**
+ * Turns the pointer positions of delivered touch events, including the
+ * historical positions batched into them, into {@link MotionPath} samples.
+ * Distances follow the sign of {@link android.view.GestureDetector}
+ * distances, previous position minus current position.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class MotionPathRecorder {
+    private boolean started = false;
+    private float lastX;
+    private float lastY;
+    private long lastTimeMillis;
+
+    /**
+     * Starts tracking from given position, previous positions are forgotten.
+     *
+     * @param x          pointer x position
+     * @param y          pointer y position
+     * @param timeMillis event time in milliseconds
+     * @since 1.8
+     */
+    public void start(float x, float y, long timeMillis) {
+        started = true;
+        lastX = x;
+        lastY = y;
+        lastTimeMillis = timeMillis;
+    }
+
+    /**
+     * Stops tracking until {@link #start(float, float, long)} is called.
+     *
+     * @since 1.8
+     */
+    public void stop() {
+        started = false;
+    }
+
+    /**
+     * Get if tracking.
+     *
+     * @return true if started, false if not
+     * @since 1.8
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Replaces path with the motion since the previously recorded position,
+     * one sample per historical position followed by the current one. Starts
+     * tracking from the oldest position if not started.
+     *
+     * @param batch positions of a delivered event
+     * @param path  path to fill
+     * @since 1.8
+     */
+    public void record(Batch batch, MotionPath path) {
+        path.clear();
+
+        int historySize = batch.getHistorySize();
+        int first = 0;
+
+        if (!started) {
+            if (historySize > 0) {
+                start(batch.getHistoricalX(0), batch.getHistoricalY(0), batch.getHistoricalEventTime(0));
+                first = 1;
+            } else {
+                start(batch.getX(), batch.getY(), batch.getEventTime());
+                return;
+            }
+        }
+
+        for (int h = first; h < historySize; h++) {
+            addSample(batch.getHistoricalX(h), batch.getHistoricalY(h), batch.getHistoricalEventTime(h), path);
+        }
+
+        addSample(batch.getX(), batch.getY(), batch.getEventTime(), path);
+    }
+
+    private void addSample(float x, float y, long timeMillis, MotionPath path) {
+        float distanceX = lastX - x;
+        float distanceY = lastY - y;
+
+        // Repeated positions carry no motion
+        if (distanceX != 0 || distanceY != 0) {
+            path.add(distanceX, distanceY, timeMillis - lastTimeMillis);
+
+            lastX = x;
+            lastY = y;
+            lastTimeMillis = timeMillis;
+        }
+    }
+
+    /**
+     * Positions of the first pointer of a delivered touch event, oldest
+     * historical position first, see {@link android.view.MotionEvent}.
+     *
+     * @since 1.8
+     */
+    public interface Batch {
+        int getHistorySize();
+
+        float getHistoricalX(int pos);
+
+        float getHistoricalY(int pos);
+
+        long getHistoricalEventTime(int pos);
+
+        float getX();
+
+        float getY();
+
+        long getEventTime();
+    }
+}
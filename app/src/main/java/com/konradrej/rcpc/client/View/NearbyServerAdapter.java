@@ -0,0 +1,179 @@
+package com.konradrej.rcpc.client.View;
+
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.konradrej.rcpc.R;
+import com.konradrej.rcpc.databinding.NearbyServersItemBinding;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Adapter of the nearby server list, servers discovery currently reports
+ * and stored ones listed as last seen. Submitted lists are diffed on the
+ * given executor.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class NearbyServerAdapter extends ListAdapter<NearbyServerAdapter.NearbyServer, NearbyServerAdapter.ViewHolder> {
+    private static final DiffUtil.ItemCallback<NearbyServer> DIFF_CALLBACK = new DiffUtil.ItemCallback<NearbyServer>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull NearbyServer oldItem, @NonNull NearbyServer newItem) {
+            return oldItem.serviceName.equals(newItem.serviceName);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull NearbyServer oldItem, @NonNull NearbyServer newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    private final OnConnectListener onConnectListener;
+
+    /**
+     * Creates adapter diffing on given executor.
+     *
+     * @param onConnectListener listener called when a connect button is clicked
+     * @param diffExecutor      executor to diff submitted lists on
+     * @since 1.8
+     */
+    public NearbyServerAdapter(OnConnectListener onConnectListener, Executor diffExecutor) {
+        super(new AsyncDifferConfig.Builder<>(DIFF_CALLBACK).setBackgroundThreadExecutor(diffExecutor).build());
+        this.onConnectListener = onConnectListener;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        ViewHolder holder = new ViewHolder(
+                NearbyServersItemBinding.inflate(LayoutInflater.from(parent.getContext()), parent, false));
+
+        holder.binding.connectButton.setOnClickListener((event) -> {
+            int position = holder.getBindingAdapterPosition();
+
+            if (position != RecyclerView.NO_POSITION) {
+                onConnectListener.onConnect(getItem(position));
+            }
+        });
+
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        NearbyServer nearbyServer = getItem(position);
+
+        holder.binding.serverNameView.setText(nearbyServer.serverName);
+
+        if (nearbyServer.lastSeen == 0) {
+            holder.binding.lastSeenView.setVisibility(View.GONE);
+        } else {
+            holder.binding.lastSeenView.setText(holder.itemView.getContext().getString(R.string.nearby_servers_last_seen_label,
+                    DateUtils.getRelativeTimeSpanString(nearbyServer.lastSeen, System.currentTimeMillis(), DateUtils.MINUTE_IN_MILLIS)));
+            holder.binding.lastSeenView.setVisibility(View.VISIBLE);
+        }
+    }
+
+    /**
+     * Listener interface for connect button clicks.
+     *
+     * @since 1.8
+     */
+    public interface OnConnectListener {
+        void onConnect(NearbyServer nearbyServer);
+    }
+
+    /**
+     * Immutable entry of the nearby server list.
+     *
+     * @since 1.8
+     */
+    public static final class NearbyServer {
+        private final String serviceName;
+        private final String serverName;
+        private final List<InetSocketAddress> endpoints;
+        private final long lastSeen;
+
+        /**
+         * Creates entry of given server.
+         *
+         * @param serviceName name of the discovered service, identifies the entry
+         * @param serverName  name shown for the server
+         * @param endpoints   endpoints to connect to, most preferred first
+         * @param lastSeen    time the server was last seen, 0 while discovery reports it
+         * @since 1.8
+         */
+        public NearbyServer(String serviceName, String serverName, List<InetSocketAddress> endpoints, long lastSeen) {
+            this.serviceName = serviceName;
+            this.serverName = serverName;
+            this.endpoints = Collections.unmodifiableList(endpoints);
+            this.lastSeen = lastSeen;
+        }
+
+        /**
+         * Get this entry as last seen at given time.
+         *
+         * @param lastSeen time the server was last seen
+         * @return copy last seen at given time
+         * @since 1.8
+         */
+        public NearbyServer withLastSeen(long lastSeen) {
+            return new NearbyServer(serviceName, serverName, endpoints, lastSeen);
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        public List<InetSocketAddress> getEndpoints() {
+            return endpoints;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof NearbyServer)) {
+                return false;
+            }
+
+            NearbyServer other = (NearbyServer) o;
+            return lastSeen == other.lastSeen && serviceName.equals(other.serviceName) &&
+                    String.valueOf(serverName).equals(String.valueOf(other.serverName)) && endpoints.equals(other.endpoints);
+        }
+
+        @Override
+        public int hashCode() {
+            return serviceName.hashCode();
+        }
+    }
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        private final NearbyServersItemBinding binding;
+
+        private ViewHolder(NearbyServersItemBinding binding) {
+            super(binding.getRoot());
+            this.binding = binding;
+        }
+    }
+}
@@ -22,6 +22,7 @@ public class ScrollBarView extends View implements
 
     private OnTouchListener wrappedOnTouchListener = null;
     private OnScrollBarEventListener onScrollBarEventListener = null;
+    private OnScrollBarFlingListener onScrollBarFlingListener = null;
     private GestureDetectorCompat gestureDetector;
     private boolean ignoreFirstScrollEvent = true;
 
@@ -82,6 +83,15 @@ public class ScrollBarView extends View implements
         onScrollBarEventListener = listener;
     }
 
+    /**
+     * Set OnScrollBarFlingListener.
+     *
+     * @param listener listener to set
+     */
+    public void setOnScrollBarFlingListener(OnScrollBarFlingListener listener) {
+        onScrollBarFlingListener = listener;
+    }
+
     /**
      * Calls onTouchListener and gestureDetector.
      *
@@ -124,7 +134,8 @@ public class ScrollBarView extends View implements
     }
 
     /**
-     * Sets ignore first click to true.
+     * Sets ignore first click to true and calls scrollBarFlingListener
+     * callback so a running fling stops.
      *
      * @param e ignored
      * @return true
@@ -132,6 +143,11 @@ public class ScrollBarView extends View implements
     @Override
     public boolean onDown(MotionEvent e) {
         ignoreFirstScrollEvent = true;
+
+        if (onScrollBarFlingListener != null) {
+            onScrollBarFlingListener.onDown();
+        }
+
         return true;
     }
 
@@ -165,16 +181,22 @@ public class ScrollBarView extends View implements
     }
 
     /**
-     * Not in use, implemented cause of interface requirement.
+     * Calls scrollBarFlingListener callback on fling, with the velocity
+     * turned into scroll distance per second.
      *
      * @param e1        ignored
      * @param e2        ignored
-     * @param velocityX ignored
-     * @param velocityY ignored
+     * @param velocityX x velocity in pixels per second
+     * @param velocityY y velocity in pixels per second
      * @return true
      */
     @Override
     public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
+        if (onScrollBarFlingListener != null) {
+            // Scroll distances are the previous minus the current position
+            onScrollBarFlingListener.onFling(-velocityX, -velocityY);
+        }
+
         return true;
     }
 
@@ -184,4 +206,14 @@ public class ScrollBarView extends View implements
     public interface OnScrollBarEventListener {
         void onScroll(float distanceX, float distanceY);
     }
+
+    /**
+     * Callback interface for scrollbar flings, velocities are scroll
+     * distances per second.
+     */
+    public interface OnScrollBarFlingListener {
+        void onDown();
+
+        void onFling(float velocityX, float velocityY);
+    }
 }
@@ -0,0 +1,79 @@
+package com.konradrej.rcpc.client.View;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.StringRes;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.konradrej.rcpc.databinding.SectionHeaderItemBinding;
+
+/**
+ * Single item adapter showing a section title, and a note while the
+ * section below it is empty. Meant to be concatenated in front of the
+ * section's own adapter.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class SectionHeaderAdapter extends RecyclerView.Adapter<SectionHeaderAdapter.ViewHolder> {
+    private final int titleRes;
+    private final int emptyRes;
+    private boolean empty = true;
+
+    /**
+     * Creates header with given texts, initially empty.
+     *
+     * @param titleRes title of the section
+     * @param emptyRes note shown while the section is empty
+     * @since 1.8
+     */
+    public SectionHeaderAdapter(@StringRes int titleRes, @StringRes int emptyRes) {
+        this.titleRes = titleRes;
+        this.emptyRes = emptyRes;
+    }
+
+    /**
+     * Shows or hides the empty note.
+     *
+     * @param empty whether the section is empty
+     * @since 1.8
+     */
+    public void setEmpty(boolean empty) {
+        if (this.empty != empty) {
+            this.empty = empty;
+            notifyItemChanged(0);
+        }
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new ViewHolder(SectionHeaderItemBinding.inflate(LayoutInflater.from(parent.getContext()), parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        holder.binding.titleView.setText(titleRes);
+        holder.binding.emptyView.setText(emptyRes);
+        holder.binding.emptyView.setVisibility(empty ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public int getItemCount() {
+        return 1;
+    }
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        private final SectionHeaderItemBinding binding;
+
+        private ViewHolder(SectionHeaderItemBinding binding) {
+            super(binding.getRoot());
+            this.binding = binding;
+        }
+    }
+}
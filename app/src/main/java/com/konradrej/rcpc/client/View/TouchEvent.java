@@ -0,0 +1,42 @@
+package com.konradrej.rcpc.client.View;
+
+/**
+ * Touch event as delivered to a {@link TouchPadView}, mirroring the getters
+ * of MotionEvent used by the touchpad so events can also be recorded and
+ * replayed off-device. Action values are those of MotionEvent.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public interface TouchEvent {
+    int ACTION_DOWN = 0;
+    int ACTION_UP = 1;
+    int ACTION_MOVE = 2;
+    int ACTION_CANCEL = 3;
+    int ACTION_POINTER_DOWN = 5;
+    int ACTION_POINTER_UP = 6;
+
+    int getActionMasked();
+
+    int getActionIndex();
+
+    int getPointerCount();
+
+    int getPointerId(int pointerIndex);
+
+    int getHistorySize();
+
+    long getHistoricalEventTime(int pos);
+
+    float getHistoricalX(int pointerIndex, int pos);
+
+    float getHistoricalY(int pointerIndex, int pos);
+
+    long getEventTime();
+
+    float getX(int pointerIndex);
+
+    float getY(int pointerIndex);
+}
@@ -0,0 +1,134 @@
+package com.konradrej.rcpc.client.View;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring buffer handing touch events from one producer thread to
+ * one consumer thread. Events are copied into preallocated
+ * {@link TouchEventSnapshot}s, so nothing is allocated per event and the
+ * producer never waits for the consumer.
+ * <p>
+ * Only safe with a single producer calling {@link #offer(TouchEvent)} and a
+ * single consumer calling {@link #peek()} and {@link #remove()}.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class TouchEventRingBuffer {
+    private final TouchEventSnapshot[] slots;
+    private final int mask;
+    // Next position to read, only written by the consumer
+    private final AtomicLong head = new AtomicLong(0);
+    // Next position to write, only written by the producer
+    private final AtomicLong tail = new AtomicLong(0);
+    // Last head seen by the producer and last tail seen by the consumer,
+    // saves reading the other thread's counter for every event
+    private long producerHead = 0;
+    private long consumerTail = 0;
+
+    /**
+     * Creates buffer holding at least given amount of events.
+     *
+     * @param capacity least amount of events held, rounded up to a power of two
+     * @since 1.8
+     */
+    public TouchEventRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 16) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        slots = new TouchEventSnapshot[size];
+        mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            slots[i] = new TouchEventSnapshot();
+        }
+    }
+
+    /**
+     * Copies given event into the buffer. Called by the producer.
+     *
+     * @param event event to copy
+     * @return true if copied, false if the buffer is full
+     * @since 1.8
+     */
+    public boolean offer(TouchEvent event) {
+        return offer(event, 0);
+    }
+
+    /**
+     * Copies given event into the buffer unless that would leave fewer than
+     * given amount of slots free, so less important events can be turned
+     * away while room is kept for the others. Called by the producer.
+     *
+     * @param event    event to copy
+     * @param keepFree amount of slots that must stay free after copying
+     * @return true if copied, false if too few slots are free
+     * @since 1.8
+     */
+    public boolean offer(TouchEvent event, int keepFree) {
+        long position = tail.get();
+        int limit = slots.length - keepFree;
+
+        if (position - producerHead >= limit) {
+            producerHead = head.get();
+
+            if (position - producerHead >= limit) {
+                return false;
+            }
+        }
+
+        slots[(int) position & mask].copyFrom(event);
+        // Publishes the copy to the consumer
+        tail.lazySet(position + 1);
+
+        return true;
+    }
+
+    /**
+     * Get oldest event without removing it. Called by the consumer.
+     *
+     * @return oldest event, valid until {@link #remove()}, null if empty
+     * @since 1.8
+     */
+    public TouchEvent peek() {
+        long position = head.get();
+
+        if (position >= consumerTail) {
+            consumerTail = tail.get();
+
+            if (position >= consumerTail) {
+                return null;
+            }
+        }
+
+        return slots[(int) position & mask];
+    }
+
+    /**
+     * Removes the event returned by {@link #peek()}, handing its slot back to
+     * the producer. Called by the consumer.
+     *
+     * @since 1.8
+     */
+    public void remove() {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * Get amount of events the buffer holds.
+     *
+     * @return the capacity
+     * @since 1.8
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,128 @@
+package com.konradrej.rcpc.client.View;
+
+/**
+ * Reusable copy of a {@link TouchEvent}, holding every historical sample.
+ * Arrays only grow when an event has more samples than any copied before,
+ * so copying is free of allocation once warmed up.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class TouchEventSnapshot implements TouchEvent {
+    public static final int MAX_POINTERS = 16;
+
+    final int[] pointerIds = new int[MAX_POINTERS];
+    int action;
+    int actionIndex;
+    int pointerCount;
+    int historySize;
+    // Samples oldest first with the event itself last, positions strided by pointer count
+    long[] times = new long[8];
+    float[] xs = new float[8 * MAX_POINTERS];
+    float[] ys = new float[8 * MAX_POINTERS];
+
+    /**
+     * Copies given event, pointers past {@link #MAX_POINTERS} are left out.
+     *
+     * @param event event to copy
+     * @since 1.8
+     */
+    public void copyFrom(TouchEvent event) {
+        reset(event.getActionMasked(), event.getActionIndex(), Math.min(event.getPointerCount(), MAX_POINTERS));
+        setHistorySize(event.getHistorySize());
+
+        for (int i = 0; i < pointerCount; i++) {
+            pointerIds[i] = event.getPointerId(i);
+        }
+
+        for (int pos = 0; pos < historySize; pos++) {
+            times[pos] = event.getHistoricalEventTime(pos);
+
+            for (int i = 0; i < pointerCount; i++) {
+                xs[pos * pointerCount + i] = event.getHistoricalX(i, pos);
+                ys[pos * pointerCount + i] = event.getHistoricalY(i, pos);
+            }
+        }
+
+        times[historySize] = event.getEventTime();
+
+        for (int i = 0; i < pointerCount; i++) {
+            xs[historySize * pointerCount + i] = event.getX(i);
+            ys[historySize * pointerCount + i] = event.getY(i);
+        }
+    }
+
+    void reset(int action, int actionIndex, int pointerCount) {
+        this.action = action;
+        this.actionIndex = actionIndex;
+        this.pointerCount = pointerCount;
+    }
+
+    void setHistorySize(int historySize) {
+        this.historySize = historySize;
+
+        if (times.length < historySize + 1) {
+            int samples = Math.max(historySize + 1, times.length * 2);
+            times = new long[samples];
+            xs = new float[samples * MAX_POINTERS];
+            ys = new float[samples * MAX_POINTERS];
+        }
+    }
+
+    @Override
+    public int getActionMasked() {
+        return action;
+    }
+
+    @Override
+    public int getActionIndex() {
+        return actionIndex;
+    }
+
+    @Override
+    public int getPointerCount() {
+        return pointerCount;
+    }
+
+    @Override
+    public int getPointerId(int pointerIndex) {
+        return pointerIds[pointerIndex];
+    }
+
+    @Override
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    @Override
+    public long getHistoricalEventTime(int pos) {
+        return times[pos];
+    }
+
+    @Override
+    public float getHistoricalX(int pointerIndex, int pos) {
+        return xs[pos * pointerCount + pointerIndex];
+    }
+
+    @Override
+    public float getHistoricalY(int pointerIndex, int pos) {
+        return ys[pos * pointerCount + pointerIndex];
+    }
+
+    @Override
+    public long getEventTime() {
+        return times[historySize];
+    }
+
+    @Override
+    public float getX(int pointerIndex) {
+        return xs[historySize * pointerCount + pointerIndex];
+    }
+
+    @Override
+    public float getY(int pointerIndex) {
+        return ys[historySize * pointerCount + pointerIndex];
+    }
+}
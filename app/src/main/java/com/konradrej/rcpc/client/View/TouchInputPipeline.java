@@ -0,0 +1,139 @@
+package com.konradrej.rcpc.client.View;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves touch event handling off the thread delivering the events. Events
+ * are copied into a {@link TouchEventRingBuffer} and handled by a
+ * {@link TouchPadGestureDetector} on the input executor, so gesture
+ * recognition, acceleration and encoding of the messages are not held up by
+ * layout, drawing or anything else running on the UI thread, and do not hold
+ * it up in turn.
+ * <p>
+ * Only moves are dropped when the input executor falls behind, the next
+ * move carries the positions on. Slots are kept free for every other
+ * action, so downs, ups and cancels are always handed over and a gesture
+ * is never left without its end. In the rare case those run out too the
+ * enqueueing thread waits for the executor to catch up, for at most
+ * {@link #MAX_FULL_WAIT_NANOS} so a stalled executor never stalls the UI
+ * thread, after which the event is dropped as well. An executor that rejects
+ * tasks, such as a handler whose looper has quit, does not stop later events
+ * from scheduling a drain again.
+ * <p>
+ * Events must be enqueued from a single thread. The detector and its
+ * listener are only called on the input executor, which must run tasks one
+ * at a time.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class TouchInputPipeline {
+    public static final int DEFAULT_CAPACITY = 256;
+    // Kept free of moves, enough for the downs and ups of a few gestures
+    private static final int RESERVED_CAPACITY = 16;
+    private static final long FULL_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    // Half a frame, well clear of an application not responding
+    static final long MAX_FULL_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(8);
+
+    private final TouchPadGestureDetector gestureDetector;
+    private final Executor inputExecutor;
+    private final TouchEventRingBuffer ringBuffer;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final Runnable drainTask = this::drain;
+    private final long maxFullWaitNanos;
+    private volatile long droppedCount = 0;
+
+    /**
+     * Creates pipeline handing events to given detector on given executor.
+     *
+     * @param gestureDetector detector to hand events to
+     * @param inputExecutor   executor to run the detector on, one task at a time
+     * @param capacity        amount of moves that can wait to be handled
+     * @since 1.8
+     */
+    public TouchInputPipeline(TouchPadGestureDetector gestureDetector, Executor inputExecutor, int capacity) {
+        this(gestureDetector, inputExecutor, capacity, MAX_FULL_WAIT_NANOS);
+    }
+
+    TouchInputPipeline(TouchPadGestureDetector gestureDetector, Executor inputExecutor, int capacity,
+                       long maxFullWaitNanos) {
+        this.gestureDetector = gestureDetector;
+        this.inputExecutor = inputExecutor;
+        this.ringBuffer = new TouchEventRingBuffer(capacity + RESERVED_CAPACITY);
+        this.maxFullWaitNanos = maxFullWaitNanos;
+    }
+
+    /**
+     * Copies given event to be handled on the input executor. Does not
+     * allocate unless the executor does to run a task. Moves are dropped
+     * while too many events are waiting, other events wait for space for a
+     * bounded time.
+     *
+     * @param event event to hand over, not kept
+     * @return true if handed over, false if dropped because too many events are waiting
+     * or the executor rejected the drain
+     * @since 1.8
+     */
+    public boolean enqueue(TouchEvent event) {
+        if (event.getActionMasked() == TouchEvent.ACTION_MOVE) {
+            if (!ringBuffer.offer(event, RESERVED_CAPACITY)) {
+                droppedCount++;
+                return false;
+            }
+        } else if (!ringBuffer.offer(event)) {
+            long deadline = System.nanoTime() + maxFullWaitNanos;
+
+            do {
+                if (System.nanoTime() - deadline >= 0) {
+                    droppedCount++;
+                    return false;
+                }
+
+                // A drain is scheduled or running while the buffer holds events
+                LockSupport.parkNanos(FULL_WAIT_NANOS);
+            } while (!ringBuffer.offer(event));
+        }
+
+        // One task handles every event waiting when it runs
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                inputExecutor.execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                // Lets a later event try again instead of waiting on a drain that never runs
+                drainScheduled.set(false);
+                droppedCount++;
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get amount of events dropped because the input executor fell behind
+     * or rejected them, almost all of them moves.
+     *
+     * @return the dropped amount
+     * @since 1.8
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    private void drain() {
+        // Cleared first so events enqueued while draining schedule another run
+        drainScheduled.set(false);
+
+        TouchEvent event;
+        while ((event = ringBuffer.peek()) != null) {
+            gestureDetector.onTouchEvent(event);
+            ringBuffer.remove();
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package com.konradrej.rcpc.client.View;
+
+import com.konradrej.rcpc.client.Network.MotionPath;
+
+/**
+ * Single pass gesture state machine for the touchpad, fed the touch events
+ * of a {@link TouchPadView}.
+ * <p>
+ * A tap is reported as a left click on lifting the finger instead of after
+ * the double tap timeout. Touching down again shortly after a tap upgrades
+ * that click into a drag by pressing the button again, so a double tap
+ * without moving sends a double click. A tap with two fingers is reported as
+ * a right click. Moving one finger past the touch slop moves, moving two
+ * scrolls. Lifting a finger while scrolling fast reports a fling, which the
+ * next touch is expected to stop.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class TouchPadGestureDetector {
+    private static final long FLING_MAX_PAUSE_MILLIS = 50;
+    private static final float SCROLL_VELOCITY_WEIGHT = 0.6f;
+
+    private final OnTouchPadGestureListener listener;
+    private final float touchSlopSquare;
+    private final float doubleTapSlopSquare;
+    private final long tapTimeoutMillis;
+    private final long doubleTapTimeoutMillis;
+    private final float minFlingVelocity;
+
+    private final MotionPathRecorder moveRecorder = new MotionPathRecorder();
+    private final MotionPath motionPath = new MotionPath();
+    private final TouchEventBatch touchEventBatch = new TouchEventBatch();
+    private State state = State.IDLE;
+    private float downX;
+    private float downY;
+    private long downTimeMillis;
+    private float downFocusX;
+    private float downFocusY;
+    private float lastFocusX;
+    private float lastFocusY;
+    private long lastScrollTimeMillis;
+    private float scrollVelocityX;
+    private float scrollVelocityY;
+    private int pointerCount = 0;
+    private boolean hasLastTap = false;
+    private float lastTapX;
+    private float lastTapY;
+    private long lastTapUpTimeMillis;
+
+    /**
+     * Creates detector reporting to given listener.
+     *
+     * @param listener               listener to report gestures to
+     * @param touchSlop              distance in pixels a touch may wander and still be a tap
+     * @param doubleTapSlop          distance in pixels between taps of a double tap
+     * @param tapTimeoutMillis       longest press still reported as a tap
+     * @param doubleTapTimeoutMillis longest time between taps of a double tap
+     * @param minFlingVelocity       slowest scroll in pixels per second still flung
+     * @since 1.8
+     */
+    public TouchPadGestureDetector(OnTouchPadGestureListener listener, float touchSlop, float doubleTapSlop,
+                                   long tapTimeoutMillis, long doubleTapTimeoutMillis, float minFlingVelocity) {
+        this.listener = listener;
+        this.touchSlopSquare = touchSlop * touchSlop;
+        this.doubleTapSlopSquare = doubleTapSlop * doubleTapSlop;
+        this.tapTimeoutMillis = tapTimeoutMillis;
+        this.doubleTapTimeoutMillis = doubleTapTimeoutMillis;
+        this.minFlingVelocity = minFlingVelocity;
+    }
+
+    /**
+     * Passes given event on to the handler of its action.
+     *
+     * @param event the touch event, not kept once this returns
+     * @since 1.8
+     */
+    public void onTouchEvent(TouchEvent event) {
+        touchEventBatch.event = event;
+
+        switch (event.getActionMasked()) {
+            case TouchEvent.ACTION_DOWN:
+                onDown(event.getX(0), event.getY(0), event.getEventTime());
+                break;
+            case TouchEvent.ACTION_POINTER_DOWN:
+                onPointerDown(event.getPointerCount(), getFocusX(event, -1), getFocusY(event, -1));
+                break;
+            case TouchEvent.ACTION_MOVE:
+                onMove(touchEventBatch, getFocusX(event, -1), getFocusY(event, -1));
+                break;
+            case TouchEvent.ACTION_POINTER_UP:
+                onPointerUp(event.getPointerCount() - 1,
+                        getFocusX(event, event.getActionIndex()), getFocusY(event, event.getActionIndex()),
+                        event.getEventTime());
+                break;
+            case TouchEvent.ACTION_UP:
+                onUp(touchEventBatch);
+                break;
+            case TouchEvent.ACTION_CANCEL:
+                onCancel();
+                break;
+            default:
+                break;
+        }
+
+        touchEventBatch.event = null;
+    }
+
+    /**
+     * Handles the first finger touching down.
+     *
+     * @param x          x position
+     * @param y          y position
+     * @param timeMillis event time in milliseconds
+     * @since 1.8
+     */
+    public void onDown(float x, float y, long timeMillis) {
+        listener.onDown();
+
+        // Up was never delivered, end what was in progress first
+        if (state == State.DRAGGING) {
+            listener.onClickDragEnd();
+        } else if (state == State.MOVING) {
+            listener.onMoveEnd();
+        }
+
+        downX = x;
+        downY = y;
+        downTimeMillis = timeMillis;
+        pointerCount = 1;
+        moveRecorder.stop();
+
+        if (hasLastTap && timeMillis - lastTapUpTimeMillis <= doubleTapTimeoutMillis &&
+                distanceSquare(x - lastTapX, y - lastTapY) <= doubleTapSlopSquare) {
+            hasLastTap = false;
+            state = State.DRAGGING;
+
+            moveRecorder.start(x, y, timeMillis);
+            listener.onClickDragStart();
+        } else {
+            state = State.PRESSED;
+        }
+    }
+
+    /**
+     * Handles another finger touching down.
+     *
+     * @param pointerCount amount of fingers down, including the new one
+     * @param focusX       average x position of the fingers
+     * @param focusY       average y position of the fingers
+     * @since 1.8
+     */
+    public void onPointerDown(int pointerCount, float focusX, float focusY) {
+        this.pointerCount = pointerCount;
+        lastFocusX = focusX;
+        lastFocusY = focusY;
+
+        switch (state) {
+            case PRESSED:
+                state = State.TWO_PRESSED;
+                downFocusX = focusX;
+                downFocusY = focusY;
+                break;
+            case TWO_PRESSED:
+                // Three finger taps are not a gesture
+                state = State.IGNORED;
+                break;
+            case MOVING:
+                listener.onMoveEnd();
+                state = State.SCROLLING;
+                scrollVelocityX = 0;
+                scrollVelocityY = 0;
+                moveRecorder.stop();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Handles fingers moving.
+     *
+     * @param batch  positions of the first finger
+     * @param focusX average x position of the fingers
+     * @param focusY average y position of the fingers
+     * @since 1.8
+     */
+    public void onMove(MotionPathRecorder.Batch batch, float focusX, float focusY) {
+        switch (state) {
+            case PRESSED:
+                if (distanceSquare(batch.getX() - downX, batch.getY() - downY) > touchSlopSquare) {
+                    // Motion within the slop is dropped so taps do not nudge the pointer
+                    state = State.MOVING;
+                    moveRecorder.start(batch.getX(), batch.getY(), batch.getEventTime());
+                }
+                break;
+            case TWO_PRESSED:
+                if (pointerCount == 2 &&
+                        distanceSquare(focusX - downFocusX, focusY - downFocusY) > touchSlopSquare) {
+                    state = State.SCROLLING;
+                    lastFocusX = focusX;
+                    lastFocusY = focusY;
+                    lastScrollTimeMillis = batch.getEventTime();
+                    scrollVelocityX = 0;
+                    scrollVelocityY = 0;
+                }
+                break;
+            case MOVING:
+                recordMove(batch);
+                break;
+            case SCROLLING:
+                scroll(focusX, focusY, batch.getEventTime());
+                break;
+            case DRAGGING:
+                recordDragMove(batch);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Handles a finger other than the last one lifting.
+     *
+     * @param pointerCount amount of fingers still down
+     * @param focusX       average x position of the remaining fingers
+     * @param focusY       average y position of the remaining fingers
+     * @param timeMillis   event time in milliseconds
+     * @since 1.8
+     */
+    public void onPointerUp(int pointerCount, float focusX, float focusY, long timeMillis) {
+        this.pointerCount = pointerCount;
+        lastFocusX = focusX;
+        lastFocusY = focusY;
+
+        if (state == State.SCROLLING && pointerCount == 1) {
+            fling(timeMillis);
+
+            // Continues as a move from wherever the remaining finger is
+            state = State.MOVING;
+            moveRecorder.stop();
+        }
+    }
+
+    /**
+     * Handles the last finger lifting.
+     *
+     * @param batch positions of the finger
+     * @since 1.8
+     */
+    public void onUp(MotionPathRecorder.Batch batch) {
+        long timeMillis = batch.getEventTime();
+        boolean quick = timeMillis - downTimeMillis <= tapTimeoutMillis;
+
+        switch (state) {
+            case PRESSED:
+                if (quick) {
+                    hasLastTap = true;
+                    lastTapX = downX;
+                    lastTapY = downY;
+                    lastTapUpTimeMillis = timeMillis;
+
+                    listener.onLeftClick();
+                }
+                break;
+            case TWO_PRESSED:
+                if (quick) {
+                    listener.onRightClick();
+                }
+                break;
+            case MOVING:
+                recordMove(batch);
+                listener.onMoveEnd();
+                break;
+            case DRAGGING:
+                recordDragMove(batch);
+                listener.onClickDragEnd();
+                break;
+            default:
+                break;
+        }
+
+        reset();
+    }
+
+    /**
+     * Handles the gesture being cancelled, ending a move or drag in progress.
+     *
+     * @since 1.8
+     */
+    public void onCancel() {
+        if (state == State.DRAGGING) {
+            listener.onClickDragEnd();
+        } else if (state == State.MOVING) {
+            listener.onMoveEnd();
+        }
+
+        hasLastTap = false;
+        reset();
+    }
+
+    private void reset() {
+        state = State.IDLE;
+        pointerCount = 0;
+        moveRecorder.stop();
+    }
+
+    private void recordMove(MotionPathRecorder.Batch batch) {
+        if (pointerCount != 1) {
+            return;
+        }
+
+        moveRecorder.record(batch, motionPath);
+
+        if (motionPath.size() > 0) {
+            listener.onMove(motionPath);
+        }
+    }
+
+    private void recordDragMove(MotionPathRecorder.Batch batch) {
+        moveRecorder.record(batch, motionPath);
+
+        if (motionPath.size() > 0) {
+            listener.onClickDragMove(motionPath);
+        }
+    }
+
+    private void scroll(float focusX, float focusY, long timeMillis) {
+        if (pointerCount != 2) {
+            return;
+        }
+
+        float distanceX = lastFocusX - focusX;
+        float distanceY = lastFocusY - focusY;
+        lastFocusX = focusX;
+        lastFocusY = focusY;
+
+        long deltaMillis = timeMillis - lastScrollTimeMillis;
+        if (deltaMillis > 0) {
+            // Smoothed so a single uneven event does not decide the fling
+            scrollVelocityX = SCROLL_VELOCITY_WEIGHT * distanceX / deltaMillis + (1 - SCROLL_VELOCITY_WEIGHT) * scrollVelocityX;
+            scrollVelocityY = SCROLL_VELOCITY_WEIGHT * distanceY / deltaMillis + (1 - SCROLL_VELOCITY_WEIGHT) * scrollVelocityY;
+            lastScrollTimeMillis = timeMillis;
+        }
+
+        if (distanceX != 0 || distanceY != 0) {
+            listener.onScroll(distanceX, distanceY);
+        }
+    }
+
+    private void fling(long timeMillis) {
+        // Fingers resting before lifting do not fling
+        if (timeMillis - lastScrollTimeMillis > FLING_MAX_PAUSE_MILLIS) {
+            return;
+        }
+
+        float velocityX = scrollVelocityX * 1000;
+        float velocityY = scrollVelocityY * 1000;
+
+        if (distanceSquare(velocityX, velocityY) >= minFlingVelocity * minFlingVelocity) {
+            listener.onFling(velocityX, velocityY);
+        }
+    }
+
+    private static float distanceSquare(float distanceX, float distanceY) {
+        return distanceX * distanceX + distanceY * distanceY;
+    }
+
+    // Average position of all pointers except the one at skipIndex
+    private static float getFocusX(TouchEvent event, int skipIndex) {
+        float sum = 0;
+        int count = 0;
+
+        for (int i = 0; i < event.getPointerCount(); i++) {
+            if (i != skipIndex) {
+                sum += event.getX(i);
+                count++;
+            }
+        }
+
+        return count > 0 ? sum / count : 0;
+    }
+
+    private static float getFocusY(TouchEvent event, int skipIndex) {
+        float sum = 0;
+        int count = 0;
+
+        for (int i = 0; i < event.getPointerCount(); i++) {
+            if (i != skipIndex) {
+                sum += event.getY(i);
+                count++;
+            }
+        }
+
+        return count > 0 ? sum / count : 0;
+    }
+
+    // Reused for every event, positions of the first pointer
+    private static class TouchEventBatch implements MotionPathRecorder.Batch {
+        private TouchEvent event;
+
+        @Override
+        public int getHistorySize() {
+            return event.getHistorySize();
+        }
+
+        @Override
+        public float getHistoricalX(int pos) {
+            return event.getHistoricalX(0, pos);
+        }
+
+        @Override
+        public float getHistoricalY(int pos) {
+            return event.getHistoricalY(0, pos);
+        }
+
+        @Override
+        public long getHistoricalEventTime(int pos) {
+            return event.getHistoricalEventTime(pos);
+        }
+
+        @Override
+        public float getX() {
+            return event.getX(0);
+        }
+
+        @Override
+        public float getY() {
+            return event.getY(0);
+        }
+
+        @Override
+        public long getEventTime() {
+            return event.getEventTime();
+        }
+    }
+
+    private enum State {
+        IDLE,
+        PRESSED,
+        TWO_PRESSED,
+        MOVING,
+        SCROLLING,
+        DRAGGING,
+        IGNORED
+    }
+
+    /**
+     * Callback interface for touchpad gestures. Paths are reused once the
+     * callback returns. Fling velocities are scroll distances per second.
+     *
+     * @since 1.8
+     */
+    public interface OnTouchPadGestureListener {
+        void onDown();
+
+        void onMove(MotionPath path);
+
+        void onMoveEnd();
+
+        void onScroll(float distanceX, float distanceY);
+
+        void onFling(float velocityX, float velocityY);
+
+        void onLeftClick();
+
+        void onRightClick();
+
+        void onClickDragStart();
+
+        void onClickDragMove(MotionPath path);
+
+        void onClickDragEnd();
+    }
+}
@@ -2,33 +2,46 @@ package com.konradrej.rcpc.client.View;
 
 import android.content.Context;
 import android.util.AttributeSet;
-import android.view.GestureDetector;
+import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 
 import androidx.annotation.Nullable;
-import androidx.core.view.GestureDetectorCompat;
+
+import com.konradrej.rcpc.client.Network.MotionPath;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
 
 /**
  * Represents a {@link View} modelling a touchpad.
+ * <p>
+ * Touch events are interpreted by a {@link TouchPadGestureDetector}, which
+ * reports taps as soon as the finger lifts. Moves and drag moves are
+ * reported as {@link MotionPath}s built from every position batched into a
+ * delivered event, so fast motion keeps its shape. Events can be recorded
+ * with a {@link TouchTraceWriter} to replay them off-device. Given an input
+ * executor, events are copied on the UI thread and interpreted on the
+ * executor through a {@link TouchInputPipeline}, the listener is then called
+ * on the executor as well.
  *
  * @author Konrad Rej
  * @author www.konradrej.com
- * @version 1.1
+ * @version 1.5
  * @since 1.0
  */
-public class TouchPadView extends View implements
-        View.OnTouchListener,
-        GestureDetector.OnGestureListener,
-        GestureDetector.OnDoubleTapListener {
+public class TouchPadView extends View implements View.OnTouchListener {
+
+    private static final String TAG = "TouchPadView";
 
     private OnTouchListener wrappedOnTouchListener = null;
-    private OnTouchPadEventListener onTouchPadEventListener = null;
-    private GestureDetectorCompat gestureDetector;
-    private boolean ignoreFirstScrollEvent = true;
-    private boolean isDoubleClickHold = false;
-    private float lastDragX;
-    private float lastDragY;
+    private volatile TouchPadGestureDetector.OnTouchPadGestureListener onTouchPadEventListener = null;
+    private TouchPadGestureDetector gestureDetector;
+    private TouchInputPipeline inputPipeline = null;
+    private TouchTraceWriter touchTraceWriter = null;
+    private boolean droppingEvents = false;
+    private final MotionEventAdapter motionEventAdapter = new MotionEventAdapter();
 
     /**
      * Simple constructor to use when creating a view from code.
@@ -67,7 +80,14 @@ public class TouchPadView extends View implements
     }
 
     private void init() {
-        gestureDetector = new GestureDetectorCompat(getContext(), this);
+        ViewConfiguration viewConfiguration = ViewConfiguration.get(getContext());
+
+        gestureDetector = new TouchPadGestureDetector(new ListenerForwarder(),
+                viewConfiguration.getScaledTouchSlop(),
+                viewConfiguration.getScaledDoubleTapSlop(),
+                ViewConfiguration.getLongPressTimeout(),
+                ViewConfiguration.getDoubleTapTimeout(),
+                viewConfiguration.getScaledMinimumFlingVelocity());
         super.setOnTouchListener(this);
     }
 
@@ -88,40 +108,36 @@ public class TouchPadView extends View implements
      * @param listener listener to set
      * @since 1.0
      */
-    public void setOnTouchPadEventListener(OnTouchPadEventListener listener) {
+    public void setOnTouchPadEventListener(TouchPadGestureDetector.OnTouchPadGestureListener listener) {
         onTouchPadEventListener = listener;
     }
 
     /**
-     * Calls touchPadEventListener callback on singleTapConfirmed.
+     * Set executor to interpret touch events on, called with no gesture in
+     * progress. The executor must run tasks one at a time, preferably on a
+     * thread of high priority.
      *
-     * @param e ignored
-     * @return true
-     * @since 1.0
+     * @param executor executor to interpret events on, null to interpret them on the UI thread
+     * @since 1.8
      */
-    @Override
-    public boolean onSingleTapConfirmed(MotionEvent e) {
-        if (onTouchPadEventListener != null)
-            onTouchPadEventListener.onLeftClick();
-
-        return true;
+    public void setInputExecutor(Executor executor) {
+        inputPipeline = executor == null ? null
+                : new TouchInputPipeline(gestureDetector, executor, TouchInputPipeline.DEFAULT_CAPACITY);
     }
 
     /**
-     * Not in use, implemented cause of interface requirement.
+     * Set writer recording every touch event, for replaying off-device.
+     * Recording stops if writing fails.
      *
-     * @param e ignored
-     * @return true
-     * @since 1.0
+     * @param writer writer to record to, null to stop recording
+     * @since 1.8
      */
-    @Override
-    public boolean onDoubleTap(MotionEvent e) {
-        return true;
+    public void setTouchTraceWriter(TouchTraceWriter writer) {
+        touchTraceWriter = writer;
     }
 
     /**
-     * Calls onTouchListener and gestureDetector. Also handles drag and click
-     * move event, see {@link #onDoubleTapEvent(MotionEvent)} for why.
+     * Calls onTouchListener and passes the event on to the gesture detector.
      *
      * @param v     event source view
      * @param event the motion event
@@ -130,167 +146,156 @@ public class TouchPadView extends View implements
      */
     @Override
     public boolean onTouch(View v, MotionEvent event) {
-        boolean consumed = false;
-
         if (wrappedOnTouchListener != null)
-            consumed = wrappedOnTouchListener.onTouch(v, event);
+            wrappedOnTouchListener.onTouch(v, event);
 
-        consumed |= gestureDetector.onTouchEvent(event);
+        motionEventAdapter.event = event;
 
-        if (isDoubleClickHold && event.getAction() == MotionEvent.ACTION_MOVE) {
-            sendClickDragMove(event);
+        if (touchTraceWriter != null) {
+            try {
+                touchTraceWriter.write(motionEventAdapter);
+            } catch (IOException e) {
+                Log.w(TAG, "Touch trace recording failed, stopping", e);
+                touchTraceWriter = null;
+            }
         }
 
-        return consumed;
-    }
-
-    /**
-     * Calls scrollBarEventListener callback on scroll.
-     *
-     * @param e1        first motion event
-     * @param e2        second motion event
-     * @param distanceX x distance between events
-     * @param distanceY y distance between events
-     * @return true
-     * @since 1.0
-     */
-    @Override
-    public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
-        if (ignoreFirstScrollEvent) {
-            ignoreFirstScrollEvent = false;
-        } else {
-            int touchAmount = e2.getPointerCount();
-
-            if (onTouchPadEventListener != null) {
-                // If single finger move, if two scroll, else ignore
-                if (touchAmount == 1) {
-                    onTouchPadEventListener.onMove(distanceX, distanceY);
-                } else if (touchAmount == 2) {
-                    onTouchPadEventListener.onScroll(distanceX, distanceY);
-                }
-            }
+        if (inputPipeline == null) {
+            gestureDetector.onTouchEvent(motionEventAdapter);
+        } else if (inputPipeline.enqueue(motionEventAdapter)) {
+            droppingEvents = false;
+        } else if (!droppingEvents) {
+            // Once per burst, the pipeline counts every dropped event
+            droppingEvents = true;
+            Log.w(TAG, "Input thread fell behind, dropping touch events");
         }
 
+        motionEventAdapter.event = null;
+
+        // The touchpad handles every event itself
         return true;
     }
 
-    /**
-     * Handles click and drag start and stop. Click and drag move is handled
-     * in onTouch to avoid batching and therefore laggy behaviour.
-     *
-     * @param e the motion event
-     * @return true
-     * @since 1.0
-     */
-    @Override
-    public boolean onDoubleTapEvent(MotionEvent e) {
-        if (onTouchPadEventListener != null) {
-            if (e.getAction() == MotionEvent.ACTION_DOWN) {
-                isDoubleClickHold = true;
-                onTouchPadEventListener.onClickDragStart();
+    // Reused for every event
+    private static class MotionEventAdapter implements TouchEvent {
+        private MotionEvent event;
 
-                lastDragX = e.getX();
-                lastDragY = e.getY();
-            } else if (e.getAction() == MotionEvent.ACTION_UP) {
-                isDoubleClickHold = false;
+        @Override
+        public int getActionMasked() {
+            return event.getActionMasked();
+        }
 
-                sendClickDragMove(e);
+        @Override
+        public int getActionIndex() {
+            return event.getActionIndex();
+        }
 
-                onTouchPadEventListener.onClickDragEnd();
-            }
+        @Override
+        public int getPointerCount() {
+            return event.getPointerCount();
         }
 
-        return true;
-    }
+        @Override
+        public int getPointerId(int pointerIndex) {
+            return event.getPointerId(pointerIndex);
+        }
 
-    /**
-     * Sets ignore first click to true.
-     *
-     * @param e ignored
-     * @return true
-     * @since 1.0
-     */
-    @Override
-    public boolean onDown(MotionEvent e) {
-        ignoreFirstScrollEvent = true;
-        return true;
-    }
+        @Override
+        public int getHistorySize() {
+            return event.getHistorySize();
+        }
 
-    /**
-     * Not in use, implemented cause of interface requirement.
-     *
-     * @param e ignored
-     * @since 1.0
-     */
-    @Override
-    public void onShowPress(MotionEvent e) {
-    }
+        @Override
+        public long getHistoricalEventTime(int pos) {
+            return event.getHistoricalEventTime(pos);
+        }
 
-    /**
-     * Not in use, implemented cause of interface requirement.
-     *
-     * @param e ignored
-     * @return true
-     * @since 1.0
-     */
-    @Override
-    public boolean onSingleTapUp(MotionEvent e) {
-        return true;
-    }
+        @Override
+        public float getHistoricalX(int pointerIndex, int pos) {
+            return event.getHistoricalX(pointerIndex, pos);
+        }
 
-    /**
-     * Not in use, implemented cause of interface requirement.
-     *
-     * @param e ignored
-     * @since 1.0
-     */
-    @Override
-    public void onLongPress(MotionEvent e) {
-    }
+        @Override
+        public float getHistoricalY(int pointerIndex, int pos) {
+            return event.getHistoricalY(pointerIndex, pos);
+        }
 
-    /**
-     * Not in use, implemented cause of interface requirement.
-     *
-     * @param e1        ignored
-     * @param e2        ignored
-     * @param velocityX ignored
-     * @param velocityY ignored
-     * @return true
-     * @since 1.0
-     */
-    @Override
-    public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
-        return true;
+        @Override
+        public long getEventTime() {
+            return event.getEventTime();
+        }
+
+        @Override
+        public float getX(int pointerIndex) {
+            return event.getX(pointerIndex);
+        }
+
+        @Override
+        public float getY(int pointerIndex) {
+            return event.getY(pointerIndex);
+        }
     }
 
-    private void sendClickDragMove(MotionEvent e) {
-        float distanceX = lastDragX - e.getX();
-        float distanceY = lastDragY - e.getY();
+    // Lets the listener be set or replaced after the detector is created
+    private class ListenerForwarder implements TouchPadGestureDetector.OnTouchPadGestureListener {
+        @Override
+        public void onDown() {
+            if (onTouchPadEventListener != null)
+                onTouchPadEventListener.onDown();
+        }
 
-        lastDragX = e.getX();
-        lastDragY = e.getY();
+        @Override
+        public void onMove(MotionPath path) {
+            if (onTouchPadEventListener != null)
+                onTouchPadEventListener.onMove(path);
+        }
 
-        onTouchPadEventListener.onClickDragMove(distanceX, distanceY);
-    }
+        @Override
+        public void onMoveEnd() {
+            if (onTouchPadEventListener != null)
+                onTouchPadEventListener.onMoveEnd();
+        }
 
-    /**
-     * Callback interface for touchpad events.
-     *
-     * @since 1.0
-     */
-    public interface OnTouchPadEventListener {
-        void onMove(float distanceX, float distanceY);
+        @Override
+        public void onScroll(float distanceX, float distanceY) {
+            if (onTouchPadEventListener != null)
+                onTouchPadEventListener.onScroll(distanceX, distanceY);
+        }
 
-        void onScroll(float distanceX, float distanceY);
+        @Override
+        public void onFling(float velocityX, float velocityY) {
+            if (onTouchPadEventListener != null)
+                onTouchPadEventListener.onFling(velocityX, velocityY);
+        }
 
-        void onLeftClick();
+        @Override
+        public void onLeftClick() {
+            if (onTouchPadEventListener != null)
+                onTouchPadEventListener.onLeftClick();
+        }
 
-        void onRightClick();
+        @Override
+        public void onRightClick() {
+            if (onTouchPadEventListener != null)
+                onTouchPadEventListener.onRightClick();
+        }
 
-        void onClickDragStart();
+        @Override
+        public void onClickDragStart() {
+            if (onTouchPadEventListener != null)
+                onTouchPadEventListener.onClickDragStart();
+        }
 
-        void onClickDragMove(float distanceX, float distanceY);
+        @Override
+        public void onClickDragMove(MotionPath path) {
+            if (onTouchPadEventListener != null)
+                onTouchPadEventListener.onClickDragMove(path);
+        }
 
-        void onClickDragEnd();
+        @Override
+        public void onClickDragEnd() {
+            if (onTouchPadEventListener != null)
+                onTouchPadEventListener.onClickDragEnd();
+        }
     }
 }
@@ -0,0 +1,126 @@
+package com.konradrej.rcpc.client.View;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads back touch events recorded by {@link TouchTraceWriter}.
+ * Not thread safe.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class TouchTraceReader implements Closeable {
+    private final DataInputStream in;
+    private final TouchEventSnapshot event = new TouchEventSnapshot();
+    private final int[] lastX = new int[TouchTraceWriter.MAX_POINTERS];
+    private final int[] lastY = new int[TouchTraceWriter.MAX_POINTERS];
+    private long lastTimeMillis = 0;
+
+    /**
+     * Creates reader reading the trace header from given stream.
+     *
+     * @param in stream to read from, buffered by the reader
+     * @throws IOException if the stream does not hold a supported trace
+     * @since 1.8
+     */
+    public TouchTraceReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+
+        if (this.in.readInt() != TouchTraceWriter.MAGIC) {
+            throw new IOException("Not a touch trace");
+        }
+
+        int version = this.in.readUnsignedByte();
+        if (version != TouchTraceWriter.VERSION) {
+            throw new IOException("Unsupported touch trace version: " + version);
+        }
+    }
+
+    /**
+     * Reads next event. The returned event is reused by the next call.
+     *
+     * @return the read event, null at the end of the trace
+     * @throws IOException if reading fails or the trace is truncated
+     * @since 1.8
+     */
+    public TouchEvent read() throws IOException {
+        int action = in.read();
+
+        if (action < 0) {
+            return null;
+        }
+
+        int actionIndex = in.readUnsignedByte();
+        int pointerCount = in.readUnsignedByte();
+
+        if (pointerCount > TouchTraceWriter.MAX_POINTERS) {
+            throw new IOException("Too many pointers: " + pointerCount);
+        }
+
+        event.reset(action, actionIndex, pointerCount);
+
+        for (int i = 0; i < pointerCount; i++) {
+            event.pointerIds[i] = in.readUnsignedByte();
+        }
+
+        int historySize = (int) readVarLong();
+        event.setHistorySize(historySize);
+
+        for (int pos = 0; pos <= historySize; pos++) {
+            lastTimeMillis += unzigzag(readVarLong());
+            event.times[pos] = lastTimeMillis;
+
+            for (int i = 0; i < pointerCount; i++) {
+                lastX[i] += (int) unzigzag(readVarLong());
+                lastY[i] += (int) unzigzag(readVarLong());
+
+                event.xs[pos * pointerCount + i] = lastX[i] / TouchTraceWriter.POSITION_SCALE;
+                event.ys[pos * pointerCount + i] = lastY[i] / TouchTraceWriter.POSITION_SCALE;
+            }
+        }
+
+        return event;
+    }
+
+    /**
+     * Closes the underlying stream.
+     *
+     * @throws IOException if closing fails
+     * @since 1.8
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+
+            if (b < 0) {
+                throw new EOFException("Truncated touch trace");
+            }
+
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,145 @@
+package com.konradrej.rcpc.client.View;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records touch events, including every historical sample, to a compact
+ * trace read back by {@link TouchTraceReader}.
+ * <p>
+ * A trace starts with {@link #MAGIC} and {@link #VERSION}, followed by one
+ * record per event:
+ * <pre>
+ * [action u8][action index u8][pointer count u8][pointer count x id u8]
+ * [history size varint]
+ * per historical sample and then the event itself:
+ *   [time delta zigzag varint][pointer count x (x delta, y delta) zigzag varint]
+ * </pre>
+ * Times are milliseconds since the previous sample. Positions are in
+ * sixteenths of a pixel relative to the previous position of the same
+ * pointer index, so a typical sample takes a handful of bytes.
+ * Not thread safe.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+public class TouchTraceWriter implements Closeable {
+    public static final int MAGIC = 0x52435454;
+    public static final int VERSION = 1;
+    public static final int MAX_POINTERS = 16;
+
+    static final float POSITION_SCALE = 16f;
+
+    private final DataOutputStream out;
+    private final int[] lastX = new int[MAX_POINTERS];
+    private final int[] lastY = new int[MAX_POINTERS];
+    private long lastTimeMillis = 0;
+
+    /**
+     * Creates writer writing the trace header to given stream.
+     *
+     * @param out stream to write to, buffered by the writer
+     * @throws IOException if writing the header fails
+     * @since 1.8
+     */
+    public TouchTraceWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+    }
+
+    /**
+     * Records given event. Pointers past {@link #MAX_POINTERS} are left out.
+     *
+     * @param event event to record
+     * @throws IOException if writing fails
+     * @since 1.8
+     */
+    public void write(TouchEvent event) throws IOException {
+        int pointerCount = Math.min(event.getPointerCount(), MAX_POINTERS);
+        int historySize = event.getHistorySize();
+
+        out.writeByte(event.getActionMasked());
+        out.writeByte(event.getActionIndex());
+        out.writeByte(pointerCount);
+
+        for (int i = 0; i < pointerCount; i++) {
+            out.writeByte(event.getPointerId(i));
+        }
+
+        writeVarInt(historySize);
+
+        for (int pos = 0; pos < historySize; pos++) {
+            writeTime(event.getHistoricalEventTime(pos));
+
+            for (int i = 0; i < pointerCount; i++) {
+                writePosition(i, event.getHistoricalX(i, pos), event.getHistoricalY(i, pos));
+            }
+        }
+
+        writeTime(event.getEventTime());
+
+        for (int i = 0; i < pointerCount; i++) {
+            writePosition(i, event.getX(i), event.getY(i));
+        }
+    }
+
+    /**
+     * Writes buffered records to the underlying stream.
+     *
+     * @throws IOException if writing fails
+     * @since 1.8
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Flushes and closes the underlying stream.
+     *
+     * @throws IOException if writing fails
+     * @since 1.8
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeTime(long timeMillis) throws IOException {
+        writeVarLong(zigzag(timeMillis - lastTimeMillis));
+        lastTimeMillis = timeMillis;
+    }
+
+    private void writePosition(int pointerIndex, float x, float y) throws IOException {
+        int scaledX = Math.round(x * POSITION_SCALE);
+        int scaledY = Math.round(y * POSITION_SCALE);
+
+        writeVarLong(zigzag(scaledX - lastX[pointerIndex]));
+        writeVarLong(zigzag(scaledY - lastY[pointerIndex]));
+
+        lastX[pointerIndex] = scaledX;
+        lastY[pointerIndex] = scaledY;
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.writeByte((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,58 @@
+package com.konradrej.rcpc.client.Input;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link FlingScroller}.
+ */
+public class FlingScrollerTest {
+
+    @Test
+    public void cancel_stopsScrollingBeforeReturning() throws InterruptedException {
+        AtomicInteger scrolls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(3);
+        String[] tickThread = new String[1];
+        FlingScroller flingScroller = new FlingScroller(Executors.newSingleThreadScheduledExecutor(), 0.1f,
+                (distanceX, distanceY) -> {
+                    tickThread[0] = Thread.currentThread().getName();
+                    scrolls.incrementAndGet();
+                    started.countDown();
+                });
+
+        flingScroller.fling(0f, 2000f);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        flingScroller.cancel();
+        int scrollsAtCancel = scrolls.get();
+        Thread.sleep(FlingSimulator.TICK_MILLIS * 5);
+
+        assertEquals(scrollsAtCancel, scrolls.get());
+        assertFalse(flingScroller.isRunning());
+        assertFalse(Thread.currentThread().getName().equals(tickThread[0]));
+
+        flingScroller.shutdown();
+    }
+
+    @Test
+    public void fling_canBeRestartedAfterCancel() throws InterruptedException {
+        CountDownLatch scrolled = new CountDownLatch(1);
+        FlingScroller flingScroller = new FlingScroller(Executors.newSingleThreadScheduledExecutor(), 4f,
+                (distanceX, distanceY) -> scrolled.countDown());
+
+        flingScroller.fling(0f, 2000f);
+        flingScroller.cancel();
+        flingScroller.fling(0f, 2000f);
+
+        assertTrue(scrolled.await(5, TimeUnit.SECONDS));
+        flingScroller.shutdown();
+    }
+}
@@ -0,0 +1,113 @@
+package com.konradrej.rcpc.client.Input;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link FlingSimulator}, stepped on a virtual clock of ticks.
+ */
+public class FlingSimulatorTest {
+
+    @Test
+    public void fling_decaysAndTravelsVelocityOverFriction() {
+        FlingSimulator flingSimulator = new FlingSimulator(4f);
+        List<float[]> scrolls = new ArrayList<>();
+
+        flingSimulator.start(0f, 3000f);
+        int ticks = run(flingSimulator, scrolls);
+
+        // Exponential decay travels v0 / friction, less what is cut off at the minimum velocity
+        float total = 0;
+        float previous = Float.MAX_VALUE;
+        for (float[] scroll : scrolls) {
+            assertEquals(0f, scroll[0], 0f);
+            assertTrue(scroll[1] <= previous + 1);
+            previous = scroll[1];
+            total += scroll[1];
+        }
+        assertEquals((3000f - FlingSimulator.MIN_VELOCITY) / 4f, total, 25f);
+        assertTrue(ticks < FlingSimulator.MAX_TICKS);
+    }
+
+    @Test
+    public void higherFriction_stopsSooner() {
+        FlingSimulator slippery = new FlingSimulator(2f);
+        FlingSimulator rough = new FlingSimulator(8f);
+
+        slippery.start(-2000f, 0f);
+        rough.start(-2000f, 0f);
+
+        assertTrue(run(rough, new ArrayList<>()) < run(slippery, new ArrayList<>()));
+    }
+
+    @Test
+    public void lowFriction_isBoundedToMaxTicks() {
+        FlingSimulator flingSimulator = new FlingSimulator(0.1f);
+        List<float[]> scrolls = new ArrayList<>();
+
+        flingSimulator.start(5000f, 5000f);
+
+        assertEquals(FlingSimulator.MAX_TICKS, run(flingSimulator, scrolls));
+        assertTrue(scrolls.size() <= FlingSimulator.MAX_TICKS);
+    }
+
+    @Test
+    public void subPixelTicks_areCoalesced() {
+        FlingSimulator flingSimulator = new FlingSimulator(0.5f);
+        List<float[]> scrolls = new ArrayList<>();
+
+        // 40 px/s moves about 0.6 px per tick
+        flingSimulator.start(0f, 40f);
+        int ticks = run(flingSimulator, scrolls);
+
+        assertTrue(scrolls.size() < ticks);
+        for (float[] scroll : scrolls) {
+            assertEquals(1f, scroll[1], 0f);
+        }
+    }
+
+    @Test
+    public void stop_endsFlingImmediately() {
+        FlingSimulator flingSimulator = new FlingSimulator(4f);
+        List<float[]> scrolls = new ArrayList<>();
+
+        flingSimulator.start(0f, 3000f);
+        flingSimulator.step((x, y) -> scrolls.add(new float[]{x, y}));
+        flingSimulator.stop();
+
+        assertFalse(flingSimulator.isRunning());
+        assertFalse(flingSimulator.step((x, y) -> scrolls.add(new float[]{x, y})));
+        assertEquals(1, scrolls.size());
+    }
+
+    @Test
+    public void restart_replacesRunningFling() {
+        FlingSimulator flingSimulator = new FlingSimulator(4f);
+        List<float[]> scrolls = new ArrayList<>();
+
+        flingSimulator.start(0f, 3000f);
+        flingSimulator.step((x, y) -> scrolls.add(new float[]{x, y}));
+        flingSimulator.start(0f, -3000f);
+        flingSimulator.step((x, y) -> scrolls.add(new float[]{x, y}));
+
+        assertEquals(48f, scrolls.get(0)[1], 0f);
+        assertEquals(-48f, scrolls.get(1)[1], 0f);
+    }
+
+    private static int run(FlingSimulator flingSimulator, List<float[]> scrolls) {
+        int ticks = 0;
+
+        while (flingSimulator.isRunning()) {
+            flingSimulator.step((x, y) -> scrolls.add(new float[]{x, y}));
+            ticks++;
+        }
+
+        return ticks;
+    }
+}
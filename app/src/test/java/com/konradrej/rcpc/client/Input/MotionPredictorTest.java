@@ -0,0 +1,151 @@
+package com.konradrej.rcpc.client.Input;
+
+import com.konradrej.rcpc.client.Network.MotionPath;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MotionPredictor}, including an offline evaluation
+ * replaying recorded traces from the traces test resources.
+ */
+public class MotionPredictorTest {
+    private static final String[] TRACES = {"/traces/swipe.csv", "/traces/circle.csv", "/traces/flick_stop.csv"};
+    private static final long[] HORIZONS = {0, 8, 16, 24, 32, 48};
+    // Samples per delivered event, 120 Hz touch sampling at 60 Hz frames
+    private static final int SAMPLES_PER_EVENT = 2;
+
+    @Test
+    public void steadyMotion_isLedByVelocityTimesHorizon() {
+        MotionPredictor motionPredictor = new MotionPredictor(16);
+        MotionPath path = new MotionPath();
+
+        for (int i = 0; i < 30; i++) {
+            path.clear();
+            path.add(-8f, 4f, 8);
+            path.add(-8f, 4f, 8);
+            motionPredictor.apply(path);
+        }
+
+        assertEquals(-16f, motionPredictor.getLeadX(), 1f);
+        assertEquals(8f, motionPredictor.getLeadY(), 1f);
+    }
+
+    @Test
+    public void lead_isCapped() {
+        MotionPredictor motionPredictor = new MotionPredictor(200);
+        MotionPath path = new MotionPath();
+
+        for (int i = 0; i < 30; i++) {
+            path.clear();
+            path.add(40f, 0f, 8);
+            motionPredictor.apply(path);
+        }
+
+        assertEquals(MotionPredictor.MAX_LEAD, motionPredictor.getLeadX(), 0f);
+    }
+
+    @Test
+    public void finish_takesBackLeadSoTotalIsExact() throws IOException {
+        for (String resource : TRACES) {
+            MotionTrace trace = MotionTrace.load(resource);
+            MotionPredictor motionPredictor = new MotionPredictor();
+            MotionPath path = new MotionPath();
+            float sentX = 0;
+            float sentY = 0;
+
+            for (int end = SAMPLES_PER_EVENT; end < trace.size(); end += SAMPLES_PER_EVENT) {
+                fillPath(trace, end - SAMPLES_PER_EVENT, end, path);
+                motionPredictor.apply(path);
+                sentX += path.getTotalX();
+                sentY += path.getTotalY();
+            }
+            int last = (trace.size() - 1) / SAMPLES_PER_EVENT * SAMPLES_PER_EVENT;
+            motionPredictor.finish(path);
+            sentX += path.getTotalX();
+            sentY += path.getTotalY();
+
+            assertEquals(resource, trace.xs[0] - trace.xs[last], sentX, 0.01f);
+            assertEquals(resource, trace.ys[0] - trace.ys[last], sentY, 0.01f);
+        }
+    }
+
+    @Test
+    public void evaluation_predictionBeatsNoPredictionAtFrameHorizon() throws IOException {
+        StringBuilder report = new StringBuilder("Prediction error in pixels, mean (no prediction)\n");
+        report.append(String.format("%-24s", "horizon ms"));
+        for (long horizon : HORIZONS) {
+            report.append(String.format("%16d", horizon));
+        }
+        report.append('\n');
+
+        float predictedTotal = 0;
+        float baselineTotal = 0;
+
+        for (String resource : TRACES) {
+            MotionTrace trace = MotionTrace.load(resource);
+            report.append(String.format("%-24s", resource));
+
+            for (long horizon : HORIZONS) {
+                float[] errors = evaluate(trace, horizon);
+                report.append(String.format("%8.1f (%5.1f)", errors[0], errors[1]));
+
+                if (horizon == 16) {
+                    predictedTotal += errors[0];
+                    baselineTotal += errors[1];
+                }
+            }
+            report.append('\n');
+        }
+
+        System.out.print(report);
+        assertTrue(report.toString(), predictedTotal < baselineTotal * 0.75f);
+    }
+
+    // Mean distance between where the cursor is sent and where the finger is one horizon later
+    private static float[] evaluate(MotionTrace trace, long horizon) {
+        MotionPredictor motionPredictor = new MotionPredictor(horizon);
+        MotionPath path = new MotionPath();
+        float sentX = 0;
+        float sentY = 0;
+        float predictedError = 0;
+        float baselineError = 0;
+        int count = 0;
+
+        for (int end = SAMPLES_PER_EVENT; end < trace.size(); end += SAMPLES_PER_EVENT) {
+            fillPath(trace, end - SAMPLES_PER_EVENT, end, path);
+            motionPredictor.apply(path);
+            sentX += path.getTotalX();
+            sentY += path.getTotalY();
+
+            long time = trace.times[end];
+            // Distances are previous minus current position
+            float cursorX = trace.xs[0] - sentX;
+            float cursorY = trace.ys[0] - sentY;
+            float futureX = trace.xAt(time + horizon);
+            float futureY = trace.yAt(time + horizon);
+
+            predictedError += distance(cursorX - futureX, cursorY - futureY);
+            baselineError += distance(trace.xs[end] - futureX, trace.ys[end] - futureY);
+            count++;
+        }
+
+        return new float[]{predictedError / count, baselineError / count};
+    }
+
+    private static void fillPath(MotionTrace trace, int from, int to, MotionPath path) {
+        path.clear();
+
+        for (int i = from + 1; i <= to; i++) {
+            path.add(trace.xs[i - 1] - trace.xs[i], trace.ys[i - 1] - trace.ys[i], trace.times[i] - trace.times[i - 1]);
+        }
+    }
+
+    private static float distance(float x, float y) {
+        return (float) Math.sqrt(x * x + y * y);
+    }
+}
@@ -0,0 +1,85 @@
+package com.konradrej.rcpc.client.Input;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finger positions of one recorded stroke, read from a test resource with
+ * one "timeMillis,x,y" line per sample and # comments.
+ */
+class MotionTrace {
+    final String name;
+    final long[] times;
+    final float[] xs;
+    final float[] ys;
+
+    private MotionTrace(String name, long[] times, float[] xs, float[] ys) {
+        this.name = name;
+        this.times = times;
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    static MotionTrace load(String resource) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+
+        try (InputStream in = MotionTrace.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Missing trace: " + resource);
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    rows.add(line.split(","));
+                }
+            }
+        }
+
+        long[] times = new long[rows.size()];
+        float[] xs = new float[rows.size()];
+        float[] ys = new float[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            times[i] = Long.parseLong(rows.get(i)[0]);
+            xs[i] = Float.parseFloat(rows.get(i)[1]);
+            ys[i] = Float.parseFloat(rows.get(i)[2]);
+        }
+
+        return new MotionTrace(resource, times, xs, ys);
+    }
+
+    int size() {
+        return times.length;
+    }
+
+    // Linear interpolation, clamped to the ends of the trace
+    float xAt(long time) {
+        return interpolate(xs, time);
+    }
+
+    float yAt(long time) {
+        return interpolate(ys, time);
+    }
+
+    private float interpolate(float[] values, long time) {
+        if (time <= times[0]) {
+            return values[0];
+        }
+
+        for (int i = 1; i < times.length; i++) {
+            if (time <= times[i]) {
+                float fraction = (float) (time - times[i - 1]) / (times[i] - times[i - 1]);
+                return values[i - 1] + (values[i] - values[i - 1]) * fraction;
+            }
+        }
+
+        return values[values.length - 1];
+    }
+}
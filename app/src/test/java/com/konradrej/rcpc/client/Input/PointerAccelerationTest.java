@@ -0,0 +1,173 @@
+package com.konradrej.rcpc.client.Input;
+
+import com.konradrej.rcpc.client.Network.MotionPath;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Deterministic tests and a micro-benchmark for {@link PointerAcceleration}.
+ */
+public class PointerAccelerationTest {
+    private static final int BENCHMARK_SAMPLES = 2000000;
+
+    @Test
+    public void table_matchesDirectCurve() {
+        for (PointerAcceleration.Curve curve : PointerAcceleration.Curve.values()) {
+            PointerAcceleration pointerAcceleration = new PointerAcceleration(curve, 1.5f);
+
+            for (float speed = 0; speed <= PointerAcceleration.MAX_SPEED; speed += 0.013f) {
+                float expected = 1.5f * curve.getGain(speed);
+                assertEquals(curve + " at " + speed, expected, pointerAcceleration.getGain(speed), expected * 0.005f);
+            }
+
+            assertEquals(1.5f * curve.getGain(PointerAcceleration.MAX_SPEED),
+                    pointerAcceleration.getGain(PointerAcceleration.MAX_SPEED * 4), 0.0001f);
+        }
+    }
+
+    @Test
+    public void acceleratingCurves_growWithSpeed() {
+        for (PointerAcceleration.Curve curve : new PointerAcceleration.Curve[]{
+                PointerAcceleration.Curve.POWER, PointerAcceleration.Curve.SIGMOID}) {
+            PointerAcceleration pointerAcceleration = new PointerAcceleration(curve, 1f);
+            float previous = pointerAcceleration.getGain(0);
+
+            assertTrue(pointerAcceleration.getGain(PointerAcceleration.MAX_SPEED) > 2 * previous);
+
+            for (float speed = 0.1f; speed <= PointerAcceleration.MAX_SPEED; speed += 0.1f) {
+                float gain = pointerAcceleration.getGain(speed);
+                assertTrue(curve + " at " + speed, gain >= previous);
+                previous = gain;
+            }
+        }
+    }
+
+    @Test
+    public void fastSwipe_travelsFurtherThanSlowSwipeOfSameLength() {
+        PointerAcceleration slow = new PointerAcceleration(PointerAcceleration.Curve.SIGMOID, 1f);
+        PointerAcceleration fast = new PointerAcceleration(PointerAcceleration.Curve.SIGMOID, 1f);
+
+        // 400 pixels in 8 pixel steps, every 16 ms and every 2 ms
+        float slowTotal = travel(slow, 50, 8f, 16);
+        float fastTotal = travel(fast, 50, 8f, 2);
+
+        assertEquals(-50 * 8f * slow.getGain(0.5f), slowTotal, 2f);
+        assertEquals(-50 * 8f * fast.getGain(4f), fastTotal, 2f);
+        assertTrue(Math.abs(fastTotal) > 3 * Math.abs(slowTotal));
+    }
+
+    @Test
+    public void subPixelMotion_isCarriedNotLost() {
+        PointerAcceleration pointerAcceleration = new PointerAcceleration(PointerAcceleration.Curve.LINEAR, 1f);
+        MotionPath path = new MotionPath();
+        float totalX = 0;
+        float totalY = 0;
+
+        for (int i = 0; i < 1000; i++) {
+            path.clear();
+            path.add(0.3f, -0.7f, 16);
+            pointerAcceleration.apply(path);
+
+            assertEquals(0f, path.getDistanceX(0) % 1, 0f);
+            totalX += path.getDistanceX(0);
+            totalY += path.getDistanceY(0);
+        }
+
+        assertEquals(300f, totalX, 1f);
+        assertEquals(-700f, totalY, 1f);
+    }
+
+    @Test
+    public void untimedSample_keepsPreviousSpeed() {
+        PointerAcceleration pointerAcceleration = new PointerAcceleration(PointerAcceleration.Curve.SIGMOID, 1f);
+        MotionPath path = new MotionPath();
+        path.add(40f, 0f, 10);
+        path.add(40f, 0f, 0);
+
+        pointerAcceleration.apply(path);
+
+        assertEquals(path.getDistanceX(0), path.getDistanceX(1), 1f);
+    }
+
+    @Test
+    public void unknownPreferenceValue_isLinear() {
+        assertEquals(PointerAcceleration.Curve.SIGMOID, PointerAcceleration.Curve.fromPreferenceValue("sigmoid"));
+        assertEquals(PointerAcceleration.Curve.LINEAR, PointerAcceleration.Curve.fromPreferenceValue("quadratic"));
+    }
+
+    @Test
+    public void apply_benchmark() {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        PointerAcceleration pointerAcceleration = new PointerAcceleration(PointerAcceleration.Curve.SIGMOID, 1f);
+        MotionPath path = new MotionPath();
+
+        // Warm up so both loops run compiled
+        float sink = runTable(pointerAcceleration, path) + runDirect(PointerAcceleration.Curve.SIGMOID);
+
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+        sink += runTable(pointerAcceleration, path);
+        long tableNanos = System.nanoTime() - start;
+        long allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+
+        start = System.nanoTime();
+        sink += runDirect(PointerAcceleration.Curve.SIGMOID);
+        long directNanos = System.nanoTime() - start;
+
+        System.out.println("Pointer acceleration: table " + (tableNanos * 1000 / BENCHMARK_SAMPLES) +
+                " ps/sample, direct " + (directNanos * 1000 / BENCHMARK_SAMPLES) + " ps/sample (" + sink + ")");
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static float travel(PointerAcceleration pointerAcceleration, int steps, float step, int deltaMillis) {
+        MotionPath path = new MotionPath();
+        float total = 0;
+
+        for (int i = 0; i < steps; i++) {
+            path.clear();
+            path.add(-step, 0f, deltaMillis);
+            pointerAcceleration.apply(path);
+            total += path.getDistanceX(0);
+        }
+
+        return total;
+    }
+
+    private static float runTable(PointerAcceleration pointerAcceleration, MotionPath path) {
+        float total = 0;
+
+        for (int i = 0; i < BENCHMARK_SAMPLES / MotionPath.MAX_SAMPLES; i++) {
+            path.clear();
+            for (int j = 0; j < MotionPath.MAX_SAMPLES; j++) {
+                path.add(j % 13, j % 7, 1 + (j & 3));
+            }
+
+            pointerAcceleration.apply(path);
+            total += path.getDistanceX(0);
+        }
+
+        return total;
+    }
+
+    // The same work evaluating the curve per sample, what the table avoids
+    private static float runDirect(PointerAcceleration.Curve curve) {
+        float total = 0;
+
+        for (int i = 0; i < BENCHMARK_SAMPLES; i++) {
+            int j = i % MotionPath.MAX_SAMPLES;
+            float distanceX = j % 13;
+            float distanceY = j % 7;
+            float speed = (float) Math.sqrt(distanceX * distanceX + distanceY * distanceY) / (1 + (j & 3));
+
+            total += distanceX * curve.getGain(speed);
+        }
+
+        return total;
+    }
+}
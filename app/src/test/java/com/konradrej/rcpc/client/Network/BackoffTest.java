@@ -0,0 +1,69 @@
+package com.konradrej.rcpc.client.Network;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Backoff}.
+ */
+public class BackoffTest {
+
+    @Test
+    public void delays_growExponentiallyWithinJitterBounds() {
+        Backoff backoff = new Backoff(100, 100000, 8, new Random(1));
+
+        for (int attempt = 0; attempt < 8; attempt++) {
+            long ceiling = 100L << attempt;
+            long delay = backoff.nextDelayMillis();
+
+            assertTrue("Attempt " + attempt + " delay " + delay, delay >= ceiling / 2 && delay <= ceiling);
+        }
+
+        assertFalse(backoff.hasNext());
+    }
+
+    @Test
+    public void delays_areCappedAndDoNotOverflow() {
+        Backoff backoff = new Backoff(250, 8000, 100, new Random(2));
+
+        for (int attempt = 0; attempt < 100; attempt++) {
+            long delay = backoff.nextDelayMillis();
+            assertTrue(delay > 0 && delay <= 8000);
+        }
+    }
+
+    @Test
+    public void reset_startsOver() {
+        Backoff backoff = new Backoff(100, 10000, 3, new Random(3));
+
+        backoff.nextDelayMillis();
+        backoff.nextDelayMillis();
+        backoff.nextDelayMillis();
+        assertFalse(backoff.hasNext());
+
+        backoff.reset();
+        assertTrue(backoff.hasNext());
+        assertEquals(0, backoff.getAttempt());
+        assertTrue(backoff.nextDelayMillis() <= 100);
+    }
+
+    @Test
+    public void jitter_spreadsDelays() {
+        Random random = new Random(4);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        for (int i = 0; i < 100; i++) {
+            long delay = new Backoff(1000, 1000, 1, random).nextDelayMillis();
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+
+        assertTrue(max - min > 250);
+    }
+}
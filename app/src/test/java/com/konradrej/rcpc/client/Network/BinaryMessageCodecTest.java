@@ -0,0 +1,168 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trip and size tests for {@link BinaryMessageCodec}.
+ */
+public class BinaryMessageCodecTest {
+    private static final int MESSAGE_AMOUNT = 10000;
+
+    @Test
+    public void inputMessages_roundTrip() throws IOException, ClassNotFoundException {
+        List<Message> messages = new ArrayList<>();
+        messages.add(distanceMessage(MessageType.ACTION_MOVE, 1.5f, -2.25f));
+        messages.add(distanceMessage(MessageType.ACTION_SCROLL, 0f, 12f));
+        messages.add(distanceMessage(MessageType.ACTION_CLICK_AND_DRAG_MOVE, -0.125f, Float.MAX_VALUE));
+
+        List<Message> decoded = roundTrip(new BinaryMessageCodec(), messages);
+
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals(messages.get(i).getMessageType(), decoded.get(i).getMessageType());
+            assertEquals(messages.get(i).getAdditionalDataFromKey("distanceX"), decoded.get(i).getAdditionalDataFromKey("distanceX"));
+            assertEquals(messages.get(i).getAdditionalDataFromKey("distanceY"), decoded.get(i).getAdditionalDataFromKey("distanceY"));
+        }
+    }
+
+    @Test
+    public void otherMessages_fallBackToSerializedObject() throws IOException, ClassNotFoundException {
+        List<Message> messages = new ArrayList<>();
+        messages.add(new Message(MessageType.ACTION_PRIMARY_CLICK));
+        messages.add(new Message(MessageType.ACTION_SET_VOLUME, 42f));
+        messages.add(distanceMessage(MessageType.ACTION_MOVE, 3f, 4f));
+        messages.add(new Message(MessageType.ACTION_MOVE));
+
+        List<Message> decoded = roundTrip(new BinaryMessageCodec(), messages);
+
+        assertEquals(MessageType.ACTION_PRIMARY_CLICK, decoded.get(0).getMessageType());
+        assertEquals(42f, decoded.get(1).getMessageData());
+        assertEquals(4f, decoded.get(2).getAdditionalDataFromKey("distanceY"));
+        assertEquals(MessageType.ACTION_MOVE, decoded.get(3).getMessageType());
+        assertNull(decoded.get(3).getAdditionalData());
+    }
+
+    @Test
+    public void binaryFrames_areSmallerAndFasterThanSerialization() throws IOException, ClassNotFoundException {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGE_AMOUNT; i++) {
+            messages.add(distanceMessage(MessageType.ACTION_MOVE, i * 0.5f, -i * 0.25f));
+        }
+
+        // Warm up both paths before timing
+        roundTrip(new JavaSerializationCodec(), messages);
+        roundTrip(new BinaryMessageCodec(), messages);
+
+        long serializedStart = System.nanoTime();
+        int serializedBytes = encode(new JavaSerializationCodec(), messages).length;
+        long serializedNanos = System.nanoTime() - serializedStart;
+
+        long binaryStart = System.nanoTime();
+        int binaryBytes = encode(new BinaryMessageCodec(), messages).length;
+        long binaryNanos = System.nanoTime() - binaryStart;
+
+        System.out.println(String.format("Java serialization: %.1f bytes/message, %d messages/s",
+                (double) serializedBytes / MESSAGE_AMOUNT, MESSAGE_AMOUNT * 1_000_000_000L / serializedNanos));
+        System.out.println(String.format("Binary frames: %.1f bytes/message, %d messages/s",
+                (double) binaryBytes / MESSAGE_AMOUNT, MESSAGE_AMOUNT * 1_000_000_000L / binaryNanos));
+
+        assertTrue(binaryBytes * 4 < serializedBytes);
+    }
+
+    @Test
+    public void motionPath_roundTripsWithTimestamps() throws IOException, ClassNotFoundException {
+        MotionSample motionSample = new MotionSample();
+        MotionPath path = new MotionPath();
+        path.add(1f, -1f, 4);
+        path.add(2.5f, 0f, 8);
+        path.add(-0.5f, 3f, 70000);
+        motionSample.set(MessageType.ACTION_CLICK_AND_DRAG_MOVE, path);
+
+        Message decoded = writeAndRead(new BinaryMessageCodec(true), motionSample);
+        MotionPath decodedPath = (MotionPath) decoded.getAdditionalDataFromKey(MotionPath.MOTION_PATH_KEY);
+
+        assertEquals(MessageType.ACTION_CLICK_AND_DRAG_MOVE, decoded.getMessageType());
+        assertEquals(3f, decoded.getAdditionalDataFromKey("distanceX"));
+        assertEquals(2f, decoded.getAdditionalDataFromKey("distanceY"));
+        assertEquals(3, decodedPath.size());
+        for (int i = 0; i < path.size(); i++) {
+            assertEquals(path.getDistanceX(i), decodedPath.getDistanceX(i), 0f);
+            assertEquals(path.getDistanceY(i), decodedPath.getDistanceY(i), 0f);
+            assertEquals(path.getDeltaMillis(i), decodedPath.getDeltaMillis(i));
+        }
+        assertEquals(MotionPath.MAX_DELTA_MILLIS, decodedPath.getDeltaMillis(2));
+    }
+
+    @Test
+    public void motionPath_isSummedUnlessEnabled() throws IOException, ClassNotFoundException {
+        MotionSample motionSample = new MotionSample();
+        MotionPath path = new MotionPath();
+        path.add(1f, 2f, 4);
+        path.add(3f, 4f, 4);
+        motionSample.set(MessageType.ACTION_MOVE, path);
+
+        Message decoded = writeAndRead(new BinaryMessageCodec(), motionSample);
+
+        assertEquals(4f, decoded.getAdditionalDataFromKey("distanceX"));
+        assertEquals(6f, decoded.getAdditionalDataFromKey("distanceY"));
+        assertNull(decoded.getAdditionalDataFromKey(MotionPath.MOTION_PATH_KEY));
+    }
+
+    private static Message writeAndRead(MessageCodec messageCodec, MotionSample motionSample)
+            throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        messageCodec.writeMotion(motionSample, out);
+        out.flush();
+
+        return messageCodec.readMessage(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private static Message distanceMessage(MessageType messageType, float distanceX, float distanceY) {
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put("distanceX", distanceX);
+        additionalData.put("distanceY", distanceY);
+
+        return new Message(messageType, null, additionalData);
+    }
+
+    private static byte[] encode(MessageCodec messageCodec, List<Message> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+
+        for (Message message : messages) {
+            messageCodec.writeMessage(message, out);
+            out.flush();
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static List<Message> roundTrip(MessageCodec messageCodec, List<Message> messages) throws IOException, ClassNotFoundException {
+        byte[] bytes = encode(messageCodec, messages);
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+
+        List<Message> decoded = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            decoded.add(messageCodec.readMessage(in));
+        }
+
+        return decoded;
+    }
+}
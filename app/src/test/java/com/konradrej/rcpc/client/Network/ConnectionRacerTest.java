@@ -0,0 +1,353 @@
+package com.konradrej.rcpc.client.Network;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Races {@link ConnectionRacer} against stand-in listeners on loopback that
+ * delay the handshake or the accept reply, as a server on a slow or stale
+ * address would.
+ */
+public class ConnectionRacerTest {
+    private static final byte HANDSHAKE = 'H';
+    private static final byte GUID = 'G';
+    private static final byte ACCEPTED = 'A';
+
+    private final List<StandInListener> listeners = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (StandInListener listener : listeners) {
+            listener.close();
+        }
+    }
+
+    @Test
+    public void fastEndpoint_winsAndSlowOneIsAborted() throws Exception {
+        StandInListener slow = listen(2000, 0, false);
+        StandInListener fast = listen(0, 0, false);
+
+        long start = System.nanoTime();
+        StandInConnection winner = race(50, slow.endpoint(), fast.endpoint());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(fast.endpoint(), winner.endpoint);
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < 1000);
+        slow.awaitClosed(1);
+        assertEquals(0, slow.guidCount.get());
+        winner.close();
+    }
+
+    @Test
+    public void preferredEndpoint_winsWhenItAnswersWithinAttemptDelay() throws Exception {
+        StandInListener preferred = listen(0, 0, false);
+        StandInListener other = listen(0, 0, false);
+
+        StandInConnection winner = race(500, preferred.endpoint(), other.endpoint());
+
+        assertEquals(preferred.endpoint(), winner.endpoint);
+        // The second attempt was never needed
+        assertEquals(0, other.connectionCount.get());
+        winner.close();
+    }
+
+    @Test
+    public void refusedEndpoint_startsNextWithoutWaitingForAttemptDelay() throws Exception {
+        InetSocketAddress refused = closedEndpoint();
+        StandInListener listener = listen(0, 0, false);
+
+        long start = System.nanoTime();
+        StandInConnection winner = race(5000, refused, listener.endpoint());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(listener.endpoint(), winner.endpoint);
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < 2000);
+        winner.close();
+    }
+
+    @Test
+    public void acceptPhase_runsOnceWhenSeveralEndpointsConnect() throws Exception {
+        // Both connect right away but the user takes a while to accept
+        StandInListener first = listen(0, 300, false);
+        StandInListener second = listen(0, 300, false);
+
+        StandInConnection winner = race(10, first.endpoint(), second.endpoint());
+
+        // The user was asked once, the other connection was dropped without asking
+        assertEquals(1, first.guidCount.get() + second.guidCount.get());
+        StandInListener loser = winner.endpoint.equals(first.endpoint()) ? second : first;
+        loser.awaitClosed(1);
+        winner.close();
+    }
+
+    @Test
+    public void failedAcceptPhase_fallsBackToNextConnected() throws Exception {
+        StandInListener broken = listen(0, 0, true);
+        StandInListener working = listen(200, 0, false);
+
+        StandInConnection winner = race(10, broken.endpoint(), working.endpoint());
+
+        assertEquals(working.endpoint(), winner.endpoint);
+        assertEquals(1, broken.guidCount.get());
+        winner.close();
+    }
+
+    @Test
+    public void allEndpointsFailing_throwsFirstFailureWithOthersSuppressed() throws Exception {
+        try {
+            race(10, closedEndpoint(), closedEndpoint());
+            fail("Expected failure");
+        } catch (IOException e) {
+            assertEquals(1, e.getSuppressed().length);
+        }
+    }
+
+    @Test
+    public void cancel_abortsRunningAttempts() throws Exception {
+        StandInListener slow = listen(10_000, 0, false);
+        ConnectionRacer<StandInConnection> racer = new ConnectionRacer<>(new StandInDialer(), 10);
+
+        CompletableFuture<StandInConnection> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                return racer.race(Arrays.asList(slow.endpoint()));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        slow.awaitConnections(1);
+        racer.cancel();
+
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("Expected cancellation");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getCause() instanceof InterruptedIOException);
+        }
+
+        slow.awaitClosed(1);
+    }
+
+    @Test
+    public void interleaveFamilies_alternatesStartingWithPreferredFamily() throws Exception {
+        InetSocketAddress v4a = new InetSocketAddress(InetAddress.getByName("192.168.1.20"), 666);
+        InetSocketAddress v4b = new InetSocketAddress(InetAddress.getByName("192.168.1.21"), 666);
+        InetSocketAddress v6a = new InetSocketAddress(InetAddress.getByName("fe80::1"), 666);
+        InetSocketAddress v6b = new InetSocketAddress(InetAddress.getByName("fe80::2"), 666);
+
+        assertEquals(Arrays.asList(v4a, v6a, v4b, v6b),
+                ConnectionRacer.interleaveFamilies(Arrays.asList(v4a, v4b, v4a, v6a, v6b)));
+        assertEquals(Arrays.asList(v6b, v4a, v6a),
+                ConnectionRacer.interleaveFamilies(Arrays.asList(v6b, v6a, v4a)));
+    }
+
+    private StandInConnection race(long attemptDelayMillis, InetSocketAddress... endpoints) throws IOException {
+        ConnectionRacer<StandInConnection> racer = new ConnectionRacer<>(new StandInDialer(), attemptDelayMillis);
+        StandInConnection winner = racer.race(Arrays.asList(endpoints));
+
+        // Cancelling after the race leaves the winner alone
+        racer.cancel();
+        assertFalse(winner.socket.isClosed());
+
+        return winner;
+    }
+
+    private StandInListener listen(long handshakeDelayMillis, long acceptDelayMillis, boolean failAccept) throws IOException {
+        StandInListener listener = new StandInListener(handshakeDelayMillis, acceptDelayMillis, failAccept);
+        listeners.add(listener);
+
+        return listener;
+    }
+
+    private static InetSocketAddress closedEndpoint() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        }
+    }
+
+    private static void await(AtomicInteger counter, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (counter.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(count, counter.get());
+    }
+
+    private static class StandInConnection implements Closeable {
+        private final InetSocketAddress endpoint;
+        private final Socket socket;
+
+        private StandInConnection(InetSocketAddress endpoint, Socket socket) {
+            this.endpoint = endpoint;
+            this.socket = socket;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    // Plays the part of TLS and the GUID exchange with single bytes
+    private static class StandInDialer implements ConnectionRacer.Dialer<StandInConnection> {
+        @Override
+        public StandInConnection connect(InetSocketAddress endpoint, ConnectionRacer.Abort abort) throws IOException {
+            Socket socket = new Socket();
+            abort.setCloseable(socket);
+
+            socket.connect(endpoint, 5000);
+            expect(socket.getInputStream(), HANDSHAKE);
+
+            return new StandInConnection(endpoint, socket);
+        }
+
+        @Override
+        public void accept(StandInConnection connection) throws IOException {
+            connection.socket.getOutputStream().write(GUID);
+            expect(connection.socket.getInputStream(), ACCEPTED);
+        }
+
+        private static void expect(InputStream in, byte expected) throws IOException {
+            int read = in.read();
+
+            if (read != expected) {
+                throw new IOException("Expected " + (char) expected + " but read " + read);
+            }
+        }
+    }
+
+    private static class StandInListener implements Closeable {
+        private final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final List<Socket> sockets = new ArrayList<>();
+        private final AtomicInteger connectionCount = new AtomicInteger();
+        private final AtomicInteger guidCount = new AtomicInteger();
+        private final AtomicInteger closedCount = new AtomicInteger();
+        private final long handshakeDelayMillis;
+        private final long acceptDelayMillis;
+        private final boolean failAccept;
+
+        private StandInListener(long handshakeDelayMillis, long acceptDelayMillis, boolean failAccept) throws IOException {
+            this.handshakeDelayMillis = handshakeDelayMillis;
+            this.acceptDelayMillis = acceptDelayMillis;
+            this.failAccept = failAccept;
+
+            Thread acceptThread = new Thread(this::acceptLoop, "StandInListener");
+            acceptThread.setDaemon(true);
+            acceptThread.start();
+        }
+
+        private InetSocketAddress endpoint() {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        }
+
+        private void awaitConnections(int count) throws InterruptedException {
+            await(connectionCount, count);
+        }
+
+        private void awaitClosed(int count) throws InterruptedException {
+            await(closedCount, count);
+        }
+
+        private void acceptLoop() {
+            try {
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    synchronized (sockets) {
+                        sockets.add(socket);
+                    }
+                    connectionCount.incrementAndGet();
+
+                    Thread connectionThread = new Thread(() -> serve(socket), "StandInConnection");
+                    connectionThread.setDaemon(true);
+                    connectionThread.start();
+                }
+            } catch (IOException ignored) {
+                // Closed
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                InputStream in = socket.getInputStream();
+
+                if (!waitUnlessClosed(socket, handshakeDelayMillis)) {
+                    return;
+                }
+                socket.getOutputStream().write(HANDSHAKE);
+
+                if (in.read() != GUID) {
+                    return;
+                }
+                guidCount.incrementAndGet();
+
+                if (failAccept) {
+                    socket.close();
+                    return;
+                }
+
+                Thread.sleep(acceptDelayMillis);
+                socket.getOutputStream().write(ACCEPTED);
+
+                while (in.read() != -1) {
+                    // Drain until the client closes
+                }
+            } catch (IOException | InterruptedException ignored) {
+                // Closed by either side
+            } finally {
+                closedCount.incrementAndGet();
+            }
+        }
+
+        // Waits out the injected delay, false if the client hung up meanwhile
+        private static boolean waitUnlessClosed(Socket socket, long delayMillis) throws IOException {
+            if (delayMillis == 0) {
+                return true;
+            }
+
+            socket.setSoTimeout((int) delayMillis);
+            try {
+                // A client never sends before the handshake, so this only returns on hang up
+                return socket.getInputStream().read() != -1;
+            } catch (SocketTimeoutException e) {
+                return true;
+            } finally {
+                socket.setSoTimeout(0);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+
+            synchronized (sockets) {
+                for (Socket socket : sockets) {
+                    socket.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link DatagramMotionSender} against {@link LoopbackMotionReceiver},
+ * including simulated packet loss and reordering.
+ */
+public class DatagramMotionSenderTest {
+    private SecretKey key;
+    private LoopbackMotionReceiver receiver;
+
+    @Before
+    public void setUp() throws Exception {
+        key = DatagramMotionSender.generateKey();
+        receiver = new LoopbackMotionReceiver(key);
+    }
+
+    @After
+    public void tearDown() {
+        receiver.close();
+    }
+
+    @Test
+    public void onlyMotionIsAccepted() throws Exception {
+        DatagramMotionSender sender = new DatagramMotionSender(InetAddress.getLoopbackAddress(), receiver.getPort(), key);
+
+        assertTrue(sender.offer(distanceMessage(MessageType.ACTION_MOVE, 1f, 1f)));
+        assertTrue(sender.offer(distanceMessage(MessageType.ACTION_SCROLL, 0f, 1f)));
+        assertTrue(sender.offer(distanceMessage(MessageType.ACTION_CLICK_AND_DRAG_MOVE, 1f, 0f)));
+        assertFalse(sender.offer(new Message(MessageType.ACTION_PRIMARY_CLICK)));
+        assertFalse(sender.offer(new Message(MessageType.ACTION_CLICK_AND_DRAG_START)));
+        assertFalse(sender.offer(new Message(MessageType.ACTION_SET_VOLUME, 50f)));
+
+        sender.stop();
+        assertFalse(sender.offer(distanceMessage(MessageType.ACTION_MOVE, 1f, 1f)));
+    }
+
+    @Test
+    public void loopback_deliversTotalDisplacement() throws Exception {
+        Thread receiverThread = new Thread(receiver);
+        receiverThread.start();
+
+        DatagramMotionSender sender = new DatagramMotionSender(InetAddress.getLoopbackAddress(), receiver.getPort(), key);
+        Thread senderThread = new Thread(sender);
+        senderThread.start();
+
+        double expectedX = 0;
+        double expectedY = 0;
+        for (int i = 0; i < 500; i++) {
+            sender.offer(distanceMessage(MessageType.ACTION_MOVE, i % 3, -(i % 4)));
+            expectedX += i % 3;
+            expectedY -= i % 4;
+        }
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (receiver.getAppliedX(BinaryMessageCodec.FRAME_MOVE) != expectedX && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        sender.stop();
+        senderThread.join(1000);
+
+        assertEquals(expectedX, receiver.getAppliedX(BinaryMessageCodec.FRAME_MOVE), 0);
+        assertEquals(expectedY, receiver.getAppliedY(BinaryMessageCodec.FRAME_MOVE), 0);
+        assertEquals(0, receiver.getRejected());
+    }
+
+    @Test
+    public void lossAndReordering_dropStaleAndKeepFinalTotals() throws Exception {
+        List<byte[]> datagrams = new ArrayList<>();
+        double expectedY = 0;
+
+        try (DatagramSocket relay = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            relay.setSoTimeout(500);
+
+            DatagramMotionSender sender = new DatagramMotionSender(InetAddress.getLoopbackAddress(), relay.getLocalPort(), key);
+            Thread senderThread = new Thread(sender);
+            senderThread.start();
+
+            for (int i = 0; i < 300; i++) {
+                sender.offer(distanceMessage(MessageType.ACTION_SCROLL, 0f, i % 5));
+                expectedY += i % 5;
+
+                // Pace sending so most messages become separate datagrams
+                if (i % 10 == 0) {
+                    Thread.sleep(1);
+                }
+            }
+
+            sender.stop();
+            senderThread.join(1000);
+
+            byte[] buffer = new byte[512];
+            while (true) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                try {
+                    relay.receive(packet);
+                } catch (SocketTimeoutException e) {
+                    break;
+                }
+
+                byte[] datagram = new byte[packet.getLength()];
+                System.arraycopy(packet.getData(), packet.getOffset(), datagram, 0, packet.getLength());
+                datagrams.add(datagram);
+            }
+        }
+
+        assertTrue(datagrams.size() > 10);
+
+        // Final datagram carries the final total, losing it would lose motion until the next one
+        byte[] last = datagrams.remove(datagrams.size() - 1);
+
+        List<byte[]> delivered = new ArrayList<>();
+        for (int i = 0; i < datagrams.size(); i++) {
+            if (i % 3 != 0) {
+                delivered.add(datagrams.get(i));
+            }
+        }
+        Collections.shuffle(delivered, new Random(42));
+        delivered.add(delivered.size() / 2, last);
+
+        for (byte[] datagram : delivered) {
+            receiver.accept(datagram, 0, datagram.length);
+        }
+
+        assertEquals(0, receiver.getAppliedX(BinaryMessageCodec.FRAME_SCROLL), 0);
+        assertEquals(expectedY, receiver.getAppliedY(BinaryMessageCodec.FRAME_SCROLL), 0);
+        assertTrue(receiver.getStaleDropped() > 0);
+        assertEquals(0, receiver.getRejected());
+    }
+
+    @Test
+    public void idleMotion_resendsLastDatagram() throws Exception {
+        try (DatagramSocket relay = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            relay.setSoTimeout(500);
+
+            DatagramMotionSender sender = new DatagramMotionSender(InetAddress.getLoopbackAddress(), relay.getLocalPort(), key);
+            Thread senderThread = new Thread(sender);
+            senderThread.start();
+
+            sender.offerMotion(MessageType.ACTION_MOVE, 3f, 4f);
+            List<byte[]> datagrams = receiveAll(relay);
+
+            sender.stop();
+            senderThread.join(1000);
+
+            assertEquals(1 + DatagramMotionSender.RETRANSMIT_DELAYS_MILLIS.length, datagrams.size());
+            for (byte[] datagram : datagrams) {
+                assertArrayEquals(datagrams.get(0), datagram);
+            }
+
+            // Only the first copy to arrive is applied
+            for (byte[] datagram : datagrams) {
+                receiver.accept(datagram, 0, datagram.length);
+            }
+            assertEquals(3, receiver.getAppliedX(BinaryMessageCodec.FRAME_MOVE), 0);
+            assertEquals(DatagramMotionSender.RETRANSMIT_DELAYS_MILLIS.length, receiver.getStaleDropped());
+        }
+    }
+
+    @Test
+    public void awaitMotionSent_returnsOnceOfferedMotionIsSent() throws Exception {
+        try (DatagramSocket relay = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            DatagramMotionSender sender = new DatagramMotionSender(InetAddress.getLoopbackAddress(), relay.getLocalPort(), key);
+            Thread senderThread = new Thread(sender);
+            senderThread.start();
+
+            double expectedX = 0;
+            for (int i = 0; i < 200; i++) {
+                sender.offerMotion(MessageType.ACTION_MOVE, i % 7, 0f);
+                expectedX += i % 7;
+            }
+
+            // As the TLS writer does before writing a click
+            assertTrue(sender.awaitMotionSent(TimeUnit.SECONDS.toNanos(1)));
+
+            // Loopback datagrams are queued at the receiver once sent
+            relay.setSoTimeout(1);
+            double sentX = 0;
+            for (byte[] datagram : receiveAll(relay)) {
+                sentX = Math.max(sentX, MotionDatagram.decode(datagram, 0, datagram.length, key).totalX);
+            }
+
+            sender.stop();
+            senderThread.join(1000);
+
+            assertEquals(expectedX, sentX, 0);
+        }
+    }
+
+    @Test
+    public void motionOfferedWhileNotSending_isNeverDropped() throws Exception {
+        Thread receiverThread = new Thread(receiver);
+        receiverThread.start();
+
+        DatagramMotionSender sender = new DatagramMotionSender(InetAddress.getLoopbackAddress(), receiver.getPort(), key);
+
+        // Far more than any queue would hold, as while the sending thread is descheduled
+        double expectedX = 0;
+        double expectedY = 0;
+        for (int i = 0; i < 10_000; i++) {
+            MessageType messageType = i % 3 == 0 ? MessageType.ACTION_SCROLL : MessageType.ACTION_MOVE;
+            sender.offerMotion(messageType, 1f, i % 5);
+
+            if (messageType == MessageType.ACTION_MOVE) {
+                expectedX++;
+                expectedY += i % 5;
+            }
+        }
+
+        Thread senderThread = new Thread(sender);
+        senderThread.start();
+        assertTrue(sender.awaitMotionSent(TimeUnit.SECONDS.toNanos(1)));
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (receiver.getAppliedX(BinaryMessageCodec.FRAME_MOVE) != expectedX && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        sender.stop();
+        senderThread.join(1000);
+
+        assertEquals(expectedX, receiver.getAppliedX(BinaryMessageCodec.FRAME_MOVE), 0);
+        assertEquals(expectedY, receiver.getAppliedY(BinaryMessageCodec.FRAME_MOVE), 0);
+    }
+
+    @Test
+    public void stoppedSender_awaitReturnsRightAway() throws Exception {
+        DatagramMotionSender sender = new DatagramMotionSender(InetAddress.getLoopbackAddress(), receiver.getPort(), key);
+        sender.offerMotion(MessageType.ACTION_MOVE, 1f, 1f);
+        sender.stop();
+
+        long start = System.nanoTime();
+
+        assertFalse(sender.awaitMotionSent(TimeUnit.SECONDS.toNanos(1)));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void forgedDatagrams_areRejected() throws Exception {
+        byte[] datagram = new MotionDatagram(1, BinaryMessageCodec.FRAME_MOVE, 10, 10).encode(key);
+        byte[] tampered = datagram.clone();
+        tampered[MotionDatagram.SEQUENCE_LENGTH + 2] ^= 1;
+        byte[] replayedSequence = datagram.clone();
+        replayedSequence[MotionDatagram.SEQUENCE_LENGTH - 1] = 2;
+        byte[] otherKey = new MotionDatagram(5, BinaryMessageCodec.FRAME_MOVE, 99, 99).encode(DatagramMotionSender.generateKey());
+
+        assertFalse(receiver.accept(tampered, 0, tampered.length));
+        assertFalse(receiver.accept(replayedSequence, 0, replayedSequence.length));
+        assertFalse(receiver.accept(otherKey, 0, otherKey.length));
+        assertTrue(receiver.accept(datagram, 0, datagram.length));
+        assertFalse(receiver.accept(datagram, 0, datagram.length));
+
+        assertEquals(3, receiver.getRejected());
+        assertEquals(1, receiver.getStaleDropped());
+        assertEquals(10, receiver.getAppliedX(BinaryMessageCodec.FRAME_MOVE), 0);
+    }
+
+    private static List<byte[]> receiveAll(DatagramSocket socket) throws IOException {
+        List<byte[]> datagrams = new ArrayList<>();
+        byte[] buffer = new byte[512];
+
+        while (true) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (SocketTimeoutException e) {
+                return datagrams;
+            }
+
+            byte[] datagram = new byte[packet.getLength()];
+            System.arraycopy(packet.getData(), packet.getOffset(), datagram, 0, packet.getLength());
+            datagrams.add(datagram);
+        }
+    }
+
+    private static Message distanceMessage(MessageType messageType, float distanceX, float distanceY) {
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put("distanceX", distanceX);
+        additionalData.put("distanceY", distanceY);
+
+        return new Message(messageType, null, additionalData);
+    }
+}
@@ -0,0 +1,103 @@
+package com.konradrej.rcpc.client.Network;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_containTheirValues() {
+        for (long value = 0; value < 1 << 20; value += 7) {
+            int bucket = LatencyHistogram.getBucket(value);
+
+            assertTrue("Value " + value, value <= LatencyHistogram.getBucketUpperBound(bucket));
+            if (bucket > 0) {
+                assertTrue("Value " + value, value > LatencyHistogram.getBucketUpperBound(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void buckets_boundRelativeError() {
+        for (long value = 32; value < 1 << 23; value = value * 3 / 2 + 1) {
+            long upperBound = LatencyHistogram.getBucketUpperBound(LatencyHistogram.getBucket(value));
+
+            assertTrue("Value " + value, (upperBound - value) / (double) value <= 1.0 / 16);
+        }
+    }
+
+    @Test
+    public void getPercentile_matchesSortedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 100);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertWithinBucket(50000, histogram.getPercentile(50));
+        assertWithinBucket(95000, histogram.getPercentile(95));
+        assertWithinBucket(99000, histogram.getPercentile(99));
+        assertEquals(100000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void getPercentile_handlesEdgeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void record_doesNotAllocate() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(3);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(10000000);
+        }
+
+        // Warm up so the measured loop runs compiled
+        for (long value : values) {
+            histogram.record(value);
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        long sum = 0;
+        for (long value : values) {
+            histogram.record(value);
+            sum += histogram.getPercentile(99);
+        }
+
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(sum > 0);
+        // Allows for the measurement itself, far below one object per record
+        assertTrue("Allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / 16);
+    }
+}
@@ -0,0 +1,94 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LatencyProbe}.
+ */
+public class LatencyProbeTest {
+    private static final long TIMEOUT_NANOS = 5_000_000_000L;
+
+    @Test
+    public void reply_isTimedFromWrite() {
+        LatencyProbe latencyProbe = new LatencyProbe(TIMEOUT_NANOS);
+
+        Message probe = latencyProbe.next(1_000);
+        // Waited behind other messages before being written
+        latencyProbe.onWritten(probe, 50_000);
+
+        assertEquals(30_000, latencyProbe.onReply(echo(probe), 80_000));
+    }
+
+    @Test
+    public void otherMessages_areNotTakenForReplies() {
+        LatencyProbe latencyProbe = new LatencyProbe(TIMEOUT_NANOS);
+        Message probe = latencyProbe.next(0);
+        latencyProbe.onWritten(probe, 0);
+
+        assertEquals(-1, latencyProbe.onReply(new Message(MessageType.INFO_CURRENT_VOLUME_UPDATE, 40), 10));
+        assertFalse(LatencyProbe.isProbe(new Message(MessageType.INFO_CURRENT_VOLUME_UPDATE, 40)));
+
+        // The GUID message advertising probes is not a probe itself
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put(LatencyProbe.LATENCY_PROBE_KEY, true);
+        Message guidMessage = new Message(MessageType.INFO_UUID, "guid", additionalData);
+        assertFalse(LatencyProbe.isProbe(guidMessage));
+        assertEquals(-1, latencyProbe.onReply(guidMessage, 10));
+
+        assertEquals(20, latencyProbe.onReply(echo(probe), 20));
+    }
+
+    @Test
+    public void outstandingProbe_blocksNextUntilAnsweredOrTimedOut() {
+        LatencyProbe latencyProbe = new LatencyProbe(TIMEOUT_NANOS);
+        Message first = latencyProbe.next(0);
+        latencyProbe.onWritten(first, 0);
+
+        assertNull(latencyProbe.next(TIMEOUT_NANOS - 1));
+
+        Message second = latencyProbe.next(TIMEOUT_NANOS);
+        assertNotNull(second);
+        latencyProbe.onWritten(second, TIMEOUT_NANOS);
+
+        // The late reply to the first probe does not count for the second
+        assertEquals(-1, latencyProbe.onReply(echo(first), TIMEOUT_NANOS + 10));
+        assertEquals(100, latencyProbe.onReply(echo(second), TIMEOUT_NANOS + 100));
+
+        assertNotNull(latencyProbe.next(TIMEOUT_NANOS + 100));
+    }
+
+    @Test
+    public void unwrittenProbe_isNotTimed() {
+        LatencyProbe latencyProbe = new LatencyProbe(TIMEOUT_NANOS);
+        Message probe = latencyProbe.next(0);
+
+        assertEquals(-1, latencyProbe.onReply(echo(probe), 10));
+    }
+
+    @Test
+    public void isSupported_onlyIfServerAnswersWithTrue() {
+        Map<String, Object> additionalData = new HashMap<>();
+
+        assertFalse(LatencyProbe.isSupported(new Message(MessageType.INFO_USER_ACCEPTED_CONNECTION, null, additionalData)));
+
+        additionalData.put(LatencyProbe.LATENCY_PROBE_KEY, true);
+        assertTrue(LatencyProbe.isSupported(new Message(MessageType.INFO_USER_ACCEPTED_CONNECTION, null, additionalData)));
+    }
+
+    // As the server sends the probe back, deserialized into a new message
+    private static Message echo(Message probe) {
+        return new Message(probe.getMessageType(), probe.getMessageData(), new HashMap<>(probe.getAdditionalData()));
+    }
+}
@@ -0,0 +1,206 @@
+package com.konradrej.rcpc.client.Network;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ListenerRegistry}.
+ */
+public class ListenerRegistryTest {
+    private final List<ExecutorService> executors = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (ExecutorService executor : executors) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentAddAndRemove_underHighMessageRate_keepsDeliveryOrdered() throws Exception {
+        ListenerRegistry<SequenceListener> registry = new ListenerRegistry<>();
+        ExecutorService firstExecutor = newExecutor();
+        ExecutorService secondExecutor = newExecutor();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        int messageCount = 200000;
+
+        SequenceListener permanentListener = new SequenceListener(failure);
+        registry.add(permanentListener, firstExecutor);
+
+        AtomicInteger running = new AtomicInteger(1);
+        List<Thread> mutators = new ArrayList<>();
+        List<SequenceListener> churningListeners = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            SequenceListener listener = new SequenceListener(failure);
+            churningListeners.add(listener);
+            ExecutorService executor = i % 2 == 0 ? firstExecutor : secondExecutor;
+
+            Thread mutator = new Thread(() -> {
+                try {
+                    while (running.get() == 1) {
+                        registry.add(listener, executor);
+                        registry.add(listener, executor);
+                        Thread.yield();
+                        registry.remove(listener);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+            mutators.add(mutator);
+            mutator.start();
+        }
+
+        for (int sequence = 1; sequence <= messageCount; sequence++) {
+            int value = sequence;
+            registry.dispatch(listener -> listener.onSequence(value));
+        }
+
+        running.set(0);
+        for (Thread mutator : mutators) {
+            mutator.join(5000);
+        }
+
+        CountDownLatch drained = new CountDownLatch(2);
+        firstExecutor.execute(drained::countDown);
+        secondExecutor.execute(drained::countDown);
+        assertTrue(drained.await(10, TimeUnit.SECONDS));
+
+        assertNull(failure.get());
+        assertEquals(messageCount, permanentListener.deliveries);
+        assertEquals(messageCount, permanentListener.lastSequence);
+        assertEquals(1, registry.size());
+
+        int churnedDeliveries = 0;
+        for (SequenceListener listener : churningListeners) {
+            churnedDeliveries += listener.deliveries;
+        }
+        assertTrue(churnedDeliveries > 0);
+    }
+
+    @Test
+    public void slowListener_doesNotBlockDispatch() throws Exception {
+        ListenerRegistry<Runnable> registry = new ListenerRegistry<>();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger fastDeliveries = new AtomicInteger();
+
+        registry.add(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, newExecutor());
+        registry.add(fastDeliveries::incrementAndGet, newExecutor());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            registry.dispatch(Runnable::run);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        release.countDown();
+
+        assertTrue("Dispatch took " + elapsedMillis + " ms", elapsedMillis < 1000);
+        waitFor(() -> fastDeliveries.get() == 1000);
+    }
+
+    @Test
+    public void remove_dropsPendingDeliveries() throws Exception {
+        ListenerRegistry<Runnable> registry = new ListenerRegistry<>();
+        ExecutorService executor = newExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger deliveries = new AtomicInteger();
+        Runnable listener = deliveries::incrementAndGet;
+
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        registry.add(listener, executor);
+        registry.dispatch(Runnable::run);
+        registry.remove(listener);
+        release.countDown();
+
+        CountDownLatch drained = new CountDownLatch(1);
+        executor.execute(drained::countDown);
+        assertTrue(drained.await(5, TimeUnit.SECONDS));
+
+        assertEquals(0, deliveries.get());
+        assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    public void failingListener_doesNotStopOthers() throws Exception {
+        ListenerRegistry<Runnable> registry = new ListenerRegistry<>();
+        ExecutorService executor = newExecutor();
+        AtomicInteger deliveries = new AtomicInteger();
+
+        registry.add(() -> {
+            throw new IllegalStateException("Listener failure");
+        }, executor);
+        registry.add(deliveries::incrementAndGet, executor);
+
+        registry.dispatch(Runnable::run);
+        registry.dispatch(Runnable::run);
+
+        waitFor(() -> deliveries.get() == 2);
+    }
+
+    private ExecutorService newExecutor() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executors.add(executor);
+
+        return executor;
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (!condition.isMet()) {
+            assertTrue("Timed out", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    private static class SequenceListener {
+        private final AtomicReference<Throwable> failure;
+        // Only touched by the listener's executor thread
+        private int lastSequence = 0;
+        private int deliveries = 0;
+
+        private SequenceListener(AtomicReference<Throwable> failure) {
+            this.failure = failure;
+        }
+
+        private void onSequence(int sequence) {
+            if (sequence <= lastSequence) {
+                failure.compareAndSet(null, new AssertionError("Sequence " + sequence + " after " + lastSequence));
+            }
+
+            lastSequence = sequence;
+            deliveries++;
+        }
+    }
+}
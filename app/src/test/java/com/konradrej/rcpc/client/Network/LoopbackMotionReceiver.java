@@ -0,0 +1,90 @@
+package com.konradrej.rcpc.client.Network;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Local stand-in for the server side of the datagram motion channel.
+ * Applies the newest total per frame type and drops stale or forged datagrams.
+ */
+class LoopbackMotionReceiver implements Runnable {
+    private final DatagramSocket socket;
+    private final SecretKey key;
+    private final long[] lastSequences = new long[4];
+    private final double[] appliedX = new double[4];
+    private final double[] appliedY = new double[4];
+    private int staleDropped = 0;
+    private int rejected = 0;
+
+    LoopbackMotionReceiver(SecretKey key) throws SocketException {
+        this.socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        this.key = key;
+    }
+
+    int getPort() {
+        return socket.getLocalPort();
+    }
+
+    void close() {
+        socket.close();
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[512];
+
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (IOException e) {
+                return;
+            }
+
+            accept(packet.getData(), packet.getOffset(), packet.getLength());
+        }
+    }
+
+    synchronized boolean accept(byte[] data, int offset, int length) {
+        MotionDatagram datagram;
+        try {
+            datagram = MotionDatagram.decode(data, offset, length, key);
+        } catch (GeneralSecurityException e) {
+            rejected++;
+            return false;
+        }
+
+        if (datagram.sequence <= lastSequences[datagram.frameType]) {
+            staleDropped++;
+            return false;
+        }
+
+        lastSequences[datagram.frameType] = datagram.sequence;
+        appliedX[datagram.frameType] = datagram.totalX;
+        appliedY[datagram.frameType] = datagram.totalY;
+
+        return true;
+    }
+
+    synchronized double getAppliedX(byte frameType) {
+        return appliedX[frameType];
+    }
+
+    synchronized double getAppliedY(byte frameType) {
+        return appliedY[frameType];
+    }
+
+    synchronized int getStaleDropped() {
+        return staleDropped;
+    }
+
+    synchronized int getRejected() {
+        return rejected;
+    }
+}
@@ -0,0 +1,121 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Long session tests for the reference table resets of {@link MessageWriter}.
+ */
+public class MessageWriterSoakTest {
+    private static final int MESSAGE_COUNT = 1000000;
+    private static final int BLOCK_SIZE = 100000;
+
+    @Test
+    public void millionMoves_keepHeapAndWriteTimeFlat() throws IOException {
+        MessageWriter messageWriter = new MessageWriter();
+        ObjectOutputStream out = new ObjectOutputStream(new DiscardingOutputStream());
+
+        long[] blockNanos = new long[MESSAGE_COUNT / BLOCK_SIZE];
+        long heapAfterFirstBlock = 0;
+
+        for (int block = 0; block < blockNanos.length; block++) {
+            long start = System.nanoTime();
+
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                messageWriter.write(moveMessage(i % 7 - 3, i % 5 - 2), out);
+            }
+
+            blockNanos[block] = System.nanoTime() - start;
+
+            if (block == 0) {
+                heapAfterFirstBlock = usedHeap();
+            }
+        }
+
+        long heapGrowth = usedHeap() - heapAfterFirstBlock;
+        // Keeps the stream and its reference table reachable until measured
+        out.flush();
+        System.out.println("Heap growth over " + MESSAGE_COUNT + " moves: " + heapGrowth / 1024 + " KiB");
+
+        assertTrue("Heap grew by " + heapGrowth + " bytes", heapGrowth < 16 * 1024 * 1024);
+
+        // First blocks include warm up, compare the second against the last
+        long earlyNanos = blockNanos[1];
+        long lateNanos = blockNanos[blockNanos.length - 1];
+        assertTrue("Write time per block went from " + earlyNanos + " to " + lateNanos + " ns",
+                lateNanos < earlyNanos * 3);
+    }
+
+    @Test
+    public void resetStream_isReadByPlainObjectInputStream() throws IOException, ClassNotFoundException {
+        for (MessageCodec messageCodec : new MessageCodec[]{new JavaSerializationCodec(), new BinaryMessageCodec()}) {
+            MessageWriter messageWriter = new MessageWriter();
+            messageWriter.setMessageCodec(messageCodec);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+
+            int count = MessageWriter.RESET_INTERVAL * 3 + 1;
+            for (int i = 0; i < count; i++) {
+                Message message = i % 3 == 0 ?
+                        new Message(MessageType.ACTION_PRIMARY_CLICK) :
+                        moveMessage(i, -i);
+                messageWriter.write(message, out);
+            }
+            out.flush();
+
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            for (int i = 0; i < count; i++) {
+                Message message = messageCodec.readMessage(in);
+
+                if (i % 3 == 0) {
+                    assertEquals(MessageType.ACTION_PRIMARY_CLICK, message.getMessageType());
+                } else {
+                    assertEquals(MessageType.ACTION_MOVE, message.getMessageType());
+                    assertEquals((float) i, message.getAdditionalDataFromKey("distanceX"));
+                }
+            }
+        }
+    }
+
+    private static Message moveMessage(float distanceX, float distanceY) {
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put("distanceX", distanceX);
+        additionalData.put("distanceY", distanceY);
+
+        return new Message(MessageType.ACTION_MOVE, null, additionalData);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static class DiscardingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
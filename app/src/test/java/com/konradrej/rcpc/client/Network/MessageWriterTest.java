@@ -0,0 +1,299 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for {@link MessageWriter}.
+ */
+public class MessageWriterTest {
+    private MessageWriter messageWriter;
+    private FlushRecordingOutputStream outputStream;
+    private Thread writerThread;
+    private volatile IOException writerException;
+
+    @Before
+    public void setUp() throws IOException {
+        messageWriter = new MessageWriter();
+        outputStream = new FlushRecordingOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(outputStream);
+
+        writerThread = new Thread(() -> {
+            try {
+                messageWriter.writeUntilStopped(out);
+            } catch (IOException e) {
+                writerException = e;
+            }
+        });
+        writerThread.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        messageWriter.stop();
+        writerThread.join(1000);
+    }
+
+    @Test
+    public void idleWriter_usesNoCpu() throws InterruptedException {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!threadMXBean.isThreadCpuTimeSupported()) {
+            return;
+        }
+
+        // Let the writer reach its parked state before measuring
+        Thread.sleep(100);
+        long cpuBefore = threadMXBean.getThreadCpuTime(writerThread.getId());
+        Thread.sleep(500);
+        long cpuAfter = threadMXBean.getThreadCpuTime(writerThread.getId());
+
+        long idleCpuMillis = TimeUnit.NANOSECONDS.toMillis(cpuAfter - cpuBefore);
+        assertTrue("Idle writer used " + idleCpuMillis + " ms of CPU", idleCpuMillis < 20);
+    }
+
+    @Test
+    public void enqueue_wakesWriterWithLowLatency() throws InterruptedException {
+        int samples = 200;
+        long[] latencies = new long[samples];
+
+        for (int i = 0; i < samples; i++) {
+            outputStream.flushes.drainPermits();
+
+            long start = System.nanoTime();
+            messageWriter.enqueue(moveMessage(i, i));
+            assertTrue(outputStream.flushes.tryAcquire(1, TimeUnit.SECONDS));
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(latencies);
+        long medianMicros = TimeUnit.NANOSECONDS.toMicros(latencies[samples / 2]);
+        long p99Micros = TimeUnit.NANOSECONDS.toMicros(latencies[samples * 99 / 100]);
+        System.out.println("Enqueue-to-write latency: p50 " + medianMicros + " us, p99 " + p99Micros + " us");
+
+        assertTrue("Median enqueue-to-write latency " + medianMicros + " us", medianMicros < 5000);
+    }
+
+    @Test
+    public void controlMessage_waitsForMotionBarrier() throws InterruptedException {
+        CountDownLatch motionSent = new CountDownLatch(1);
+        CountDownLatch waiting = new CountDownLatch(1);
+        messageWriter.setMotionBarrier((timeoutNanos) -> {
+            waiting.countDown();
+            return motionSent.await(timeoutNanos, TimeUnit.NANOSECONDS);
+        });
+        outputStream.flushes.drainPermits();
+
+        // Enqueueing never waits, the writer does
+        long start = System.nanoTime();
+        messageWriter.enqueue(new Message(MessageType.ACTION_PRIMARY_CLICK));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertTrue(waiting.await(1, TimeUnit.SECONDS));
+        assertFalse(outputStream.flushes.tryAcquire(20, TimeUnit.MILLISECONDS));
+
+        motionSent.countDown();
+        assertTrue(outputStream.flushes.tryAcquire(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void stop_writesPendingMessagesAndReturns() throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] producers = new Thread[4];
+
+        for (int p = 0; p < producers.length; p++) {
+            producers[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                // Clicks are never merged so every message reaches the stream
+                for (int i = 0; i < 250; i++) {
+                    messageWriter.enqueue(new Message(MessageType.ACTION_PRIMARY_CLICK));
+                }
+            });
+            producers[p].start();
+        }
+
+        start.countDown();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        messageWriter.stop();
+        writerThread.join(1000);
+
+        assertFalse(writerThread.isAlive());
+        assertEquals(null, writerException);
+        assertTrue(messageWriter.isStopped());
+        assertTrue(outputStream.size() > 1000);
+    }
+
+    @Test
+    public void writeStall_keepsQueueBoundedAndDisplacementExact() throws Exception {
+        StallingOutputStream stallingOutputStream = new StallingOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(stallingOutputStream);
+        out.flush();
+        stallingOutputStream.armed = true;
+        MessageWriter stalledWriter = new MessageWriter();
+
+        Thread stalledWriterThread = new Thread(() -> {
+            try {
+                stalledWriter.writeUntilStopped(out);
+            } catch (IOException ignored) {
+            }
+        });
+        stalledWriterThread.start();
+
+        // First message blocks the writer inside the stalled stream
+        stalledWriter.enqueue(moveMessage(1f, 1f));
+        stallingOutputStream.stalled.await();
+
+        float expectedX = 1f;
+        float expectedY = 1f;
+        int clicks = 0;
+        int maxQueueSize = 0;
+
+        for (int i = 0; i < 10000; i++) {
+            float distanceX = (i % 7) - 3;
+            float distanceY = (i % 5) - 2;
+            expectedX += distanceX;
+            expectedY += distanceY;
+            stalledWriter.enqueue(moveMessage(distanceX, distanceY));
+
+            if (i % 2500 == 0) {
+                stalledWriter.enqueue(new Message(MessageType.ACTION_PRIMARY_CLICK));
+                clicks++;
+            }
+
+            maxQueueSize = Math.max(maxQueueSize, stalledWriter.getQueueSize());
+        }
+
+        assertTrue("Queue grew to " + maxQueueSize, maxQueueSize <= 2 * clicks + 1);
+
+        stalledWriter.stop();
+        stallingOutputStream.release.countDown();
+        stalledWriterThread.join(1000);
+
+        float actualX = 0;
+        float actualY = 0;
+        int receivedClicks = 0;
+        for (Message message : decode(stallingOutputStream.toByteArray())) {
+            if (message.getMessageType() == MessageType.ACTION_MOVE) {
+                actualX += (Float) message.getAdditionalDataFromKey("distanceX");
+                actualY += (Float) message.getAdditionalDataFromKey("distanceY");
+            } else {
+                receivedClicks++;
+            }
+        }
+
+        assertEquals(expectedX, actualX, 0f);
+        assertEquals(expectedY, actualY, 0f);
+        assertEquals(clicks, receivedClicks);
+    }
+
+    private static Message moveMessage(float distanceX, float distanceY) {
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put("distanceX", distanceX);
+        additionalData.put("distanceY", distanceY);
+
+        return new Message(MessageType.ACTION_MOVE, null, additionalData);
+    }
+
+    private static List<Message> decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        List<Message> messages = new ArrayList<>();
+
+        while (true) {
+            try {
+                messages.add((Message) in.readObject());
+            } catch (EOFException e) {
+                return messages;
+            }
+        }
+    }
+
+    private static class FlushRecordingOutputStream extends OutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final Semaphore flushes = new Semaphore(0);
+
+        @Override
+        public synchronized void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            bytes.write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            flushes.release();
+        }
+
+        synchronized int size() {
+            return bytes.size();
+        }
+    }
+
+    private static class StallingOutputStream extends OutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final CountDownLatch stalled = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean armed = false;
+
+        @Override
+        public synchronized void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (armed) {
+                armed = false;
+                stalled.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            synchronized (this) {
+                bytes.write(b, off, len);
+            }
+        }
+
+        synchronized byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Allocation tests for the motion path from touch listener to codec.
+ */
+public class MotionHotPathTest {
+    private static final int EVENT_COUNT = 200000;
+    private static final MessageType[] MOTION_TYPES = {
+            MessageType.ACTION_MOVE,
+            MessageType.ACTION_SCROLL,
+            MessageType.ACTION_CLICK_AND_DRAG_MOVE
+    };
+
+    private final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void enqueueMotion_doesNotAllocateOnCallingThread() throws Exception {
+        MessageWriter messageWriter = new MessageWriter();
+        messageWriter.setMessageCodec(new BinaryMessageCodec());
+        ObjectOutputStream out = new ObjectOutputStream(new DiscardingOutputStream());
+        Thread writerThread = startWriter(messageWriter, out);
+
+        // Warm up so the measured loop runs compiled
+        enqueueEvents(messageWriter);
+
+        long allocated = allocatedBytes(() -> enqueueEvents(messageWriter));
+
+        messageWriter.stop();
+        writerThread.join(5000);
+
+        // Allows for the measurement itself and lock contention with the writer
+        assertTrue("Allocated " + allocated + " bytes for " + EVENT_COUNT + " events", allocated < 16 * 1024);
+    }
+
+    @Test
+    public void writer_doesNotAllocatePerBinaryMotionFrame() throws Exception {
+        MessageWriter messageWriter = new MessageWriter();
+        messageWriter.setMessageCodec(new BinaryMessageCodec());
+        GatedOutputStream outputStream = new GatedOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(outputStream);
+        Thread writerThread = startWriter(messageWriter, out);
+
+        // Gets the writer to its first flush
+        messageWriter.enqueueMotion(MessageType.ACTION_MOVE, 1f, 1f);
+        fillAndDrain(messageWriter, outputStream, 1000);
+
+        long before = threadMXBean.getThreadAllocatedBytes(writerThread.getId());
+        int written = fillAndDrain(messageWriter, outputStream, 1000);
+        long allocated = threadMXBean.getThreadAllocatedBytes(writerThread.getId()) - before;
+
+        outputStream.gate.release(Integer.MAX_VALUE / 2);
+        messageWriter.stop();
+        writerThread.join(5000);
+
+        // The writer blocks once per batch in the gated flush, which may allocate a wait node
+        assertTrue("Allocated " + allocated + " bytes for " + written + " frames", allocated / written < 2);
+    }
+
+    @Test
+    public void offerMotion_doesNotAllocateOnCallingThread() throws Exception {
+        DatagramMotionSender sender = new DatagramMotionSender(InetAddress.getLoopbackAddress(), 9,
+                DatagramMotionSender.generateKey());
+
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            sender.offerMotion(MOTION_TYPES[i % 3], 1f, -1f);
+        }
+
+        long allocated = allocatedBytes(() -> {
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                sender.offerMotion(MOTION_TYPES[i % 3], 1f, -1f);
+            }
+        });
+
+        sender.stop();
+
+        assertTrue("Allocated " + allocated + " bytes for " + EVENT_COUNT + " events", allocated < 1024);
+    }
+
+    @Test
+    public void writeMotion_isReadBackAsMessage() throws IOException, ClassNotFoundException {
+        for (MessageCodec messageCodec : new MessageCodec[]{new JavaSerializationCodec(), new BinaryMessageCodec()}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            MotionSample motionSample = new MotionSample();
+
+            for (MessageType messageType : MOTION_TYPES) {
+                motionSample.set(messageType, 1.5f, -2.25f);
+                messageCodec.writeMotion(motionSample, out);
+            }
+            out.flush();
+
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            for (MessageType messageType : MOTION_TYPES) {
+                Message message = messageCodec.readMessage(in);
+
+                assertEquals(messageType, message.getMessageType());
+                assertEquals(1.5f, message.getAdditionalDataFromKey("distanceX"));
+                assertEquals(-2.25f, message.getAdditionalDataFromKey("distanceY"));
+            }
+        }
+    }
+
+    private static void enqueueEvents(MessageWriter messageWriter) {
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            messageWriter.enqueueMotion(MOTION_TYPES[i % 3], (i % 7) - 3, (i % 5) - 2);
+        }
+    }
+
+    // Fills the queue while the writer is held in flush, so it drains each batch without parking
+    private static int fillAndDrain(MessageWriter messageWriter, GatedOutputStream outputStream, int rounds)
+            throws InterruptedException {
+        int written = 0;
+
+        for (int round = 0; round < rounds; round++) {
+            while (!outputStream.gate.hasQueuedThreads()) {
+                Thread.yield();
+            }
+
+            // Alternating types keep consecutive motion from merging
+            for (int i = 0; i < PriorityMessageQueue.DEFAULT_MOTION_CAPACITY; i++) {
+                messageWriter.enqueueMotion(MOTION_TYPES[i % 2], 1f, 1f);
+            }
+
+            written += PriorityMessageQueue.DEFAULT_MOTION_CAPACITY;
+            outputStream.gate.release();
+
+            while (messageWriter.getQueueSize() > 0) {
+                Thread.yield();
+            }
+        }
+
+        return written;
+    }
+
+    private long allocatedBytes(Runnable runnable) {
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        runnable.run();
+
+        return threadMXBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static Thread startWriter(MessageWriter messageWriter, ObjectOutputStream out) {
+        Thread writerThread = new Thread(() -> {
+            try {
+                messageWriter.writeUntilStopped(out);
+            } catch (IOException ignored) {
+            }
+        });
+        writerThread.start();
+
+        return writerThread;
+    }
+
+    private static class GatedOutputStream extends OutputStream {
+        private final Semaphore gate = new Semaphore(0);
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+            gate.acquireUninterruptibly();
+        }
+    }
+
+    private static class DiscardingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PriorityMessageQueue}.
+ */
+public class PriorityMessageQueueTest {
+
+    @Test
+    public void controlMessage_waitsForEarlierMotionInOrder() throws InterruptedException {
+        PriorityMessageQueue queue = new PriorityMessageQueue();
+
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 1f, 1f));
+        queue.put(distanceMessage(MessageType.ACTION_SCROLL, 0f, 2f));
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 3f, 3f));
+        queue.put(distanceMessage(MessageType.ACTION_SCROLL, 0f, 4f));
+        queue.put(new Message(MessageType.ACTION_PRIMARY_CLICK));
+        // Same type as the motion before the click, but lands after it
+        queue.put(distanceMessage(MessageType.ACTION_SCROLL, 0f, 5f));
+        queue.put(new Message(MessageType.ACTION_PLAY_PAUSE));
+        queue.putFirst(new Message(MessageType.ACTION_STOP));
+
+        assertEquals(MessageType.ACTION_STOP, queue.take().getMessageType());
+        assertDistance(queue.take(), MessageType.ACTION_MOVE, 1f, 1f);
+        assertDistance(queue.take(), MessageType.ACTION_SCROLL, 0f, 2f);
+        assertDistance(queue.take(), MessageType.ACTION_MOVE, 3f, 3f);
+        assertDistance(queue.take(), MessageType.ACTION_SCROLL, 0f, 4f);
+        assertEquals(MessageType.ACTION_PRIMARY_CLICK, queue.take().getMessageType());
+        assertDistance(queue.take(), MessageType.ACTION_SCROLL, 0f, 5f);
+        assertEquals(MessageType.ACTION_PLAY_PAUSE, queue.take().getMessageType());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void dragAndTypeChanges_keepOrder() throws InterruptedException {
+        PriorityMessageQueue queue = new PriorityMessageQueue();
+
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 1f, 1f));
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 1f, 1f));
+        queue.put(new Message(MessageType.ACTION_CLICK_AND_DRAG_START));
+        queue.put(distanceMessage(MessageType.ACTION_CLICK_AND_DRAG_MOVE, 2f, 2f));
+        queue.put(distanceMessage(MessageType.ACTION_CLICK_AND_DRAG_MOVE, 2f, 2f));
+        queue.put(new Message(MessageType.ACTION_CLICK_AND_DRAG_END));
+        queue.put(distanceMessage(MessageType.ACTION_SCROLL, 0f, 3f));
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 1f, 0f));
+        queue.put(new Message(MessageType.ACTION_PLAY_PAUSE));
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 1f, 0f));
+
+        MessageType[] expected = {
+                MessageType.ACTION_MOVE,
+                MessageType.ACTION_CLICK_AND_DRAG_START,
+                MessageType.ACTION_CLICK_AND_DRAG_MOVE,
+                MessageType.ACTION_CLICK_AND_DRAG_END,
+                MessageType.ACTION_SCROLL,
+                MessageType.ACTION_MOVE,
+                MessageType.ACTION_PLAY_PAUSE,
+                MessageType.ACTION_MOVE
+        };
+
+        assertEquals(expected.length, queue.size());
+        for (MessageType messageType : expected) {
+            assertEquals(messageType, queue.take().getMessageType());
+        }
+    }
+
+    @Test
+    public void controlMessage_overtakesLaterMotion() throws InterruptedException {
+        PriorityMessageQueue queue = new PriorityMessageQueue();
+
+        queue.put(new Message(MessageType.ACTION_PRIMARY_CLICK));
+        queue.putMotion(MessageType.ACTION_MOVE, 1f, 1f);
+        queue.put(new Message(MessageType.ACTION_PLAY_PAUSE));
+        queue.putMotion(MessageType.ACTION_MOVE, 2f, 2f);
+
+        assertEquals(MessageType.ACTION_PRIMARY_CLICK, queue.take().getMessageType());
+        assertDistance(queue.take(), MessageType.ACTION_MOVE, 1f, 1f);
+        assertEquals(MessageType.ACTION_PLAY_PAUSE, queue.take().getMessageType());
+        assertDistance(queue.take(), MessageType.ACTION_MOVE, 2f, 2f);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void sameTypeMotion_mergesAndKeepsDisplacement() throws InterruptedException {
+        PriorityMessageQueue queue = new PriorityMessageQueue(4);
+        float expectedMoveX = 0;
+
+        for (int i = 0; i < 1000; i++) {
+            queue.put(distanceMessage(MessageType.ACTION_MOVE, i % 3, 0f));
+            expectedMoveX += i % 3;
+        }
+
+        SendQueueStatistics statistics = queue.getStatistics();
+        assertEquals(1, queue.size());
+        assertDistance(queue.take(), MessageType.ACTION_MOVE, expectedMoveX, 0f);
+        assertEquals(999, statistics.getMergedMotion());
+        assertEquals(0, statistics.getDroppedMotion());
+        assertEquals(0, statistics.getMotionDepth());
+    }
+
+    @Test
+    public void fullMotionLane_mergesOldestSameTypeInsteadOfDropping() throws InterruptedException {
+        PriorityMessageQueue queue = new PriorityMessageQueue(4);
+
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 1f, 0f));
+        queue.put(distanceMessage(MessageType.ACTION_SCROLL, 0f, 2f));
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 3f, 0f));
+        queue.put(distanceMessage(MessageType.ACTION_SCROLL, 0f, 4f));
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 5f, 0f));
+
+        SendQueueStatistics statistics = queue.getStatistics();
+        assertEquals(0, statistics.getDroppedMotion());
+        assertEquals(1, statistics.getMergedMotion());
+        assertDistance(queue.take(), MessageType.ACTION_MOVE, 4f, 0f);
+        assertDistance(queue.take(), MessageType.ACTION_SCROLL, 0f, 2f);
+        assertDistance(queue.take(), MessageType.ACTION_SCROLL, 0f, 4f);
+        assertDistance(queue.take(), MessageType.ACTION_MOVE, 5f, 0f);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void mergedMotion_keepsControlBehindMotionBeforeIt() throws InterruptedException {
+        PriorityMessageQueue queue = new PriorityMessageQueue(4);
+
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 1f, 0f));
+        queue.put(distanceMessage(MessageType.ACTION_SCROLL, 0f, 1f));
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 2f, 0f));
+        queue.put(new Message(MessageType.ACTION_PRIMARY_CLICK));
+        queue.put(distanceMessage(MessageType.ACTION_SCROLL, 0f, 2f));
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 3f, 0f));
+
+        // The click still follows all motion made before it
+        assertDistance(queue.take(), MessageType.ACTION_MOVE, 3f, 0f);
+        assertDistance(queue.take(), MessageType.ACTION_SCROLL, 0f, 1f);
+        assertEquals(MessageType.ACTION_PRIMARY_CLICK, queue.take().getMessageType());
+        assertDistance(queue.take(), MessageType.ACTION_SCROLL, 0f, 2f);
+        assertDistance(queue.take(), MessageType.ACTION_MOVE, 3f, 0f);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void droppedMotion_releasesControlWaitingForIt() throws InterruptedException {
+        // Too small to hold two entries of a type, so the oldest has to go
+        PriorityMessageQueue queue = new PriorityMessageQueue(2);
+
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 1f, 0f));
+        queue.put(new Message(MessageType.ACTION_PRIMARY_CLICK));
+        queue.put(distanceMessage(MessageType.ACTION_SCROLL, 0f, 2f));
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 3f, 0f));
+
+        assertEquals(MessageType.ACTION_PRIMARY_CLICK, queue.take().getMessageType());
+        assertDistance(queue.take(), MessageType.ACTION_SCROLL, 0f, 2f);
+        assertDistance(queue.take(), MessageType.ACTION_MOVE, 3f, 0f);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void fullMotionLane_dropsOldestWithoutLaterSameType() throws InterruptedException {
+        PriorityMessageQueue queue = new PriorityMessageQueue(2);
+
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 1f, 1f));
+        queue.put(distanceMessage(MessageType.ACTION_SCROLL, 0f, 1f));
+        queue.put(distanceMessage(MessageType.ACTION_CLICK_AND_DRAG_MOVE, 1f, 1f));
+
+        assertEquals(1, queue.getStatistics().getDroppedMotion());
+        assertEquals(MessageType.ACTION_SCROLL, queue.take().getMessageType());
+        assertEquals(MessageType.ACTION_CLICK_AND_DRAG_MOVE, queue.take().getMessageType());
+    }
+
+    @Test
+    public void removeMotion_clearsBothLanesAndKeepsControl() throws InterruptedException {
+        PriorityMessageQueue queue = new PriorityMessageQueue();
+
+        queue.put(distanceMessage(MessageType.ACTION_MOVE, 1f, 1f));
+        queue.put(new Message(MessageType.ACTION_PRIMARY_CLICK));
+        queue.put(distanceMessage(MessageType.ACTION_SCROLL, 1f, 1f));
+        queue.put(new Message(MessageType.ACTION_PLAY_PAUSE));
+
+        assertEquals(2, queue.removeMotion());
+        assertEquals(MessageType.ACTION_PRIMARY_CLICK, queue.take().getMessageType());
+        assertEquals(MessageType.ACTION_PLAY_PAUSE, queue.take().getMessageType());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void controlLatency_staysFlatWhileMotionStreams() throws Exception {
+        PriorityMessageQueue queue = new PriorityMessageQueue();
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        // Consumer standing in for a slow link, falling behind the touch rate
+        Thread consumer = new Thread(() -> {
+            try {
+                while (running.get() || !queue.isEmpty()) {
+                    queue.take();
+                    Thread.sleep(5);
+                }
+            } catch (InterruptedException ignored) {
+            }
+        });
+        consumer.start();
+
+        // 240 Hz touch input with the odd scroll, as a user switching between one and two fingers
+        Thread producer = new Thread(() -> {
+            int i = 0;
+            while (running.get()) {
+                MessageType messageType = i++ % 100 < 90 ? MessageType.ACTION_MOVE : MessageType.ACTION_SCROLL;
+                queue.put(distanceMessage(messageType, 1f, 1f));
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(4166));
+            }
+        });
+        producer.start();
+
+        for (int i = 0; i < 20; i++) {
+            Thread.sleep(100);
+            queue.put(new Message(MessageType.ACTION_PLAY_PAUSE));
+        }
+
+        running.set(false);
+        producer.join(1000);
+        queue.put(new Message(MessageType.ACTION_PLAY_PAUSE));
+        consumer.interrupt();
+        consumer.join(1000);
+
+        SendQueueStatistics statistics = queue.getStatistics();
+        long controlP99 = statistics.getControlWaitHistogram().getPercentile(99);
+        long motionP99 = statistics.getMotionWaitHistogram().getPercentile(99);
+        System.out.println("Streaming motion wait p99: control " + controlP99 + " us, motion " + motionP99 + " us");
+
+        // Waits for the one or two runs of motion made before it, not for a backlog
+        assertTrue("Control p99 " + controlP99 + " us", controlP99 < 50000);
+        assertEquals(0, statistics.getDroppedMotion());
+    }
+
+    @Test
+    public void sameTypePaths_mergeIntoOnePath() throws InterruptedException {
+        PriorityMessageQueue queue = new PriorityMessageQueue();
+        MotionSample motionSample = new MotionSample();
+        MotionPath path = new MotionPath();
+
+        path.add(1f, 1f, 5);
+        path.add(2f, 2f, 5);
+        queue.putMotionPath(MessageType.ACTION_MOVE, path);
+        path.clear();
+        path.add(3f, 3f, 6);
+        queue.putMotionPath(MessageType.ACTION_MOVE, path);
+        queue.putMotion(MessageType.ACTION_MOVE, 4f, 4f);
+
+        queue.take(motionSample);
+
+        assertEquals(10f, motionSample.getDistanceX(), 0f);
+        assertEquals(4, motionSample.getPath().size());
+        assertEquals(3f, motionSample.getPath().getDistanceX(2), 0f);
+        assertEquals(6, motionSample.getPath().getDeltaMillis(2));
+        assertEquals(10f, motionSample.getPath().getTotalX(), 0f);
+    }
+
+    @Test
+    public void fullMotionLane_mergesPathsInOrder() throws InterruptedException {
+        PriorityMessageQueue queue = new PriorityMessageQueue(3);
+        MotionSample motionSample = new MotionSample();
+        MotionPath path = new MotionPath();
+        path.add(1f, 0f, 5);
+        path.add(1f, 0f, 5);
+
+        queue.putMotionPath(MessageType.ACTION_MOVE, path);
+        queue.putMotion(MessageType.ACTION_SCROLL, 0f, 1f);
+        queue.putMotionPath(MessageType.ACTION_MOVE, path);
+        queue.putMotion(MessageType.ACTION_SCROLL, 0f, 1f);
+
+        queue.take(motionSample);
+        assertEquals(MessageType.ACTION_MOVE, motionSample.getMessageType());
+        assertEquals(4f, motionSample.getDistanceX(), 0f);
+        assertEquals(4, motionSample.getPath().size());
+        assertEquals(4f, motionSample.getPath().getTotalX(), 0f);
+        queue.take(motionSample);
+        assertEquals(MessageType.ACTION_SCROLL, motionSample.getMessageType());
+        queue.take(motionSample);
+        assertEquals(MessageType.ACTION_SCROLL, motionSample.getMessageType());
+        assertEquals(0, queue.getStatistics().getDroppedMotion());
+    }
+
+    private static void assertDistance(Message message, MessageType messageType, float distanceX, float distanceY) {
+        assertEquals(messageType, message.getMessageType());
+        assertEquals(distanceX, message.getAdditionalDataFromKey("distanceX"));
+        assertEquals(distanceY, message.getAdditionalDataFromKey("distanceY"));
+    }
+
+    private static Message distanceMessage(MessageType messageType, float distanceX, float distanceY) {
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put("distanceX", distanceX);
+        additionalData.put("distanceY", distanceY);
+
+        return new Message(messageType, null, additionalData);
+    }
+}
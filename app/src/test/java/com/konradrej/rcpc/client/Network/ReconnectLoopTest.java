@@ -0,0 +1,166 @@
+package com.konradrej.rcpc.client.Network;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ReconnectLoop}, with sessions played back by a scripted runner.
+ */
+public class ReconnectLoopTest {
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private final ReconnectLoop.Listener listener = new ReconnectLoop.Listener() {
+        @Override
+        public void onConnect() {
+            events.add("connect");
+        }
+
+        @Override
+        public void onReconnecting() {
+            events.add("reconnecting");
+        }
+
+        @Override
+        public void onReconnected() {
+            events.add("reconnected");
+        }
+
+        @Override
+        public void onReconnectFailed() {
+            events.add("reconnectFailed");
+        }
+
+        @Override
+        public void onDisconnect() {
+            events.add("disconnect");
+        }
+    };
+
+    @Test
+    public void closedSession_disconnectsOnce() throws InterruptedException {
+        ScriptedRunner runner = new ScriptedRunner(ReconnectLoop.Result.CLOSED);
+
+        new ReconnectLoop(runner, listener, backoff()).run();
+
+        assertEquals(Arrays.asList("connect", "disconnect"), events);
+        assertEquals(Collections.singletonList(false), runner.reconnecting);
+    }
+
+    @Test
+    public void lostSession_reconnectsAfterFailedAttempts() throws InterruptedException {
+        ScriptedRunner runner = new ScriptedRunner(ReconnectLoop.Result.LOST,
+                ReconnectLoop.Result.FAILED, ReconnectLoop.Result.FAILED, ReconnectLoop.Result.CLOSED);
+
+        new ReconnectLoop(runner, listener, backoff()).run();
+
+        assertEquals(Arrays.asList("connect", "reconnecting", "reconnected", "disconnect"), events);
+        assertEquals(Arrays.asList(false, true, true, true), runner.reconnecting);
+    }
+
+    @Test
+    public void failedAttempts_stopWhenBackoffRunsOut() throws InterruptedException {
+        ScriptedRunner runner = new ScriptedRunner(ReconnectLoop.Result.LOST,
+                ReconnectLoop.Result.FAILED, ReconnectLoop.Result.FAILED, ReconnectLoop.Result.FAILED,
+                ReconnectLoop.Result.CLOSED);
+
+        new ReconnectLoop(runner, listener, backoff()).run();
+
+        assertEquals(Arrays.asList("connect", "reconnecting", "reconnectFailed", "disconnect"), events);
+        assertEquals(1 + MAX_ATTEMPTS, runner.reconnecting.size());
+    }
+
+    @Test
+    public void establishedSession_resetsBackoff() throws InterruptedException {
+        // Each lost session gets all attempts again, not what the last cycle left over
+        ScriptedRunner runner = new ScriptedRunner(ReconnectLoop.Result.LOST,
+                ReconnectLoop.Result.FAILED, ReconnectLoop.Result.FAILED, ReconnectLoop.Result.LOST,
+                ReconnectLoop.Result.FAILED, ReconnectLoop.Result.FAILED, ReconnectLoop.Result.CLOSED);
+
+        new ReconnectLoop(runner, listener, backoff()).run();
+
+        assertEquals(Arrays.asList("connect", "reconnecting", "reconnected", "reconnecting", "reconnected",
+                "disconnect"), events);
+        assertEquals(7, runner.reconnecting.size());
+    }
+
+    @Test
+    public void cancelWhileWaiting_disconnectsWithoutAttempt() throws Exception {
+        ScriptedRunner runner = new ScriptedRunner(ReconnectLoop.Result.LOST);
+        // Long enough that only cancel() can end the wait
+        Backoff backoff = new Backoff(60_000, 60_000, MAX_ATTEMPTS, new Random(1));
+        ReconnectLoop reconnectLoop = new ReconnectLoop(runner, listener, backoff);
+
+        CompletableFuture<Void> loop = CompletableFuture.runAsync(() -> {
+            try {
+                reconnectLoop.run();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!events.contains("reconnecting") && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        reconnectLoop.cancel();
+        loop.get(1, TimeUnit.SECONDS);
+
+        assertTrue(reconnectLoop.isCancelled());
+        assertEquals(Arrays.asList("connect", "reconnecting", "disconnect"), events);
+        assertEquals(1, runner.reconnecting.size());
+    }
+
+    @Test
+    public void throwingSession_stillDisconnects() throws InterruptedException {
+        ReconnectLoop.SessionRunner runner = (reconnecting, onEstablished) -> {
+            onEstablished.run();
+            throw new IllegalStateException("session failed");
+        };
+
+        try {
+            new ReconnectLoop(runner, listener, backoff()).run();
+        } catch (IllegalStateException ignored) {
+        }
+
+        assertEquals(Arrays.asList("connect", "disconnect"), events);
+    }
+
+    private static Backoff backoff() {
+        return new Backoff(1, 4, MAX_ATTEMPTS, new Random(1));
+    }
+
+    // Established unless the scripted result is FAILED, as a real session
+    private static class ScriptedRunner implements ReconnectLoop.SessionRunner {
+        private final Deque<ReconnectLoop.Result> results;
+        private final List<Boolean> reconnecting = new ArrayList<>();
+
+        private ScriptedRunner(ReconnectLoop.Result... results) {
+            this.results = new ArrayDeque<>(Arrays.asList(results));
+        }
+
+        @Override
+        public ReconnectLoop.Result runSession(boolean reconnecting, Runnable onEstablished) {
+            this.reconnecting.add(reconnecting);
+            ReconnectLoop.Result result = results.removeFirst();
+
+            if (result != ReconnectLoop.Result.FAILED) {
+                onEstablished.run();
+            }
+
+            return result;
+        }
+    }
+}
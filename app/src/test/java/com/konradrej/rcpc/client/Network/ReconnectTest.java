@@ -0,0 +1,131 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives {@link MessageWriter} through a connection drop and reconnect against
+ * {@link StandInServer}, the same way ConnectionHandler does.
+ */
+public class ReconnectTest {
+    private StandInServer server;
+    private MessageWriter messageWriter;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandInServer();
+        messageWriter = new MessageWriter();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        messageWriter.stop();
+        server.close();
+    }
+
+    @Test
+    public void droppedConnection_holdsControlMessagesAndDropsStaleMotion() throws Exception {
+        CompletableFuture<Boolean> firstSession = startSession();
+
+        messageWriter.enqueue(new Message(MessageType.ACTION_PRIMARY_CLICK));
+        assertEquals(MessageType.ACTION_PRIMARY_CLICK, server.poll(1000).getMessageType());
+
+        server.dropConnections();
+        assertFalse("Writer should be interrupted, not stopped", firstSession.get(1, TimeUnit.SECONDS));
+
+        // Offline: control messages are held, motion goes stale
+        messageWriter.enqueue(moveMessage());
+        messageWriter.enqueue(new Message(MessageType.ACTION_PLAY_PAUSE));
+        messageWriter.enqueue(moveMessage());
+        messageWriter.enqueue(new Message(MessageType.ACTION_CLICK_AND_DRAG_END));
+        messageWriter.enqueue(moveMessage());
+
+        assertEquals(3, messageWriter.dropPendingMotion());
+        CompletableFuture<Boolean> secondSession = startSession();
+
+        assertEquals(MessageType.ACTION_PLAY_PAUSE, server.poll(1000).getMessageType());
+        assertEquals(MessageType.ACTION_CLICK_AND_DRAG_END, server.poll(1000).getMessageType());
+        assertNull(server.poll(100));
+
+        messageWriter.enqueue(moveMessage());
+        assertEquals(MessageType.ACTION_MOVE, server.poll(1000).getMessageType());
+
+        messageWriter.stop();
+        assertTrue(secondSession.get(1, TimeUnit.SECONDS));
+        assertEquals(2, server.getAcceptedConnections());
+    }
+
+    @Test
+    public void lateInterruptFromOldConnection_isIgnored() throws Exception {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        ObjectOutputStream oldOut = new ObjectOutputStream(socket.getOutputStream());
+        socket.close();
+
+        CompletableFuture<Boolean> session = startSession();
+        messageWriter.interrupt(oldOut);
+
+        messageWriter.enqueue(new Message(MessageType.ACTION_STOP));
+        assertEquals(MessageType.ACTION_STOP, server.poll(1000).getMessageType());
+        assertFalse(session.isDone());
+    }
+
+    private CompletableFuture<Boolean> startSession() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+        ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        // Reader notices the drop and interrupts the writer
+        new Thread(() -> {
+            try {
+                while (true) {
+                    in.readObject();
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                messageWriter.interrupt(out);
+            }
+        }).start();
+
+        new Thread(() -> {
+            try {
+                result.complete(messageWriter.writeUntilStopped(out));
+            } catch (IOException e) {
+                result.complete(false);
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }).start();
+
+        return result;
+    }
+
+    private static Message moveMessage() {
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put("distanceX", 1f);
+        additionalData.put("distanceY", 1f);
+
+        return new Message(MessageType.ACTION_MOVE, null, additionalData);
+    }
+}
@@ -0,0 +1,186 @@
+package com.konradrej.rcpc.client.Network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link SSLContextProvider} and {@link TlsStatistics} over a loopback TLS connection.
+ */
+public class SSLContextProviderTest {
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    private SSLServerSocket serverSocket;
+    private Thread serverThread;
+
+    @Before
+    public void setUp() throws Exception {
+        serverSocket = (SSLServerSocket) createContext(new TlsStatistics()).getServerSocketFactory()
+                .createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        serverSocket.setNeedClientAuth(true);
+
+        // Accepts connections and sends one byte, like the accept message of a real server
+        serverThread = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try (SSLSocket socket = (SSLSocket) serverSocket.accept()) {
+                    socket.startHandshake();
+                    socket.getOutputStream().write(1);
+                    socket.getOutputStream().flush();
+                    socket.getInputStream().read();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+        serverThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serverSocket.close();
+        serverThread.join(1000);
+    }
+
+    @Test
+    public void context_isBuiltOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        TlsStatistics tlsStatistics = new TlsStatistics();
+        SSLContextProvider provider = new SSLContextProvider(() -> {
+            loads.incrementAndGet();
+            return createContext(tlsStatistics);
+        });
+
+        provider.prewarm();
+        provider.prewarm();
+        SSLContext first = provider.get();
+        SSLContext second = provider.get();
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertTrue(tlsStatistics.getKeyStoreLoadNanos() > 0);
+        assertEquals(SSLContextProvider.SESSION_CACHE_SIZE, first.getClientSessionContext().getSessionCacheSize());
+    }
+
+    @Test
+    public void failedBuild_isRetried() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        TlsStatistics tlsStatistics = new TlsStatistics();
+        SSLContextProvider provider = new SSLContextProvider(() -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IOException("keystore not readable");
+            }
+
+            return createContext(tlsStatistics);
+        });
+
+        try {
+            provider.get();
+            fail("First build should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        SSLContext sslContext = provider.get();
+
+        assertSame(sslContext, provider.get());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void defaultContext_isNeverHandedOut() throws Exception {
+        SSLContext defaultContext = SSLContext.getDefault();
+        int defaultCacheSize = defaultContext.getClientSessionContext().getSessionCacheSize();
+        SSLContextProvider provider = new SSLContextProvider(SSLContext::getDefault);
+
+        try {
+            provider.get();
+            fail("Default context should be rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        assertEquals(defaultCacheSize, defaultContext.getClientSessionContext().getSessionCacheSize());
+    }
+
+    @Test
+    public void reconnect_resumesSession() throws Exception {
+        TlsStatistics tlsStatistics = new TlsStatistics();
+        SSLContextProvider provider = new SSLContextProvider(() -> createContext(tlsStatistics));
+        provider.prewarm();
+
+        assertFalse(connect(provider.get(), tlsStatistics));
+        assertTrue(connect(provider.get(), tlsStatistics));
+        assertTrue(connect(provider.get(), tlsStatistics));
+
+        System.out.println("TLS: " + tlsStatistics);
+        assertEquals(1, tlsStatistics.getFullHandshakes());
+        assertEquals(2, tlsStatistics.getResumedHandshakes());
+    }
+
+    @Test
+    public void newContext_doesFullHandshake() throws Exception {
+        TlsStatistics tlsStatistics = new TlsStatistics();
+
+        assertFalse(connect(createContext(tlsStatistics), tlsStatistics));
+        assertFalse(connect(createContext(tlsStatistics), tlsStatistics));
+
+        assertEquals(2, tlsStatistics.getFullHandshakes());
+        assertEquals(0, tlsStatistics.getResumedHandshakes());
+    }
+
+    private boolean connect(SSLContext sslContext, TlsStatistics tlsStatistics) throws IOException {
+        try (SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()), 5000);
+
+            long handshakeStartMillis = System.currentTimeMillis();
+            long handshakeStart = System.nanoTime();
+            socket.startHandshake();
+            boolean resumed = tlsStatistics.recordHandshake(socket.getSession(), handshakeStartMillis, System.nanoTime() - handshakeStart);
+
+            // Reading processes the session ticket sent after the handshake
+            assertEquals(1, socket.getInputStream().read());
+            socket.getOutputStream().write(1);
+
+            return resumed;
+        }
+    }
+
+    private static SSLContext createContext(TlsStatistics tlsStatistics) throws Exception {
+        long loadStart = System.nanoTime();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = SSLContextProviderTest.class.getResourceAsStream("/loopback.p12")) {
+            keyStore.load(in, PASSWORD);
+        }
+        tlsStatistics.recordKeyStoreLoad(System.nanoTime() - loadStart);
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, PASSWORD);
+
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+
+        SSLContext sslContext = SSLContext.getInstance("TLSv1.3");
+        sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+
+        return sslContext;
+    }
+}
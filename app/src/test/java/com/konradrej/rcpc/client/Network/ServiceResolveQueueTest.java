@@ -0,0 +1,282 @@
+package com.konradrej.rcpc.client.Network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link ServiceResolveQueue} against a fake NsdManager that, like the
+ * real one, fails a resolve started while another is active.
+ */
+public class ServiceResolveQueueTest {
+    private static final int FAILURE_INTERNAL_ERROR = 0;
+    private static final int FAILURE_ALREADY_ACTIVE = 3;
+
+    private final List<String> resolved = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> failed = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> lost = Collections.synchronizedList(new ArrayList<>());
+    private ScheduledExecutorService executor;
+    private FakeNsdManager nsdManager;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        nsdManager = new FakeNsdManager();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        nsdManager.shutdown();
+    }
+
+    @Test
+    public void burstDiscovery_resolvesEveryService() throws Exception {
+        ServiceResolveQueue<String> queue = createQueue(60_000, 5000);
+        Set<String> expected = new HashSet<>();
+
+        // Found back to back as on a network with many hosts
+        for (int i = 0; i < 40; i++) {
+            queue.enqueue("host" + i, "host" + i);
+            expected.add("host" + i);
+        }
+        // Duplicate finds, as when a host is seen on several interfaces
+        queue.enqueue("host3", "host3");
+        queue.enqueue("host7", "host7");
+
+        awaitSize(resolved, 40);
+
+        assertEquals(expected, new HashSet<>(resolved));
+        assertEquals(40, resolved.size());
+        assertEquals(40, nsdManager.resolveCount.get());
+        assertEquals(0, nsdManager.alreadyActiveCount.get());
+    }
+
+    @Test
+    public void burstDiscovery_withoutQueue_losesMostServices() throws Exception {
+        // What resolving straight from discovery did, kept as the baseline
+        for (int i = 0; i < 40; i++) {
+            String name = "host" + i;
+            nsdManager.resolve(name, new ServiceResolveQueue.Callback<String>() {
+                @Override
+                public void onResolved(String service) {
+                    resolved.add(service);
+                }
+
+                @Override
+                public void onFailed(int errorCode) {
+                    failed.add(name);
+                }
+            });
+        }
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (resolved.size() + failed.size() < 40 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertTrue("Resolved " + resolved.size(), resolved.size() < 40);
+        assertEquals(40 - resolved.size(), nsdManager.alreadyActiveCount.get());
+    }
+
+    @Test
+    public void transientFailures_areRetriedWhileOthersResolve() throws Exception {
+        nsdManager.failuresBeforeSuccess.put("flaky", ServiceResolveQueue.MAX_RETRIES);
+        ServiceResolveQueue<String> queue = createQueue(60_000, 5000);
+
+        queue.enqueue("flaky", "flaky");
+        queue.enqueue("steady", "steady");
+
+        awaitSize(resolved, 2);
+
+        // The steady host resolved while the flaky one waited to retry
+        assertEquals("steady", resolved.get(0));
+        assertEquals("flaky", resolved.get(1));
+        assertEquals(ServiceResolveQueue.MAX_RETRIES + 2, nsdManager.resolveCount.get());
+    }
+
+    @Test
+    public void persistentFailure_isGivenUpAfterRetries() throws Exception {
+        nsdManager.failuresBeforeSuccess.put("broken", Integer.MAX_VALUE);
+        ServiceResolveQueue<String> queue = createQueue(60_000, 5000);
+
+        queue.enqueue("broken", "broken");
+        queue.enqueue("steady", "steady");
+
+        awaitSize(failed, 1);
+        awaitSize(resolved, 1);
+
+        assertEquals("broken: " + FAILURE_INTERNAL_ERROR, failed.get(0));
+        assertEquals(ServiceResolveQueue.MAX_RETRIES + 2, nsdManager.resolveCount.get());
+    }
+
+    @Test
+    public void resolveNeverReportingBack_timesOut() throws Exception {
+        nsdManager.silent.add("mute");
+        ServiceResolveQueue<String> queue = createQueue(60_000, 50);
+
+        queue.enqueue("mute", "mute");
+        queue.enqueue("steady", "steady");
+
+        awaitSize(resolved, 1);
+        awaitSize(failed, 1);
+
+        assertEquals("steady", resolved.get(0));
+        assertEquals("mute: " + ServiceResolveQueue.ERROR_TIMEOUT, failed.get(0));
+    }
+
+    @Test
+    public void rediscoveryWithinTtl_isReportedFromCache() throws Exception {
+        ServiceResolveQueue<String> queue = createQueue(60_000, 5000);
+
+        queue.enqueue("host", "host");
+        awaitSize(resolved, 1);
+
+        // Discovery stopped and started again, as on pause and resume
+        queue.clear();
+        queue.enqueue("host", "host");
+        awaitSize(resolved, 2);
+
+        assertEquals(1, nsdManager.resolveCount.get());
+    }
+
+    @Test
+    public void rediscoveryAfterTtl_resolvesAgain() throws Exception {
+        ServiceResolveQueue<String> queue = createQueue(20, 5000);
+
+        queue.enqueue("host", "host");
+        awaitSize(resolved, 1);
+
+        Thread.sleep(40);
+        queue.enqueue("host", "host");
+        awaitSize(resolved, 2);
+
+        assertEquals(2, nsdManager.resolveCount.get());
+    }
+
+    @Test
+    public void lostService_isDroppedFromQueueAndCache() throws Exception {
+        nsdManager.resolveDelayMillis = 50;
+        ServiceResolveQueue<String> queue = createQueue(60_000, 5000);
+
+        queue.enqueue("first", "first");
+        queue.enqueue("second", "second");
+        queue.remove("second", "second");
+        awaitSize(resolved, 1);
+
+        queue.remove("first", "first");
+        queue.enqueue("first", "first");
+        awaitSize(resolved, 2);
+        executor.submit(() -> {
+        }).get();
+
+        assertEquals(2, lost.size());
+        assertFalse(resolved.contains("second"));
+        assertEquals(2, nsdManager.resolveCount.get());
+    }
+
+    private ServiceResolveQueue<String> createQueue(long cacheTtlMillis, long resolveTimeoutMillis) {
+        return new ServiceResolveQueue<>(nsdManager, new ServiceResolveQueue.Listener<String>() {
+            @Override
+            public void onResolved(String serviceName, String service) {
+                resolved.add(service);
+            }
+
+            @Override
+            public void onResolveFailed(String serviceName, int errorCode) {
+                failed.add(serviceName + ": " + errorCode);
+            }
+
+            @Override
+            public void onLost(String serviceName, String service) {
+                lost.add(serviceName);
+            }
+        }, executor, cacheTtlMillis, resolveTimeoutMillis);
+    }
+
+    private static void awaitSize(List<String> list, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+
+        while (list.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(size, list.size());
+    }
+
+    // Resolves one service at a time on its own thread, as NsdManager does
+    private static class FakeNsdManager implements ServiceResolveQueue.Resolver<String> {
+        private final ExecutorService resolverThread = Executors.newSingleThreadExecutor();
+        private final AtomicInteger resolveCount = new AtomicInteger();
+        private final AtomicInteger alreadyActiveCount = new AtomicInteger();
+        private final Map<String, Integer> failuresBeforeSuccess = new HashMap<>();
+        private final Set<String> silent = new HashSet<>();
+        private volatile long resolveDelayMillis = 2;
+        private boolean active = false;
+
+        @Override
+        public synchronized void resolve(String service, ServiceResolveQueue.Callback<String> callback) {
+            if (active) {
+                alreadyActiveCount.incrementAndGet();
+                resolverThread.execute(() -> callback.onFailed(FAILURE_ALREADY_ACTIVE));
+                return;
+            }
+
+            active = true;
+            resolveCount.incrementAndGet();
+
+            resolverThread.execute(() -> {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(resolveDelayMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                if (silent.contains(service)) {
+                    // Never reports back but frees the resolver, as after a daemon restart
+                    finish();
+                    return;
+                }
+
+                int failures;
+                synchronized (this) {
+                    failures = failuresBeforeSuccess.getOrDefault(service, 0);
+                    failuresBeforeSuccess.put(service, failures == Integer.MAX_VALUE ? failures : failures - 1);
+                }
+
+                finish();
+
+                if (failures > 0) {
+                    callback.onFailed(FAILURE_INTERNAL_ERROR);
+                } else {
+                    callback.onResolved(service);
+                }
+            });
+        }
+
+        private synchronized void finish() {
+            active = false;
+        }
+
+        private void shutdown() {
+            resolverThread.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for an RCPC server speaking Java serialization, or a given
+ * codec, over plain TCP. Records received messages with the time they
+ * arrived and can drop its connections on demand.
+ */
+class StandInServer implements AutoCloseable {
+    private final ServerSocket serverSocket;
+    private final MessageCodec messageCodec;
+    private final BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+    private final List<Long> receiveTimesNanos = new ArrayList<>();
+    private final List<Socket> connections = new ArrayList<>();
+    private int acceptedConnections = 0;
+
+    StandInServer() throws IOException {
+        this(new JavaSerializationCodec());
+    }
+
+    StandInServer(MessageCodec messageCodec) throws IOException {
+        this.messageCodec = messageCodec;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        Thread acceptThread = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+
+                    synchronized (this) {
+                        connections.add(socket);
+                        acceptedConnections++;
+                    }
+
+                    new Thread(() -> read(socket)).start();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+        acceptThread.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    synchronized int getAcceptedConnections() {
+        return acceptedConnections;
+    }
+
+    Message poll(long timeoutMillis) throws InterruptedException {
+        return received.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized List<Long> getReceiveTimesNanos() {
+        return new ArrayList<>(receiveTimesNanos);
+    }
+
+    synchronized void dropConnections() throws IOException {
+        for (Socket socket : connections) {
+            socket.close();
+        }
+
+        connections.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+
+    private void read(Socket socket) {
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+
+            while (true) {
+                Message message = messageCodec.readMessage(in);
+
+                synchronized (this) {
+                    receiveTimesNanos.add(System.nanoTime());
+                }
+
+                received.add(message);
+            }
+        } catch (IOException | ClassNotFoundException ignored) {
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.client.Input.FlingScroller;
+import com.konradrej.rcpc.client.Input.PointerAcceleration;
+import com.konradrej.rcpc.client.Input.TouchPadController;
+import com.konradrej.rcpc.client.View.TouchEvent;
+import com.konradrej.rcpc.client.View.TouchPadGestureDetector;
+import com.konradrej.rcpc.client.View.TouchTraceReader;
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the recorded touch traces in real time through the same input
+ * pipeline as the touchpad: {@link TouchPadGestureDetector} as fed by
+ * TouchPadView, {@link TouchPadController} as set up by TouchPadFragment,
+ * and a {@link MessageWriter} sending the way ConnectionHandler does, into
+ * {@link StandInServer}. Prints messages per second, bytes on the wire per
+ * touch event, allocations per touch event and end-to-end latency, so
+ * versions of the pipeline can be compared.
+ */
+public class TouchTraceReplayTest {
+    // Scaled ViewConfiguration values of a typical 3x density phone
+    private static final float TOUCH_SLOP = 24f;
+    private static final float DOUBLE_TAP_SLOP = 300f;
+    private static final long TAP_TIMEOUT = 400;
+    private static final long DOUBLE_TAP_TIMEOUT = 300;
+    private static final float MIN_FLING_VELOCITY = 150f;
+
+    private final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private StandInServer server;
+    private MessageWriter messageWriter;
+    private Socket socket;
+    private CountingOutputStream countingOut;
+    private Thread writerThread;
+
+    @Before
+    public void setUp() throws IOException {
+        MessageCodec messageCodec = new BinaryMessageCodec(true);
+        server = new StandInServer(new BinaryMessageCodec(true));
+        messageWriter = new MessageWriter();
+        messageWriter.setMessageCodec(messageCodec);
+
+        socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setTcpNoDelay(true);
+        countingOut = new CountingOutputStream(socket.getOutputStream());
+        ObjectOutputStream out = new ObjectOutputStream(countingOut);
+        out.flush();
+        new ObjectInputStream(socket.getInputStream());
+
+        writerThread = new Thread(() -> {
+            try {
+                messageWriter.writeUntilStopped(out);
+            } catch (IOException ignored) {
+            }
+        });
+        writerThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        messageWriter.stop();
+        writerThread.join(1000);
+        socket.close();
+        server.close();
+    }
+
+    @Test
+    public void flick_movesPointerAlongSwipe() throws Exception {
+        Replay replay = replay("flick");
+
+        float totalX = 0;
+        float totalY = 0;
+
+        for (Message message : replay.messages) {
+            assertEquals(MessageType.ACTION_MOVE, message.getMessageType());
+            totalX += (Float) message.getAdditionalDataFromKey("distanceX");
+            totalY += (Float) message.getAdditionalDataFromKey("distanceY");
+        }
+
+        // Distances point from the new position back to the old one
+        assertTrue("Moved " + totalX, totalX < -200);
+        assertTrue("Moved " + totalY, Math.abs(totalY) < Math.abs(totalX) / 5);
+    }
+
+    @Test
+    public void slowDrag_holdsButtonForWholeDrag() throws Exception {
+        Replay replay = replay("slow_drag");
+        List<Message> messages = replay.messages;
+
+        assertEquals(MessageType.ACTION_PRIMARY_CLICK, messages.get(0).getMessageType());
+        assertEquals(MessageType.ACTION_CLICK_AND_DRAG_START, messages.get(1).getMessageType());
+        assertEquals(MessageType.ACTION_CLICK_AND_DRAG_END, messages.get(messages.size() - 1).getMessageType());
+
+        float totalX = 0;
+        for (Message message : messages.subList(2, messages.size() - 1)) {
+            assertEquals(MessageType.ACTION_CLICK_AND_DRAG_MOVE, message.getMessageType());
+            totalX += (Float) message.getAdditionalDataFromKey("distanceX");
+        }
+
+        // Finger moved 192 pixels left, slowly enough for acceleration to scale it down
+        assertTrue("Dragged " + totalX, totalX > 100 && totalX < 192);
+    }
+
+    @Test
+    public void twoFingerScroll_scrollsVerticallyAndFlings() throws Exception {
+        Replay replay = replay("two_finger_scroll");
+
+        for (Message message : replay.messages) {
+            assertEquals(MessageType.ACTION_SCROLL, message.getMessageType());
+            assertEquals(0f, (Float) message.getAdditionalDataFromKey("distanceX"), 0f);
+        }
+
+        assertTrue("No fling after the fingers lifted", replay.messages.size() > replay.messagesDuringTrace);
+    }
+
+    private Replay replay(String name) throws Exception {
+        RecordingSender sender = new RecordingSender(messageWriter);
+        FlingScroller flingScroller = new FlingScroller(Executors.newSingleThreadScheduledExecutor(), 4,
+                (distanceX, distanceY) -> sender.sendMotion(MessageType.ACTION_SCROLL, distanceX, distanceY));
+        TouchPadController controller = new TouchPadController(sender,
+                new PointerAcceleration(PointerAcceleration.Curve.SIGMOID, 1f), null, flingScroller);
+        TouchPadGestureDetector detector = new TouchPadGestureDetector(controller,
+                TOUCH_SLOP, DOUBLE_TAP_SLOP, TAP_TIMEOUT, DOUBLE_TAP_TIMEOUT, MIN_FLING_VELOCITY);
+
+        long threadId = Thread.currentThread().getId();
+        LatencyHistogram inputHistogram = new LatencyHistogram();
+        long allocatedBytes = 0;
+        int events = 0;
+        long firstEventTime = -1;
+        long startNanos = System.nanoTime();
+        long endNanos;
+        int messagesDuringTrace;
+
+        try (InputStream in = getClass().getResourceAsStream("/traces/" + name + ".trace")) {
+            TouchTraceReader reader = new TouchTraceReader(in);
+            TouchEvent event;
+
+            while ((event = reader.read()) != null) {
+                if (firstEventTime < 0) {
+                    firstEventTime = event.getEventTime();
+                }
+
+                // Events are delivered at the pace they were recorded at
+                long dueNanos = startNanos + (event.getEventTime() - firstEventTime) * 1_000_000;
+                long sleepNanos = dueNanos - System.nanoTime();
+                if (sleepNanos > 0) {
+                    Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                }
+
+                long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+                long eventNanos = System.nanoTime();
+                sender.eventNanos = eventNanos;
+
+                detector.onTouchEvent(event);
+
+                inputHistogram.record((System.nanoTime() - eventNanos) / 1000);
+                allocatedBytes += threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                events++;
+            }
+
+            endNanos = System.nanoTime();
+            messagesDuringTrace = sender.getSendCount();
+        }
+
+        while (flingScroller.isRunning()) {
+            Thread.sleep(10);
+        }
+        flingScroller.shutdown();
+
+        List<Message> messages = new ArrayList<>();
+        Message message;
+        while (messages.size() < sender.getSendCount() && (message = server.poll(1000)) != null) {
+            messages.add(message);
+        }
+
+        Replay replay = new Replay(messages, messagesDuringTrace);
+        printMetrics(name, events, messagesDuringTrace, (endNanos - startNanos) / 1e9,
+                allocatedBytes, inputHistogram, sender.getEventTimesNanos(), server.getReceiveTimesNanos());
+
+        return replay;
+    }
+
+    private void printMetrics(String name, int events, int messagesDuringTrace, double seconds, long allocatedBytes,
+                              LatencyHistogram inputHistogram, List<Long> eventTimesNanos, List<Long> receiveTimesNanos) {
+        String endToEnd;
+
+        // Messages only pair up with their touch events if none were merged while queued
+        if (eventTimesNanos.size() == receiveTimesNanos.size()) {
+            LatencyHistogram endToEndHistogram = new LatencyHistogram();
+
+            for (int i = 0; i < eventTimesNanos.size(); i++) {
+                endToEndHistogram.record((receiveTimesNanos.get(i) - eventTimesNanos.get(i)) / 1000);
+            }
+
+            endToEnd = "p50 " + endToEndHistogram.getPercentile(50) + " us, p99 " +
+                    endToEndHistogram.getPercentile(99) + " us";
+        } else {
+            endToEnd = "n/a, " + (eventTimesNanos.size() - receiveTimesNanos.size()) + " messages merged";
+        }
+
+        System.out.printf("%s: %d events, %d messages (%.1f/s), %.1f bytes/event, %d bytes allocated/event, " +
+                        "input p50 %d us, p99 %d us, touch to server %s%n",
+                name, events, receiveTimesNanos.size(), messagesDuringTrace / seconds,
+                (double) countingOut.count / events, allocatedBytes / events,
+                inputHistogram.getPercentile(50), inputHistogram.getPercentile(99), endToEnd);
+    }
+
+    private static class Replay {
+        private final List<Message> messages;
+        private final int messagesDuringTrace;
+
+        private Replay(List<Message> messages, int messagesDuringTrace) {
+            this.messages = messages;
+            this.messagesDuringTrace = messagesDuringTrace;
+        }
+    }
+
+    // Sends the way ConnectionHandler does with paths accepted and no datagram channel
+    private static class RecordingSender implements MessageSender {
+        private final MessageWriter messageWriter;
+        private final long replayThreadId = Thread.currentThread().getId();
+        private final List<Long> eventTimesNanos = new ArrayList<>();
+        // Time the touch event being handled was delivered
+        private volatile long eventNanos;
+
+        private RecordingSender(MessageWriter messageWriter) {
+            this.messageWriter = messageWriter;
+        }
+
+        @Override
+        public synchronized void sendMessage(Message message) {
+            stamp();
+            messageWriter.enqueue(message);
+        }
+
+        @Override
+        public synchronized void sendMotion(MessageType messageType, float distanceX, float distanceY) {
+            stamp();
+            messageWriter.enqueueMotion(messageType, distanceX, distanceY);
+        }
+
+        @Override
+        public synchronized void sendMotionPath(MessageType messageType, MotionPath path) {
+            if (path.size() == 0) {
+                return;
+            }
+
+            stamp();
+            messageWriter.enqueueMotionPath(messageType, path);
+        }
+
+        private void stamp() {
+            // Fling ticks are not caused by a touch event, measured from the tick instead
+            eventTimesNanos.add(Thread.currentThread().getId() == replayThreadId ? eventNanos : System.nanoTime());
+        }
+
+        private synchronized int getSendCount() {
+            return eventTimesNanos.size();
+        }
+
+        private synchronized List<Long> getEventTimesNanos() {
+            return new ArrayList<>(eventTimesNanos);
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private volatile long count = 0;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
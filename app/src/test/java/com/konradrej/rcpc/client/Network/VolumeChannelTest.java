@@ -0,0 +1,185 @@
+package com.konradrej.rcpc.client.Network;
+
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives {@link VolumeChannel} on a virtual clock.
+ */
+public class VolumeChannelTest {
+    private final List<String> sent = new ArrayList<>();
+    private VirtualScheduler scheduler;
+    private VolumeChannel volumeChannel;
+
+    @Before
+    public void setUp() {
+        scheduler = new VirtualScheduler();
+        // At most one send per 100 ms
+        volumeChannel = new VolumeChannel(new RecordingSender(), scheduler, 10);
+    }
+
+    @Test
+    public void firstChange_isSentImmediately() {
+        volumeChannel.setVolume(40);
+
+        assertEquals(Arrays.asList("0: 40.0"), sent);
+    }
+
+    @Test
+    public void drag_isSentAtMaxRateEndingOnLastValue() {
+        // A drag reporting every 8 ms for half a second
+        for (int i = 0; i <= 60; i++) {
+            scheduler.advanceTo(i * 8);
+            volumeChannel.setVolume(i);
+        }
+        scheduler.advanceTo(1000);
+
+        assertEquals(Arrays.asList("0: 0.0", "100: 12.0", "200: 24.0", "300: 37.0", "400: 49.0", "500: 60.0"), sent);
+    }
+
+    @Test
+    public void changeAfterQuietPeriod_isSentImmediately() {
+        volumeChannel.setVolume(10);
+        scheduler.advanceTo(50);
+        volumeChannel.setVolume(20);
+        scheduler.advanceTo(400);
+        volumeChannel.setVolume(30);
+
+        assertEquals(Arrays.asList("0: 10.0", "100: 20.0", "400: 30.0"), sent);
+    }
+
+    @Test
+    public void returningToSentValue_sendsNothing() {
+        volumeChannel.setVolume(10);
+        scheduler.advanceTo(20);
+        volumeChannel.setVolume(11);
+        scheduler.advanceTo(40);
+        volumeChannel.setVolume(10);
+        scheduler.advanceTo(1000);
+
+        assertEquals(Arrays.asList("0: 10.0"), sent);
+    }
+
+    @Test
+    public void cancel_dropsPendingValue() {
+        volumeChannel.setVolume(10);
+        scheduler.advanceTo(20);
+        volumeChannel.setVolume(20);
+        volumeChannel.cancel();
+        scheduler.advanceTo(1000);
+
+        assertEquals(Arrays.asList("0: 10.0"), sent);
+    }
+
+    @Test
+    public void remoteUpdates_areIgnoredWhileDragging() {
+        assertTrue(volumeChannel.shouldApplyRemoteVolume(70));
+
+        volumeChannel.onDragStart();
+        assertFalse(volumeChannel.shouldApplyRemoteVolume(70));
+
+        volumeChannel.onDragEnd();
+        assertTrue(volumeChannel.shouldApplyRemoteVolume(70));
+    }
+
+    @Test
+    public void echoesAfterDrag_areIgnoredUntilGracePassed() {
+        volumeChannel.onDragStart();
+        volumeChannel.setVolume(10);
+        scheduler.advanceTo(50);
+        volumeChannel.setVolume(30);
+        volumeChannel.onDragEnd();
+
+        // Trailing send still pending
+        assertFalse(volumeChannel.shouldApplyRemoteVolume(10));
+
+        scheduler.advanceTo(100);
+        assertEquals(Arrays.asList("0: 10.0", "100: 30.0"), sent);
+
+        // Late echo of the first value would move the slider back
+        scheduler.advanceTo(150);
+        assertFalse(volumeChannel.shouldApplyRemoteVolume(10));
+        assertTrue(volumeChannel.shouldApplyRemoteVolume(30));
+
+        scheduler.advanceTo(100 + VolumeChannel.ECHO_GRACE_MILLIS);
+        assertTrue(volumeChannel.shouldApplyRemoteVolume(10));
+    }
+
+    private class RecordingSender implements MessageSender {
+        @Override
+        public void sendMessage(Message message) {
+            assertEquals(MessageType.ACTION_SET_VOLUME, message.getMessageType());
+            sent.add(scheduler.uptimeMillis() + ": " + message.getMessageData());
+        }
+
+        @Override
+        public void sendMotion(MessageType messageType, float distanceX, float distanceY) {
+            throw new AssertionError("Volume is not motion");
+        }
+
+        @Override
+        public void sendMotionPath(MessageType messageType, MotionPath path) {
+            throw new AssertionError("Volume is not motion");
+        }
+    }
+
+    private static class VirtualScheduler implements VolumeChannel.Scheduler {
+        private final List<Long> dueTimes = new ArrayList<>();
+        private final List<Runnable> tasks = new ArrayList<>();
+        private long now = 0;
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            dueTimes.add(now + delayMillis);
+            tasks.add(task);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i) == task) {
+                    tasks.remove(i);
+                    dueTimes.remove(i);
+                }
+            }
+        }
+
+        // Runs due tasks in order, each at its own time
+        private void advanceTo(long timeMillis) {
+            while (true) {
+                int next = -1;
+
+                for (int i = 0; i < tasks.size(); i++) {
+                    if (dueTimes.get(i) <= timeMillis && (next < 0 || dueTimes.get(i) < dueTimes.get(next))) {
+                        next = i;
+                    }
+                }
+
+                if (next < 0) {
+                    break;
+                }
+
+                now = dueTimes.remove(next);
+                tasks.remove(next).run();
+            }
+
+            now = timeMillis;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.konradrej.rcpc.client.View;
+
+import android.content.Context;
+import android.os.Looper;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.konradrej.rcpc.R;
+import com.konradrej.rcpc.client.Room.Entity.Connection;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Shows 500 history entries through {@link ConnectionHistoryAdapter} and,
+ * as the baseline, the way the list was filled before, one inflated row per
+ * entry in a plain container. Counts inflations and times the main thread
+ * work of each.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class ConnectionHistoryAdapterTest {
+    private static final int ENTRIES = 500;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(), R.style.Theme_RCPC);
+    }
+
+    @Test
+    public void manyEntries_inflateOnlyVisibleRows() {
+        // Warm up both paths so neither pays for class loading and resource parsing
+        showInRecyclerView(connections(ENTRIES, 0));
+        showInContainer(connections(ENTRIES, 0));
+
+        long start = System.nanoTime();
+        CountingAdapter adapter = showInRecyclerView(connections(ENTRIES, 0));
+        long recycledNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int containerInflations = showInContainer(connections(ENTRIES, 0));
+        long containerNanos = System.nanoTime() - start;
+
+        System.out.printf("%d entries: recycled %d inflations %.1f ms, container %d inflations %.1f ms%n",
+                ENTRIES, adapter.created, recycledNanos / 1e6, containerInflations, containerNanos / 1e6);
+
+        assertEquals(ENTRIES, containerInflations);
+        assertTrue("Inflated " + adapter.created, adapter.created < ENTRIES / 10);
+        assertTrue("Bound " + adapter.bound, adapter.bound < ENTRIES / 10);
+        assertTrue("Recycled " + recycledNanos + " ns, container " + containerNanos + " ns", recycledNanos < containerNanos);
+    }
+
+    @Test
+    public void newConnection_rebindsOnlyChangedRows() {
+        List<Connection> connections = connections(ENTRIES, 0);
+        CountingAdapter adapter = showInRecyclerView(connections);
+        RecyclerView recyclerView = adapter.recyclerView;
+        int created = adapter.created;
+        int bound = adapter.bound;
+
+        // A new endpoint connected to, as the observed query reports it
+        List<Connection> updated = new ArrayList<>(connections);
+        updated.add(0, connection(ENTRIES, ENTRIES));
+        adapter.submitList(updated);
+        // The diff is applied through the main looper
+        shadowOf(Looper.getMainLooper()).idle();
+        layout(recyclerView);
+
+        assertEquals(ENTRIES + 1, adapter.getItemCount());
+        assertTrue("Inflated " + (adapter.created - created), adapter.created - created <= 2);
+        assertTrue("Bound " + (adapter.bound - bound), adapter.bound - bound <= 2);
+    }
+
+    private CountingAdapter showInRecyclerView(List<Connection> connections) {
+        RecyclerView recyclerView = new RecyclerView(context);
+        recyclerView.setLayoutManager(new LinearLayoutManager(context));
+        // Moves are instant, so the layout below is the final one
+        recyclerView.setItemAnimator(null);
+
+        CountingAdapter adapter = new CountingAdapter();
+        adapter.recyclerView = recyclerView;
+        recyclerView.setAdapter(adapter);
+        adapter.submitList(connections);
+        layout(recyclerView);
+
+        return adapter;
+    }
+
+    // As the history list was filled before, without the thread hops
+    private int showInContainer(List<Connection> connections) {
+        LinearLayout container = new LinearLayout(context);
+        container.setOrientation(LinearLayout.VERTICAL);
+        LayoutInflater layoutInflater = LayoutInflater.from(context);
+
+        for (Connection connection : connections) {
+            View childLayout = layoutInflater.inflate(R.layout.connection_history_item, container, false);
+            TextView addressView = childLayout.findViewById(R.id.addressView);
+            addressView.setText(connection.ip);
+            TextView dateView = childLayout.findViewById(R.id.dateView);
+            dateView.setText(String.valueOf(connection.lastConnected));
+            container.addView(childLayout);
+        }
+
+        layout(container);
+
+        return container.getChildCount();
+    }
+
+    private static void layout(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private static List<Connection> connections(int amount, long firstUid) {
+        List<Connection> connections = new ArrayList<>(amount);
+
+        for (int i = 0; i < amount; i++) {
+            connections.add(connection(firstUid + i, amount - i));
+        }
+
+        return connections;
+    }
+
+    private static Connection connection(long uid, long lastConnected) {
+        Connection connection = new Connection();
+        connection.uid = uid;
+        connection.ip = "192.168." + (uid >> 8) + "." + (uid & 0xFF);
+        connection.port = 666;
+        connection.connectCount = 1;
+        connection.lastConnected = lastConnected;
+
+        return connection;
+    }
+
+    // Diffs on the calling thread, only applying the result waits for the main looper
+    private static class CountingAdapter extends ConnectionHistoryAdapter {
+        private RecyclerView recyclerView;
+        private int created = 0;
+        private int bound = 0;
+
+        private CountingAdapter() {
+            super((connection) -> {
+            }, Runnable::run);
+        }
+
+        @NonNull
+        @Override
+        public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            created++;
+            return super.onCreateViewHolder(parent, viewType);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+            bound++;
+            super.onBindViewHolder(holder, position);
+        }
+    }
+}
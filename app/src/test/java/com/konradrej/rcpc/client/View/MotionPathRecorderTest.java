@@ -0,0 +1,167 @@
+package com.konradrej.rcpc.client.View;
+
+import com.konradrej.rcpc.client.Network.MotionPath;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Replays synthetic touch event batches through {@link MotionPathRecorder}.
+ */
+public class MotionPathRecorderTest {
+    private static final float DELTA = 0.0001f;
+
+    @Test
+    public void batchedPositions_areRecordedAtFullResolution() {
+        MotionPathRecorder recorder = new MotionPathRecorder();
+        MotionPath path = new MotionPath();
+        recorder.start(100f, 100f, 1000);
+
+        // A fast curve sampled every 4 ms, delivered once per 16 ms frame
+        List<SyntheticBatch> batches = new ArrayList<>();
+        float[] xs = new float[17];
+        float[] ys = new float[17];
+        long[] times = new long[17];
+        xs[0] = 100f;
+        ys[0] = 100f;
+        times[0] = 1000;
+        for (int i = 1; i < xs.length; i++) {
+            xs[i] = 100f + 20f * i;
+            ys[i] = 100f + i * i;
+            times[i] = 1000 + 4 * i;
+        }
+        for (int frame = 0; frame < 4; frame++) {
+            int from = frame * 4 + 1;
+            batches.add(new SyntheticBatch(xs, ys, times, from, from + 4));
+        }
+
+        float totalX = 0;
+        float totalY = 0;
+        int sample = 1;
+        for (SyntheticBatch batch : batches) {
+            recorder.record(batch, path);
+
+            assertEquals(4, path.size());
+            for (int i = 0; i < path.size(); i++, sample++) {
+                assertEquals(xs[sample - 1] - xs[sample], path.getDistanceX(i), DELTA);
+                assertEquals(ys[sample - 1] - ys[sample], path.getDistanceY(i), DELTA);
+                assertEquals(4, path.getDeltaMillis(i));
+            }
+
+            totalX += path.getTotalX();
+            totalY += path.getTotalY();
+        }
+
+        // Same sign and sum as the distances GestureDetector reports
+        assertEquals(xs[0] - xs[16], totalX, DELTA);
+        assertEquals(ys[0] - ys[16], totalY, DELTA);
+    }
+
+    @Test
+    public void repeatedPositions_carryTimeToNextSample() {
+        MotionPathRecorder recorder = new MotionPathRecorder();
+        MotionPath path = new MotionPath();
+        recorder.start(0f, 0f, 0);
+
+        recorder.record(new SyntheticBatch(new float[]{0f, 0f, 5f}, new float[]{0f, 0f, 0f},
+                new long[]{8, 16, 24}, 0, 3), path);
+
+        assertEquals(1, path.size());
+        assertEquals(-5f, path.getDistanceX(0), DELTA);
+        assertEquals(24, path.getDeltaMillis(0));
+    }
+
+    @Test
+    public void unstartedRecorder_startsFromOldestPosition() {
+        MotionPathRecorder recorder = new MotionPathRecorder();
+        MotionPath path = new MotionPath();
+
+        recorder.record(new SyntheticBatch(new float[]{10f, 12f, 15f}, new float[]{0f, 0f, 0f},
+                new long[]{0, 4, 8}, 0, 3), path);
+
+        assertEquals(2, path.size());
+        assertEquals(-5f, path.getTotalX(), DELTA);
+
+        recorder.stop();
+        recorder.record(new SyntheticBatch(new float[]{40f}, new float[]{40f}, new long[]{20}, 0, 1), path);
+
+        assertEquals(0, path.size());
+    }
+
+    @Test
+    public void longBatch_isFoldedIntoLastSampleKeepingTotal() {
+        MotionPathRecorder recorder = new MotionPathRecorder();
+        MotionPath path = new MotionPath();
+        int count = MotionPath.MAX_SAMPLES + 10;
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = i + 1;
+            times[i] = i + 1;
+        }
+        recorder.start(0f, 0f, 0);
+
+        recorder.record(new SyntheticBatch(xs, ys, times, 0, count), path);
+
+        assertEquals(MotionPath.MAX_SAMPLES, path.size());
+        assertEquals(-count, path.getTotalX(), DELTA);
+        assertEquals(11, path.getDeltaMillis(MotionPath.MAX_SAMPLES - 1));
+    }
+
+    // Positions from..to-1, the last one is the current position
+    private static class SyntheticBatch implements MotionPathRecorder.Batch {
+        private final float[] xs;
+        private final float[] ys;
+        private final long[] times;
+        private final int from;
+        private final int to;
+
+        private SyntheticBatch(float[] xs, float[] ys, long[] times, int from, int to) {
+            this.xs = xs;
+            this.ys = ys;
+            this.times = times;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int getHistorySize() {
+            return to - from - 1;
+        }
+
+        @Override
+        public float getHistoricalX(int pos) {
+            return xs[from + pos];
+        }
+
+        @Override
+        public float getHistoricalY(int pos) {
+            return ys[from + pos];
+        }
+
+        @Override
+        public long getHistoricalEventTime(int pos) {
+            return times[from + pos];
+        }
+
+        @Override
+        public float getX() {
+            return xs[to - 1];
+        }
+
+        @Override
+        public float getY() {
+            return ys[to - 1];
+        }
+
+        @Override
+        public long getEventTime() {
+            return times[to - 1];
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.konradrej.rcpc.client.View;
+
+/**
+ * Touch event built from explicit samples for tests, oldest sample first
+ * and the event's own positions last.
+ */
+class SyntheticTouchEvent implements TouchEvent {
+    private final int action;
+    private final int actionIndex;
+    private final int[] pointerIds;
+    private final long[] times;
+    // [sample][pointer index]
+    private final float[][] xs;
+    private final float[][] ys;
+
+    SyntheticTouchEvent(int action, int actionIndex, int[] pointerIds, long[] times, float[][] xs, float[][] ys) {
+        this.action = action;
+        this.actionIndex = actionIndex;
+        this.pointerIds = pointerIds;
+        this.times = times;
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    static SyntheticTouchEvent single(int action, long time, float x, float y) {
+        return new SyntheticTouchEvent(action, 0, new int[]{0}, new long[]{time},
+                new float[][]{{x}}, new float[][]{{y}});
+    }
+
+    @Override
+    public int getActionMasked() {
+        return action;
+    }
+
+    @Override
+    public int getActionIndex() {
+        return actionIndex;
+    }
+
+    @Override
+    public int getPointerCount() {
+        return pointerIds.length;
+    }
+
+    @Override
+    public int getPointerId(int pointerIndex) {
+        return pointerIds[pointerIndex];
+    }
+
+    @Override
+    public int getHistorySize() {
+        return times.length - 1;
+    }
+
+    @Override
+    public long getHistoricalEventTime(int pos) {
+        return times[pos];
+    }
+
+    @Override
+    public float getHistoricalX(int pointerIndex, int pos) {
+        return xs[pos][pointerIndex];
+    }
+
+    @Override
+    public float getHistoricalY(int pointerIndex, int pos) {
+        return ys[pos][pointerIndex];
+    }
+
+    @Override
+    public long getEventTime() {
+        return times[times.length - 1];
+    }
+
+    @Override
+    public float getX(int pointerIndex) {
+        return xs[xs.length - 1][pointerIndex];
+    }
+
+    @Override
+    public float getY(int pointerIndex) {
+        return ys[ys.length - 1][pointerIndex];
+    }
+}
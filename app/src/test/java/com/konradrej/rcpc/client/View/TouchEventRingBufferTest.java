@@ -0,0 +1,131 @@
+package com.konradrej.rcpc.client.View;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link TouchEventRingBuffer} copies events whole, keeps them in
+ * order and hands them between threads without losing any.
+ */
+public class TouchEventRingBufferTest {
+
+    @Test
+    public void offeredEvent_isCopiedWithPointersAndHistory() {
+        TouchEventRingBuffer ringBuffer = new TouchEventRingBuffer(4);
+        SyntheticTouchEvent move = new SyntheticTouchEvent(TouchEvent.ACTION_MOVE, 0, new int[]{0, 3},
+                new long[]{250_008, 250_012, 250_016},
+                new float[][]{{101.5f, 400f}, {99.25f, 398.1f}, {-20f, 1500.9f}},
+                new float[][]{{202f, 600f}, {204.4f, 601f}, {210f, 590.5f}});
+
+        assertTrue(ringBuffer.offer(move));
+
+        TouchTraceTest.assertSameEvent(move, ringBuffer.peek());
+    }
+
+    @Test
+    public void longHistory_growsSnapshot() {
+        int samples = 100;
+        long[] times = new long[samples];
+        float[][] xs = new float[samples][1];
+        float[][] ys = new float[samples][1];
+
+        for (int i = 0; i < samples; i++) {
+            times[i] = i;
+            xs[i][0] = i * 2;
+            ys[i][0] = -i;
+        }
+
+        TouchEventRingBuffer ringBuffer = new TouchEventRingBuffer(1);
+        SyntheticTouchEvent move = new SyntheticTouchEvent(TouchEvent.ACTION_MOVE, 0, new int[]{0}, times, xs, ys);
+        ringBuffer.offer(move);
+
+        TouchTraceTest.assertSameEvent(move, ringBuffer.peek());
+    }
+
+    @Test
+    public void fullBuffer_rejectsUntilEventRemoved() {
+        TouchEventRingBuffer ringBuffer = new TouchEventRingBuffer(3);
+        assertEquals(4, ringBuffer.getCapacity());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ringBuffer.offer(SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, i, i, 0)));
+        }
+
+        assertFalse(ringBuffer.offer(SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, 4, 4, 0)));
+
+        assertEquals(0, ringBuffer.peek().getEventTime());
+        ringBuffer.remove();
+
+        assertTrue(ringBuffer.offer(SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, 4, 4, 0)));
+
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, ringBuffer.peek().getEventTime());
+            ringBuffer.remove();
+        }
+
+        assertNull(ringBuffer.peek());
+    }
+
+    @Test
+    public void keepFree_leavesSlotsForOtherOffers() {
+        TouchEventRingBuffer ringBuffer = new TouchEventRingBuffer(4);
+
+        assertTrue(ringBuffer.offer(SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, 0, 0, 0), 2));
+        assertTrue(ringBuffer.offer(SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, 1, 1, 0), 2));
+        assertFalse(ringBuffer.offer(SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, 2, 2, 0), 2));
+
+        assertTrue(ringBuffer.offer(SyntheticTouchEvent.single(TouchEvent.ACTION_UP, 3, 3, 0)));
+        assertTrue(ringBuffer.offer(SyntheticTouchEvent.single(TouchEvent.ACTION_DOWN, 4, 4, 0)));
+        assertFalse(ringBuffer.offer(SyntheticTouchEvent.single(TouchEvent.ACTION_UP, 5, 5, 0)));
+    }
+
+    @Test
+    public void separateThreads_seeEveryEventInOrder() throws InterruptedException {
+        int count = 200_000;
+        TouchEventRingBuffer ringBuffer = new TouchEventRingBuffer(64);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread consumer = new Thread(() -> {
+            long expected = 0;
+
+            while (expected < count) {
+                TouchEvent event = ringBuffer.peek();
+
+                if (event == null) {
+                    Thread.yield();
+                    continue;
+                }
+
+                // Position follows the time, a torn copy would not match
+                if (event.getEventTime() != expected || event.getX(0) != expected % 1000) {
+                    failure.set("Expected " + expected + ", got " + event.getEventTime() + " at " + event.getX(0));
+                    return;
+                }
+
+                ringBuffer.remove();
+                expected++;
+            }
+        });
+        consumer.start();
+
+        for (int i = 0; i < count && consumer.isAlive(); i++) {
+            SyntheticTouchEvent event = SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, i, i % 1000, 0);
+
+            while (!ringBuffer.offer(event) && consumer.isAlive()) {
+                Thread.yield();
+            }
+        }
+
+        consumer.join(10_000);
+
+        assertNull(failure.get());
+        assertFalse(consumer.isAlive());
+        assertNull(ringBuffer.peek());
+    }
+}
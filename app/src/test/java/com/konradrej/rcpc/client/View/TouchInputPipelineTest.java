@@ -0,0 +1,502 @@
+package com.konradrej.rcpc.client.View;
+
+import com.konradrej.rcpc.client.Network.MotionPath;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link TouchInputPipeline} hands events to the detector in order
+ * on the input thread, drops only moves when it falls behind, and that
+ * handling them there keeps the time from touch to send steady while the
+ * UI thread stalls.
+ */
+public class TouchInputPipelineTest {
+    private static final float TOUCH_SLOP = 8f;
+    private static final float DOUBLE_TAP_SLOP = 100f;
+    private static final long TAP_TIMEOUT = 500;
+    private static final long DOUBLE_TAP_TIMEOUT = 300;
+    private static final float MIN_FLING_VELOCITY = 50f;
+
+    // 240 Hz touch sampling with a frame every 16 ms
+    private static final long TOUCH_INTERVAL_MILLIS = 4;
+    private static final int TOUCHES_PER_FRAME = 4;
+    private static final int TOUCH_COUNT = 500;
+    private static final long FRAME_WORK_NANOS = TimeUnit.MILLISECONDS.toNanos(3);
+    // Every sixteenth frame stalls, as on a layout pass or a transition
+    private static final int FRAMES_PER_STALL = 16;
+    private static final long STALL_NANOS = TimeUnit.MILLISECONDS.toNanos(32);
+    // Acceleration, encoding and queueing of a move on a slow phone
+    private static final long PROCESSING_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private ExecutorService uiThread;
+    private ExecutorService inputThread;
+
+    @Before
+    public void setUp() {
+        uiThread = Executors.newSingleThreadExecutor();
+        inputThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TouchInput");
+            thread.setPriority(Thread.MAX_PRIORITY);
+            return thread;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        uiThread.shutdownNow();
+        inputThread.shutdownNow();
+    }
+
+    @Test
+    public void events_reachDetectorInOrderOnInputThread() throws Exception {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        TouchPadGestureDetector.OnTouchPadGestureListener listener = new TouchPadGestureDetector.OnTouchPadGestureListener() {
+            @Override
+            public void onDown() {
+                threads.add(Thread.currentThread().getName());
+            }
+
+            @Override
+            public void onMove(MotionPath path) {
+                events.add("move " + path.getTotalX());
+            }
+
+            @Override
+            public void onMoveEnd() {
+                events.add("moveEnd");
+            }
+
+            @Override
+            public void onScroll(float distanceX, float distanceY) {
+            }
+
+            @Override
+            public void onFling(float velocityX, float velocityY) {
+            }
+
+            @Override
+            public void onLeftClick() {
+                events.add("left");
+            }
+
+            @Override
+            public void onRightClick() {
+            }
+
+            @Override
+            public void onClickDragStart() {
+            }
+
+            @Override
+            public void onClickDragMove(MotionPath path) {
+            }
+
+            @Override
+            public void onClickDragEnd() {
+            }
+        };
+        TouchInputPipeline pipeline = new TouchInputPipeline(new TouchPadGestureDetector(listener,
+                TOUCH_SLOP, DOUBLE_TAP_SLOP, TAP_TIMEOUT, DOUBLE_TAP_TIMEOUT, MIN_FLING_VELOCITY), inputThread, 8);
+
+        uiThread.submit(() -> {
+            pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_DOWN, 0, 100, 100));
+            pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_UP, 80, 101, 100));
+            pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_DOWN, 1000, 100, 100));
+            pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, 1008, 120, 100));
+            pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, 1016, 130, 100));
+            pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_UP, 1024, 130, 100));
+        }).get();
+        inputThread.submit(() -> {
+        }).get();
+
+        assertEquals(Arrays.asList("left", "move -10.0", "moveEnd"), events);
+        assertEquals(Arrays.asList("TouchInput", "TouchInput"), threads);
+        assertEquals(0, pipeline.getDroppedCount());
+    }
+
+    @Test
+    public void fullBuffer_dropsOnlyMovesAndDeliversUp() {
+        // Holds the drain until the test runs it, as a stalled input thread would
+        List<Runnable> tasks = new ArrayList<>();
+        RecordingListener listener = new RecordingListener();
+        RecordingDetector detector = new RecordingDetector(listener);
+        TouchInputPipeline pipeline = new TouchInputPipeline(detector, tasks::add, 8);
+
+        // Double tap and drag, the button is held until the up arrives
+        assertTrue(pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_DOWN, 0, 100, 100)));
+        assertTrue(pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_UP, 80, 100, 100)));
+        assertTrue(pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_DOWN, 200, 100, 100)));
+        for (int i = 1; i <= 100; i++) {
+            pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, 200 + i * 4, 100 + i, 100));
+        }
+        assertTrue(pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_UP, 700, 200, 100)));
+
+        assertTrue(pipeline.getDroppedCount() > 0);
+        for (Runnable task : new ArrayList<>(tasks)) {
+            task.run();
+        }
+
+        List<Integer> actions = detector.actions;
+        assertEquals(Arrays.asList(TouchEvent.ACTION_DOWN, TouchEvent.ACTION_UP, TouchEvent.ACTION_DOWN),
+                actions.subList(0, 3));
+        assertEquals(TouchEvent.ACTION_UP, (int) actions.get(actions.size() - 1));
+        for (int action : actions.subList(3, actions.size() - 1)) {
+            assertEquals(TouchEvent.ACTION_MOVE, action);
+        }
+        assertEquals(100 - pipeline.getDroppedCount(), actions.size() - 4);
+
+        assertEquals(Arrays.asList("left", "dragStart"), listener.events.subList(0, 2));
+        assertEquals("dragEnd", listener.events.get(listener.events.size() - 1));
+    }
+
+    @Test
+    public void reservedSlotsFull_otherEventsWaitForInputThread() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingDetector detector = new RecordingDetector(new RecordingListener());
+        // Long enough that only the stall ends the wait
+        TouchInputPipeline pipeline = new TouchInputPipeline(detector, inputThread, 1, TimeUnit.SECONDS.toNanos(5));
+
+        // Stalls the input thread behind the first drain
+        inputThread.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // More downs and ups than the buffer holds
+        Future<?> enqueued = uiThread.submit(() -> {
+            for (int i = 0; i < 100; i++) {
+                pipeline.enqueue(SyntheticTouchEvent.single(i % 2 == 0 ? TouchEvent.ACTION_DOWN : TouchEvent.ACTION_UP,
+                        i * 100, 100, 100));
+            }
+        });
+
+        Thread.sleep(50);
+        assertFalse(enqueued.isDone());
+
+        release.countDown();
+        enqueued.get(5, TimeUnit.SECONDS);
+        inputThread.submit(() -> {
+        }).get();
+
+        assertEquals(100, detector.actions.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 0 ? TouchEvent.ACTION_DOWN : TouchEvent.ACTION_UP, (int) detector.actions.get(i));
+        }
+        assertEquals(0, pipeline.getDroppedCount());
+    }
+
+    @Test
+    public void stalledInputThread_waitIsBoundedThenDrops() {
+        // Never drains, as an input thread blocked on a slow send
+        List<Runnable> tasks = new ArrayList<>();
+        RecordingDetector detector = new RecordingDetector(new RecordingListener());
+        TouchInputPipeline pipeline = new TouchInputPipeline(detector, tasks::add, 1);
+
+        int handedOver = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < 40; i++) {
+            if (pipeline.enqueue(SyntheticTouchEvent.single(i % 2 == 0 ? TouchEvent.ACTION_DOWN : TouchEvent.ACTION_UP,
+                    i * 100, 100, 100))) {
+                handedOver++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(40 - handedOver, pipeline.getDroppedCount());
+        assertTrue(pipeline.getDroppedCount() > 0);
+        // Every dropped event waited once, never longer
+        assertTrue(elapsed < (pipeline.getDroppedCount() + 1) * TouchInputPipeline.MAX_FULL_WAIT_NANOS * 4);
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        assertEquals(handedOver, detector.actions.size());
+    }
+
+    @Test
+    public void rejectedDrain_isScheduledAgainByLaterEvents() {
+        List<Runnable> tasks = new ArrayList<>();
+        AtomicBoolean accepting = new AtomicBoolean(false);
+        RecordingDetector detector = new RecordingDetector(new RecordingListener());
+        TouchInputPipeline pipeline = new TouchInputPipeline(detector, (runnable) -> {
+            // As a handler whose looper has quit
+            if (!accepting.get()) {
+                throw new RejectedExecutionException();
+            }
+
+            tasks.add(runnable);
+        }, 8);
+
+        assertFalse(pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_DOWN, 0, 100, 100)));
+        assertEquals(1, pipeline.getDroppedCount());
+
+        accepting.set(true);
+        assertTrue(pipeline.enqueue(SyntheticTouchEvent.single(TouchEvent.ACTION_UP, 80, 100, 100)));
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        assertEquals(Arrays.asList(TouchEvent.ACTION_DOWN, TouchEvent.ACTION_UP), detector.actions);
+    }
+
+    @Test
+    public void uiThreadStalls_jitterLessWithInputThread() throws Exception {
+        Latencies onUiThread = drag(false);
+        Latencies onInputThread = drag(true);
+
+        System.out.println("Touch to send with UI stalls, on UI thread: " + onUiThread +
+                ", on input thread: " + onInputThread);
+
+        assertTrue(onUiThread.size() > TOUCH_COUNT - 10);
+        assertEquals(onUiThread.size(), onInputThread.size());
+        // Events arriving during a stall wait either way, but the UI thread no longer
+        // works off their processing on top of frames afterwards
+        assertTrue(onInputThread.getStandardDeviation() < onUiThread.getStandardDeviation());
+        assertTrue(onInputThread.getPercentile(99) < onUiThread.getPercentile(99));
+    }
+
+    // Drags right one step per touch, delivered on the UI thread between frames, some stalling
+    private Latencies drag(boolean useInputThread) throws Exception {
+        Latencies latencies = new Latencies();
+        long startNanos = System.nanoTime();
+        TimingDetector detector = new TimingDetector(latencies, startNanos);
+        TouchInputPipeline pipeline = new TouchInputPipeline(detector, inputThread, TouchInputPipeline.DEFAULT_CAPACITY);
+
+        for (int i = 0; i < TOUCH_COUNT; i++) {
+            long timeMillis = i * TOUCH_INTERVAL_MILLIS;
+            LockSupport.parkNanos(startNanos + TimeUnit.MILLISECONDS.toNanos(timeMillis) - System.nanoTime());
+
+            int action = i == 0 ? TouchEvent.ACTION_DOWN : i == TOUCH_COUNT - 1 ? TouchEvent.ACTION_UP : TouchEvent.ACTION_MOVE;
+            SyntheticTouchEvent event = SyntheticTouchEvent.single(action, timeMillis, 100 + i * 3, 100);
+
+            uiThread.execute(() -> {
+                if (useInputThread) {
+                    pipeline.enqueue(event);
+                } else {
+                    detector.onTouchEvent(event);
+                }
+            });
+
+            if (i % TOUCHES_PER_FRAME == 0) {
+                boolean stall = i % (TOUCHES_PER_FRAME * FRAMES_PER_STALL) == 0;
+                uiThread.execute(() -> busy(stall ? STALL_NANOS : FRAME_WORK_NANOS));
+            }
+        }
+
+        uiThread.submit(() -> {
+        }).get();
+        inputThread.submit(() -> {
+        }).get();
+
+        return latencies;
+    }
+
+    // Parks instead of spinning, so the result does not depend on the cores of the machine running the test
+    private static void busy(long nanos) {
+        long endNanos = System.nanoTime() + nanos;
+        long remainingNanos;
+
+        while ((remainingNanos = endNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remainingNanos);
+        }
+    }
+
+    private static class RecordingDetector extends TouchPadGestureDetector {
+        private final List<Integer> actions = new ArrayList<>();
+
+        private RecordingDetector(RecordingListener listener) {
+            super(listener, TOUCH_SLOP, DOUBLE_TAP_SLOP, TAP_TIMEOUT, DOUBLE_TAP_TIMEOUT, MIN_FLING_VELOCITY);
+        }
+
+        @Override
+        public void onTouchEvent(TouchEvent event) {
+            actions.add(event.getActionMasked());
+            super.onTouchEvent(event);
+        }
+    }
+
+    private static class RecordingListener implements TouchPadGestureDetector.OnTouchPadGestureListener {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onDown() {
+        }
+
+        @Override
+        public void onMove(MotionPath path) {
+            events.add("move");
+        }
+
+        @Override
+        public void onMoveEnd() {
+            events.add("moveEnd");
+        }
+
+        @Override
+        public void onScroll(float distanceX, float distanceY) {
+        }
+
+        @Override
+        public void onFling(float velocityX, float velocityY) {
+        }
+
+        @Override
+        public void onLeftClick() {
+            events.add("left");
+        }
+
+        @Override
+        public void onRightClick() {
+        }
+
+        @Override
+        public void onClickDragStart() {
+            events.add("dragStart");
+        }
+
+        @Override
+        public void onClickDragMove(MotionPath path) {
+            events.add("dragMove");
+        }
+
+        @Override
+        public void onClickDragEnd() {
+            events.add("dragEnd");
+        }
+    }
+
+    // Sends moves after processing them, measured from the touch timestamp
+    private static class TimingDetector extends TouchPadGestureDetector {
+        private final TimingListener listener;
+
+        private TimingDetector(Latencies latencies, long startNanos) {
+            this(new TimingListener(latencies, startNanos));
+        }
+
+        private TimingDetector(TimingListener listener) {
+            super(listener, TOUCH_SLOP, DOUBLE_TAP_SLOP, TAP_TIMEOUT, DOUBLE_TAP_TIMEOUT, MIN_FLING_VELOCITY);
+            this.listener = listener;
+        }
+
+        @Override
+        public void onTouchEvent(TouchEvent event) {
+            listener.eventTimeMillis = event.getEventTime();
+            super.onTouchEvent(event);
+        }
+    }
+
+    private static class TimingListener implements TouchPadGestureDetector.OnTouchPadGestureListener {
+        private final Latencies latencies;
+        private final long startNanos;
+        private long eventTimeMillis;
+
+        private TimingListener(Latencies latencies, long startNanos) {
+            this.latencies = latencies;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void onDown() {
+        }
+
+        @Override
+        public void onMove(MotionPath path) {
+            busy(PROCESSING_NANOS);
+            long touchNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(eventTimeMillis);
+            latencies.add((System.nanoTime() - touchNanos) / 1000);
+        }
+
+        @Override
+        public void onMoveEnd() {
+        }
+
+        @Override
+        public void onScroll(float distanceX, float distanceY) {
+        }
+
+        @Override
+        public void onFling(float velocityX, float velocityY) {
+        }
+
+        @Override
+        public void onLeftClick() {
+        }
+
+        @Override
+        public void onRightClick() {
+        }
+
+        @Override
+        public void onClickDragStart() {
+        }
+
+        @Override
+        public void onClickDragMove(MotionPath path) {
+        }
+
+        @Override
+        public void onClickDragEnd() {
+        }
+    }
+
+    // Exact latencies in microseconds, the spread is what matters here
+    private static class Latencies {
+        private final List<Long> micros = Collections.synchronizedList(new ArrayList<>());
+
+        private void add(long latencyMicros) {
+            micros.add(latencyMicros);
+        }
+
+        private int size() {
+            return micros.size();
+        }
+
+        private long getPercentile(int percentile) {
+            List<Long> sorted = new ArrayList<>(micros);
+            Collections.sort(sorted);
+
+            return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+        }
+
+        private double getStandardDeviation() {
+            double sum = 0;
+            double sumOfSquares = 0;
+
+            for (long latencyMicros : new ArrayList<>(micros)) {
+                sum += latencyMicros;
+                sumOfSquares += (double) latencyMicros * latencyMicros;
+            }
+
+            double mean = sum / micros.size();
+            return Math.sqrt(sumOfSquares / micros.size() - mean * mean);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "p50 %d us, p99 %d us, max %d us, jitter %.0f us",
+                    getPercentile(50), getPercentile(99), getPercentile(100), getStandardDeviation());
+        }
+    }
+}
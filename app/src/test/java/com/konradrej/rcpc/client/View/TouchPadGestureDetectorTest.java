@@ -0,0 +1,376 @@
+package com.konradrej.rcpc.client.View;
+
+import com.konradrej.rcpc.client.Network.LatencyHistogram;
+import com.konradrej.rcpc.client.Network.MotionPath;
+import com.konradrej.rcpc.client.Network.PriorityMessageQueue;
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives every gesture transition of {@link TouchPadGestureDetector} with
+ * synthetic events on a virtual clock.
+ */
+public class TouchPadGestureDetectorTest {
+    private static final float TOUCH_SLOP = 8f;
+    private static final float DOUBLE_TAP_SLOP = 100f;
+    private static final long TAP_TIMEOUT = 500;
+    private static final long DOUBLE_TAP_TIMEOUT = 300;
+    private static final float MIN_FLING_VELOCITY = 50f;
+
+    private final List<String> events = new ArrayList<>();
+    private TouchPadGestureDetector detector;
+
+    @Before
+    public void setUp() {
+        detector = new TouchPadGestureDetector(new RecordingListener(events),
+                TOUCH_SLOP, DOUBLE_TAP_SLOP, TAP_TIMEOUT, DOUBLE_TAP_TIMEOUT, MIN_FLING_VELOCITY);
+    }
+
+    @Test
+    public void tap_clicksOnUpWithoutWaitingForDoubleTapTimeout() {
+        detector.onDown(100, 100, 0);
+        assertEquals(0, events.size());
+
+        detector.onUp(at(101, 100, 80));
+
+        assertEquals(Arrays.asList("left"), events);
+    }
+
+    @Test
+    public void movePastSlop_movesWithoutClicking() {
+        detector.onDown(100, 100, 0);
+        detector.onMove(at(104, 100, 8), 104, 100);
+        detector.onMove(at(120, 100, 16), 120, 100);
+        detector.onMove(at(130, 95, 24), 130, 95);
+        detector.onUp(at(130, 95, 32));
+
+        assertEquals(Arrays.asList("move -10.0 5.0", "moveEnd"), events);
+    }
+
+    @Test
+    public void longPress_isNotAClick() {
+        detector.onDown(100, 100, 0);
+        detector.onUp(at(100, 100, TAP_TIMEOUT + 1));
+
+        assertEquals(0, events.size());
+    }
+
+    @Test
+    public void doubleTap_upgradesClickIntoDoubleClick() {
+        tap(100, 100, 0);
+        detector.onDown(105, 100, 150);
+
+        assertEquals(Arrays.asList("left", "dragStart"), events);
+
+        detector.onUp(at(105, 100, 220));
+
+        assertEquals(Arrays.asList("left", "dragStart", "dragEnd"), events);
+    }
+
+    @Test
+    public void doubleTapAndHold_drags() {
+        tap(100, 100, 0);
+        detector.onDown(100, 100, 150);
+        detector.onMove(at(102, 100, 158), 102, 100);
+        detector.onMove(at(110, 104, 166), 110, 104);
+        detector.onUp(at(111, 104, 174));
+
+        assertEquals(Arrays.asList("left", "dragStart", "dragMove -2.0 0.0", "dragMove -8.0 -4.0",
+                "dragMove -1.0 0.0", "dragEnd"), events);
+    }
+
+    @Test
+    public void lateSecondTap_isAnotherClick() {
+        tap(100, 100, 0);
+        tap(100, 100, 50 + DOUBLE_TAP_TIMEOUT + 1);
+
+        assertEquals(Arrays.asList("left", "left"), events);
+    }
+
+    @Test
+    public void distantSecondTap_isAnotherClick() {
+        tap(100, 100, 0);
+        tap(100 + DOUBLE_TAP_SLOP + 1, 100, 150);
+
+        assertEquals(Arrays.asList("left", "left"), events);
+    }
+
+    @Test
+    public void tapAfterDoubleTap_isAClick() {
+        tap(100, 100, 0);
+        tap(100, 100, 150);
+        tap(100, 100, 300);
+
+        assertEquals(Arrays.asList("left", "dragStart", "dragEnd", "left"), events);
+    }
+
+    @Test
+    public void twoFingerTap_rightClicks() {
+        detector.onDown(100, 100, 0);
+        detector.onPointerDown(2, 150, 100);
+        detector.onMove(at(101, 100, 20), 151, 100);
+        detector.onPointerUp(1, 101, 100, 0);
+        detector.onUp(at(101, 100, 90));
+
+        assertEquals(Arrays.asList("right"), events);
+    }
+
+    @Test
+    public void twoFingerTap_doesNotStartDoubleTap() {
+        detector.onDown(100, 100, 0);
+        detector.onPointerDown(2, 150, 100);
+        detector.onPointerUp(1, 100, 100, 0);
+        detector.onUp(at(100, 100, 60));
+        tap(100, 100, 120);
+
+        assertEquals(Arrays.asList("right", "left"), events);
+    }
+
+    @Test
+    public void twoFingerMove_scrollsWithoutRightClick() {
+        detector.onDown(100, 100, 0);
+        detector.onPointerDown(2, 150, 100);
+        detector.onMove(at(100, 110, 8), 150, 110);
+        detector.onMove(at(100, 130, 16), 150, 130);
+        detector.onPointerUp(1, 100, 130, 200);
+        detector.onUp(at(100, 130, 40));
+
+        assertEquals(Arrays.asList("scroll 0.0 -20.0", "moveEnd"), events);
+    }
+
+    @Test
+    public void liftingWhileScrolling_flingsWithScrollVelocity() {
+        detector.onDown(100, 100, 0);
+        detector.onPointerDown(2, 150, 100);
+        detector.onMove(at(100, 110, 10), 150, 110);
+        for (int i = 1; i <= 5; i++) {
+            detector.onMove(at(100, 110 + 20 * i, 10 + 10 * i), 150, 110 + 20 * i);
+        }
+        detector.onPointerUp(1, 100, 210, 70);
+        detector.onUp(at(100, 210, 75));
+
+        assertEquals(7, events.size());
+        String fling = events.get(5);
+        assertTrue(fling, fling.startsWith("fling 0.0 -19"));
+    }
+
+    @Test
+    public void restingBeforeLifting_doesNotFling() {
+        detector.onDown(100, 100, 0);
+        detector.onPointerDown(2, 150, 100);
+        detector.onMove(at(100, 110, 10), 150, 110);
+        detector.onMove(at(100, 130, 20), 150, 130);
+        detector.onPointerUp(1, 100, 130, 200);
+        detector.onUp(at(100, 130, 210));
+
+        assertEquals(Arrays.asList("scroll 0.0 -20.0", "moveEnd"), events);
+    }
+
+    @Test
+    public void threeFingerTap_isIgnored() {
+        detector.onDown(100, 100, 0);
+        detector.onPointerDown(2, 150, 100);
+        detector.onPointerDown(3, 150, 120);
+        detector.onPointerUp(2, 150, 100, 0);
+        detector.onPointerUp(1, 100, 100, 0);
+        detector.onUp(at(100, 100, 60));
+
+        assertEquals(0, events.size());
+    }
+
+    @Test
+    public void moveThenSecondFinger_switchesToScrollAndBackToMove() {
+        detector.onDown(100, 100, 0);
+        detector.onMove(at(120, 100, 8), 120, 100);
+        detector.onMove(at(125, 100, 16), 125, 100);
+        detector.onPointerDown(2, 150, 100);
+        detector.onMove(at(125, 95, 24), 150, 95);
+        detector.onPointerUp(1, 125, 95, 200);
+        // The first move after scrolling starts tracking again
+        detector.onMove(at(125, 95, 32), 125, 95);
+        detector.onMove(at(130, 95, 40), 130, 95);
+        detector.onUp(at(130, 95, 48));
+
+        assertEquals(Arrays.asList("move -5.0 0.0", "moveEnd", "scroll 0.0 5.0", "move -5.0 0.0", "moveEnd"), events);
+    }
+
+    @Test
+    public void cancelWhileDragging_releasesButton() {
+        tap(100, 100, 0);
+        detector.onDown(100, 100, 150);
+        detector.onCancel();
+        detector.onDown(100, 100, 200);
+        detector.onUp(at(100, 100, 250));
+
+        assertEquals(Arrays.asList("left", "dragStart", "dragEnd", "left"), events);
+    }
+
+    @Test
+    public void missedUpWhileDragging_releasesButtonOnNextDown() {
+        tap(100, 100, 0);
+        detector.onDown(100, 100, 150);
+        detector.onDown(100, 100, 1000);
+
+        assertEquals(Arrays.asList("left", "dragStart", "dragEnd"), events);
+    }
+
+    @Test
+    public void touchEvents_areDispatchedWithFocusOfRemainingFingers() {
+        int[] twoPointers = {0, 1};
+        detector.onTouchEvent(SyntheticTouchEvent.single(TouchEvent.ACTION_DOWN, 0, 100, 100));
+        detector.onTouchEvent(new SyntheticTouchEvent(TouchEvent.ACTION_POINTER_DOWN, 1, twoPointers,
+                new long[]{10}, new float[][]{{100, 200}}, new float[][]{{100, 100}}));
+        detector.onTouchEvent(new SyntheticTouchEvent(TouchEvent.ACTION_MOVE, 0, twoPointers,
+                new long[]{20}, new float[][]{{100, 200}}, new float[][]{{80, 80}}));
+        detector.onTouchEvent(new SyntheticTouchEvent(TouchEvent.ACTION_MOVE, 0, twoPointers,
+                new long[]{30}, new float[][]{{100, 200}}, new float[][]{{70, 70}}));
+        // Lifting the second finger leaves the first one's position as focus
+        detector.onTouchEvent(new SyntheticTouchEvent(TouchEvent.ACTION_POINTER_UP, 1, twoPointers,
+                new long[]{200}, new float[][]{{100, 200}}, new float[][]{{70, 70}}));
+        detector.onTouchEvent(SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, 210, 110, 70));
+        detector.onTouchEvent(SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, 220, 120, 70));
+        detector.onTouchEvent(SyntheticTouchEvent.single(TouchEvent.ACTION_UP, 230, 120, 70));
+
+        assertEquals(Arrays.asList("scroll 0.0 10.0", "move -10.0 0.0", "moveEnd"), events);
+    }
+
+    @Test
+    public void tapToSendLatency_isNotHeldBackByDoubleTapTimeout() throws InterruptedException {
+        PriorityMessageQueue queue = new PriorityMessageQueue();
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+        TouchPadGestureDetector queueingDetector = new TouchPadGestureDetector(new RecordingListener(new ArrayList<>()) {
+            @Override
+            public void onLeftClick() {
+                queue.put(new Message(MessageType.ACTION_PRIMARY_CLICK));
+            }
+        }, TOUCH_SLOP, DOUBLE_TAP_SLOP, TAP_TIMEOUT, DOUBLE_TAP_TIMEOUT, MIN_FLING_VELOCITY);
+
+        for (int i = 0; i < 2000; i++) {
+            // Taps spaced past the double tap timeout on the virtual clock
+            long time = i * 1000L;
+            queueingDetector.onDown(100, 100, time);
+
+            long upNanos = System.nanoTime();
+            queueingDetector.onUp(at(100, 100, time + 80));
+            Message message = queue.take();
+            latencyHistogram.record((System.nanoTime() - upNanos) / 1000);
+
+            assertEquals(MessageType.ACTION_PRIMARY_CLICK, message.getMessageType());
+        }
+
+        System.out.println("Tap-to-send latency: p50 " + latencyHistogram.getPercentile(50) +
+                " us, p99 " + latencyHistogram.getPercentile(99) + " us");
+        assertTrue(latencyHistogram.getPercentile(50) < DOUBLE_TAP_TIMEOUT * 1000 / 100);
+    }
+
+    private void tap(float x, float y, long time) {
+        detector.onDown(x, y, time);
+        detector.onUp(at(x, y, time + 50));
+    }
+
+    private static MotionPathRecorder.Batch at(float x, float y, long time) {
+        return new MotionPathRecorder.Batch() {
+            @Override
+            public int getHistorySize() {
+                return 0;
+            }
+
+            @Override
+            public float getHistoricalX(int pos) {
+                throw new IndexOutOfBoundsException();
+            }
+
+            @Override
+            public float getHistoricalY(int pos) {
+                throw new IndexOutOfBoundsException();
+            }
+
+            @Override
+            public long getHistoricalEventTime(int pos) {
+                throw new IndexOutOfBoundsException();
+            }
+
+            @Override
+            public float getX() {
+                return x;
+            }
+
+            @Override
+            public float getY() {
+                return y;
+            }
+
+            @Override
+            public long getEventTime() {
+                return time;
+            }
+        };
+    }
+
+    private static class RecordingListener implements TouchPadGestureDetector.OnTouchPadGestureListener {
+        private final List<String> events;
+
+        private RecordingListener(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onDown() {
+        }
+
+        @Override
+        public void onMove(MotionPath path) {
+            events.add("move " + path.getTotalX() + " " + path.getTotalY());
+        }
+
+        @Override
+        public void onMoveEnd() {
+            events.add("moveEnd");
+        }
+
+        @Override
+        public void onScroll(float distanceX, float distanceY) {
+            events.add("scroll " + distanceX + " " + distanceY);
+        }
+
+        @Override
+        public void onFling(float velocityX, float velocityY) {
+            events.add("fling " + velocityX + " " + velocityY);
+        }
+
+        @Override
+        public void onLeftClick() {
+            events.add("left");
+        }
+
+        @Override
+        public void onRightClick() {
+            events.add("right");
+        }
+
+        @Override
+        public void onClickDragStart() {
+            events.add("dragStart");
+        }
+
+        @Override
+        public void onClickDragMove(MotionPath path) {
+            events.add("dragMove " + path.getTotalX() + " " + path.getTotalY());
+        }
+
+        @Override
+        public void onClickDragEnd() {
+            events.add("dragEnd");
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.konradrej.rcpc.client.View;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips touch events through {@link TouchTraceWriter} and
+ * {@link TouchTraceReader} and checks the checked-in reference traces.
+ */
+public class TouchTraceTest {
+    private static final float PRECISION = 1 / 32f;
+
+    @Test
+    public void roundTrip_keepsActionsPointersHistoryAndTimes() throws IOException {
+        SyntheticTouchEvent down = SyntheticTouchEvent.single(TouchEvent.ACTION_DOWN, 250_000, 100.3f, 200.7f);
+        SyntheticTouchEvent move = new SyntheticTouchEvent(TouchEvent.ACTION_MOVE, 0, new int[]{0, 3},
+                new long[]{250_008, 250_012, 250_016},
+                new float[][]{{101.5f, 400f}, {99.25f, 398.1f}, {-20f, 1500.9f}},
+                new float[][]{{202f, 600f}, {204.4f, 601f}, {210f, 590.5f}});
+        SyntheticTouchEvent pointerUp = new SyntheticTouchEvent(TouchEvent.ACTION_POINTER_UP, 1, new int[]{0, 3},
+                new long[]{250_030}, new float[][]{{-20f, 1500f}}, new float[][]{{210f, 590f}});
+
+        TouchTraceReader reader = new TouchTraceReader(new ByteArrayInputStream(write(down, move, pointerUp)));
+
+        assertSameEvent(down, reader.read());
+        assertSameEvent(move, reader.read());
+        assertSameEvent(pointerUp, reader.read());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void notATrace_isRejected() {
+        try {
+            new TouchTraceReader(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void truncatedTrace_throwsInsteadOfEndingQuietly() throws IOException {
+        byte[] trace = write(SyntheticTouchEvent.single(TouchEvent.ACTION_DOWN, 1000, 50, 50),
+                SyntheticTouchEvent.single(TouchEvent.ACTION_MOVE, 1016, 60, 50));
+        TouchTraceReader reader = new TouchTraceReader(new ByteArrayInputStream(Arrays.copyOf(trace, trace.length - 1)));
+
+        assertNotNull(reader.read());
+
+        try {
+            reader.read();
+            fail("Expected EOFException");
+        } catch (EOFException expected) {
+        }
+    }
+
+    @Test
+    public void referenceTraces_takeFewBytesPerSample() throws IOException {
+        for (String name : new String[]{"flick", "slow_drag", "two_finger_scroll"}) {
+            byte[] trace = readResource("/traces/" + name + ".trace");
+            TouchTraceReader reader = new TouchTraceReader(new ByteArrayInputStream(trace));
+            int pointerSamples = 0;
+            TouchEvent event;
+
+            while ((event = reader.read()) != null) {
+                pointerSamples += (event.getHistorySize() + 1) * event.getPointerCount();
+            }
+
+            float bytesPerSample = (float) trace.length / pointerSamples;
+            System.out.printf("%s: %d bytes, %d pointer samples, %.2f bytes/sample%n",
+                    name, trace.length, pointerSamples, bytesPerSample);
+            // Half of a float position and long time per sample
+            assertTrue(name + " takes " + bytesPerSample + " bytes per sample", bytesPerSample < 8);
+        }
+    }
+
+    static byte[] readResource(String name) throws IOException {
+        try (InputStream in = TouchTraceTest.class.getResourceAsStream(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] write(TouchEvent... events) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (TouchTraceWriter writer = new TouchTraceWriter(out)) {
+            for (TouchEvent event : events) {
+                writer.write(event);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    static void assertSameEvent(TouchEvent expected, TouchEvent actual) {
+        assertEquals(expected.getActionMasked(), actual.getActionMasked());
+        assertEquals(expected.getActionIndex(), actual.getActionIndex());
+        assertEquals(expected.getPointerCount(), actual.getPointerCount());
+        assertEquals(expected.getHistorySize(), actual.getHistorySize());
+        assertEquals(expected.getEventTime(), actual.getEventTime());
+
+        for (int i = 0; i < expected.getPointerCount(); i++) {
+            assertEquals(expected.getPointerId(i), actual.getPointerId(i));
+            assertEquals(expected.getX(i), actual.getX(i), PRECISION);
+            assertEquals(expected.getY(i), actual.getY(i), PRECISION);
+
+            for (int pos = 0; pos < expected.getHistorySize(); pos++) {
+                assertEquals(expected.getHistoricalEventTime(pos), actual.getHistoricalEventTime(pos));
+                assertEquals(expected.getHistoricalX(i, pos), actual.getHistoricalX(i, pos), PRECISION);
+                assertEquals(expected.getHistoricalY(i, pos), actual.getHistoricalY(i, pos), PRECISION);
+            }
+        }
+    }
+}
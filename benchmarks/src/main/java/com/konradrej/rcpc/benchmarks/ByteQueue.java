@@ -0,0 +1,91 @@
+package com.konradrej.rcpc.benchmarks;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * In-memory pipe for a single thread, bytes written to {@link #getOutputStream()}
+ * are read back from {@link #getInputStream()}. Reading past the written
+ * bytes reports the end of the stream.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+class ByteQueue {
+    private byte[] buffer = new byte[4096];
+    private int readPosition = 0;
+    private int writePosition = 0;
+    private long written = 0;
+
+    private final OutputStream outputStream = new OutputStream() {
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            buffer[writePosition++] = (byte) b;
+            written++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buffer, writePosition, len);
+            writePosition += len;
+            written += len;
+        }
+    };
+
+    private final InputStream inputStream = new InputStream() {
+        @Override
+        public int read() {
+            return readPosition < writePosition ? buffer[readPosition++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+
+            int count = Math.min(len, writePosition - readPosition);
+            if (count <= 0) {
+                return -1;
+            }
+
+            System.arraycopy(buffer, readPosition, b, off, count);
+            readPosition += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return writePosition - readPosition;
+        }
+    };
+
+    OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    InputStream getInputStream() {
+        return inputStream;
+    }
+
+    long getWritten() {
+        return written;
+    }
+
+    private void ensureCapacity(int length) {
+        // Everything written has been read, start over at the front
+        if (readPosition == writePosition) {
+            readPosition = 0;
+            writePosition = 0;
+        }
+
+        if (writePosition + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, writePosition + length));
+        }
+    }
+}
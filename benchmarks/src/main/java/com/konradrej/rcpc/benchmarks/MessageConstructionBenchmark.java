@@ -0,0 +1,63 @@
+package com.konradrej.rcpc.benchmarks;
+
+import com.konradrej.rcpc.client.Network.MotionSample;
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the messages sent by the touchpad: a move message with
+ * boxed distances as TouchPadFragment used to build for every touch event,
+ * a click message as it still builds, and the reused {@link MotionSample}
+ * the motion path uses instead.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageConstructionBenchmark {
+    // Fields so the distances are not constant folded
+    private float distanceX = 3.5f;
+    private float distanceY = -1.25f;
+    private final MotionSample motionSample = new MotionSample();
+
+    @Benchmark
+    public Message moveMessage() {
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put("distanceX", distanceX);
+        additionalData.put("distanceY", distanceY);
+
+        return new Message(MessageType.ACTION_MOVE, null, additionalData);
+    }
+
+    @Benchmark
+    public Message clickMessage() {
+        return new Message(MessageType.ACTION_PRIMARY_CLICK);
+    }
+
+    @Benchmark
+    public MotionSample reusedMotionSample() {
+        motionSample.set(MessageType.ACTION_MOVE, distanceX, distanceY);
+        return motionSample;
+    }
+}
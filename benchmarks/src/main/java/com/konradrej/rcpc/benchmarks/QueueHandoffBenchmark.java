@@ -0,0 +1,104 @@
+package com.konradrej.rcpc.benchmarks;
+
+import com.konradrej.rcpc.client.Network.BinaryMessageCodec;
+import com.konradrej.rcpc.client.Network.MessageWriter;
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handoff from the thread sending a message to the writer thread of a
+ * connection, the path ConnectionHandler uses for every message. Each
+ * operation enqueues one message into a {@link MessageWriter} and waits
+ * until the writer thread has written and flushed it, so the score is the
+ * round trip rate of waking the parked writer.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueHandoffBenchmark {
+    private final Message clickMessage = new Message(MessageType.ACTION_PRIMARY_CLICK);
+    private final Semaphore flushed = new Semaphore(0);
+    private MessageWriter messageWriter;
+    private Thread writerThread;
+    private float distanceX = 3.5f;
+    private float distanceY = -1.25f;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        messageWriter = new MessageWriter();
+        messageWriter.setMessageCodec(new BinaryMessageCodec());
+
+        ObjectOutputStream out = new ObjectOutputStream(new FlushSignallingOutputStream());
+        out.flush();
+        flushed.drainPermits();
+
+        writerThread = new Thread(() -> {
+            try {
+                messageWriter.writeUntilStopped(out);
+            } catch (IOException ignored) {
+            }
+        }, "writer");
+        writerThread.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        messageWriter.stop();
+        writerThread.join(1000);
+    }
+
+    @Benchmark
+    public void controlMessageHandoff() throws InterruptedException {
+        messageWriter.enqueue(clickMessage);
+        flushed.acquire();
+    }
+
+    @Benchmark
+    public void motionHandoff() throws InterruptedException {
+        messageWriter.enqueueMotion(MessageType.ACTION_MOVE, distanceX, distanceY);
+        flushed.acquire();
+    }
+
+    // The writer flushes once the queue is empty, which here is after every message
+    private class FlushSignallingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+            flushed.release();
+        }
+    }
+}
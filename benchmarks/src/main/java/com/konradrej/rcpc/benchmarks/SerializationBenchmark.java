@@ -0,0 +1,104 @@
+package com.konradrej.rcpc.benchmarks;
+
+import com.konradrej.rcpc.client.Network.BinaryMessageCodec;
+import com.konradrej.rcpc.client.Network.MotionSample;
+import com.konradrej.rcpc.core.network.Message;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of a move message through {@link ObjectOutputStream} and
+ * {@link ObjectInputStream}, as the connection writes and the server reads
+ * them. The output stream is reset either after every message or every
+ * 256 messages as MessageWriter does. Never resetting is left out, the
+ * stream would retain every message written during the run.
+ * The binary codec's motion frame is measured over the same streams for
+ * comparison.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"1", "256"})
+    public int resetInterval;
+
+    private final BinaryMessageCodec binaryMessageCodec = new BinaryMessageCodec();
+    private final MotionSample motionSample = new MotionSample();
+    private ByteQueue byteQueue;
+    private ObjectOutputStream out;
+    private ObjectInputStream in;
+    private int messagesSinceReset;
+    private float distanceX = 3.5f;
+    private float distanceY = -1.25f;
+
+    @Setup
+    public void setUp() throws IOException {
+        byteQueue = new ByteQueue();
+        out = new ObjectOutputStream(byteQueue.getOutputStream());
+        out.flush();
+        in = new ObjectInputStream(byteQueue.getInputStream());
+        messagesSinceReset = 0;
+    }
+
+    @Benchmark
+    public Object objectStreamRoundTrip(WireBytes wireBytes) throws IOException, ClassNotFoundException {
+        long writtenBefore = byteQueue.getWritten();
+
+        // A new message every time, as sent, so nothing is written as a back reference only
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put("distanceX", distanceX);
+        additionalData.put("distanceY", distanceY);
+        out.writeObject(new Message(MessageType.ACTION_MOVE, null, additionalData));
+        resetIfDue();
+        out.flush();
+
+        wireBytes.record(byteQueue.getWritten() - writtenBefore);
+        return in.readObject();
+    }
+
+    @Benchmark
+    public Object binaryMotionRoundTrip(WireBytes wireBytes) throws IOException, ClassNotFoundException {
+        long writtenBefore = byteQueue.getWritten();
+
+        motionSample.set(MessageType.ACTION_MOVE, distanceX, distanceY);
+        binaryMessageCodec.writeMotion(motionSample, out);
+        resetIfDue();
+        out.flush();
+
+        wireBytes.record(byteQueue.getWritten() - writtenBefore);
+        return binaryMessageCodec.readMessage(in);
+    }
+
+    private void resetIfDue() throws IOException {
+        if (++messagesSinceReset >= resetInterval) {
+            out.reset();
+            messagesSinceReset = 0;
+        }
+    }
+}
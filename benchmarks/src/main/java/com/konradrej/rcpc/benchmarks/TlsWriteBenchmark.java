@@ -0,0 +1,165 @@
+package com.konradrej.rcpc.benchmarks;
+
+import com.konradrej.rcpc.client.Network.BinaryMessageCodec;
+import com.konradrej.rcpc.client.Network.MotionSample;
+import com.konradrej.rcpc.core.network.MessageType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Write throughput of binary motion frames over a TLS connection on the
+ * loopback interface, the server side draining everything it receives.
+ * Frames are flushed either one at a time, as when the writer keeps up with
+ * touch events, or in bursts as written after the writer stalled. Every
+ * flush ends a TLS record, so the burst size shows the cost of records.
+ * Bytes/op counts plaintext bytes.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TlsWriteBenchmark {
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    @Param({"1", "32"})
+    public int messagesPerFlush;
+
+    private final BinaryMessageCodec binaryMessageCodec = new BinaryMessageCodec();
+    private final MotionSample motionSample = new MotionSample();
+    private SSLServerSocket serverSocket;
+    private SSLSocket socket;
+    private CountingOutputStream countingOut;
+    private ObjectOutputStream out;
+    private Thread drainThread;
+    private int messagesSinceFlush;
+    private float distanceX = 3.5f;
+    private float distanceY = -1.25f;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SSLContext sslContext = createContext();
+
+        serverSocket = (SSLServerSocket) sslContext.getServerSocketFactory()
+                .createServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        drainThread = new Thread(this::drain, "tls-drain");
+        drainThread.start();
+
+        socket = (SSLSocket) sslContext.getSocketFactory()
+                .createSocket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        socket.setTcpNoDelay(true);
+        socket.startHandshake();
+
+        countingOut = new CountingOutputStream(socket.getOutputStream());
+        out = new ObjectOutputStream(countingOut);
+        out.flush();
+        messagesSinceFlush = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        socket.close();
+        serverSocket.close();
+        drainThread.join(1000);
+    }
+
+    @Benchmark
+    public void writeMotion(WireBytes wireBytes) throws IOException {
+        long writtenBefore = countingOut.count;
+
+        motionSample.set(MessageType.ACTION_MOVE, distanceX, distanceY);
+        binaryMessageCodec.writeMotion(motionSample, out);
+
+        if (++messagesSinceFlush >= messagesPerFlush) {
+            out.flush();
+            messagesSinceFlush = 0;
+        }
+
+        wireBytes.record(countingOut.count - writtenBefore);
+    }
+
+    private void drain() {
+        try (SSLSocket serverSide = (SSLSocket) serverSocket.accept()) {
+            InputStream in = serverSide.getInputStream();
+            new ObjectInputStream(in);
+            byte[] buffer = new byte[16384];
+
+            while (in.read(buffer) >= 0) {
+                // Discarded, only the client side is measured
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static SSLContext createContext() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = TlsWriteBenchmark.class.getResourceAsStream("/loopback.p12")) {
+            keyStore.load(in, PASSWORD);
+        }
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, PASSWORD);
+
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+
+        return sslContext;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.konradrej.rcpc.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Counts bytes written by a benchmark. JMH reports the counter as a rate
+ * next to the ops/sec score, bytes/op is also printed after each iteration.
+ *
+ * @author Konrad Rej
+ * @author www.konradrej.com
+ * @version 1.0
+ * @since 1.8
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class WireBytes {
+    public long bytes;
+    private long operations;
+
+    /**
+     * Clears the counts before each iteration.
+     *
+     * @since 1.8
+     */
+    @Setup(Level.Iteration)
+    public void clear() {
+        bytes = 0;
+        operations = 0;
+    }
+
+    /**
+     * Prints bytes/op of the iteration.
+     *
+     * @since 1.8
+     */
+    @TearDown(Level.Iteration)
+    public void print() {
+        if (operations > 0) {
+            System.out.printf("%n%.1f bytes/op%n", (double) bytes / operations);
+        }
+    }
+
+    void record(long written) {
+        bytes += written;
+        operations++;
+    }
+}